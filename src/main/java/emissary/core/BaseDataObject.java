@@ -1,13 +1,17 @@
 package emissary.core;
 
+import emissary.core.channels.RefCountedChannelFactory;
 import emissary.core.channels.SeekableByteChannelFactory;
 import emissary.core.channels.SeekableByteChannelHelper;
 import emissary.directory.DirectoryEntry;
 import emissary.pickup.Priority;
 import emissary.util.ByteUtil;
+import emissary.util.DisposeHelper;
 import emissary.util.PayloadUtil;
 
 import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Multimap;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -27,7 +31,7 @@ import java.rmi.Remote;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -35,6 +39,7 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.UUID;
+import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 
 /**
@@ -49,6 +54,10 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
     /* Including this here make serialization of this object faster. */
     private static final long serialVersionUID = 7362181964652092657L;
 
+    /* Store parameters in a CompactParameters instead of a LinkedListMultimap */
+    @SuppressWarnings("NonFinalStaticField")
+    private static volatile boolean compactParameters = false;
+
     /* Actual data - migrate away from this towards byte channels. */
     @Nullable
     protected byte[] theData;
@@ -94,7 +103,7 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
     /**
      * Dynamic facets or metadata attributes of the data
      */
-    protected LinkedListMultimap<String, Object> parameters = LinkedListMultimap.create(100);
+    protected ListMultimap<String, Object> parameters = newParameters(null);
 
     /**
      * If this file caused other agents to be sprouted, indicate how many
@@ -192,6 +201,28 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
     @Nullable
     protected SeekableByteChannelFactory seekableByteChannelFactory;
 
+    /*
+     * Set on both sides of a clone for each store they still share. The first change to a shared store copies it.
+     */
+    private transient boolean currentFormShared = false;
+    private transient boolean historyShared = false;
+    private transient boolean parametersShared = false;
+    private transient boolean alternateViewsShared = false;
+    private transient boolean dataShared = false;
+
+    /*
+     * Set while theData has been handed out by data() to the place working on this object, which may change it in place, so
+     * it is not spilled. Cleared by the agent when the place is done.
+     */
+    private transient boolean dataHandedOut = false;
+
+    /* Set while seekableByteChannelFactory holds data spilled by the PayloadMemoryManager */
+    private transient boolean dataSpilled = false;
+
+    /* The bytes of theData counted by the PayloadMemoryManager, guarded by this object's lock */
+    @Nullable
+    transient PayloadMemoryManager.Ticket memoryTicket = null;
+
 
     protected enum DataState {
         NO_DATA, CHANNEL_ONLY, BYTE_ARRAY_ONLY, BYTE_ARRAY_AND_CHANNEL
@@ -232,6 +263,35 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
         }
     }
 
+    /**
+     * Choose the parameter store for objects created from now on
+     *
+     * @param compact true for the smaller {@link CompactParameters}, false for a {@link LinkedListMultimap}
+     */
+    public static void setCompactParameters(final boolean compact) {
+        compactParameters = compact;
+    }
+
+    /**
+     * Tell whether new objects store their parameters in a {@link CompactParameters}
+     */
+    public static boolean isCompactParameters() {
+        return compactParameters;
+    }
+
+    /**
+     * Create a parameter store of the configured kind
+     *
+     * @param copyOf parameters to copy into the new store, or null for an empty one
+     * @return the new store
+     */
+    protected static ListMultimap<String, Object> newParameters(@Nullable final Multimap<String, Object> copyOf) {
+        if (compactParameters) {
+            return copyOf == null ? new CompactParameters() : new CompactParameters(copyOf);
+        }
+        return copyOf == null ? LinkedListMultimap.create(100) : LinkedListMultimap.create(copyOf);
+    }
+
     /**
      * Create an empty BaseDataObject.
      */
@@ -334,10 +394,14 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
      * Setting this will null out {@link #theData}
      */
     @Override
-    public void setChannelFactory(final SeekableByteChannelFactory sbcf) {
+    public synchronized void setChannelFactory(final SeekableByteChannelFactory sbcf) {
         Validate.notNull(sbcf, "Required: SeekableByteChannelFactory not null");
         this.theData = null;
+        this.dataShared = false;
+        this.dataHandedOut = false;
+        this.dataSpilled = false;
         this.seekableByteChannelFactory = sbcf;
+        PayloadMemoryManager.getInstance().track(this, 0);
     }
 
     /**
@@ -349,7 +413,7 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
     @Nullable
     @Override
     @SuppressWarnings("UnnecessaryDefaultInEnumSwitch")
-    public SeekableByteChannelFactory getChannelFactory() {
+    public synchronized SeekableByteChannelFactory getChannelFactory() {
         switch (getDataState()) {
             case BYTE_ARRAY_AND_CHANNEL:
                 throw new IllegalStateException(String.format(INVALID_STATE_MSG, shortName()));
@@ -395,14 +459,51 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
      */
     @Nullable
     @Override
-    @SuppressWarnings("UnnecessaryDefaultInEnumSwitch")
     public byte[] data() {
+        final PayloadMemoryManager memory = PayloadMemoryManager.getInstance();
+        final byte[] result;
+        final boolean counted;
+        synchronized (this) {
+            final boolean wasShared = dataShared;
+            final boolean wasSpilled = dataSpilled;
+            result = handOutData(memory);
+            counted = wasShared || wasSpilled;
+        }
+        if (counted) {
+            // the array is new memory, so let other payloads make room for it
+            memory.spillIfNeeded();
+        }
+        return result;
+    }
+
+    /**
+     * Hand out the data for {@link #data()}, holding the lock
+     */
+    @Nullable
+    @SuppressWarnings("UnnecessaryDefaultInEnumSwitch")
+    private byte[] handOutData(final PayloadMemoryManager memory) {
         switch (getDataState()) {
             case BYTE_ARRAY_AND_CHANNEL:
                 throw new IllegalStateException(String.format(INVALID_STATE_MSG, shortName()));
             case BYTE_ARRAY_ONLY:
+                if (dataShared) {
+                    // the caller may change the array in place, so it must not be the one a clone also holds
+                    theData = theData.clone();
+                    dataShared = false;
+                    memory.track(this, theData.length);
+                }
+                dataHandedOut = true;
                 return theData;
             case CHANNEL_ONLY:
+                if (dataSpilled) {
+                    // bring spilled data back so that changes made in place to the array are kept
+                    theData = SeekableByteChannelHelper.getByteArrayFromBdo(this, MAX_BYTE_ARRAY_SIZE);
+                    seekableByteChannelFactory = null;
+                    dataSpilled = false;
+                    dataHandedOut = true;
+                    memory.track(this, theData.length);
+                    return theData;
+                }
                 // Max size here is slightly less than the true max size to avoid memory issues
                 return SeekableByteChannelHelper.getByteArrayFromBdo(this, MAX_BYTE_ARRAY_SIZE);
             case NO_DATA:
@@ -411,13 +512,19 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
         }
     }
 
+    /**
+     * Note that the place that took the array with {@link #data()} is done with it, so it can be spilled again
+     */
+    synchronized void dataReleased() {
+        this.dataHandedOut = false;
+    }
+
     /**
      * @see #setData(byte[], int, int)
      */
     @Override
     public void setData(@Nullable final byte[] newData) {
-        this.seekableByteChannelFactory = null;
-        this.theData = newData == null ? new byte[0] : newData;
+        replaceData(newData == null ? new byte[0] : newData);
     }
 
     /**
@@ -437,13 +544,63 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
      */
     @Override
     public void setData(@Nullable final byte[] newData, final int offset, final int length) {
-        this.seekableByteChannelFactory = null;
+        final byte[] copy;
         if (length <= 0 || newData == null) {
-            this.theData = new byte[0];
+            copy = new byte[0];
         } else {
-            this.theData = new byte[length];
-            System.arraycopy(newData, offset, this.theData, 0, length);
+            copy = new byte[length];
+            System.arraycopy(newData, offset, copy, 0, length);
+        }
+        replaceData(copy);
+    }
+
+    /**
+     * Swap in new data and let the PayloadMemoryManager count it, spilling other payloads if that takes memory use too high
+     */
+    private void replaceData(final byte[] newData) {
+        final PayloadMemoryManager memory = PayloadMemoryManager.getInstance();
+        synchronized (this) {
+            this.seekableByteChannelFactory = null;
+            this.theData = newData;
+            this.dataShared = false;
+            this.dataHandedOut = false;
+            this.dataSpilled = false;
+            memory.track(this, newData.length);
+        }
+        memory.spillIfNeeded();
+    }
+
+    /**
+     * Get the in-memory data for spilling, if it is still what the manager counted and nobody has taken it with
+     * {@link #data()}
+     *
+     * @param ticket the manager's record of the data
+     * @return the data or null if it has changed or been handed out since
+     */
+    @Nullable
+    synchronized byte[] inMemoryData(final PayloadMemoryManager.Ticket ticket) {
+        return this.memoryTicket == ticket && !this.dataHandedOut && getDataState() == DataState.BYTE_ARRAY_ONLY ? this.theData : null;
+    }
+
+    /**
+     * Switch over to the spilled copy of the data, if the data is still what was spilled and nobody has taken it with
+     * {@link #data()} while it was written. A later {@link #data()} brings it back into memory.
+     *
+     * @param ticket the manager's record of the data
+     * @param spilledData the data that was written out
+     * @param sbcf the factory for the written copy
+     * @return true if switched over
+     */
+    synchronized boolean spilled(final PayloadMemoryManager.Ticket ticket, final byte[] spilledData, final SeekableByteChannelFactory sbcf) {
+        if (this.memoryTicket != ticket || this.theData != spilledData || this.dataHandedOut || this.seekableByteChannelFactory != null) {
+            return false;
         }
+        this.theData = null;
+        this.dataShared = false;
+        this.dataSpilled = true;
+        this.seekableByteChannelFactory = sbcf;
+        this.memoryTicket = null;
+        return true;
     }
 
     /**
@@ -463,7 +620,7 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
      */
     @Override
     @SuppressWarnings("UnnecessaryDefaultInEnumSwitch")
-    public long getChannelSize() throws IOException {
+    public synchronized long getChannelSize() throws IOException {
         switch (getDataState()) {
             case BYTE_ARRAY_AND_CHANNEL:
                 throw new IllegalStateException(String.format(INVALID_STATE_MSG, shortName()));
@@ -487,7 +644,7 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
      */
     @Override
     @SuppressWarnings("UnnecessaryDefaultInEnumSwitch")
-    public int dataLength() {
+    public synchronized int dataLength() {
         switch (getDataState()) {
             case BYTE_ARRAY_AND_CHANNEL:
                 throw new IllegalStateException(String.format(INVALID_STATE_MSG, shortName()));
@@ -575,7 +732,7 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
 
     @Override
     public void replaceCurrentForm(@Nullable final String form) {
-        this.currentForm.clear();
+        writableCurrentForm().clear();
         if (form != null) {
             pushCurrentForm(form);
         }
@@ -592,7 +749,7 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
         if (this.currentForm.isEmpty()) {
             return null;
         } else {
-            return this.currentForm.remove(0);
+            return writableCurrentForm().remove(0);
         }
     }
 
@@ -600,12 +757,12 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
     public int deleteCurrentForm(final String form) {
         int count = 0;
 
-        if (this.currentForm == null || this.currentForm.isEmpty()) {
+        if (this.currentForm == null || !this.currentForm.contains(form)) {
             return count;
         }
 
         // Remove all matching
-        for (final Iterator<String> i = this.currentForm.iterator(); i.hasNext();) {
+        for (final Iterator<String> i = writableCurrentForm().iterator(); i.hasNext();) {
             final String val = i.next();
             if (val.equals(form)) {
                 i.remove();
@@ -619,7 +776,7 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
     public int deleteCurrentFormAt(final int i) {
         // Make sure its a legal position.
         if ((i >= 0) && (i < this.currentForm.size())) {
-            this.currentForm.remove(i);
+            writableCurrentForm().remove(i);
         }
         return this.currentForm.size();
     }
@@ -632,9 +789,9 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
 
         checkForAndLogDuplicates(newForm, "addCurrentFormAt");
         if (i < this.currentForm.size()) {
-            this.currentForm.add(i, newForm);
+            writableCurrentForm().add(i, newForm);
         } else {
-            this.currentForm.add(newForm);
+            writableCurrentForm().add(newForm);
         }
         return this.currentForm.size();
     }
@@ -646,7 +803,7 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
         }
 
         checkForAndLogDuplicates(newForm, "enqueueCurrentForm");
-        this.currentForm.add(newForm);
+        writableCurrentForm().add(newForm);
         return this.currentForm.size();
     }
 
@@ -696,11 +853,22 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
 
             // If deleted, add it back on top
             if (count > 0) {
-                this.currentForm.add(0, curForm);
+                writableCurrentForm().add(0, curForm);
             }
         }
     }
 
+    /**
+     * Get the current form list for changing, copying it first if a clone still shares it
+     */
+    private List<String> writableCurrentForm() {
+        if (currentFormShared) {
+            currentForm = new ArrayList<>(currentForm);
+            currentFormShared = false;
+        }
+        return currentForm;
+    }
+
     private void checkForAndLogDuplicates(String newForm, String method) {
         if (currentForm.contains(newForm)) {
             logger.info("Duplicate form {} being added through BaseDataObject.{}", newForm, method);
@@ -756,9 +924,14 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
         return history.get(includeCoordinated);
     }
 
+    @Override
+    public int transformHistorySize() {
+        return history.size();
+    }
+
     @Override
     public void clearTransformHistory() {
-        this.history.clear();
+        writableHistory().clear();
     }
 
     @Override
@@ -768,12 +941,23 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
 
     @Override
     public void appendTransformHistory(final String key, boolean coordinated) {
-        this.history.append(key, coordinated);
+        writableHistory().append(key, coordinated);
     }
 
     @Override
     public void setHistory(TransformHistory newHistory) {
-        this.history.set(newHistory);
+        writableHistory().set(newHistory);
+    }
+
+    /**
+     * Get the transform history for changing, copying it first if a clone still shares it
+     */
+    private TransformHistory writableHistory() {
+        if (historyShared) {
+            history = new TransformHistory(history);
+            historyShared = false;
+        }
+        return history;
     }
 
     @Override
@@ -790,15 +974,15 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
     @Nullable
     @Override
     public DirectoryEntry getLastPlaceVisited() {
-        TransformHistory.History entry = history.lastVisit();
-        return entry == null ? null : new DirectoryEntry(entry.getKey());
+        final String key = history.lastKey();
+        return key == null ? null : new DirectoryEntry(key);
     }
 
     @Nullable
     @Override
     public DirectoryEntry getPenultimatePlaceVisited() {
-        TransformHistory.History entry = history.penultimateVisit();
-        return entry == null ? null : new DirectoryEntry(entry.getKey());
+        final String key = history.penultimateKey();
+        return key == null ? null : new DirectoryEntry(key);
     }
 
     @Override
@@ -813,7 +997,7 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
 
     @Override
     public void clearParameters() {
-        this.parameters.clear();
+        writableParameters().clear();
     }
 
     @Override
@@ -823,7 +1007,7 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
 
     @Override
     public void setParameters(final Map<? extends String, ? extends Object> map) {
-        this.parameters.clear();
+        writableParameters().clear();
         putParameters(map);
     }
 
@@ -835,12 +1019,13 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
 
     @Override
     public void putParameter(final String key, final Object val) {
-        this.parameters.removeAll(key);
+        final ListMultimap<String, Object> p = writableParameters();
+        p.removeAll(key);
 
         if (val instanceof Iterable) {
-            this.parameters.putAll(key, (Iterable<?>) val);
+            p.putAll(key, (Iterable<?>) val);
         } else {
-            this.parameters.put(key, val);
+            p.put(key, val);
         }
     }
 
@@ -863,6 +1048,10 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
      */
     @Override
     public void putParameters(final Map<? extends String, ? extends Object> m, final MergePolicy policy) {
+        if (m.isEmpty()) {
+            return;
+        }
+        writableParameters();
         for (final Map.Entry<? extends String, ? extends Object> entry : m.entrySet()) {
             final String name = entry.getKey();
 
@@ -928,8 +1117,10 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
     @Nullable
     @Override
     public List<Object> getParameter(final String key) {
-        // Try remapping
-        List<Object> v = this.parameters.get(key);
+        if (!this.parameters.containsKey(key)) {
+            return null;
+        }
+        List<Object> v = writableParameters().get(key);
         if (CollectionUtils.isEmpty(v)) {
             return null;
         }
@@ -938,12 +1129,12 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
 
     @Override
     public void appendParameter(final String key, final CharSequence value) {
-        this.parameters.put(key, value);
+        writableParameters().put(key, value);
     }
 
     @Override
     public void appendParameter(final String key, final Iterable<? extends CharSequence> values) {
-        this.parameters.putAll(key, values);
+        writableParameters().putAll(key, values);
     }
 
     /**
@@ -961,10 +1152,25 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
             return false;
         }
 
-        this.parameters.put(key, value);
+        writableParameters().put(key, value);
         return true;
     }
 
+    /**
+     * Read the values directly so that a clone sharing its parameters is not copied just to be read
+     */
+    @Override
+    public Collection<String> getParameterAsStrings(final String key) {
+        final List<Object> obj = this.parameters.containsKey(key) ? this.parameters.get(key) : null;
+        if (CollectionUtils.isEmpty(obj) || ((obj.size() == 1) && (obj.get(0) == null))) {
+            return Collections.emptyList();
+        } else if ((obj.size() == 1) && (obj.get(0) instanceof String)) {
+            return Collections.singletonList((String) obj.get(0));
+        } else {
+            return obj.stream().map(String::valueOf).collect(Collectors.toList());
+        }
+    }
+
     @Nullable
     @Override
     public String getParameterAsString(final String key) {
@@ -982,7 +1188,7 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
      */
     @Override
     public Map<String, Collection<Object>> getParameters() {
-        return this.parameters.asMap();
+        return writableParameters().asMap();
     }
 
     /**
@@ -999,12 +1205,27 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
 
     @Override
     public Set<String> getParameterKeys() {
-        return this.parameters.keySet();
+        return writableParameters().keySet();
     }
 
     @Override
     public List<Object> deleteParameter(final String key) {
-        return this.parameters.removeAll(key);
+        if (!this.parameters.containsKey(key)) {
+            return Collections.emptyList();
+        }
+        return writableParameters().removeAll(key);
+    }
+
+    /**
+     * Get the parameters for changing, or for handing out a live view of them, copying them first if a clone still shares
+     * them
+     */
+    private ListMultimap<String, Object> writableParameters() {
+        if (parametersShared) {
+            parameters = newParameters(parameters);
+            parametersShared = false;
+        }
+        return parameters;
     }
 
     @Override
@@ -1211,20 +1432,20 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
     @Override
     public void addAlternateView(final String name, @Nullable final byte[] data) {
         if (data == null) {
-            this.multipartAlternative.remove(name);
+            writableAlternateViews().remove(name);
         } else {
-            this.multipartAlternative.put(name, data);
+            writableAlternateViews().put(name, data);
         }
     }
 
     @Override
     public void addAlternateView(final String name, @Nullable final byte[] data, final int offset, final int length) {
         if (data == null || length <= 0) {
-            this.multipartAlternative.remove(name);
+            writableAlternateViews().remove(name);
         } else {
             final byte[] mpa = new byte[length];
             System.arraycopy(data, offset, mpa, 0, length);
-            this.multipartAlternative.put(name, mpa);
+            writableAlternateViews().put(name, mpa);
         }
     }
 
@@ -1246,7 +1467,19 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
      */
     @Override
     public Map<String, byte[]> getAlternateViews() {
-        return this.multipartAlternative;
+        return writableAlternateViews();
+    }
+
+    /**
+     * Get the alternate view map for changing, copying it first if a clone still shares it. The view arrays themselves are
+     * shared as they always have been.
+     */
+    private Map<String, byte[]> writableAlternateViews() {
+        if (alternateViewsShared) {
+            multipartAlternative = new TreeMap<>(multipartAlternative);
+            alternateViewsShared = false;
+        }
+        return multipartAlternative;
     }
 
     @Override
@@ -1299,38 +1532,50 @@ public class BaseDataObject implements Serializable, Cloneable, Remote, IBaseDat
     }
 
     /**
-     * Clone this payload
+     * Clone this payload. The clone shares the data bytes or channel factory, current forms, transform history, parameters
+     * and alternate views with this object, and each side copies the current forms, history, parameters or view map the
+     * first time it changes them, so a clone that changes little costs little. Since the array returned by {@link #data()}
+     * may be changed in place, each side copies the shared data bytes the first time it hands them out there. The clone
+     * takes its own reference to any counted channel factory this object is disposed of with. Subclasses that change the
+     * protected stores directly rather than through these methods will see the change on both sides.
      */
     @Deprecated
     @Override
-    public IBaseDataObject clone() throws CloneNotSupportedException {
+    public synchronized IBaseDataObject clone() throws CloneNotSupportedException {
+        // super.clone shares theData, copied by data() on either side, and seekableByteChannelFactory
         final BaseDataObject c = (BaseDataObject) super.clone();
-        if ((this.theData != null) && (this.theData.length > 0)) {
-            c.setData(this.theData, 0, this.theData.length);
-        }
-
-        if (this.seekableByteChannelFactory != null) {
-            c.setChannelFactory(this.seekableByteChannelFactory);
-        }
+        // only the original's bytes are counted by the PayloadMemoryManager
+        c.memoryTicket = null;
 
-        c.currentForm = new ArrayList<>(this.currentForm);
-        c.history = new TransformHistory(this.history);
-        c.multipartAlternative = new HashMap<>(this.multipartAlternative);
+        markShared(this);
+        markShared(c);
         c.priority = this.priority;
         c.creationTimestamp = this.creationTimestamp;
 
+        // the clone is disposed of with the same runnables, so it gives back a reference of its own
+        for (final Runnable r : DisposeHelper.get(this)) {
+            if (r instanceof RefCountedChannelFactory.Release) {
+                ((RefCountedChannelFactory.Release) r).retain();
+            }
+        }
+
         if ((this.extractedRecords != null) && !this.extractedRecords.isEmpty()) {
             c.clearExtractedRecords(); // remove super.clone copy
             for (final IBaseDataObject r : this.extractedRecords) {
                 c.addExtractedRecord(r.clone());
             }
         }
-        // This creates a deep copy Guava style
-        c.parameters = LinkedListMultimap.create(this.parameters);
-
         return c;
     }
 
+    private static void markShared(final BaseDataObject d) {
+        d.currentFormShared = true;
+        d.historyShared = true;
+        d.parametersShared = true;
+        d.alternateViewsShared = true;
+        d.dataShared = d.theData != null;
+    }
+
     @Override
     public Instant getCreationTimestamp() {
         return this.creationTimestamp;
@@ -0,0 +1,333 @@
+package emissary.core;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ForwardingListMultimap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
+import javax.annotation.Nullable;
+
+/**
+ * Parameter store for {@link BaseDataObject} that is smaller than the default
+ * {@link com.google.common.collect.LinkedListMultimap} for the many payloads in flight at once:
+ * <ul>
+ * <li>keys are interned, so every payload holding a given parameter name shares one copy of it</li>
+ * <li>the values of a key are kept in an array sized for a single value instead of one linked node per value, each
+ * value stamped with its place in the order values were added to the store</li>
+ * <li>nothing is allocated until the first parameter is stored, and reads of an empty store allocate nothing</li>
+ * </ul>
+ * Keys iterate in the order they were first stored and values in the order they were added, and {@link #entries()}
+ * interleaves keys in the order the values were added, as with the default store. A value inserted into the middle of a
+ * key's values through {@link #get(String)} counts as added last.
+ */
+public class CompactParameters extends ForwardingListMultimap<String, Object> implements Serializable {
+
+    private static final long serialVersionUID = -2840437129071519367L;
+
+    private static final Interner<String> KEYS = Interners.newWeakInterner();
+
+    @Nullable
+    private transient ListMultimap<String, Object> store = null;
+
+    // The map the store keeps the value lists in
+    @Nullable
+    private transient Map<String, Collection<Object>> backing = null;
+
+    // Stamp for the next value added, giving the order of values across keys
+    private transient int nextStamp = 0;
+
+    /**
+     * Create an empty store
+     */
+    public CompactParameters() {}
+
+    /**
+     * Create a store holding a copy of the parameters of another
+     *
+     * @param other the parameters to copy
+     */
+    public CompactParameters(final Multimap<String, Object> other) {
+        putAll(other);
+    }
+
+    /**
+     * Get the shared copy of a parameter name
+     *
+     * @param key the parameter name
+     * @return an equal string shared by all stores
+     */
+    public static String intern(final String key) {
+        return KEYS.intern(key);
+    }
+
+    @Override
+    protected ListMultimap<String, Object> delegate() {
+        if (store == null) {
+            backing = new LinkedHashMap<>();
+            store = Multimaps.newListMultimap(backing, new ValueListSupplier());
+        }
+        return store;
+    }
+
+    @Override
+    public int size() {
+        return store == null ? 0 : store.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return store == null || store.isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(@Nullable final Object key) {
+        return store != null && store.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(@Nullable final Object value) {
+        return store != null && store.containsValue(value);
+    }
+
+    @Override
+    public boolean containsEntry(@Nullable final Object key, @Nullable final Object value) {
+        return store != null && store.containsEntry(key, value);
+    }
+
+    @Override
+    public List<Object> removeAll(@Nullable final Object key) {
+        return store == null ? Collections.emptyList() : store.removeAll(key);
+    }
+
+    @Override
+    public void clear() {
+        if (store != null) {
+            store.clear();
+        }
+    }
+
+    @Override
+    public boolean put(final String key, final Object value) {
+        return delegate().put(intern(key), value);
+    }
+
+    @Override
+    public boolean putAll(final String key, final Iterable<?> values) {
+        return delegate().putAll(intern(key), values);
+    }
+
+    @Override
+    public boolean putAll(final Multimap<? extends String, ?> multimap) {
+        boolean changed = false;
+        // in the order of the entries to keep the order across keys
+        for (final Map.Entry<? extends String, ?> e : multimap.entries()) {
+            changed |= put(e.getKey(), e.getValue());
+        }
+        return changed;
+    }
+
+    /**
+     * Get the entries in the order the values were added, across all keys. Removing through the iterator removes the value
+     * from the store.
+     */
+    @Override
+    public Collection<Map.Entry<String, Object>> entries() {
+        return new AbstractCollection<Map.Entry<String, Object>>() {
+            @Override
+            public int size() {
+                return CompactParameters.this.size();
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                return new EntryIterator();
+            }
+        };
+    }
+
+    @Override
+    public List<Object> replaceValues(final String key, final Iterable<?> values) {
+        return delegate().replaceValues(intern(key), values);
+    }
+
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size());
+        for (final Map.Entry<String, Object> e : entries()) {
+            out.writeObject(e.getKey());
+            out.writeObject(e.getValue());
+        }
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        final int entries = in.readInt();
+        for (int i = 0; i < entries; i++) {
+            put((String) in.readObject(), in.readObject());
+        }
+    }
+
+    /**
+     * Makes the value list for a new key
+     */
+    private final class ValueListSupplier implements Supplier<List<Object>> {
+        @Override
+        public List<Object> get() {
+            return new ValueList();
+        }
+    }
+
+    /**
+     * The values of one key, sized for the usual single value, each with the stamp it was added with
+     */
+    private final class ValueList extends AbstractList<Object> implements RandomAccess {
+        private Object[] values = new Object[1];
+        private int[] stamps = new int[1];
+        private int count = 0;
+
+        @Override
+        public Object get(final int index) {
+            Objects.checkIndex(index, count);
+            return values[index];
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public Object set(final int index, final Object value) {
+            Objects.checkIndex(index, count);
+            final Object old = values[index];
+            values[index] = value;
+            return old;
+        }
+
+        @Override
+        public void add(final int index, final Object value) {
+            if (index < 0 || index > count) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + count);
+            }
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+                stamps = Arrays.copyOf(stamps, count * 2);
+            }
+            System.arraycopy(values, index, values, index + 1, count - index);
+            System.arraycopy(stamps, index, stamps, index + 1, count - index);
+            values[index] = value;
+            stamps[index] = nextStamp++;
+            count++;
+            modCount++;
+        }
+
+        @Override
+        public Object remove(final int index) {
+            Objects.checkIndex(index, count);
+            final Object old = values[index];
+            System.arraycopy(values, index + 1, values, index, count - index - 1);
+            System.arraycopy(stamps, index + 1, stamps, index, count - index - 1);
+            values[--count] = null;
+            modCount++;
+            return old;
+        }
+
+        int indexOfStamp(final int stamp) {
+            for (int i = 0; i < count; i++) {
+                if (stamps[i] == stamp) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Walks a snapshot of the entries sorted by stamp
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+        private final String[] keys;
+        private final Object[] values;
+        private final int[] stamps;
+        private int next = 0;
+
+        EntryIterator() {
+            final int size = size();
+            final long[] order = new long[size];
+            final String[] byStamp = new String[size];
+            final Object[] valueByStamp = new Object[size];
+            int n = 0;
+            if (backing != null) {
+                for (final Map.Entry<String, Collection<Object>> e : backing.entrySet()) {
+                    final ValueList list = (ValueList) e.getValue();
+                    for (int i = 0; i < list.count; i++) {
+                        // stamp in the high bits, slot in the low bits, so sorting orders the slots by stamp
+                        order[n] = ((long) list.stamps[i] << 32) | n;
+                        byStamp[n] = e.getKey();
+                        valueByStamp[n] = list.values[i];
+                        n++;
+                    }
+                }
+            }
+            Arrays.sort(order, 0, n);
+            keys = new String[n];
+            values = new Object[n];
+            stamps = new int[n];
+            for (int i = 0; i < n; i++) {
+                final int slot = (int) order[i];
+                keys[i] = byStamp[slot];
+                values[i] = valueByStamp[slot];
+                stamps[i] = (int) (order[i] >>> 32);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < keys.length;
+        }
+
+        @Override
+        public Map.Entry<String, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            next++;
+            return Maps.immutableEntry(keys[next - 1], values[next - 1]);
+        }
+
+        @Override
+        public void remove() {
+            if (next == 0 || keys[next - 1] == null) {
+                throw new IllegalStateException();
+            }
+            final String key = keys[next - 1];
+            final ValueList list = backing == null ? null : (ValueList) backing.get(key);
+            final int index = list == null ? -1 : list.indexOfStamp(stamps[next - 1]);
+            if (index >= 0) {
+                // through the multimap's view so that a key left with no values goes away
+                delegate().get(key).remove(index);
+            }
+            keys[next - 1] = null;
+        }
+    }
+}
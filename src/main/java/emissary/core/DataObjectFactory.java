@@ -2,12 +2,19 @@ package emissary.core;
 
 import emissary.config.ConfigUtil;
 import emissary.config.Configurator;
+import emissary.core.channels.BlockCache;
+import emissary.core.channels.RefCountedChannelFactory;
+import emissary.core.channels.SeekableByteChannelFactory;
+import emissary.core.channels.SegmentChannelFactory;
 import emissary.pool.AgentPool;
+import emissary.util.DisposeHelper;
 
+import org.apache.commons.lang3.Validate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.file.Paths;
 
 /**
  * Factory implementation to provide an instance of whichever BaseDataObject implementation is configured for the system
@@ -32,6 +39,14 @@ public class DataObjectFactory {
             final Configurator c = ConfigUtil.getConfigInfo(AgentPool.class);
             clazz = c.findStringEntry("payload.class", DEFAULT_CLASS);
             extractedClazz = c.findStringEntry("payload.extracted.class", DEFAULT_EXTRACT_CLASS);
+            BaseDataObject.setCompactParameters(c.findBooleanEntry("payload.compact.parameters", false));
+            final long highWater = c.findLongEntry("payload.memory.high.water.bytes", 0L);
+            PayloadMemoryManager.getInstance().configure(highWater, c.findLongEntry("payload.memory.low.water.bytes", highWater / 4 * 3),
+                    c.findIntEntry("payload.memory.min.spill.bytes", 1024 * 1024),
+                    Paths.get(c.findStringEntry("payload.memory.spill.dir", System.getProperty("java.io.tmpdir"))));
+            PayloadMemoryManager.getInstance().setSpillCodec(c.findStringEntry("payload.memory.spill.codec", ""));
+            BlockCache.getShared().configure(c.findLongEntry("payload.block.cache.bytes", BlockCache.DEFAULT_MAX_BYTES),
+                    c.findIntEntry("payload.block.cache.block.size", BlockCache.DEFAULT_BLOCK_SIZE));
         } catch (IOException ioe) {
             logger.warn("Unable to configure DataObjectFactory", ioe);
             clazz = DEFAULT_CLASS;
@@ -128,6 +143,66 @@ public class DataObjectFactory {
         return (IBaseDataObject) o;
     }
 
+    /**
+     * Get an instance of the configured DataObject impl whose data is a window onto part of the parent's data, so that
+     * carving a child out of a container copies no bytes. If the parent's data is held by a
+     * {@link RefCountedChannelFactory} the child holds a reference to it until the child is disposed of, so the parent's
+     * backing store outlives every child. Children of the child share the parent's data in the same way.
+     *
+     * @param parent the container holding the child's data
+     * @param start offset of the child's data in the parent's
+     * @param length of the child's data
+     * @param filename the filename
+     * @param fileTypeAndForm the form and filetype to set on the IBDO
+     * @return an IBDO backed by the parent's data
+     */
+    public static IBaseDataObject getSegmentInstance(final IBaseDataObject parent, final long start, final long length, final String filename,
+            final String fileTypeAndForm) {
+        return getSegmentInstance(parent, start, length, filename, fileTypeAndForm, fileTypeAndForm);
+    }
+
+    /**
+     * Get an instance of the configured DataObject impl whose data is a window onto part of the parent's data
+     *
+     * @param parent the container holding the child's data
+     * @param start offset of the child's data in the parent's
+     * @param length of the child's data
+     * @param filename the filename
+     * @param form the form to set on the IBDO
+     * @param fileType the file type to set on the IBDO
+     * @return an IBDO backed by the parent's data
+     * @see #getSegmentInstance(IBaseDataObject, long, long, String, String)
+     */
+    public static IBaseDataObject getSegmentInstance(final IBaseDataObject parent, final long start, final long length, final String filename,
+            final String form, final String fileType) {
+        final SeekableByteChannelFactory parentData = parent.getChannelFactory();
+        Validate.notNull(parentData, "Required: parent with data");
+
+        final Runnable releaseParent;
+        final SeekableByteChannelFactory shared;
+        if (parentData instanceof RefCountedChannelFactory) {
+            final RefCountedChannelFactory counted = ((RefCountedChannelFactory) parentData).retain();
+            shared = counted;
+            releaseParent = counted::release;
+        } else {
+            shared = parentData;
+            releaseParent = () -> {
+            };
+        }
+
+        final RefCountedChannelFactory segment;
+        try {
+            segment = RefCountedChannelFactory.create(SegmentChannelFactory.create(shared, start, length), releaseParent);
+        } catch (RuntimeException e) {
+            releaseParent.run();
+            throw e;
+        }
+        final IBaseDataObject child = getInstance(new byte[0], filename, form, fileType);
+        child.setChannelFactory(segment);
+        DisposeHelper.add(child, segment.releaser());
+        return child;
+    }
+
     /* IExtractedRecord */
 
     /**
@@ -2,9 +2,11 @@ package emissary.core;
 
 import emissary.directory.DirectoryEntry;
 import emissary.directory.KeyManipulator;
+import emissary.directory.ParsedKey;
 import emissary.log.MDCConstants;
 import emissary.place.EmptyFormPlace;
 import emissary.place.IServiceProviderPlace;
+import emissary.place.PlaceBatcher;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,6 +49,25 @@ public class HDMobileAgent extends MobileAgent {
         logger.debug("Constructed HD agent {}", threadName);
     }
 
+    /**
+     * Constructor for an HD Agent that does not own a thread
+     *
+     * @param agentName symbolic name for this agent
+     */
+    protected HDMobileAgent(final String agentName) {
+        super(agentName);
+    }
+
+    /**
+     * Constructor for an HD Agent that does not own a thread
+     *
+     * @param agentName symbolic name for this agent
+     * @param registerMBean false for short lived helpers that should not show up in JMX
+     */
+    protected HDMobileAgent(final String agentName, final boolean registerMBean) {
+        super(agentName, registerMBean);
+    }
+
     /**
      * Override getPayload to just return the first on list or null
      */
@@ -262,6 +283,7 @@ public class HDMobileAgent extends MobileAgent {
                     // Add any sprouts collected from the payloads
                     if (!sprouts.isEmpty()) {
                         addPayload(sprouts);
+                        walkChildren(currentPlace, sprouts);
                     }
                 }
             }
@@ -346,7 +368,14 @@ public class HDMobileAgent extends MobileAgent {
                 break;
             }
 
+            // Leave the rest of the itinerary to someone else
+            if (holdBefore(newEntry)) {
+                logger.debug("Holding before {}", newEntry);
+                break;
+            }
+
             // Local processing, go around the loop and process there
+            newEntry = rerouteIfSaturated(newEntry);
             if (newEntry.isLocal()) {
                 logger.debug("Choosing local place {}", newEntry.getFullKey());
                 currentPlace = newEntry.getLocalPlace();
@@ -377,6 +406,35 @@ public class HDMobileAgent extends MobileAgent {
         }
     }
 
+    /**
+     * Stop the itinerary before going to the entry, leaving it for whoever handed over the payloads
+     *
+     * @param newEntry the next place for the primary payload
+     * @return true to stop here
+     */
+    protected boolean holdBefore(final DirectoryEntry newEntry) {
+        return false;
+    }
+
+    /**
+     * Walk newly sprouted children through their itineraries in parallel, up to but not including their drop off, when
+     * {@link ParallelChildren} is enabled and there are enough of them. Their own sprouts join the payload list after them,
+     * in birth order, so the drop off sees the same order every time.
+     *
+     * @param place the place that sprouted them
+     * @param sprouts the new children, already on the payload list
+     */
+    protected void walkChildren(final IServiceProviderPlace place, final List<IBaseDataObject> sprouts) {
+        final ParallelChildren parallel = ParallelChildren.getDefault();
+        if (!parallel.accepts(sprouts.size())) {
+            return;
+        }
+        final List<IBaseDataObject> descendants = parallel.walk(this, place, sprouts);
+        if (!descendants.isEmpty()) {
+            addPayload(descendants);
+        }
+    }
+
     /**
      * Make the payload at the specified index the new primary one and reset the logger context to the new value
      * 
@@ -409,7 +467,13 @@ public class HDMobileAgent extends MobileAgent {
 
         List<IBaseDataObject> ret = Collections.emptyList();
 
-        try (TimedResource tr = resourceWatcherStart(place)) {
+        final PlaceBulkhead bulkhead = place.getBulkhead();
+        if (bulkhead != null) {
+            bulkhead.acquire();
+        }
+        final PlaceBatcher batcher = place.getBatcher();
+        // a batcher times the batched call itself, against every agent in it
+        try (TimedResource tr = batcher == null ? resourceWatcherStart(place) : TimedResource.EMPTY) {
             assert tr != null; // to silence an unused resource warning
 
             // Process and get back a list of sprouted payloads
@@ -419,7 +483,7 @@ public class HDMobileAgent extends MobileAgent {
                 addMoveErrorCount(payloadListArg);
             }
 
-            ret = place.agentProcessHeavyDuty(payloadListArg);
+            ret = batcher == null ? place.agentProcessHeavyDuty(payloadListArg) : batcher.process(payloadListArg);
 
             for (Iterator<IBaseDataObject> it = ret.iterator(); it.hasNext();) {
                 final IBaseDataObject ibdo = it.next();
@@ -445,6 +509,9 @@ public class HDMobileAgent extends MobileAgent {
                 p.replaceCurrentForm(MobileAgent.ERROR_FORM);
             }
         } finally {
+            if (bulkhead != null) {
+                bulkhead.release();
+            }
             if (!(place instanceof EmptyFormPlace)) {
                 for (final IBaseDataObject p : payloadListArg) {
                     if (p.currentFormSize() == 0) {
@@ -455,6 +522,8 @@ public class HDMobileAgent extends MobileAgent {
                 }
             }
             MDC.remove(MDCConstants.SERVICE_LOCATION);
+            PayloadMemoryManager.getInstance().released(payloadListArg);
+            PayloadMemoryManager.getInstance().released(ret);
             checkInterrupt(place);
         }
 
@@ -534,15 +603,15 @@ public class HDMobileAgent extends MobileAgent {
         final List<String> history = d.transformHistory();
         int lastParallelType = -1;
         for (int i = history.size() - 1; i >= 0; i--) {
-            final String key = history.get(i);
-            final int typeSet = typeLookup(KeyManipulator.getServiceType(key));
+            final ParsedKey key = ParsedKey.of(history.get(i));
+            final int typeSet = typeLookup(key.getServiceType());
             if (lastParallelType == -1 && isParallelServiceType(typeSet)) {
                 lastParallelType = typeSet;
             }
             if (typeSet != lastParallelType) {
                 break;
             }
-            addParallelTrackingInfo(KeyManipulator.getServiceName(key));
+            addParallelTrackingInfo(key.getServiceName());
         }
     }
 
@@ -588,7 +657,10 @@ public class HDMobileAgent extends MobileAgent {
     @Override
     @SuppressWarnings("Interruption")
     public void interrupt() {
-        this.thread.interrupt();
+        final Thread worker = getWorkerThread();
+        if (worker != null) {
+            worker.interrupt();
+        }
     }
 
     /**
@@ -791,6 +791,15 @@ public interface IBaseDataObject {
      */
     List<String> transformHistory(boolean includeCoordinated);
 
+    /**
+     * Number of places the data object was carried to, not counting the places that were coordinated
+     *
+     * @return the size of {@link #transformHistory()}
+     */
+    default int transformHistorySize() {
+        return transformHistory().size();
+    }
+
     /**
      * Clear the transformation history
      */
@@ -2,6 +2,7 @@ package emissary.core;
 
 import emissary.config.ConfigUtil;
 import emissary.config.Configurator;
+import emissary.core.channels.BlockCache;
 
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
@@ -121,6 +122,8 @@ public class MetricsManager {
     }
 
     protected void initMetrics() {
+        PayloadMemoryManager.getInstance().registerMetrics(this.metrics);
+        BlockCache.getShared().registerMetrics(this.metrics);
         if (this.conf.findBooleanEntry("JVM_METRICS_ENABLED", false)) {
             logger.debug("JVM Metrics are enabled");
             this.metrics.registerAll(new MemoryUsageGaugeSet());
@@ -1,8 +1,10 @@
 package emissary.core;
 
 import emissary.directory.DirectoryEntry;
+import emissary.directory.DirectoryEntryList;
 import emissary.directory.DirectoryPlace;
 import emissary.directory.KeyManipulator;
+import emissary.directory.ParsedKey;
 import emissary.log.MDCConstants;
 import emissary.place.CoordinationPlace;
 import emissary.place.EmptyFormPlace;
@@ -42,6 +44,10 @@ public abstract class MobileAgent implements IMobileAgent, MobileAgentMBean {
     @Nullable
     protected transient Thread thread = null;
 
+    // Name of an agent that does not own a thread
+    @Nullable
+    protected transient String agentName = null;
+
     // Name for our threads
     public static final String AGENT_THREAD = "MobileAgent-";
     @SuppressWarnings("NonFinalStaticField")
@@ -114,12 +120,47 @@ public abstract class MobileAgent implements IMobileAgent, MobileAgentMBean {
         JMXUtil.registerMBean(this);
     }
 
+    /**
+     * Create a new reusable Agent that does not own a thread. Subclasses using this must override {@link #dispatch()} to
+     * arrange for {@link #run()} to be called when there is work.
+     *
+     * @param agentName symbolic name for this agent, used as the thread name while it works
+     */
+    protected MobileAgent(final String agentName) {
+        this(agentName, true);
+    }
+
+    /**
+     * Create an agent that does not own a thread
+     *
+     * @param agentName symbolic name for this agent, used as the thread name while it works
+     * @param registerMBean false for short lived helpers that should not show up in JMX
+     */
+    protected MobileAgent(final String agentName, final boolean registerMBean) {
+        logger.debug("Constructing threadless agent {}", agentName);
+        this.agentName = agentName;
+
+        if (registerMBean) {
+            JMXUtil.registerMBean(this);
+        }
+    }
+
     /**
      * Report this agents name for logging purposes
      */
     @Override
     public String getName() {
-        return this.thread.getName();
+        return this.thread != null ? this.thread.getName() : this.agentName;
+    }
+
+    /**
+     * The thread doing this agent's work
+     *
+     * @return the thread, null if the agent is not working and owns no thread
+     */
+    @Nullable
+    protected Thread getWorkerThread() {
+        return this.thread;
     }
 
     /**
@@ -187,8 +228,11 @@ public abstract class MobileAgent implements IMobileAgent, MobileAgentMBean {
         logger.debug("killAgentAsync called on {}", getName());
         this.timeToQuit = true;
         try {
-            this.thread.setPriority(Thread.MIN_PRIORITY);
-            this.thread.interrupt();
+            final Thread worker = getWorkerThread();
+            if (worker != null) {
+                worker.setPriority(Thread.MIN_PRIORITY);
+                worker.interrupt();
+            }
         } catch (RuntimeException ignored) {
             // empty catch block
         }
@@ -291,6 +335,7 @@ public abstract class MobileAgent implements IMobileAgent, MobileAgentMBean {
             if (newEntry == null) {
                 break;
             }
+            newEntry = rerouteIfSaturated(newEntry);
 
             // Record what we are doing in the history log
             if (loopCount == 1 && !getProcessFirstPlace()) {
@@ -309,7 +354,7 @@ public abstract class MobileAgent implements IMobileAgent, MobileAgentMBean {
             }
 
             controlError = true;
-            if (++this.moveErrorsOccurred > this.maxMoveErrors || this.payload.transformHistory().size() > this.maxItinerarySteps) {
+            if (++this.moveErrorsOccurred > this.maxMoveErrors || this.payload.transformHistorySize() > this.maxItinerarySteps) {
                 logger.error("Too many move errors, giving up");
                 newEntry = null;
                 break;
@@ -350,6 +395,10 @@ public abstract class MobileAgent implements IMobileAgent, MobileAgentMBean {
     protected void atPlace(final IServiceProviderPlace place, final IBaseDataObject payloadArg) {
         logger.debug("In atPlace {} with {}", place, payloadArg.shortName());
 
+        final PlaceBulkhead bulkhead = place.getBulkhead();
+        if (bulkhead != null) {
+            bulkhead.acquire();
+        }
         try (TimedResource timer = resourceWatcherStart(place)) {
             assert timer != null; // to silence an unused resource warning
 
@@ -369,11 +418,15 @@ public abstract class MobileAgent implements IMobileAgent, MobileAgentMBean {
             payloadArg.addProcessingError("atPlace(" + place + "): " + problem);
             payloadArg.replaceCurrentForm(ERROR_FORM);
         } finally {
+            if (bulkhead != null) {
+                bulkhead.release();
+            }
             if (!(place instanceof EmptyFormPlace) && payloadArg.currentFormSize() == 0) {
                 logger.error("Place {} left an empty form stack, changing it to ERROR", place);
                 payloadArg.addProcessingError(place + " left an empty form stack");
                 payloadArg.pushCurrentForm(ERROR_FORM);
             }
+            PayloadMemoryManager.getInstance().released(List.of(payloadArg));
             checkInterrupt(place);
         }
     }
@@ -381,8 +434,8 @@ public abstract class MobileAgent implements IMobileAgent, MobileAgentMBean {
     protected final void checkInterrupt(final IServiceProviderPlace place) {
         if (Thread.interrupted()) {
             // this should NEVER happen. if it does, we've done something bad
-            if (this.thread != Thread.currentThread()) {
-                logger.error("MobileAgent thread instance is not the current thread. Instance thread: {} \tCurrent thread: {}", this.thread,
+            if (getWorkerThread() != Thread.currentThread()) {
+                logger.error("MobileAgent thread instance is not the current thread. Instance thread: {} \tCurrent thread: {}", getWorkerThread(),
                         Thread.currentThread());
             }
             // Log only when interrupted by the ResourceWatcher, not during shutdown.
@@ -395,6 +448,39 @@ public abstract class MobileAgent implements IMobileAgent, MobileAgentMBean {
         }
     }
 
+    /**
+     * Send the agent to an equal cost twin of a full place instead, when the place's bulkhead asks for rerouting
+     *
+     * @param entry where the directory says to go next
+     * @return the entry for a local twin with room, or the entry given
+     */
+    protected DirectoryEntry rerouteIfSaturated(final DirectoryEntry entry) {
+        if (!entry.isLocal()) {
+            return entry;
+        }
+        final IServiceProviderPlace place = entry.getLocalPlace();
+        final PlaceBulkhead bulkhead = place.getBulkhead();
+        if (bulkhead == null || bulkhead.getSaturation() != PlaceBulkhead.Saturation.REROUTE || !bulkhead.isSaturated()) {
+            return entry;
+        }
+        try {
+            final DirectoryEntryList twins = DirectoryPlace.lookup().getEntryList(entry.getDataId());
+            for (final DirectoryEntry twin : twins) {
+                if (twin.getExpense() == entry.getExpense() && twin.isLocal() && twin.getLocalPlace() != place) {
+                    final PlaceBulkhead other = twin.getLocalPlace().getBulkhead();
+                    if (other == null || !other.isSaturated()) {
+                        logger.debug("Place {} is full, rerouting to {}", entry.getKey(), twin.getKey());
+                        bulkhead.rerouted();
+                        return twin;
+                    }
+                }
+            }
+        } catch (EmissaryException e) {
+            logger.debug("No directory to find a twin of {}", entry.getKey());
+        }
+        return entry;
+    }
+
     protected TimedResource resourceWatcherStart(final IServiceProviderPlace place) {
         TimedResource tr = TimedResource.EMPTY;
         // CoordinationPlaces are tracked individually
@@ -444,7 +530,7 @@ public abstract class MobileAgent implements IMobileAgent, MobileAgentMBean {
         }
 
         // Stop looping from occurring
-        if (payloadArg.transformHistory().size() > this.maxItinerarySteps &&
+        if (payloadArg.transformHistorySize() > this.maxItinerarySteps &&
                 !ERROR_FORM.equals(payloadArg.currentForm())) {
             payloadArg.replaceCurrentForm(ERROR_FORM);
             payloadArg.addProcessingError("Agent stopped due to larger than max transform history size (looping?)");
@@ -529,7 +615,7 @@ public abstract class MobileAgent implements IMobileAgent, MobileAgentMBean {
 
                 // Test a full key form to see if it is the correct stage to be chosen
                 if (KeyManipulator.isKeyComplete(form)) {
-                    if (KeyManipulator.getServiceType(form).equals(stageName)) {
+                    if (ParsedKey.of(form).getServiceType().equals(stageName)) {
                         logger.debug("Choosing cur form {} in stage {}", form, stageName);
                         payloadArg.pullFormToTop(form);
                         return new DirectoryEntry(form);
@@ -703,6 +789,14 @@ public abstract class MobileAgent implements IMobileAgent, MobileAgentMBean {
 
         // the run() loop now takes over on the agent's thread and we return
         // control of the currentThread to the caller of this method
+        dispatch();
+    }
+
+    /**
+     * Start work on the payload that was just handed over. The agent's own thread is waiting in the run loop, so just wake
+     * it. Called holding the lock on this agent.
+     */
+    protected void dispatch() {
         notifyAll();
     }
 
@@ -817,7 +911,7 @@ public abstract class MobileAgent implements IMobileAgent, MobileAgentMBean {
 
                 // Subtract one remote overhead if this represents a move
                 int exp = lpv.getExpense();
-                if (!KeyManipulator.getServiceHostUrl(cf).equals(lpv.getServiceHostUrl()) && exp > DirectoryPlace.REMOTE_EXPENSE_OVERHEAD) {
+                if (!ParsedKey.of(cf).getServiceHostUrl().equals(lpv.getServiceHostUrl()) && exp > DirectoryPlace.REMOTE_EXPENSE_OVERHEAD) {
                     exp -= DirectoryPlace.REMOTE_EXPENSE_OVERHEAD;
                 }
 
@@ -838,7 +932,7 @@ public abstract class MobileAgent implements IMobileAgent, MobileAgentMBean {
 
         payloadArg.appendTransformHistory(placeKey);
 
-        logger.debug("Appended {} to history which now has size {}", placeKey, payloadArg.transformHistory().size());
+        logger.debug("Appended {} to history which now has size {}", placeKey, payloadArg.transformHistorySize());
     }
 
     /**
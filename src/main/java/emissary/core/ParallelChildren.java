@@ -0,0 +1,217 @@
+package emissary.core;
+
+import emissary.directory.DirectoryEntry;
+import emissary.place.IServiceProviderPlace;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
+
+/**
+ * Walks the children sprouted by an {@link HDMobileAgent} through their itineraries as a fork/join job, instead of one
+ * after another on the agent's thread. Each child runs on a helper agent until its next place is a drop off or on
+ * another node, then the parent agent takes over again. The parent waits for the children in birth order, so the merged
+ * payload list does not depend on which child finished first.
+ *
+ * <p>
+ * Places that look at all the siblings handed to them in one {@link IServiceProviderPlace#agentProcessHeavyDuty(List)}
+ * call see the children one at a time in this mode, so it is off unless configured.
+ */
+public class ParallelChildren {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelChildren.class);
+
+    private static final ParallelChildren DISABLED = new ParallelChildren();
+
+    private static final AtomicReference<ParallelChildren> defaultInstance = new AtomicReference<>(DISABLED);
+
+    // The helper agent walking a child on each pool thread
+    private static final ThreadLocal<ChildAgent> walking = new ThreadLocal<>();
+
+    @Nullable
+    private final ForkJoinPool pool;
+    private final int minChildren;
+
+    private ParallelChildren() {
+        this.pool = null;
+        this.minChildren = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Create a child walker
+     *
+     * @param minChildren smallest number of sprouts worth walking in parallel
+     * @param threads parallelism of the fork/join pool
+     */
+    public ParallelChildren(final int minChildren, final int threads) {
+        if (minChildren < 1 || threads < 1) {
+            throw new IllegalArgumentException(
+                    "Parallel children needs a minimum and threads of at least one, not " + minChildren + " and " + threads);
+        }
+        this.minChildren = minChildren;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    /**
+     * Get the shared instance, disabled unless configured
+     */
+    public static ParallelChildren getDefault() {
+        return defaultInstance.get();
+    }
+
+    /**
+     * Replace the shared instance. Walks already running on the previous one are allowed to finish.
+     *
+     * @param minChildren smallest number of sprouts worth walking in parallel, zero or less to turn it off
+     * @param threads parallelism of the fork/join pool
+     */
+    public static synchronized void configureDefault(final int minChildren, final int threads) {
+        final ParallelChildren old = defaultInstance.get();
+        if (old.pool == null ? minChildren <= 0 : old.minChildren == minChildren && old.pool.getParallelism() == threads) {
+            return;
+        }
+        final ParallelChildren replacement = minChildren > 0 ? new ParallelChildren(minChildren, threads) : DISABLED;
+        defaultInstance.set(replacement);
+        old.shutdown();
+        logger.debug("Parallel child processing {}", replacement);
+    }
+
+    /**
+     * Get the helper agent walking a child on the current thread. Looking the agent up by thread name finds the parent, so
+     * anything timing or interrupting the work on this thread, such as the {@link ResourceWatcher}, should use this agent
+     * when there is one.
+     *
+     * @return the helper agent, or null if the current thread is not walking a child
+     */
+    @Nullable
+    public static IMobileAgent currentChildAgent() {
+        return walking.get();
+    }
+
+    /**
+     * True if this many sprouts should be walked in parallel
+     */
+    public boolean accepts(final int count) {
+        return pool != null && count >= minChildren;
+    }
+
+    /**
+     * Walk each child on the pool and wait for them all
+     *
+     * @param parent the agent that holds the children
+     * @param place the place that sprouted them
+     * @param children the children, in birth order
+     * @return the descendants sprouted along the way, children in birth order each followed by their own in turn
+     */
+    public List<IBaseDataObject> walk(final HDMobileAgent parent, final IServiceProviderPlace place, final List<IBaseDataObject> children) {
+        if (pool == null) {
+            return new ArrayList<>();
+        }
+        final List<ForkJoinTask<List<IBaseDataObject>>> tasks = new ArrayList<>(children.size());
+        for (final IBaseDataObject child : children) {
+            tasks.add(pool.submit(() -> new ChildAgent(parent).walk(place, child)));
+        }
+        final List<IBaseDataObject> descendants = new ArrayList<>();
+        for (final ForkJoinTask<List<IBaseDataObject>> task : tasks) {
+            descendants.addAll(task.join());
+        }
+        logger.debug("Walked {} children in parallel, {} more sprouted", children.size(), descendants.size());
+        return descendants;
+    }
+
+    /**
+     * Stop the pool, running walks are allowed to finish
+     */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return pool == null ? "disabled" : "from " + minChildren + " children on " + pool.getParallelism() + " threads";
+    }
+
+    /**
+     * Helper agent that walks one child, named for the parent so that places looking up their agent by thread name find the
+     * parent
+     */
+    static final class ChildAgent extends HDMobileAgent {
+
+        static final long serialVersionUID = 5467349832901746712L;
+
+        private final transient List<IBaseDataObject> born = new ArrayList<>();
+
+        @Nullable
+        private transient volatile Thread worker = null;
+
+        ChildAgent(final HDMobileAgent parent) {
+            super(parent.getName(), false);
+            this.maxMoveErrors = parent.maxMoveErrors;
+            this.maxItinerarySteps = parent.maxItinerarySteps;
+        }
+
+        /**
+         * Walk the child on the current thread
+         *
+         * @return the child's descendants in birth order
+         */
+        List<IBaseDataObject> walk(final IServiceProviderPlace place, final IBaseDataObject child) {
+            final Thread current = Thread.currentThread();
+            final String originalName = current.getName();
+            current.setName(getName());
+            this.worker = current;
+            walking.set(this);
+            try {
+                addPayload(child);
+                setAgentId(child.shortName());
+                setParallelTrackingInfoFor(child);
+                agentControl(place);
+            } catch (RuntimeException e) {
+                logger.error("Problem walking child {}", child.shortName(), e);
+                child.addProcessingError("parallel child walk: " + e);
+            } finally {
+                walking.remove();
+                this.worker = null;
+                Thread.interrupted();
+                current.setName(originalName);
+            }
+            return born;
+        }
+
+        @Override
+        public synchronized boolean addPayload(final Collection<IBaseDataObject> c) {
+            born.addAll(c);
+            return super.addPayload(c);
+        }
+
+        @Override
+        protected boolean holdBefore(final DirectoryEntry newEntry) {
+            return !newEntry.isLocal() || "IO".equals(newEntry.getServiceType());
+        }
+
+        @Override
+        protected void walkChildren(final IServiceProviderPlace place, final List<IBaseDataObject> sprouts) {
+            // descendants are walked in series on this thread
+        }
+
+        @Override
+        protected void logAgentCompletion() {
+            // the parent reports completion for the whole family
+        }
+
+        @Override
+        @Nullable
+        protected Thread getWorkerThread() {
+            return this.worker;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package emissary.core;
+
+import emissary.core.channels.CompressedChannelFactory;
+import emissary.core.channels.FileChannelFactory;
+import emissary.core.channels.SeekableByteChannelFactory;
+import emissary.core.channels.SeekableByteChannelHelper;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * Keeps count of the payload bytes held in memory by {@link BaseDataObject#setData(byte[])} across all live objects.
+ * Once the total passes the high water mark the largest in-memory payloads are written to temporary files and switched
+ * over to file backed channels until the total is back under the low water mark.
+ *
+ * <p>
+ * A spill happens on whichever thread pushed the total over, not the threads working on the spilled payloads, so the
+ * temporary file is not registered with {@link emissary.util.DisposeHelper}, which would mean changing the payload's
+ * parameters from the wrong thread. It is removed instead once nothing can reach its channel factory, which also covers
+ * clones and children still reading it after the payload is dropped off.
+ *
+ * <p>
+ * A payload whose array has been handed out by {@link BaseDataObject#data()} is not spilled while the place that took
+ * it is working, since the place may change that array in place. The agent releases it with
+ * {@link #released(Collection)} once the place is done. Calling {@link BaseDataObject#data()} on a spilled payload
+ * brings its data back into memory for the same reason, counted like any other data.
+ *
+ * <p>
+ * Disabled, so counting nothing, unless a high water mark is configured.
+ */
+public class PayloadMemoryManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(PayloadMemoryManager.class);
+
+    /** Metric name prefix for the gauges */
+    public static final String METRICS_PREFIX = "PayloadMemory";
+
+    private static final PayloadMemoryManager INSTANCE = new PayloadMemoryManager();
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private volatile long highWater = 0L;
+    private volatile long lowWater = 0L;
+    private volatile int minSpillBytes = 1024 * 1024;
+    private volatile Path spillDir = Paths.get(System.getProperty("java.io.tmpdir"));
+    @Nullable
+    private volatile String spillCodec = null;
+
+    private final Set<Ticket> tracked = ConcurrentHashMap.newKeySet();
+    private final ReferenceQueue<BaseDataObject> collected = new ReferenceQueue<>();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong spillCount = new AtomicLong();
+    private final AtomicLong spilledBytes = new AtomicLong();
+    private final AtomicBoolean spilling = new AtomicBoolean(false);
+
+    /**
+     * Get the manager shared by all payloads
+     */
+    public static PayloadMemoryManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Set the limits
+     *
+     * @param highWater in-memory payload bytes that start a spill, zero or less to stop counting
+     * @param lowWater in-memory payload bytes a spill stops at
+     * @param minSpillBytes smallest payload worth moving to disk
+     * @param spillDir where the temporary files go
+     */
+    public void configure(final long highWater, final long lowWater, final int minSpillBytes, final Path spillDir) {
+        this.lowWater = Math.min(lowWater, highWater);
+        this.minSpillBytes = minSpillBytes;
+        this.spillDir = spillDir;
+        this.highWater = highWater;
+        if (highWater <= 0) {
+            tracked.clear();
+            bytes.set(0L);
+        }
+        logger.debug("Payload memory high water {} low water {} bytes, spilling payloads of {} bytes or more to {}", highWater,
+                this.lowWater, minSpillBytes, spillDir);
+    }
+
+    /**
+     * Keep spilled payloads compressed on disk
+     *
+     * @param spillCodec commons-compress name of the codec, or null or empty to write them as they are
+     * @see CompressedChannelFactory
+     */
+    public void setSpillCodec(@Nullable final String spillCodec) {
+        this.spillCodec = spillCodec == null || spillCodec.isEmpty() ? null : spillCodec;
+    }
+
+    @Nullable
+    public String getSpillCodec() {
+        return spillCodec;
+    }
+
+    /**
+     * True if payload bytes are being counted
+     */
+    public boolean isEnabled() {
+        return highWater > 0;
+    }
+
+    /**
+     * Expose the counts in the registry
+     *
+     * @param registry the registry to use, usually from the MetricsManager
+     */
+    public void registerMetrics(final MetricRegistry registry) {
+        register(registry, "bytes", (Gauge<Long>) this::getBytes);
+        register(registry, "payloads", (Gauge<Integer>) this::getTrackedCount);
+        register(registry, "spills", (Gauge<Long>) this::getSpillCount);
+        register(registry, "spilledBytes", (Gauge<Long>) this::getSpilledBytes);
+    }
+
+    private static void register(final MetricRegistry registry, final String name, final Gauge<?> gauge) {
+        final String fullName = MetricRegistry.name(METRICS_PREFIX, name);
+        registry.remove(fullName);
+        registry.register(fullName, gauge);
+    }
+
+    /**
+     * Record the in-memory size of a payload after its data was set, holding the payload's lock. Follow with
+     * {@link #spillIfNeeded()} once the lock is released.
+     *
+     * @param d the payload
+     * @param size bytes now held in memory by the payload, zero if none
+     */
+    void track(final BaseDataObject d, final int size) {
+        if (!isEnabled() || (size == 0 && d.memoryTicket == null)) {
+            return;
+        }
+        expunge();
+        final Ticket old = d.memoryTicket;
+        if (old != null) {
+            release(old);
+        }
+        if (size > 0) {
+            final Ticket t = new Ticket(d, size, collected);
+            d.memoryTicket = t;
+            tracked.add(t);
+            bytes.addAndGet(size);
+        } else {
+            d.memoryTicket = null;
+        }
+    }
+
+    /**
+     * Note that a place is done with some payloads, so the arrays it took from them can be spilled again, and spill if that
+     * is needed. Must not be called while holding the lock of any payload.
+     *
+     * @param payloads the payloads the place worked on or sprouted
+     */
+    void released(final Collection<IBaseDataObject> payloads) {
+        if (!isEnabled()) {
+            return;
+        }
+        for (final IBaseDataObject d : payloads) {
+            if (d instanceof BaseDataObject) {
+                ((BaseDataObject) d).dataReleased();
+            }
+        }
+        spillIfNeeded();
+    }
+
+    /**
+     * Spill if the total is over the high water mark. Must not be called while holding the lock of any payload.
+     */
+    void spillIfNeeded() {
+        if (isEnabled() && bytes.get() > highWater) {
+            spill();
+        }
+    }
+
+    private void release(final Ticket t) {
+        if (tracked.remove(t)) {
+            bytes.addAndGet(-t.size);
+        }
+    }
+
+    // Forget payloads that were collected without their data being reset
+    private void expunge() {
+        Ticket t;
+        while ((t = (Ticket) collected.poll()) != null) {
+            release(t);
+        }
+    }
+
+    /**
+     * Move the largest payloads to disk until the total is under the low water mark. Only one thread spills at a time, the
+     * others carry on.
+     */
+    void spill() {
+        if (!spilling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            final List<Ticket> largest = new ArrayList<>(tracked);
+            largest.sort(Comparator.comparingInt((Ticket t) -> t.size).reversed());
+            for (final Ticket t : largest) {
+                if (bytes.get() <= lowWater || t.size < minSpillBytes) {
+                    break;
+                }
+                final BaseDataObject d = t.get();
+                if (d == null) {
+                    release(t);
+                } else if (spill(d, t)) {
+                    release(t);
+                    spillCount.incrementAndGet();
+                    spilledBytes.addAndGet(t.size);
+                }
+            }
+        } finally {
+            spilling.set(false);
+        }
+    }
+
+    /**
+     * Write a payload's data to a temporary file and switch the payload over to it, unless the payload's data changed in
+     * the meantime
+     */
+    private boolean spill(final BaseDataObject d, final Ticket t) {
+        final byte[] data = d.inMemoryData(t);
+        if (data == null) {
+            return false;
+        }
+        Path path = null;
+        try {
+            path = Files.createTempFile(spillDir, "payload", ".spill");
+            final String codec = spillCodec;
+            final SeekableByteChannelFactory sbcf;
+            if (codec == null) {
+                Files.write(path, data);
+                sbcf = FileChannelFactory.create(path);
+            } else {
+                sbcf = CompressedChannelFactory.write(path, SeekableByteChannelHelper.memory(data), CompressedChannelFactory.DEFAULT_BLOCK_SIZE,
+                        codec);
+            }
+            if (d.spilled(t, data, sbcf)) {
+                final Path spilledPath = path;
+                CLEANER.register(sbcf, () -> delete(spilledPath));
+                logger.debug("Spilled {} bytes of {} to {}", data.length, d.shortName(), path);
+                return true;
+            }
+        } catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+            logger.warn("Could not spill {} to {}", d.shortName(), spillDir, e);
+        }
+        if (path != null) {
+            delete(path);
+        }
+        return false;
+    }
+
+    private static void delete(final Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("Could not remove spilled payload {}", path, e);
+        }
+    }
+
+    public long getHighWater() {
+        return highWater;
+    }
+
+    public long getLowWater() {
+        return lowWater;
+    }
+
+    /**
+     * Get the payload bytes counted as held in memory
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Get the number of payloads holding counted bytes
+     */
+    public int getTrackedCount() {
+        return tracked.size();
+    }
+
+    /**
+     * Get the number of payloads moved to disk
+     */
+    public long getSpillCount() {
+        return spillCount.get();
+    }
+
+    /**
+     * Get the number of bytes moved to disk
+     */
+    public long getSpilledBytes() {
+        return spilledBytes.get();
+    }
+
+    /**
+     * The bytes one payload was counted for, cleared by the collector along with the payload
+     */
+    static final class Ticket extends WeakReference<BaseDataObject> {
+        final int size;
+
+        Ticket(final BaseDataObject d, final int size, @Nullable final ReferenceQueue<BaseDataObject> queue) {
+            super(d, queue);
+            this.size = size;
+        }
+    }
+}
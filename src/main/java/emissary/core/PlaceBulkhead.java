@@ -0,0 +1,370 @@
+package emissary.core;
+
+import emissary.config.Configurator;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.Nullable;
+
+/**
+ * Limit on the number of agents working in one place at once, so that a slow place holds only some of the agent pool
+ * instead of all of it. The limit is either fixed or adjusted from the visit times measured by the place's
+ * {@link TimedResource}:
+ * <ul>
+ * <li>AIMD - grow the limit by one per limit's worth of visits that come in under the tolerated latency, cut it by a
+ * tenth on each visit that does not</li>
+ * <li>GRADIENT - scale the limit by the ratio of long term to recent latency, allowing a small queue on top</li>
+ * </ul>
+ * An agent arriving at a full place waits for a permit up to the configured time and then goes in anyway, counted as
+ * over the limit, so that no work is lost. With the REROUTE saturation policy an agent bound for a full place first
+ * looks for an equal cost twin of the place with room.
+ */
+public class PlaceBulkhead {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlaceBulkhead.class);
+
+    /** Metric name prefix for the bulkhead gauges and histograms */
+    public static final String METRICS_PREFIX = "Bulkhead";
+
+    /** Weight of each sample in the recent latency average */
+    static final double SHORT_WEIGHT = 0.2;
+
+    /** Weight of each sample in the long term latency average */
+    static final double LONG_WEIGHT = 0.02;
+
+    /** AIMD multiplier applied on a slow visit */
+    static final double BACKOFF = 0.9;
+
+    /** How the limit is set */
+    public enum Mode {
+        STATIC, AIMD, GRADIENT
+    }
+
+    /** What an agent bound for a full place does */
+    public enum Saturation {
+        /** Wait at the place for a permit */
+        QUEUE,
+        /** Look for an equal cost twin with room, and wait only if there is none */
+        REROUTE
+    }
+
+    private final String placeName;
+    private final Mode mode;
+    private final Saturation saturation;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long maxWaitNanos;
+    private final double tolerance;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+    // guarded by lock
+    private double limit;
+    private int inUse = 0;
+    private int waiting = 0;
+    private double shortLatency = 0.0;
+    private double longLatency = 0.0;
+
+    private final AtomicLong overLimitCount = new AtomicLong();
+    private final AtomicLong rerouteCount = new AtomicLong();
+    private final Histogram waitTime = new Histogram(new ExponentiallyDecayingReservoir());
+
+    /**
+     * Create a bulkhead
+     *
+     * @param placeName the place being protected
+     * @param mode how the limit is set
+     * @param saturation what an agent bound for a full place does
+     * @param initialLimit starting limit, the fixed limit for STATIC
+     * @param minLimit lowest adaptive limit
+     * @param maxLimit highest adaptive limit
+     * @param maxWaitMillis longest wait for a permit before going in over the limit
+     * @param tolerance for AIMD, how many times the long term latency a visit may take without counting as slow
+     */
+    public PlaceBulkhead(final String placeName, final Mode mode, final Saturation saturation, final int initialLimit, final int minLimit,
+            final int maxLimit, final long maxWaitMillis, final double tolerance) {
+        if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit) {
+            throw new IllegalArgumentException("Bulkhead for " + placeName + " needs 1 <= min <= initial <= max limits, not " + minLimit + ", "
+                    + initialLimit + ", " + maxLimit);
+        }
+        this.placeName = placeName;
+        this.mode = mode;
+        this.saturation = saturation;
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Create a bulkhead from place configuration
+     * <ul>
+     * <li>PLACE_BULKHEAD_LIMIT, the fixed or starting limit, none when not above zero</li>
+     * <li>PLACE_BULKHEAD_MODE, STATIC, AIMD or GRADIENT, default STATIC</li>
+     * <li>PLACE_BULKHEAD_MIN_LIMIT, default 1</li>
+     * <li>PLACE_BULKHEAD_MAX_LIMIT, default four times the limit</li>
+     * <li>PLACE_BULKHEAD_SATURATION, QUEUE or REROUTE, default QUEUE</li>
+     * <li>PLACE_BULKHEAD_MAX_WAIT_MILLIS, default one minute</li>
+     * <li>PLACE_BULKHEAD_LATENCY_TOLERANCE, default 2.0</li>
+     * </ul>
+     *
+     * @param placeName the place being protected
+     * @param conf the place configuration
+     * @return the bulkhead or null if the place is not limited
+     */
+    @Nullable
+    public static PlaceBulkhead fromConfig(final String placeName, @Nullable final Configurator conf) {
+        if (conf == null) {
+            return null;
+        }
+        final int initial = conf.findIntEntry("PLACE_BULKHEAD_LIMIT", 0);
+        if (initial <= 0) {
+            return null;
+        }
+        final Mode mode = valueOf(Mode.class, conf.findStringEntry("PLACE_BULKHEAD_MODE", Mode.STATIC.name()), Mode.STATIC);
+        final Saturation saturation =
+                valueOf(Saturation.class, conf.findStringEntry("PLACE_BULKHEAD_SATURATION", Saturation.QUEUE.name()), Saturation.QUEUE);
+        final int min = Math.min(initial, Math.max(1, conf.findIntEntry("PLACE_BULKHEAD_MIN_LIMIT", 1)));
+        final int max = Math.max(initial, conf.findIntEntry("PLACE_BULKHEAD_MAX_LIMIT", initial * 4));
+        final PlaceBulkhead bulkhead = new PlaceBulkhead(placeName, mode, saturation, initial, min, max,
+                conf.findLongEntry("PLACE_BULKHEAD_MAX_WAIT_MILLIS", TimeUnit.MINUTES.toMillis(1)),
+                conf.findDoubleEntry("PLACE_BULKHEAD_LATENCY_TOLERANCE", 2.0));
+        try {
+            bulkhead.registerMetrics(MetricsManager.lookup().getMetricRegistry());
+        } catch (NamespaceException e) {
+            logger.debug("No metrics manager available for the {} bulkhead metrics", placeName);
+        }
+        logger.debug("Created {}", bulkhead);
+        return bulkhead;
+    }
+
+    private static <E extends Enum<E>> E valueOf(final Class<E> type, final String name, final E dflt) {
+        try {
+            return Enum.valueOf(type, name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Unknown bulkhead {} {}, using {}", type.getSimpleName(), name, dflt);
+            return dflt;
+        }
+    }
+
+    /**
+     * Expose permits in use, the limit, waiting agents and wait time in the registry, replacing any left by a previous
+     * instance of the place
+     *
+     * @param registry the registry to use, usually from the MetricsManager
+     */
+    public void registerMetrics(@Nullable final MetricRegistry registry) {
+        if (registry == null) {
+            return;
+        }
+        register(registry, "inUse", (Gauge<Integer>) this::getInUse);
+        register(registry, "limit", (Gauge<Integer>) this::getLimit);
+        register(registry, "waiting", (Gauge<Integer>) this::getWaiting);
+        register(registry, "wait", waitTime);
+    }
+
+    private void register(final MetricRegistry registry, final String name, final Metric metric) {
+        final String fullName = MetricRegistry.name(METRICS_PREFIX, placeName, name);
+        registry.remove(fullName);
+        registry.register(fullName, metric);
+    }
+
+    /**
+     * Take a permit, waiting while the place is full up to the maximum wait. An interrupt or running out of time lets the
+     * agent in over the limit.
+     */
+    public void acquire() {
+        final long start = System.nanoTime();
+        lock.lock();
+        try {
+            if (inUse >= getLimitLocked()) {
+                waiting++;
+                try {
+                    long remaining = maxWaitNanos;
+                    while (inUse >= getLimitLocked() && remaining > 0) {
+                        remaining = available.awaitNanos(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    waiting--;
+                }
+                if (inUse >= getLimitLocked()) {
+                    overLimitCount.incrementAndGet();
+                    logger.debug("Agent going into {} over the limit of {}", placeName, getLimitLocked());
+                }
+            }
+            inUse++;
+        } finally {
+            lock.unlock();
+        }
+        waitTime.update(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+    }
+
+    /**
+     * Give back a permit taken by {@link #acquire()}
+     */
+    public void release() {
+        lock.lock();
+        try {
+            inUse--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adjust an adaptive limit from the time a visit took
+     *
+     * @param elapsedNanos time spent in the place
+     */
+    public void sample(final long elapsedNanos) {
+        if (mode == Mode.STATIC || elapsedNanos <= 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            final int before = getLimitLocked();
+            if (longLatency == 0.0) {
+                shortLatency = elapsedNanos;
+                longLatency = elapsedNanos;
+                return;
+            }
+            shortLatency += SHORT_WEIGHT * (elapsedNanos - shortLatency);
+            longLatency += LONG_WEIGHT * (elapsedNanos - longLatency);
+
+            double next;
+            if (mode == Mode.AIMD) {
+                if (elapsedNanos > tolerance * longLatency) {
+                    next = limit * BACKOFF;
+                } else if (inUse * 2 >= limit) {
+                    next = limit + 1.0 / limit;
+                } else {
+                    next = limit;
+                }
+            } else {
+                final double gradient = Math.max(0.5, Math.min(1.0, longLatency / shortLatency));
+                final double target = limit * gradient + Math.sqrt(limit);
+                next = limit * (1.0 - SHORT_WEIGHT) + target * SHORT_WEIGHT;
+            }
+            limit = Math.max(minLimit, Math.min(maxLimit, next));
+            if (getLimitLocked() > before) {
+                available.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller holds the lock
+    private int getLimitLocked() {
+        return (int) limit;
+    }
+
+    /**
+     * True if an arriving agent would have to wait
+     */
+    public boolean isSaturated() {
+        lock.lock();
+        try {
+            return inUse >= getLimitLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Count an agent sent to a twin of this place because it was full
+     */
+    public void rerouted() {
+        rerouteCount.incrementAndGet();
+    }
+
+    public String getPlaceName() {
+        return placeName;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public Saturation getSaturation() {
+        return saturation;
+    }
+
+    /**
+     * Get the current limit
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return getLimitLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of permits in use
+     */
+    public int getInUse() {
+        lock.lock();
+        try {
+            return inUse;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of agents waiting for a permit
+     */
+    public int getWaiting() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of agents let in over the limit after waiting as long as allowed
+     */
+    public long getOverLimitCount() {
+        return overLimitCount.get();
+    }
+
+    /**
+     * Get the number of agents sent to a twin of the place instead
+     */
+    public long getRerouteCount() {
+        return rerouteCount.get();
+    }
+
+    /**
+     * Get the time agents waited for a permit, in microseconds
+     */
+    public Histogram getWaitTime() {
+        return waitTime;
+    }
+
+    @Override
+    public String toString() {
+        return "PlaceBulkhead " + placeName + " " + mode + "/" + saturation + " " + getInUse() + "/" + getLimit();
+    }
+}
@@ -0,0 +1,71 @@
+package emissary.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live load of a single place as seen by the {@link ResourceWatcher}: the number of agents currently inside the place
+ * and an exponentially weighted moving average of the time recent visits took. Updated as each {@link TimedResource}
+ * starts and closes.
+ */
+public class PlaceLoad {
+
+    /** Weight given to each new latency sample in the moving average */
+    public static final double LATENCY_WEIGHT = 0.2;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /** Moving average in nanos stored as the bits of a double, zero until the first visit completes */
+    private final AtomicLong latencyBits = new AtomicLong(Double.doubleToLongBits(0.0));
+
+    /**
+     * Record an agent entering the place
+     */
+    public void started() {
+        this.inFlight.incrementAndGet();
+    }
+
+    /**
+     * Record an agent leaving the place
+     *
+     * @param elapsedNanos time spent in the place
+     */
+    public void finished(final long elapsedNanos) {
+        this.inFlight.decrementAndGet();
+        long prev;
+        long next;
+        do {
+            prev = this.latencyBits.get();
+            final double avg = Double.longBitsToDouble(prev);
+            final double updated = avg == 0.0 ? elapsedNanos : avg + LATENCY_WEIGHT * (elapsedNanos - avg);
+            next = Double.doubleToLongBits(updated);
+        } while (!this.latencyBits.compareAndSet(prev, next));
+    }
+
+    /**
+     * Number of agents currently in the place
+     */
+    public int getInFlight() {
+        return this.inFlight.get();
+    }
+
+    /**
+     * Recent average visit time in nanos, zero if no visit has completed
+     */
+    public long getLatencyNanos() {
+        return (long) Double.longBitsToDouble(this.latencyBits.get());
+    }
+
+    /**
+     * Expected wait for a new arrival, the recent visit time scaled by the agents already in the place. Lower is better. A
+     * place with no completed visits scores by its in flight count alone so that it gets tried.
+     */
+    public long getLoadScore() {
+        return (getInFlight() + 1L) * Math.max(getLatencyNanos(), 1L);
+    }
+
+    @Override
+    public String toString() {
+        return "inFlight=" + getInFlight() + " latencyNanos=" + getLatencyNanos();
+    }
+}
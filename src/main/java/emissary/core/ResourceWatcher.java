@@ -51,6 +51,9 @@ public class ResourceWatcher implements Runnable {
     // Things we are tracking
     protected Queue<TimedResource> tracking = new LinkedBlockingQueue<>();
 
+    // Live in flight counts and recent latency by place name
+    protected Map<String, PlaceLoad> placeLoads = new ConcurrentHashMap<>();
+
     public ResourceWatcher() {
         this(new MetricsManager());
     }
@@ -89,11 +92,36 @@ public class ResourceWatcher implements Runnable {
      * @return TimedResource for the place and agent
      */
     public TimedResource starting(final IMobileAgent agent, final IServiceProviderPlace place) {
-        TimedResource tr = new TimedResource(agent, place, getPlaceDuration(place), metrics.timer(place.getPlaceName()));
+        return starting(agent, agent.payloadCount(), place);
+    }
+
+    /**
+     * Register an agent to start tracking it while it works on a given number of payloads, which need not be its own
+     *
+     * @param agent the agent to track and interrupt
+     * @param payloadCount the payloads the time limit is for
+     * @param place place executing
+     * @return TimedResource for the place and agent
+     */
+    public TimedResource starting(final IMobileAgent agent, final int payloadCount, final IServiceProviderPlace place) {
+        final String placeName = place.getPlaceName();
+        TimedResource tr = new TimedResource(agent, payloadCount, place, getPlaceDuration(place), metrics.timer(placeName),
+                placeLoads.computeIfAbsent(placeName, k -> new PlaceLoad()), place.getBulkhead());
         tracking.offer(tr);
         return tr;
     }
 
+    /**
+     * Get the live load of a place
+     *
+     * @param placeName the place name, as used for the place timers
+     * @return the load or null if no agent has visited the place
+     */
+    @Nullable
+    public PlaceLoad getPlaceLoad(final String placeName) {
+        return placeLoads.get(placeName);
+    }
+
     /**
      * Lookup the default ResourceWatcher in the Namespace
      * 
@@ -28,6 +28,12 @@ public class TimedResource implements AutoCloseable {
     @Nullable
     private final Timer.Context timerContext;
 
+    @Nullable
+    private final PlaceLoad placeLoad;
+
+    @Nullable
+    private final PlaceBulkhead bulkhead;
+
     private final ReentrantLock lock = new ReentrantLock();
 
     private volatile boolean isClosed = false;
@@ -40,16 +46,40 @@ public class TimedResource implements AutoCloseable {
         payloadCount = -1;
         placeName = "NOOP";
         timerContext = null;
+        placeLoad = null;
+        bulkhead = null;
     }
 
     public TimedResource(final IMobileAgent agent, final IServiceProviderPlace place, final long allowedDuration, final Timer timer) {
+        this(agent, place, allowedDuration, timer, null);
+    }
+
+    public TimedResource(final IMobileAgent agent, final IServiceProviderPlace place, final long allowedDuration, final Timer timer,
+            @Nullable final PlaceLoad placeLoad) {
+        this(agent, place, allowedDuration, timer, placeLoad, null);
+    }
+
+    public TimedResource(final IMobileAgent agent, final IServiceProviderPlace place, final long allowedDuration, final Timer timer,
+            @Nullable final PlaceLoad placeLoad, @Nullable final PlaceBulkhead bulkhead) {
+        this(agent, agent.payloadCount(), place, allowedDuration, timer, placeLoad, bulkhead);
+    }
+
+    /**
+     * Time work on a given number of payloads, which need not be the agent's own, such as a batch the agent runs for others
+     */
+    public TimedResource(final IMobileAgent agent, final int payloadCount, final IServiceProviderPlace place, final long allowedDuration,
+            final Timer timer, @Nullable final PlaceLoad placeLoad, @Nullable final PlaceBulkhead bulkhead) {
         this.started = System.currentTimeMillis();
         this.agent = agent;
-        this.payloadCount = agent.payloadCount();
+        this.payloadCount = payloadCount;
         this.placeName = place.getPlaceName();
         this.timerContext = timer.time();
         this.allowedDuration = allowedDuration;
-
+        this.placeLoad = placeLoad;
+        this.bulkhead = bulkhead;
+        if (placeLoad != null) {
+            placeLoad.started();
+        }
     }
 
     // checks the state of the current place, returns true if it's closed
@@ -86,7 +116,13 @@ public class TimedResource implements AutoCloseable {
             if (isClosed) {
                 return;
             }
-            timerContext.stop();
+            final long elapsed = timerContext.stop();
+            if (placeLoad != null) {
+                placeLoad.finished(elapsed);
+            }
+            if (bulkhead != null) {
+                bulkhead.sample(elapsed);
+            }
             isClosed = true;
         } finally {
             lock.unlock();
@@ -1,34 +1,109 @@
 package emissary.core;
 
 import emissary.directory.KeyManipulator;
+import emissary.directory.ParsedKey;
 import emissary.place.IServiceProviderPlace;
 
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 
 import static emissary.place.IServiceProviderPlace.SPROUT_KEY;
 
+/**
+ * The places a payload has been to. Each place key is stored as an int from a dictionary shared by every history, so a
+ * long itinerary is an int array and copying a history for a child copies only that array. The {@link History} and
+ * {@code List<String>} views are built on request.
+ *
+ * <p>
+ * The dictionary is never trimmed, so it holds at most {@link KeyDictionary#MAX_KEYS} keys, which covers the place keys
+ * of a directory. Once it is full, other keys are kept by the history that holds them, under negative ids, and go when
+ * it does.
+ */
 public class TransformHistory implements Serializable {
 
-    private static final long serialVersionUID = -7252497842562281631L;
+    private static final long serialVersionUID = -7252497842562281632L;
 
-    private final List<History> history;
+    private static final int[] NO_IDS = new int[0];
+    private static final String[] NO_KEYS = new String[0];
 
-    public TransformHistory() {
-        history = new ArrayList<>();
-    }
+    /** Key id of each place visited, in order */
+    private transient int[] ids = NO_IDS;
+    private transient int size = 0;
+
+    /** Pairs of the index of the visit coordinating and the key id of the place coordinated, in order */
+    private transient int[] coordinated = NO_IDS;
+    private transient int coordinatedSize = 0;
+
+    /** Keys that did not fit in the dictionary, id -1 is the first */
+    private transient String[] ownKeys = NO_KEYS;
+    private transient int ownKeysSize = 0;
+
+    public TransformHistory() {}
 
     public TransformHistory(TransformHistory history) {
-        this.history = new ArrayList<>(history.history);
+        copy(history);
+    }
+
+    private void copy(TransformHistory history) {
+        this.ids = history.size == 0 ? NO_IDS : Arrays.copyOf(history.ids, history.size);
+        this.size = history.size;
+        this.coordinated = history.coordinatedSize == 0 ? NO_IDS : Arrays.copyOf(history.coordinated, history.coordinatedSize);
+        this.coordinatedSize = history.coordinatedSize;
+        this.ownKeys = history.ownKeysSize == 0 ? NO_KEYS : Arrays.copyOf(history.ownKeys, history.ownKeysSize);
+        this.ownKeysSize = history.ownKeysSize;
+    }
+
+    /**
+     * Get the id of a key, from the dictionary if it has room, otherwise from the keys this history holds itself
+     */
+    private int id(final String key) {
+        final int id = KeyDictionary.id(key);
+        if (id >= 0) {
+            return id;
+        }
+        final int own = ownId(key);
+        if (own < 0) {
+            return own;
+        }
+        if (ownKeysSize == ownKeys.length) {
+            ownKeys = Arrays.copyOf(ownKeys, Math.max(4, ownKeysSize * 2));
+        }
+        ownKeys[ownKeysSize++] = key;
+        return -ownKeysSize;
+    }
+
+    /**
+     * Get the id of a key held by this history rather than the dictionary
+     *
+     * @return the negative id, or zero if this history does not hold the key
+     */
+    private int ownId(final String key) {
+        for (int i = 0; i < ownKeysSize; i++) {
+            if (ownKeys[i].equals(key)) {
+                return -1 - i;
+            }
+        }
+        return 0;
+    }
+
+    private String key(final int id) {
+        return id >= 0 ? KeyDictionary.key(id) : ownKeys[-1 - id];
     }
 
     /**
@@ -38,7 +113,7 @@ public class TransformHistory implements Serializable {
      */
     public void set(List<String> keys) {
         clear();
-        addAll(keys.stream().map(History::new).collect(Collectors.toList()));
+        keys.forEach(this::append);
     }
 
     /**
@@ -47,12 +122,9 @@ public class TransformHistory implements Serializable {
      * @param history of new history strings to use
      */
     public void set(TransformHistory history) {
-        clear();
-        addAll(history.history);
-    }
-
-    private void addAll(List<History> history) {
-        this.history.addAll(history);
+        if (history != this) {
+            copy(history);
+        }
     }
 
     /**
@@ -78,21 +150,28 @@ public class TransformHistory implements Serializable {
      */
     public void append(String key, boolean coordinated) {
         if (coordinated) {
-            History last = lastVisit();
-            if (last != null) {
-                last.addCoordinated(key);
+            if (size > 0) {
+                if (coordinatedSize + 2 > this.coordinated.length) {
+                    this.coordinated = Arrays.copyOf(this.coordinated, Math.max(8, coordinatedSize * 2));
+                }
+                this.coordinated[coordinatedSize++] = size - 1;
+                this.coordinated[coordinatedSize++] = id(key);
             }
         } else {
-            history.add(new History(key));
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(8, size * 2));
+            }
+            ids[size++] = id(key);
         }
-
     }
 
     /**
      * Clear the transformation history
      */
     public void clear() {
-        history.clear();
+        size = 0;
+        coordinatedSize = 0;
+        ownKeysSize = 0;
     }
 
     /**
@@ -110,18 +189,17 @@ public class TransformHistory implements Serializable {
      * @return List of places visited
      */
     public List<String> get(boolean includeCoordinated) {
-        if (includeCoordinated) {
-            List<String> keys = new ArrayList<>();
-            history.forEach(k -> {
-                keys.add(k.getKey());
-                keys.addAll(k.getCoordinated());
-            });
-            return keys;
-        } else {
-            return history.stream()
-                    .map(History::getKey)
-                    .collect(Collectors.toList());
+        final List<String> keys = new ArrayList<>(size(includeCoordinated));
+        int c = 0;
+        for (int i = 0; i < size; i++) {
+            keys.add(key(ids[i]));
+            if (includeCoordinated) {
+                for (; c < coordinatedSize && coordinated[c] == i; c += 2) {
+                    keys.add(key(coordinated[c + 1]));
+                }
+            }
         }
+        return keys;
     }
 
     /**
@@ -130,44 +208,107 @@ public class TransformHistory implements Serializable {
      * @return history object
      */
     public List<History> getHistory() {
+        final List<History> history = new ArrayList<>(size);
+        int c = 0;
+        for (int i = 0; i < size; i++) {
+            final History h = new History(key(ids[i]));
+            for (; c < coordinatedSize && coordinated[c] == i; c += 2) {
+                h.addCoordinated(key(coordinated[c + 1]));
+            }
+            history.add(h);
+        }
         return Collections.unmodifiableList(history);
     }
 
+    /**
+     * Build the history of one visit. Coordinated places are in visit order, so only those from the visit on are looked at,
+     * which for the last visits is only a few.
+     */
+    private History history(final int index) {
+        int start = coordinatedSize;
+        while (start > 0 && coordinated[start - 2] >= index) {
+            start -= 2;
+        }
+        final History h = new History(key(ids[index]));
+        for (int c = start; c < coordinatedSize && coordinated[c] == index; c += 2) {
+            h.addCoordinated(key(coordinated[c + 1]));
+        }
+        return h;
+    }
+
     /**
      * Get the last place visited (does not include places visited during coordination)
      *
-     * @return last place visited
+     * @return last place visited, a copy that does not change this history
      */
     @Nullable
     public History lastVisit() {
-        if (CollectionUtils.isEmpty(history)) {
-            return null;
-        }
-        return history.get(history.size() - 1);
+        return size < 1 ? null : history(size - 1);
     }
 
     /**
      * Get the second-to-last place visited (does not include places visited during coordination)
      *
-     * @return second-to-last place visited
+     * @return second-to-last place visited, a copy that does not change this history
      */
     @Nullable
     public History penultimateVisit() {
-        if (CollectionUtils.isEmpty(history) || history.size() < 2) {
-            return null;
-        }
-        return history.get(history.size() - 2);
+        return size < 2 ? null : history(size - 2);
+    }
+
+    /**
+     * Get the key of the last place visited (does not include places visited during coordination)
+     *
+     * @return key of the last place visited
+     */
+    @Nullable
+    public String lastKey() {
+        return size < 1 ? null : key(ids[size - 1]);
+    }
+
+    /**
+     * Get the key of the second-to-last place visited (does not include places visited during coordination)
+     *
+     * @return key of the second-to-last place visited
+     */
+    @Nullable
+    public String penultimateKey() {
+        return size < 2 ? null : key(ids[size - 2]);
     }
 
     /**
-     * Test to see if a place has been visited (does not include places visited during coordination)
+     * Test to see if a place has been visited (does not include places visited during coordination). A pattern without
+     * wildcards is looked up by its id, otherwise each distinct key is matched once.
      *
      * @return true is place has been visited
      */
     public boolean hasVisited(final String pattern) {
-        for (final History hist : history) {
-            if (KeyManipulator.gmatch(hist.getKey(), pattern)) {
-                return true;
+        if (pattern.indexOf('*') < 0 && pattern.indexOf('?') < 0) {
+            int id = KeyDictionary.find(pattern);
+            if (id < 0) {
+                id = ownId(pattern);
+                if (id == 0) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        final BitSet checked = new BitSet();
+        for (int i = 0; i < size; i++) {
+            final int id = ids[i];
+            if (id < 0 || !checked.get(id)) {
+                if (KeyManipulator.gmatch(key(id), pattern)) {
+                    return true;
+                }
+                if (id >= 0) {
+                    checked.set(id);
+                }
             }
         }
         return false;
@@ -179,11 +320,7 @@ public class TransformHistory implements Serializable {
      * @return true if not yet started
      */
     public boolean beforeStart() {
-        if (history.isEmpty()) {
-            return true;
-        }
-        final String s = history.get(history.size() - 1).getKey();
-        return s.contains(IServiceProviderPlace.SPROUT_KEY);
+        return size == 0 || key(ids[size - 1]).contains(IServiceProviderPlace.SPROUT_KEY);
     }
 
     public int size() {
@@ -191,25 +328,22 @@ public class TransformHistory implements Serializable {
     }
 
     public int size(boolean includeCoordinated) {
-        int size = history.size();
-        if (includeCoordinated) {
-            size += (int) history.stream().mapToLong(h -> h.coordinated.size()).sum();
-        }
-        return size;
+        return includeCoordinated ? size + coordinatedSize / 2 : size;
     }
 
     public Deque<String> format() {
         Deque<String> formattedHistory = new ArrayDeque<>();
 
         String prevDataAndServiceType = "";
-        for (final History h : this.history) {
+        for (final History h : getHistory()) {
             String key = h.getKey();
+            ParsedKey parsed = h.getParsedKey();
             String currentDataAndServiceType = "";
             StringBuilder displayStrings = new StringBuilder();
 
             if (key.contains(SPROUT_KEY)) {
                 displayStrings.append(StringUtils.substringBefore(formattedHistory.removeLast(), ".")).append(".")
-                        .append(KeyManipulator.getServiceType(key)).append(": ");
+                        .append(parsed.getServiceType()).append(": ");
                 while (!formattedHistory.isEmpty()) {
                     String last = formattedHistory.removeLast();
                     if (last.contains(SPROUT_KEY)) {
@@ -218,7 +352,7 @@ public class TransformHistory implements Serializable {
                     }
                 }
             } else {
-                currentDataAndServiceType = KeyManipulator.getDataType(key) + "." + KeyManipulator.getServiceType(key);
+                currentDataAndServiceType = parsed.getDataType() + "." + parsed.getServiceType();
                 if (currentDataAndServiceType.equals(prevDataAndServiceType)) {
                     displayStrings.append(formattedHistory.removeLast()).append(", ");
                 } else {
@@ -226,10 +360,11 @@ public class TransformHistory implements Serializable {
                 }
             }
 
-            displayStrings.append(KeyManipulator.getServiceClassname(key));
+            displayStrings.append(parsed.getServiceClassname());
             if (CollectionUtils.isNotEmpty(h.getCoordinated())) {
                 displayStrings
-                        .append(h.getCoordinated().stream().map(KeyManipulator::getServiceClassname).collect(Collectors.joining(", ", "(", ")")));
+                        .append(h.getCoordinated().stream().map(c -> ParsedKey.of(c).getServiceClassname())
+                                .collect(Collectors.joining(", ", "(", ")")));
             }
 
             formattedHistory.add(displayStrings.toString());
@@ -243,13 +378,15 @@ public class TransformHistory implements Serializable {
         final StringBuilder myOutput = new StringBuilder();
         final String ls = System.lineSeparator();
         myOutput.append("transform history (").append(size(true)).append(") :").append(ls);
-        history.forEach(x -> myOutput.append(x.toString()).append(ls));
+        getHistory().forEach(x -> myOutput.append(x.toString()).append(ls));
         return myOutput.toString();
     }
 
     public static class History {
         String key;
         List<String> coordinated = new ArrayList<>();
+        @Nullable
+        transient ParsedKey parsedKey;
 
         /**
          * Needed to support Kryo deserialization
@@ -257,7 +394,7 @@ public class TransformHistory implements Serializable {
         private History() {}
 
         public History(String key) {
-            this.key = key;
+            this.key = ParsedKey.intern(key);
         }
 
         public String getKey() {
@@ -268,6 +405,20 @@ public class TransformHistory implements Serializable {
             return stripUrl ? stripUrl(key) : key;
         }
 
+        /**
+         * Get the key parsed into its tuples, shared with other users of the same key
+         *
+         * @return the parsed key
+         */
+        public ParsedKey getParsedKey() {
+            ParsedKey p = parsedKey;
+            if (p == null) {
+                p = ParsedKey.of(key);
+                parsedKey = p;
+            }
+            return p;
+        }
+
         public List<String> getCoordinated() {
             return getCoordinated(false);
         }
@@ -285,6 +436,20 @@ public class TransformHistory implements Serializable {
             return StringUtils.substringBefore(key, ".http");
         }
 
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof History)) {
+                return false;
+            }
+            History other = (History) o;
+            return key.equals(other.key) && coordinated.equals(other.coordinated);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * key.hashCode() + coordinated.hashCode();
+        }
+
         @Override
         public String toString() {
             StringBuilder hist = new StringBuilder("        -> " + getKey());
@@ -294,4 +459,100 @@ public class TransformHistory implements Serializable {
             return hist.toString();
         }
     }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeUTF(key(ids[i]));
+        }
+        out.writeInt(coordinatedSize / 2);
+        for (int c = 0; c < coordinatedSize; c += 2) {
+            out.writeInt(coordinated[c]);
+            out.writeUTF(key(coordinated[c + 1]));
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        ids = NO_IDS;
+        coordinated = NO_IDS;
+        ownKeys = NO_KEYS;
+        final int visits = in.readInt();
+        for (int i = 0; i < visits; i++) {
+            append(in.readUTF());
+        }
+        final int coordinations = in.readInt();
+        if (coordinations > 0) {
+            coordinated = new int[coordinations * 2];
+            for (int c = 0; c < coordinations; c++) {
+                coordinated[coordinatedSize++] = in.readInt();
+                coordinated[coordinatedSize++] = id(in.readUTF());
+            }
+        }
+    }
+
+    /**
+     * Ids of the keys in every history, up to {@link #MAX_KEYS} of them. Ids are handed out under a lock, lookups of a key
+     * by id take no lock.
+     */
+    static final class KeyDictionary {
+        /** Most keys given an id */
+        static final int MAX_KEYS = 1 << 14;
+
+        private static final Map<String, Integer> IDS = new ConcurrentHashMap<>();
+        @SuppressWarnings("NonFinalStaticField")
+        private static volatile String[] keys = new String[256];
+        @SuppressWarnings("NonFinalStaticField")
+        private static int count = 0;
+
+        private KeyDictionary() {}
+
+        /**
+         * Get the id of a key, giving it one if new
+         *
+         * @return the id, or -1 if the key is new and the dictionary is full
+         */
+        static int id(final String key) {
+            final Integer id = IDS.get(key);
+            return id != null ? id : add(key);
+        }
+
+        private static synchronized int add(final String key) {
+            final Integer existing = IDS.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            if (count == MAX_KEYS) {
+                return -1;
+            }
+            String[] k = keys;
+            if (count == k.length) {
+                k = Arrays.copyOf(k, count * 2);
+            }
+            k[count] = ParsedKey.intern(key);
+            // publish the key before its id
+            keys = k;
+            IDS.put(k[count], count);
+            return count++;
+        }
+
+        /**
+         * Get the id of a key without adding it
+         *
+         * @return the id or -1 if no history holds the key
+         */
+        static int find(final String key) {
+            final Integer id = IDS.get(key);
+            return id != null ? id : -1;
+        }
+
+        static String key(final int id) {
+            return keys[id];
+        }
+
+        static int size() {
+            return IDS.size();
+        }
+    }
 }
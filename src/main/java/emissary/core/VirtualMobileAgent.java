@@ -0,0 +1,151 @@
+package emissary.core;
+
+import emissary.directory.DirectoryEntry;
+import emissary.log.MDCConstants;
+import emissary.place.IServiceProviderPlace;
+import emissary.pool.AgentExecutor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+
+/**
+ * An HD agent that does not own a thread. Instead of a thread parked in the run loop waiting for a payload, each
+ * itinerary runs as one task on the {@link AgentExecutor}, on a virtual thread where the JVM has them. Idle agents cost
+ * only their memory, so many more can be pooled when places spend their time blocked on external I/O.
+ *
+ * <p>
+ * While working, the task thread carries the agent name so that places can still find their agent in the
+ * {@link Namespace} by thread name.
+ */
+public class VirtualMobileAgent extends HDMobileAgent {
+
+    // Our logger, shadow the superclass for our own name in the log
+    protected static final Logger logger = LoggerFactory.getLogger(VirtualMobileAgent.class);
+
+    // Serializability
+    static final long serialVersionUID = -3166458437105373224L;
+
+    private static final AtomicInteger agentCounter = new AtomicInteger();
+
+    // The task thread while an itinerary is running
+    @Nullable
+    protected transient volatile Thread worker = null;
+
+    // Set by dispatch() while go or arrive hold the lock, acted on once they release it
+    private transient volatile boolean dispatchPending = false;
+
+    /**
+     * Create an agent with a generated name
+     */
+    public VirtualMobileAgent() {
+        this(AGENT_THREAD + "V" + agentCounter.getAndIncrement());
+    }
+
+    /**
+     * Constructor for the factory. The thread group is not used since no thread is owned.
+     *
+     * @param threadGroup ignored
+     * @param agentName symbolic name for this agent
+     */
+    public VirtualMobileAgent(@Nullable final ThreadGroup threadGroup, final String agentName) {
+        this(agentName);
+    }
+
+    /**
+     * Create an agent
+     *
+     * @param agentName symbolic name for this agent
+     */
+    public VirtualMobileAgent(final String agentName) {
+        super(agentName);
+        logger.debug("Constructed virtual agent {}", agentName);
+    }
+
+    /**
+     * Note that the itinerary is ready. The caller holds the lock on this agent, and handing over to the executor can block
+     * waiting for room, so the hand over waits until {@link #go(Object, IServiceProviderPlace)} or
+     * {@link #arrive(Object, IServiceProviderPlace, int, List)} have released the lock.
+     */
+    @Override
+    protected void dispatch() {
+        this.dispatchPending = true;
+    }
+
+    @Override
+    @SuppressWarnings("UnsynchronizedOverridesSynchronized")
+    public void go(final Object payload, final IServiceProviderPlace arrivalPlace) {
+        super.go(payload, arrivalPlace);
+        startPending();
+    }
+
+    @Override
+    @SuppressWarnings("UnsynchronizedOverridesSynchronized")
+    public void arrive(final Object payload, final IServiceProviderPlace arrivalPlace, final int moveErrorCount,
+            final List<DirectoryEntry> queuedItineraryItems) throws Exception {
+        super.arrive(payload, arrivalPlace, moveErrorCount, queuedItineraryItems);
+        startPending();
+    }
+
+    /**
+     * Hand a dispatched itinerary to the executor, without holding the lock on this agent
+     */
+    private void startPending() {
+        if (!this.dispatchPending) {
+            return;
+        }
+        this.dispatchPending = false;
+        try {
+            AgentExecutor.getDefault().execute(this);
+        } catch (RejectedExecutionException e) {
+            logger.error("Unable to start agent {} on {}", getName(), agentId(), e);
+            agentReturn();
+        }
+    }
+
+    /**
+     * Run one itinerary on the current thread, which takes the agent name while it works. No monitor is held around the
+     * place work, so a virtual thread blocked on I/O in a place does not pin its carrier thread. The agent is not idle
+     * while the task runs, so nothing else starts work on it meanwhile.
+     */
+    @Override
+    public void run() {
+        final Thread current = Thread.currentThread();
+        final String originalName = current.getName();
+        current.setName(getName());
+        this.worker = current;
+        try {
+            if (isInUse() && !this.timeToQuit) {
+                logger.debug("Starting work for {}", agentId());
+                MDC.put(MDCConstants.SHORT_NAME, getPayload().shortName());
+                try {
+                    agentControl(this.arrivalPlace);
+                } catch (Throwable throwable) {
+                    logger.error("Problem with agent", throwable);
+                } finally {
+                    // prevent an interrupted thread from returning the agent
+                    if (!this.timeToQuit) {
+                        agentReturn();
+                    }
+                    MDC.clear(); // clear all MDC context
+                }
+            }
+        } finally {
+            this.worker = null;
+            // do not leak an interrupt to the next task on a pooled thread
+            Thread.interrupted();
+            current.setName(originalName);
+        }
+    }
+
+    @Override
+    @Nullable
+    protected Thread getWorkerThread() {
+        return this.worker;
+    }
+}
@@ -0,0 +1,251 @@
+package emissary.core.channels;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.Cleaner;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+
+/**
+ * A least recently used cache of fixed-size blocks read through {@link CachedChannelFactory}, shared by every cached
+ * factory and bounded by a total byte budget, so that later passes over the same payload by different places are served
+ * from memory.
+ *
+ * <p>
+ * Blocks are keyed by a token registered for the cached factory that read them, so they are never shared between
+ * payloads, and each factory keeps the block size it was created with. The token does not reference the factory, so a
+ * cached block never keeps a payload's data alive, and the blocks of a factory are dropped once it becomes unreachable.
+ */
+public final class BlockCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlockCache.class);
+
+    /** Metric name prefix for the gauges */
+    public static final String METRICS_PREFIX = "BlockCache";
+
+    /** Default total bytes held, 64MB */
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    /** Default bytes in each block, 64KB */
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    private static final BlockCache SHARED = new BlockCache(DEFAULT_MAX_BYTES, DEFAULT_BLOCK_SIZE);
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private volatile long maxBytes;
+    private volatile int blockSize;
+    private volatile Cache<Key, byte[]> blocks;
+    // Bytes held by the current blocks, kept by the weigher and the removal listener
+    private volatile LongAdder bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private BlockCache(final long maxBytes, final int blockSize) {
+        configure(maxBytes, blockSize);
+    }
+
+    /**
+     * Get the cache shared by all payloads
+     */
+    public static BlockCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Create a separate cache
+     *
+     * @param maxBytes total bytes held, zero or less to cache nothing
+     * @param blockSize bytes in each block
+     * @return the cache
+     */
+    public static BlockCache create(final long maxBytes, final int blockSize) {
+        return new BlockCache(maxBytes, blockSize);
+    }
+
+    /**
+     * Set the limits, dropping every cached block
+     *
+     * @param maxBytes total bytes held, zero or less to cache nothing
+     * @param blockSize bytes in each block for factories created from now on
+     */
+    public void configure(final long maxBytes, final int blockSize) {
+        Validate.isTrue(blockSize > 0, "Required: blockSize > 0");
+        this.maxBytes = maxBytes;
+        this.blockSize = blockSize;
+        final LongAdder held = new LongAdder();
+        this.bytes = held;
+        this.blocks = CacheBuilder.newBuilder()
+                .maximumWeight(Math.max(0L, maxBytes))
+                .weigher((Key k, byte[] v) -> {
+                    held.add(v.length);
+                    return v.length;
+                })
+                .removalListener((RemovalNotification<Key, byte[]> notification) -> removed(held, notification))
+                .build();
+        logger.debug("Block cache of {} bytes in blocks of {}", maxBytes, blockSize);
+    }
+
+    private void removed(final LongAdder held, final RemovalNotification<Key, byte[]> notification) {
+        final byte[] block = notification.getValue();
+        if (block != null) {
+            held.add(-block.length);
+        }
+        if (notification.wasEvicted()) {
+            evictions.increment();
+        }
+    }
+
+    /**
+     * True if blocks are being cached
+     */
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Expose the counts in the registry
+     *
+     * @param registry the registry to use, usually from the MetricsManager
+     */
+    public void registerMetrics(final MetricRegistry registry) {
+        register(registry, "bytes", (Gauge<Long>) this::getBytes);
+        register(registry, "hits", (Gauge<Long>) this::getHitCount);
+        register(registry, "misses", (Gauge<Long>) this::getMissCount);
+        register(registry, "evictions", (Gauge<Long>) this::getEvictionCount);
+        register(registry, "hitRatio", (Gauge<Double>) this::getHitRatio);
+    }
+
+    private static void register(final MetricRegistry registry, final String name, final Gauge<?> gauge) {
+        final String fullName = MetricRegistry.name(METRICS_PREFIX, name);
+        registry.remove(fullName);
+        registry.register(fullName, gauge);
+    }
+
+    int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Track a cached factory, whose blocks are dropped once it becomes unreachable
+     *
+     * @param factory the cached factory
+     * @return the token to key the factory's blocks by, which does not reference the factory
+     */
+    Owner track(final Object factory) {
+        final Owner owner = new Owner();
+        CLEANER.register(factory, () -> invalidate(owner));
+        return owner;
+    }
+
+    private void invalidate(final Owner owner) {
+        final Cache<Key, byte[]> current = blocks;
+        for (long index = owner.lastIndex.get(); index >= 0; index--) {
+            current.invalidate(new Key(owner, index));
+        }
+    }
+
+    @Nullable
+    byte[] get(final Owner owner, final long index) {
+        final byte[] block = blocks.getIfPresent(new Key(owner, index));
+        if (block == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return block;
+    }
+
+    void put(final Owner owner, final long index, final byte[] block) {
+        if (isEnabled()) {
+            owner.lastIndex.accumulateAndGet(index, Math::max);
+            blocks.put(new Key(owner, index), block);
+        }
+    }
+
+    /**
+     * Get the bytes currently held
+     */
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Get the number of block reads served from the cache
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of block reads that went to the underlying factory
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of blocks dropped to stay within the byte budget
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Get the fraction of block reads served from the cache, zero before any reads
+     */
+    public double getHitRatio() {
+        final long h = hits.sum();
+        final long total = h + misses.sum();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    /**
+     * The token of one cached factory, compared by identity
+     */
+    static final class Owner {
+        // Highest block index put, so the blocks can be dropped without walking the cache
+        private final AtomicLong lastIndex = new AtomicLong(-1);
+    }
+
+    /**
+     * A block of one cached factory
+     */
+    private static final class Key {
+        private final Owner owner;
+        private final long index;
+
+        Key(final Owner owner, final long index) {
+            this.owner = owner;
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return owner == other.owner && index == other.index;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * owner.hashCode() + Long.hashCode(index);
+        }
+    }
+}
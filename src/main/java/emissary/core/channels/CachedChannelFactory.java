@@ -0,0 +1,146 @@
+package emissary.core.channels;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.Validate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Creates channels that read through a {@link BlockCache}, analogous to {@link BufferedChannelFactory} but with the
+ * blocks shared by every channel the factory creates and bounded across all factories. Wrap a payload's factory once
+ * and hand the same wrapped factory to everything reading the payload.
+ */
+public final class CachedChannelFactory {
+    private CachedChannelFactory() {}
+
+    /**
+     * Creates a SeekableByteChannelFactory reading through the shared block cache.
+     *
+     * @param seekableByteChannelFactory to be cached.
+     * @return the caching SeekableByteChannelFactory.
+     */
+    public static SeekableByteChannelFactory create(final SeekableByteChannelFactory seekableByteChannelFactory) {
+        return create(seekableByteChannelFactory, BlockCache.getShared());
+    }
+
+    /**
+     * Creates a SeekableByteChannelFactory reading through the given block cache.
+     *
+     * @param seekableByteChannelFactory to be cached.
+     * @param cache holding the blocks.
+     * @return the caching SeekableByteChannelFactory.
+     */
+    public static SeekableByteChannelFactory create(final SeekableByteChannelFactory seekableByteChannelFactory, final BlockCache cache) {
+        return new CachedChannelFactoryImpl(seekableByteChannelFactory, cache);
+    }
+
+    /**
+     * A SeekableByteChannelFactory whose channels share the cached blocks.
+     */
+    private static final class CachedChannelFactoryImpl implements SeekableByteChannelFactory {
+        /**
+         * The SeekableByteChannelFactory to cache.
+         */
+        private final SeekableByteChannelFactory seekableByteChannelFactory;
+        /**
+         * The cache holding the blocks.
+         */
+        private final BlockCache cache;
+        /**
+         * The token the blocks are keyed by, which does not reference this factory.
+         */
+        private final BlockCache.Owner owner;
+        /**
+         * The size of each block, fixed for the life of the factory.
+         */
+        private final int blockSize;
+        /**
+         * The size of the underlying data, or -1 until known.
+         */
+        private volatile long size = -1;
+
+        CachedChannelFactoryImpl(final SeekableByteChannelFactory seekableByteChannelFactory, final BlockCache cache) {
+            Validate.notNull(seekableByteChannelFactory, "Required: seekableByteChannelFactory not null!");
+            Validate.notNull(cache, "Required: cache not null!");
+
+            this.seekableByteChannelFactory = seekableByteChannelFactory;
+            this.cache = cache;
+            this.owner = cache.track(this);
+            this.blockSize = cache.getBlockSize();
+        }
+
+        @Override
+        public SeekableByteChannel create() {
+            return new CachedSeekableByteChannel(this);
+        }
+    }
+
+    /**
+     * SeekableByteChannel that reads whole blocks from the underlying channel, opened on the first miss.
+     */
+    private static final class CachedSeekableByteChannel extends AbstractSeekableByteChannel {
+        private final CachedChannelFactoryImpl factory;
+        private SeekableByteChannel seekableByteChannel;
+
+        CachedSeekableByteChannel(final CachedChannelFactoryImpl factory) {
+            this.factory = factory;
+        }
+
+        private SeekableByteChannel underlying() {
+            if (seekableByteChannel == null) {
+                seekableByteChannel = factory.seekableByteChannelFactory.create();
+            }
+            return seekableByteChannel;
+        }
+
+        @Override
+        protected void closeImpl() throws IOException {
+            if (seekableByteChannel != null) {
+                seekableByteChannel.close();
+            }
+        }
+
+        @Override
+        protected int readImpl(final ByteBuffer byteBuffer) throws IOException {
+            final int blockSize = factory.blockSize;
+            final long index = position() / blockSize;
+
+            byte[] block = factory.cache.get(factory.owner, index);
+            if (block == null) {
+                final long blockStart = index * blockSize;
+                final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(blockSize, size() - blockStart));
+                underlying().position(blockStart);
+                final int bytesRead = IOUtils.read(underlying(), buffer);
+                block = buffer.array();
+                if (bytesRead == block.length) {
+                    factory.cache.put(factory.owner, index, block);
+                } else {
+                    // Never cache a short read
+                    block = Arrays.copyOf(block, bytesRead);
+                }
+            }
+
+            final int blockOffset = (int) (position() % blockSize);
+            final int bytesToReturn = Math.min(byteBuffer.remaining(), block.length - blockOffset);
+            if (bytesToReturn <= 0) {
+                // The underlying data ended early
+                return -1;
+            }
+
+            byteBuffer.put(block, blockOffset, bytesToReturn);
+
+            return bytesToReturn;
+        }
+
+        @Override
+        protected long sizeImpl() throws IOException {
+            if (factory.size < 0) {
+                factory.size = underlying().size();
+            }
+            return factory.size;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package emissary.core.channels;
+
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.Validate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import javax.annotation.Nullable;
+
+/**
+ * Provide a file backed implementation that keeps the data compressed at rest. The data is written as independently
+ * compressed blocks followed by an index of where each block starts, so a read only decompresses the blocks it touches.
+ * Any codec that commons-compress can both write and read without further libraries works, e.g.
+ * {@link CompressorStreamFactory#DEFLATE}, {@link CompressorStreamFactory#BZIP2} or
+ * {@link CompressorStreamFactory#LZ4_FRAMED}.
+ *
+ * <p>
+ * The file layout is a header holding a magic number and the codec name, the compressed blocks, the offset of each
+ * block and of the end of the last, and a trailer holding the index offset, the uncompressed size, the block size, the
+ * block count and the magic number again.
+ */
+public final class CompressedChannelFactory {
+
+    /** Default uncompressed bytes in each block, 256KB */
+    public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+    /** Default codec */
+    public static final String DEFAULT_CODEC = CompressorStreamFactory.DEFLATE;
+
+    private static final int MAGIC = 0x454d5a42;
+    private static final int TRAILER_LENGTH = Long.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES + Integer.BYTES;
+
+    private CompressedChannelFactory() {}
+
+    /**
+     * Compress the data of a factory to a file with the default block size and codec
+     *
+     * @param path of the file to write, replaced if it exists
+     * @param source of the data
+     * @return a factory reading the file
+     * @throws IOException if the data cannot be read or the file written
+     */
+    public static SeekableByteChannelFactory write(final Path path, final SeekableByteChannelFactory source) throws IOException {
+        return write(path, source, DEFAULT_BLOCK_SIZE, DEFAULT_CODEC);
+    }
+
+    /**
+     * Compress the data of a factory to a file
+     *
+     * @param path of the file to write, replaced if it exists
+     * @param source of the data
+     * @param blockSize uncompressed bytes in each block
+     * @param codec commons-compress name of the codec
+     * @return a factory reading the file
+     * @throws IOException if the data cannot be read or the file written
+     */
+    public static SeekableByteChannelFactory write(final Path path, final SeekableByteChannelFactory source, final int blockSize,
+            final String codec) throws IOException {
+        Validate.notNull(path, "Required: path not null");
+        Validate.notNull(source, "Required: source not null");
+        Validate.isTrue(blockSize > 0, "Required: blockSize > 0");
+        Validate.isTrue(CompressorStreamFactory.getSingleton().getOutputStreamCompressorNames().contains(codec), "Unknown codec: %s", codec);
+
+        try (SeekableByteChannel in = source.create();
+                FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE)) {
+            final long size = in.size();
+            final int blockCount = (int) ((size + blockSize - 1) / blockSize);
+            final long[] offsets = new long[blockCount + 1];
+
+            final byte[] codecName = codec.getBytes(StandardCharsets.US_ASCII);
+            final ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + 1 + codecName.length);
+            header.putInt(MAGIC).put((byte) codecName.length).put(codecName).flip();
+            writeFully(out, header);
+
+            final ByteBuffer block = ByteBuffer.allocate(blockSize);
+            final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            for (int i = 0; i < blockCount; i++) {
+                offsets[i] = out.position();
+                block.clear();
+                final int length = IOUtils.read(in, block);
+                if (length != (int) Math.min(blockSize, size - (long) i * blockSize)) {
+                    throw new IOException("Source ended early at block " + i);
+                }
+                compressed.reset();
+                try (OutputStream os = CompressorStreamFactory.getSingleton().createCompressorOutputStream(codec, compressed)) {
+                    os.write(block.array(), 0, length);
+                } catch (CompressorException e) {
+                    throw new IOException("Cannot compress with " + codec, e);
+                }
+                compressed.writeTo(Channels.newOutputStream(out));
+            }
+            offsets[blockCount] = out.position();
+
+            final ByteBuffer index = ByteBuffer.allocate(offsets.length * Long.BYTES + TRAILER_LENGTH);
+            for (final long offset : offsets) {
+                index.putLong(offset);
+            }
+            index.putLong(offsets[blockCount]).putLong(size).putInt(blockSize).putInt(blockCount).putInt(MAGIC).flip();
+            writeFully(out, index);
+
+            return new CompressedChannelFactoryImpl(path, codec, size, blockSize, offsets);
+        }
+    }
+
+    /**
+     * Open a file written by {@link #write(Path, SeekableByteChannelFactory, int, String)}
+     *
+     * @param path of the file
+     * @return a factory reading the file
+     * @throws IOException if the file cannot be read or was not written by this class
+     */
+    public static SeekableByteChannelFactory create(final Path path) throws IOException {
+        Validate.notNull(path, "Required: path not null");
+
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            final ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + 1);
+            readFully(in, header, 0);
+            if (header.getInt(0) != MAGIC || in.size() < TRAILER_LENGTH) {
+                throw new IOException("Not a compressed channel file: " + path);
+            }
+            final byte[] codecName = new byte[header.get(Integer.BYTES) & 0xff];
+            readFully(in, ByteBuffer.wrap(codecName), Integer.BYTES + 1);
+
+            final ByteBuffer trailer = ByteBuffer.allocate(TRAILER_LENGTH);
+            readFully(in, trailer, in.size() - TRAILER_LENGTH);
+            final long indexOffset = trailer.getLong(0);
+            final long size = trailer.getLong(Long.BYTES);
+            final int blockSize = trailer.getInt(2 * Long.BYTES);
+            final int blockCount = trailer.getInt(2 * Long.BYTES + Integer.BYTES);
+            if (trailer.getInt(2 * Long.BYTES + 2 * Integer.BYTES) != MAGIC || blockSize <= 0 || blockCount < 0
+                    || indexOffset + (blockCount + 1L) * Long.BYTES + TRAILER_LENGTH != in.size()) {
+                throw new IOException("Not a compressed channel file: " + path);
+            }
+
+            final ByteBuffer index = ByteBuffer.allocate((blockCount + 1) * Long.BYTES);
+            readFully(in, index, indexOffset);
+            index.flip();
+            final long[] offsets = new long[blockCount + 1];
+            index.asLongBuffer().get(offsets);
+
+            return new CompressedChannelFactoryImpl(path, new String(codecName, StandardCharsets.US_ASCII), size, blockSize, offsets);
+        }
+    }
+
+    private static void writeFully(final FileChannel out, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static void readFully(final FileChannel in, final ByteBuffer buffer, final long position) throws IOException {
+        long p = position;
+        while (buffer.hasRemaining()) {
+            final int read = in.read(buffer, p);
+            if (read < 0) {
+                throw new IOException("Unexpected end of compressed channel file");
+            }
+            p += read;
+        }
+    }
+
+    /**
+     * A factory for channels reading the compressed file, holding its index
+     */
+    private static final class CompressedChannelFactoryImpl implements SeekableByteChannelFactory {
+        private final Path path;
+        private final String codec;
+        private final long size;
+        private final int blockSize;
+        private final long[] offsets;
+
+        CompressedChannelFactoryImpl(final Path path, final String codec, final long size, final int blockSize, final long[] offsets) {
+            this.path = path;
+            this.codec = codec;
+            this.size = size;
+            this.blockSize = blockSize;
+            this.offsets = offsets;
+        }
+
+        @Override
+        public SeekableByteChannel create() {
+            return new CompressedChannel(this);
+        }
+
+        @Override
+        public String toString() {
+            return "CompressedChannelFactory " + path + " " + size + " bytes in " + (offsets.length - 1) + " " + codec + " blocks";
+        }
+    }
+
+    /**
+     * Channel holding the last block it decompressed. It keeps a reference to its factory so that anything cleaning up the
+     * file once the factory is unreachable waits for the channel too.
+     */
+    private static final class CompressedChannel extends AbstractSeekableByteChannel {
+        private final CompressedChannelFactoryImpl factory;
+        private FileChannel channel;
+        @Nullable
+        private byte[] block;
+        private int blockIndex = -1;
+        private int blockLength;
+
+        CompressedChannel(final CompressedChannelFactoryImpl factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        protected void closeImpl() throws IOException {
+            block = null;
+            if (channel != null) {
+                channel.close();
+            }
+        }
+
+        @Override
+        protected int readImpl(final ByteBuffer byteBuffer) throws IOException {
+            final int index = (int) (position() / factory.blockSize);
+            if (index != blockIndex) {
+                load(index);
+            }
+
+            final int blockOffset = (int) (position() - (long) index * factory.blockSize);
+            final int bytesToReturn = Math.min(byteBuffer.remaining(), blockLength - blockOffset);
+            byteBuffer.put(block, blockOffset, bytesToReturn);
+            return bytesToReturn;
+        }
+
+        private void load(final int index) throws IOException {
+            if (channel == null) {
+                channel = FileChannel.open(factory.path, StandardOpenOption.READ);
+            }
+            if (block == null) {
+                block = new byte[(int) Math.min(factory.blockSize, factory.size)];
+            }
+            final ByteBuffer compressed = ByteBuffer.allocate((int) (factory.offsets[index + 1] - factory.offsets[index]));
+            readFully(channel, compressed, factory.offsets[index]);
+
+            blockIndex = -1;
+            blockLength = (int) Math.min(factory.blockSize, factory.size - (long) index * factory.blockSize);
+            try (InputStream is = CompressorStreamFactory.getSingleton().createCompressorInputStream(factory.codec,
+                    new ByteArrayInputStream(compressed.array()))) {
+                IOUtils.readFully(is, block, 0, blockLength);
+            } catch (CompressorException e) {
+                throw new IOException("Cannot decompress with " + factory.codec, e);
+            }
+            blockIndex = index;
+        }
+
+        @Override
+        protected long sizeImpl() {
+            return factory.size;
+        }
+    }
+}
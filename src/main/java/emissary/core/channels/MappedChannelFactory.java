@@ -0,0 +1,250 @@
+package emissary.core.channels;
+
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.annotation.Nullable;
+
+/**
+ * Provide a memory-mapped implementation for reading a file. The file is mapped in windows starting at multiples of the
+ * window size, each mapped the first time it is read, so files over 2GB can be mapped and a few small reads of a large
+ * file map only the windows they touch. Reads are served from the mapped memory without a system call.
+ *
+ * <p>
+ * The mapping is released by {@link #close()}, which waits for reads in progress and makes later reads on any channel
+ * fail with a {@link ClosedChannelException}. Without it the mapping lasts until the garbage collector finds it.
+ */
+public final class MappedChannelFactory implements SeekableByteChannelFactory, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedChannelFactory.class);
+
+    /** Default size of each mapped window, 1GB */
+    public static final long DEFAULT_WINDOW_SIZE = 1L << 30;
+
+    @Nullable
+    private static final Unmapper UNMAPPER = Unmapper.find();
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long size;
+    private final long windowSize;
+    private final AtomicReferenceArray<MappedByteBuffer> windows;
+
+    private final AtomicInteger activeReads = new AtomicInteger();
+    // Signalled by the last read to finish once closed
+    private final Object readsDone = new Object();
+    private volatile boolean closed = false;
+
+    private MappedChannelFactory(final Path path, final long windowSize) throws IOException {
+        Validate.notNull(path, "Required: path not null");
+        Validate.isTrue(windowSize > 0 && windowSize <= Integer.MAX_VALUE, "Required: 0 < windowSize <= Integer.MAX_VALUE");
+        this.path = path;
+        this.windowSize = windowSize;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.windows = new AtomicReferenceArray<>((int) ((size + windowSize - 1) / windowSize));
+    }
+
+    /**
+     * Create a factory mapping the file in windows of the default size
+     *
+     * @param path of the file, which must not change while mapped
+     * @return the factory
+     * @throws IOException if the file cannot be opened
+     * @see SeekableByteChannelHelper#mapped(Path)
+     */
+    public static MappedChannelFactory create(final Path path) throws IOException {
+        return create(path, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Create a factory mapping the file in windows of the given size
+     *
+     * @param path of the file, which must not change while mapped
+     * @param windowSize bytes in each mapped window
+     * @return the factory
+     * @throws IOException if the file cannot be opened
+     */
+    public static MappedChannelFactory create(final Path path, final long windowSize) throws IOException {
+        return new MappedChannelFactory(path, windowSize);
+    }
+
+    /**
+     * Creates a channel reading the mapped file
+     *
+     * @return the new channel instance
+     */
+    @Override
+    public SeekableByteChannel create() {
+        return new MappedChannel();
+    }
+
+    /**
+     * Release the mapping once reads in progress finish. Channels already created fail on their next read.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        awaitReads();
+        for (int i = 0; i < windows.length(); i++) {
+            final MappedByteBuffer window = windows.getAndSet(i, null);
+            if (window != null && UNMAPPER != null) {
+                UNMAPPER.unmap(window);
+            }
+        }
+        channel.close();
+    }
+
+    private void awaitReads() {
+        boolean interrupted = false;
+        synchronized (readsDone) {
+            while (activeReads.get() > 0) {
+                try {
+                    readsDone.wait();
+                } catch (InterruptedException e) {
+                    // unmapping under a read would crash the JVM, so keep waiting
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * True once the mapping has been released
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Get the number of windows mapped so far
+     */
+    public int getMappedWindowCount() {
+        int count = 0;
+        for (int i = 0; i < windows.length(); i++) {
+            if (windows.get(i) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private MappedByteBuffer window(final int index) throws IOException {
+        MappedByteBuffer window = windows.get(index);
+        if (window == null) {
+            synchronized (windows) {
+                window = windows.get(index);
+                if (window == null) {
+                    final long start = index * windowSize;
+                    window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowSize, size - start));
+                    windows.set(index, window);
+                }
+            }
+        }
+        return window;
+    }
+
+    /**
+     * Channel reading from the mapped windows, with its own position
+     */
+    private final class MappedChannel extends AbstractSeekableByteChannel {
+
+        @Override
+        protected void closeImpl() {
+            // the mapping belongs to the factory
+        }
+
+        @Override
+        protected int readImpl(final ByteBuffer byteBuffer) throws IOException {
+            activeReads.incrementAndGet();
+            try {
+                if (closed) {
+                    throw new ClosedChannelException();
+                }
+                long pos = position();
+                int read = 0;
+                while (byteBuffer.hasRemaining() && pos < size) {
+                    final ByteBuffer window = window((int) (pos / windowSize)).duplicate();
+                    final int offset = (int) (pos % windowSize);
+                    final int count = Math.min(byteBuffer.remaining(), window.limit() - offset);
+                    window.position(offset);
+                    window.limit(offset + count);
+                    byteBuffer.put(window);
+                    pos += count;
+                    read += count;
+                }
+                return read;
+            } finally {
+                if (activeReads.decrementAndGet() == 0 && closed) {
+                    synchronized (readsDone) {
+                        readsDone.notifyAll();
+                    }
+                }
+            }
+        }
+
+        @Override
+        protected long sizeImpl() {
+            return size;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MappedChannelFactory " + path + " " + size + " bytes in windows of " + windowSize;
+    }
+
+    /**
+     * Releases a mapping straight away through {@code sun.misc.Unsafe.invokeCleaner}, where the JVM allows it
+     */
+    private static final class Unmapper {
+        private final Object unsafe;
+        private final Method invokeCleaner;
+
+        private Unmapper(final Object unsafe, final Method invokeCleaner) {
+            this.unsafe = unsafe;
+            this.invokeCleaner = invokeCleaner;
+        }
+
+        @Nullable
+        static Unmapper find() {
+            try {
+                final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                return new Unmapper(theUnsafe.get(null), unsafeClass.getMethod("invokeCleaner", ByteBuffer.class));
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                logger.debug("Cannot unmap explicitly, mappings will be released by the garbage collector", e);
+                return null;
+            }
+        }
+
+        void unmap(final MappedByteBuffer buffer) {
+            try {
+                invokeCleaner.invoke(unsafe, buffer);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                logger.debug("Could not unmap buffer, leaving it to the garbage collector", e);
+            }
+        }
+    }
+}
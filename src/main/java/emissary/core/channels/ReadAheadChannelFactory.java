@@ -0,0 +1,271 @@
+package emissary.core.channels;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.Validate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+
+/**
+ * Creates channels that read ahead of a sequential consumer. Once a channel sees a few reads each starting where the
+ * last one ended, it reads the next blocks on a background executor, one at a time and in order, into a bounded ring,
+ * so the consumer works on one block while the next are being read. A seek drops the ring and goes back to plain reads
+ * until the access looks sequential again.
+ *
+ * <p>
+ * At most {@code depth} blocks are held per channel. Channels are not safe for use by more than one thread, like the
+ * channels they wrap.
+ */
+public final class ReadAheadChannelFactory {
+
+    /** Default bytes in each block read ahead, 1MB */
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    /** Default number of blocks read ahead */
+    public static final int DEFAULT_DEPTH = 4;
+
+    /** Sequential reads seen before reading ahead */
+    static final int SEQUENTIAL_THRESHOLD = 2;
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ReadAheadThreadFactory());
+
+    private ReadAheadChannelFactory() {}
+
+    /**
+     * Creates a SeekableByteChannelFactory reading ahead the default number of blocks of the default size.
+     *
+     * @param seekableByteChannelFactory to read ahead of.
+     * @return the read ahead SeekableByteChannelFactory.
+     */
+    public static SeekableByteChannelFactory create(final SeekableByteChannelFactory seekableByteChannelFactory) {
+        return create(seekableByteChannelFactory, DEFAULT_BLOCK_SIZE, DEFAULT_DEPTH);
+    }
+
+    /**
+     * Creates a SeekableByteChannelFactory reading ahead on the shared background threads.
+     *
+     * @param seekableByteChannelFactory to read ahead of.
+     * @param blockSize bytes in each block.
+     * @param depth blocks read ahead.
+     * @return the read ahead SeekableByteChannelFactory.
+     */
+    public static SeekableByteChannelFactory create(final SeekableByteChannelFactory seekableByteChannelFactory, final int blockSize,
+            final int depth) {
+        return create(seekableByteChannelFactory, blockSize, depth, EXECUTOR);
+    }
+
+    /**
+     * Creates a SeekableByteChannelFactory reading ahead on the given executor.
+     *
+     * @param seekableByteChannelFactory to read ahead of.
+     * @param blockSize bytes in each block.
+     * @param depth blocks read ahead.
+     * @param executor runs the reads ahead.
+     * @return the read ahead SeekableByteChannelFactory.
+     */
+    public static SeekableByteChannelFactory create(final SeekableByteChannelFactory seekableByteChannelFactory, final int blockSize,
+            final int depth, final Executor executor) {
+        Validate.notNull(seekableByteChannelFactory, "Required: seekableByteChannelFactory not null!");
+        Validate.isTrue(blockSize > 0, "Required: blockSize > 0");
+        Validate.isTrue(depth > 0, "Required: depth > 0");
+        Validate.notNull(executor, "Required: executor not null!");
+
+        return () -> new ReadAheadSeekableByteChannel(seekableByteChannelFactory.create(), blockSize, depth, executor);
+    }
+
+    /**
+     * A block read ahead, starting at {@code start}
+     */
+    private static final class Block {
+        private final long start;
+        private final byte[] bytes;
+        private final int length;
+
+        Block(final long start, final byte[] bytes, final int length) {
+            this.start = start;
+            this.bytes = bytes;
+            this.length = length;
+        }
+
+        boolean contains(final long position) {
+            return position >= start && position < start + length;
+        }
+    }
+
+    /**
+     * SeekableByteChannel that reads ahead of sequential reads. Every access to the wrapped channel holds its lock, so the
+     * reads ahead and the plain reads never interleave. The size is read once and kept, so reading buffered blocks never
+     * waits behind a read ahead.
+     */
+    private static final class ReadAheadSeekableByteChannel extends AbstractSeekableByteChannel {
+        private final SeekableByteChannel seekableByteChannel;
+        private final int blockSize;
+        private final int depth;
+        private final Executor executor;
+
+        /** Blocks read or being read ahead, in order */
+        private final Deque<CompletableFuture<Block>> ring = new ArrayDeque<>();
+        /** Consumed block buffers for reuse, filled by this thread and emptied by the executor */
+        private final Queue<byte[]> free = new ConcurrentLinkedQueue<>();
+
+        /** Where the next sequential read would start */
+        private long expected = -1;
+        /** Reads in a row each starting where the last ended */
+        private int sequentialReads = 0;
+        /** Where the next block read ahead starts */
+        private long nextBlockStart;
+        /** The size of the wrapped channel, or -1 until read */
+        private long size = -1;
+
+        ReadAheadSeekableByteChannel(final SeekableByteChannel seekableByteChannel, final int blockSize, final int depth,
+                final Executor executor) {
+            this.seekableByteChannel = seekableByteChannel;
+            this.blockSize = blockSize;
+            this.depth = depth;
+            this.executor = executor;
+        }
+
+        @Override
+        protected void closeImpl() throws IOException {
+            dropRing();
+            synchronized (seekableByteChannel) {
+                seekableByteChannel.close();
+            }
+        }
+
+        @Override
+        protected int readImpl(final ByteBuffer byteBuffer) throws IOException {
+            final long position = position();
+            if (position == expected) {
+                sequentialReads++;
+            } else {
+                sequentialReads = 0;
+                dropRing();
+            }
+
+            final int bytesRead;
+            final Block head = sequentialReads >= SEQUENTIAL_THRESHOLD ? head(position) : null;
+            if (head == null) {
+                synchronized (seekableByteChannel) {
+                    seekableByteChannel.position(position);
+                    bytesRead = seekableByteChannel.read(byteBuffer);
+                }
+            } else {
+                final int offset = (int) (position - head.start);
+                bytesRead = Math.min(byteBuffer.remaining(), head.length - offset);
+                byteBuffer.put(head.bytes, offset, bytesRead);
+                if (offset + bytesRead == head.length) {
+                    ring.poll();
+                    free.offer(head.bytes);
+                    fillRing();
+                }
+            }
+
+            expected = bytesRead > 0 ? position + bytesRead : -1;
+            return bytesRead;
+        }
+
+        /**
+         * Get the block holding the position, starting to read ahead from it if nothing is in the ring
+         */
+        @Nullable
+        private Block head(final long position) throws IOException {
+            if (ring.isEmpty()) {
+                nextBlockStart = position;
+                fillRing();
+            }
+            final CompletableFuture<Block> future = ring.peek();
+            if (future == null) {
+                return null;
+            }
+            final Block head;
+            try {
+                head = future.join();
+            } catch (CompletionException e) {
+                dropRing();
+                if (e.getCause() instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) e.getCause()).getCause();
+                }
+                throw e;
+            } catch (CancellationException e) {
+                dropRing();
+                return null;
+            }
+            if (!head.contains(position)) {
+                dropRing();
+                return null;
+            }
+            return head;
+        }
+
+        private void fillRing() throws IOException {
+            final long size = size();
+            while (ring.size() < depth && nextBlockStart < size) {
+                final long start = nextBlockStart;
+                final int length = (int) Math.min(blockSize, size - start);
+                final CompletableFuture<Block> previous = ring.peekLast();
+                ring.add(previous == null ? CompletableFuture.supplyAsync(() -> readBlock(start, length), executor)
+                        : previous.thenApplyAsync(b -> readBlock(start, length), executor));
+                nextBlockStart += length;
+            }
+        }
+
+        private Block readBlock(final long start, final int length) {
+            byte[] bytes = free.poll();
+            if (bytes == null) {
+                bytes = new byte[blockSize];
+            }
+            try {
+                synchronized (seekableByteChannel) {
+                    seekableByteChannel.position(start);
+                    return new Block(start, bytes, IOUtils.read(seekableByteChannel, ByteBuffer.wrap(bytes, 0, length)));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void dropRing() {
+            CompletableFuture<Block> future;
+            while ((future = ring.poll()) != null) {
+                future.cancel(false);
+            }
+        }
+
+        @Override
+        protected long sizeImpl() throws IOException {
+            if (size < 0) {
+                synchronized (seekableByteChannel) {
+                    size = seekableByteChannel.size();
+                }
+            }
+            return size;
+        }
+    }
+
+    private static final class ReadAheadThreadFactory implements ThreadFactory {
+        final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread t = new Thread(r, "ReadAhead-daemon-" + count.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package emissary.core.channels;
+
+import org.apache.commons.lang3.Validate;
+
+import java.nio.channels.SeekableByteChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Wraps a {@link SeekableByteChannelFactory} whose backing store has to be released explicitly, such as a temporary
+ * file, so that several payloads can share it. Each holder takes a reference with {@link #retain()} and gives it back
+ * with {@link #release()}, and the store is released when the last reference is given back. The creator holds the first
+ * reference. A payload holding a reference gives it back through the {@link Release} it is disposed with, which takes
+ * another reference for each clone of the payload.
+ */
+public final class RefCountedChannelFactory implements SeekableByteChannelFactory {
+
+    private final SeekableByteChannelFactory sbcf;
+    private final Runnable onLastRelease;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    private RefCountedChannelFactory(final SeekableByteChannelFactory sbcf, final Runnable onLastRelease) {
+        Validate.notNull(sbcf, "Required: sbcf not null");
+        Validate.notNull(onLastRelease, "Required: onLastRelease not null");
+        this.sbcf = sbcf;
+        this.onLastRelease = onLastRelease;
+    }
+
+    /**
+     * Wrap a factory, holding one reference to it
+     *
+     * @param sbcf to wrap
+     * @param onLastRelease releases the backing store once all references are given back
+     * @return the wrapped factory
+     */
+    public static RefCountedChannelFactory create(final SeekableByteChannelFactory sbcf, final Runnable onLastRelease) {
+        return new RefCountedChannelFactory(sbcf, onLastRelease);
+    }
+
+    /**
+     * Creates a channel on the backing store
+     *
+     * @return the channel
+     * @throws IllegalStateException if the backing store was already released
+     */
+    @Override
+    public SeekableByteChannel create() {
+        if (references.get() <= 0) {
+            throw new IllegalStateException("Channel factory already released");
+        }
+        return sbcf.create();
+    }
+
+    /**
+     * Take another reference
+     *
+     * @return this factory
+     * @throws IllegalStateException if the backing store was already released
+     */
+    public RefCountedChannelFactory retain() {
+        int count;
+        do {
+            count = references.get();
+            if (count <= 0) {
+                throw new IllegalStateException("Channel factory already released");
+            }
+        } while (!references.compareAndSet(count, count + 1));
+        return this;
+    }
+
+    /**
+     * Give back a reference, releasing the backing store if it was the last
+     *
+     * @return true if this released the backing store
+     */
+    public boolean release() {
+        final int count = references.decrementAndGet();
+        if (count == 0) {
+            onLastRelease.run();
+            return true;
+        }
+        if (count < 0) {
+            references.incrementAndGet();
+            throw new IllegalStateException("Channel factory released more times than it was retained");
+        }
+        return false;
+    }
+
+    /**
+     * Get a dispose runnable that gives back one reference held by a payload
+     *
+     * @return the runnable
+     */
+    public Release releaser() {
+        return new Release(this);
+    }
+
+    /**
+     * Get the number of references still held
+     */
+    public int getReferenceCount() {
+        return Math.max(0, references.get());
+    }
+
+    /**
+     * Gives back the reference of each payload it is disposed with. A payload is cloned with its dispose runnables, so each
+     * clone takes its own reference with {@link #retain()} and every holder gives back exactly one.
+     */
+    public static final class Release implements Runnable {
+        private final RefCountedChannelFactory factory;
+
+        private Release(final RefCountedChannelFactory factory) {
+            this.factory = factory;
+        }
+
+        /**
+         * Take another reference for a new holder of this runnable
+         *
+         * @throws IllegalStateException if the backing store was already released
+         */
+        public void retain() {
+            factory.retain();
+        }
+
+        @Override
+        public void run() {
+            factory.release();
+        }
+    }
+}
@@ -55,6 +55,39 @@ public final class SeekableByteChannelHelper {
         return FileChannelFactory.create(path);
     }
 
+    /**
+     * Create a memory-mapped file SBC factory. The mapping is released when the last reference is given back, so register
+     * the release on dispose, e.g. {@code DisposeHelper.add(ibdo, sbcf::release)}. Children sprouted with
+     * {@link emissary.core.DataObjectFactory#getSegmentInstance} hold their own reference.
+     *
+     * @param path to the file, which must not change while mapped
+     * @return the factory, holding one reference
+     * @throws IOException if the file cannot be opened
+     */
+    public static RefCountedChannelFactory mapped(final Path path) throws IOException {
+        final MappedChannelFactory mapped = MappedChannelFactory.create(path);
+        return RefCountedChannelFactory.create(mapped, () -> {
+            try {
+                mapped.close();
+            } catch (IOException e) {
+                logger.warn("Could not close mapping of {}", path, e);
+            }
+        });
+    }
+
+    /**
+     * Create a compressed file SBC factory, writing the data of another factory to the file as independently compressed
+     * blocks so that reads decompress only the blocks they touch.
+     * 
+     * @param path to the file to write
+     * @param sbcf holding the data
+     * @return the factory
+     * @throws IOException if the data cannot be read or the file written
+     */
+    public static SeekableByteChannelFactory compressed(final Path path, final SeekableByteChannelFactory sbcf) throws IOException {
+        return CompressedChannelFactory.write(path, sbcf);
+    }
+
     /**
      * Create a fill SBC factory.
      * 
@@ -66,6 +99,50 @@ public final class SeekableByteChannelHelper {
         return FillChannelFactory.create(size, value);
     }
 
+    /**
+     * Create a caching SBC factory, reading through the shared {@link BlockCache} so that every channel it creates, and
+     * every later pass over the same data, reuses the blocks already read.
+     * 
+     * @param sbcf to cache
+     * @return the factory
+     */
+    public static SeekableByteChannelFactory cached(final SeekableByteChannelFactory sbcf) {
+        return CachedChannelFactory.create(sbcf);
+    }
+
+    /**
+     * Create a read ahead SBC factory, reading the next blocks in the background while a consumer reads sequentially.
+     * 
+     * @param sbcf to read ahead of
+     * @return the factory
+     */
+    public static SeekableByteChannelFactory readAhead(final SeekableByteChannelFactory sbcf) {
+        return ReadAheadChannelFactory.create(sbcf);
+    }
+
+    /**
+     * Create a segment SBC factory, a window onto part of another factory's data without copying it.
+     * 
+     * @param sbcf holding the data
+     * @param start of the segment
+     * @param length of the segment
+     * @return the factory
+     */
+    public static SeekableByteChannelFactory segment(final SeekableByteChannelFactory sbcf, final long start, final long length) {
+        return SegmentChannelFactory.create(sbcf, start, length);
+    }
+
+    /**
+     * Create a reference counted SBC factory for data that has to be released once no longer used.
+     * 
+     * @param sbcf to wrap
+     * @param onLastRelease releases the data once every reference is given back
+     * @return the factory, holding one reference
+     */
+    public static RefCountedChannelFactory refCounted(final SeekableByteChannelFactory sbcf, final Runnable onLastRelease) {
+        return RefCountedChannelFactory.create(sbcf, onLastRelease);
+    }
+
     /**
      * Create an InputStream SBC factory.
      * 
@@ -314,14 +314,16 @@ public class DirectoryEntry implements Serializable {
      * @param key the key
      */
     protected void setKey(final String key) {
-        this.theKey = KeyManipulator.removeExpense(key);
-        this.serviceType = KeyManipulator.getServiceType(this.theKey);
-        this.serviceName = KeyManipulator.getServiceName(this.theKey);
-        this.dataType = KeyManipulator.getDataType(key);
-        this.dataId = this.dataType + KeyManipulator.DATAIDSEPARATOR + this.serviceType;
-        this.serviceLocation = KeyManipulator.getServiceLocation(key);
-        this.serviceHostUrl = KeyManipulator.getServiceHostUrl(key);
-        final int exp = KeyManipulator.getExpense(key, -1);
+        final ParsedKey parsed = ParsedKey.of(key);
+        final ParsedKey bare = parsed.withoutExpense();
+        this.theKey = bare.getKey();
+        this.serviceType = bare.getServiceType();
+        this.serviceName = bare.getServiceName();
+        this.dataType = parsed.getDataType();
+        this.dataId = this.dataType.equals(bare.getDataType()) ? bare.getDataId() : this.dataType + KeyManipulator.DATAIDSEPARATOR + this.serviceType;
+        this.serviceLocation = parsed.getServiceLocation();
+        this.serviceHostUrl = parsed.getServiceHostUrl();
+        final int exp = parsed.getExpense(-1);
         if (exp > -1) {
             setCqeFromExp(exp);
         }
@@ -203,6 +203,16 @@ public class DirectoryEntryList extends CopyOnWriteArrayList<DirectoryEntry> {
      * @param desiredExpense the expense we want
      */
     public DirectoryEntry pickOneOf(final int desiredExpense) {
+        return pickOneOf(desiredExpense, null);
+    }
+
+    /**
+     * Pick one of any that are tied for expense, using the live load of the places when a selector is supplied
+     *
+     * @param desiredExpense the expense we want
+     * @param selector chooses among tied entries by load, or null to take the first
+     */
+    public DirectoryEntry pickOneOf(final int desiredExpense, @Nullable final LoadAwareSelector selector) {
         int min = 0;
         int max = 0;
         int pos = 0;
@@ -231,6 +241,11 @@ public class DirectoryEntryList extends CopyOnWriteArrayList<DirectoryEntry> {
             return getEntry(min);
         }
 
+        // duplicated places are expected when balancing by load
+        if (selector != null && selector.getPolicy() != LoadAwareSelector.Policy.FIRST) {
+            return selector.select(this, min, max);
+        }
+
         // we have more than one (which we really should prevent at start-up)
         List<String> serviceList = new ArrayList<>();
         for (DirectoryEntry entry : this) {
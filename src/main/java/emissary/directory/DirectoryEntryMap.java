@@ -26,6 +26,10 @@ public class DirectoryEntryMap extends ConcurrentHashMap<String, DirectoryEntryL
     /** Value of SHALLOW_COPY flag */
     public static final boolean SHALLOW_COPY = false;
 
+    /** Trie of the dataIds in this map for wildcard lookups, rebuilt on demand after deserialization */
+    @Nullable
+    private transient volatile WildcardIndex wildcardIndex = new WildcardIndex();
+
     /**
      * No arg ctor supplies our tuned defaults to the super ctor
      */
@@ -82,6 +86,66 @@ public class DirectoryEntryMap extends ConcurrentHashMap<String, DirectoryEntryL
         }
     }
 
+    @Override
+    public DirectoryEntryList put(final String key, final DirectoryEntryList value) {
+        final DirectoryEntryList previous = super.put(key, value);
+        getWildcardIndex().add(key);
+        return previous;
+    }
+
+    @Override
+    public DirectoryEntryList putIfAbsent(final String key, final DirectoryEntryList value) {
+        final DirectoryEntryList previous = super.putIfAbsent(key, value);
+        getWildcardIndex().add(key);
+        return previous;
+    }
+
+    @Override
+    public void putAll(final Map<? extends String, ? extends DirectoryEntryList> m) {
+        for (final Map.Entry<? extends String, ? extends DirectoryEntryList> entry : m.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        this.wildcardIndex = new WildcardIndex();
+    }
+
+    /**
+     * Get the index of dataIds in this map, building it from the keys if needed
+     */
+    private WildcardIndex getWildcardIndex() {
+        WildcardIndex index = this.wildcardIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = this.wildcardIndex;
+                if (index == null) {
+                    index = new WildcardIndex(keySet());
+                    this.wildcardIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Collect the entries for all of the wildcarded forms of the dataId in a single pass over the index. The result is the
+     * same as {@link WildcardEntry#getWildcardedEntry(String, DirectoryEntryMap)}.
+     *
+     * @param dataId the dataId to wildcard, dataType::serviceType
+     * @return new list of matching entries, possibly empty
+     */
+    public DirectoryEntryList getWildcardedEntryList(final String dataId) {
+        final DirectoryEntryList matches = getWildcardIndex().getWildcardedEntry(dataId, this);
+        if (matches != null) {
+            return matches;
+        }
+        // Nested parenthetical forms are left to the string expansion
+        return WildcardEntry.getWildcardedEntry(dataId, this);
+    }
+
     /**
      * Add a directory entry to the appropriate DirectoryEntryList If it is a duplicate entry in all parts except cost, only
      * the lowest cost entry is kept. Either this entry or the one already in the list will be discarded.
@@ -89,8 +153,7 @@ public class DirectoryEntryMap extends ConcurrentHashMap<String, DirectoryEntryL
      * @param d the entry to add
      */
     public void addEntry(final DirectoryEntry d) {
-        final String dataId = KeyManipulator.getDataId(d.getKey());
-        addEntry(dataId, d);
+        addEntry(d.getDataId(), d);
     }
 
     /**
@@ -171,7 +234,7 @@ public class DirectoryEntryMap extends ConcurrentHashMap<String, DirectoryEntryL
      * @return the removed entry or null if not found
      */
     public DirectoryEntry removeEntry(final String entryKey) {
-        final String dataId = KeyManipulator.getDataId(entryKey);
+        final String dataId = ParsedKey.of(entryKey).getDataId();
         return removeEntry(dataId, entryKey);
     }
 
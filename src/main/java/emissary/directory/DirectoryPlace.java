@@ -3,7 +3,9 @@ package emissary.directory;
 import emissary.config.Configurator;
 import emissary.core.EmissaryException;
 import emissary.core.IBaseDataObject;
+import emissary.core.MetricsManager;
 import emissary.core.Namespace;
+import emissary.core.NamespaceException;
 import emissary.log.MDCConstants;
 import emissary.place.ServiceProviderPlace;
 import emissary.server.mvc.adapters.DirectoryAdapter;
@@ -48,6 +50,14 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
      */
     protected DirectoryEntryMap entryMap = new DirectoryEntryMap();
 
+    /** Compiled routes from the entryMap by dataId, null when disabled */
+    @Nullable
+    protected RouteCache routeCache;
+
+    /** Chooses among places tied for expense by their load, null to take the first */
+    @Nullable
+    protected LoadAwareSelector loadSelector;
+
     /** Peer directories to this one */
     protected Set<DirectoryEntry> peerDirectories = new CopyOnWriteArraySet<>();
 
@@ -148,9 +158,28 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
      * <li>HEARTBEAT_INTERVAL_SECONDS, default is 30</li>
      * <li>HEARTBEAT_FAILURE_THRESHOLD, set transient failure count, default owned by HeartbeatManager</li>
      * <li>HEARTBEAT_PERMANENT_FAILURE_THRESHOLD, set permanent failure count, default owned by HeartbeatManager</li>
+     * <li>ROUTE_CACHE_ENABLED, compile and cache routes in nextKeys, default is true</li>
+     * <li>ROUTE_CACHE_SIZE, maximum number of compiled routes, default is {@value RouteCache#DEFAULT_MAX_ROUTES}</li>
+     * <li>LOAD_AWARE_SELECTION, how to choose among places tied for expense, one of FIRST, POWER_OF_TWO or LEAST_LOADED,
+     * default is FIRST</li>
      * </ul>
      */
     private void setupDirectory() {
+        final LoadAwareSelector.Policy policy =
+                LoadAwareSelector.Policy.fromName(configG.findStringEntry("LOAD_AWARE_SELECTION"), LoadAwareSelector.Policy.FIRST);
+        if (policy != LoadAwareSelector.Policy.FIRST) {
+            this.loadSelector = new LoadAwareSelector(policy, myKey);
+        }
+
+        if (configG.findBooleanEntry("ROUTE_CACHE_ENABLED", true)) {
+            this.routeCache = new RouteCache(configG.findIntEntry("ROUTE_CACHE_SIZE", RouteCache.DEFAULT_MAX_ROUTES));
+            try {
+                this.routeCache.registerMetrics(MetricsManager.lookup().getMetricRegistry());
+            } catch (NamespaceException ex) {
+                logger.debug("No metrics manager available for route cache metrics");
+            }
+        }
+
         if (this.emissaryNode.isValid() && !this.emissaryNode.isStandalone()) {
             // Start a heart beat manager with initial and interval seconds
             final int initialSeconds = configG.findIntEntry("HEARTBEAT_DELAY_SECONDS", 30);
@@ -353,6 +382,7 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
         logger.debug("Doing zone transfer with peer {}", peerKey);
         // TODO See DirectoryPlace for spy example which needs to be addressed
         final DirectoryEntryMap newEntries = loadRemoteEntries(peerKey, this.entryMap);
+        invalidateRoutes();
         if ((newEntries == null) || newEntries.isEmpty()) {
             logger.debug("We got nothing back from the peer zone xfer");
             return;
@@ -614,6 +644,7 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
 
         // add them
         this.entryMap.addEntries(entryList);
+        invalidateRoutes();
 
         // notify all observers
         this.observerManager.placeAddEntries(entryList);
@@ -762,6 +793,7 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
             // failed directory. This has the effect of causing them
             // not to be chosen as much.
             final List<DirectoryEntry> list = this.entryMap.collectAllMatching(hmKey);
+            invalidateRoutes();
             this.observerManager.placeCostChangeEntries(list);
         }
 
@@ -968,16 +1000,16 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
     protected List<DirectoryEntry> nextKeys(final String dataId, final IBaseDataObject payload, @Nullable final DirectoryEntry lastPlace,
             final DirectoryEntryMap entries) {
         // Find the entry list for the type being requested
-        final DirectoryEntryList currentList = getWildcardedEntryList(dataId, entries);
+        final DirectoryEntryList candidates = getWildcardedEntryList(dataId, entries);
 
         // Nothing for the dataId or any wildcarded versions, we are done
-        if ((currentList == null) || currentList.isEmpty()) {
+        if ((candidates == null) || candidates.isEmpty()) {
             logger.debug("nextKey - nothing found here for {}", dataId);
             return List.of();
         }
 
-        // remove denied entries
-        currentList.removeIf(de -> de.getLocalPlace() != null && de.getLocalPlace().isDenied(payload.currentForm()));
+        // remove denied entries, copying first since the candidates may be a shared compiled route
+        final DirectoryEntryList currentList = removeDenied(candidates, payload);
 
         if (currentList.isEmpty()) {
             logger.debug("nextKeys - no non-DENIED entries found here for {}", dataId);
@@ -992,7 +1024,7 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
         DirectoryEntry trialEntry = currentList.getEntry(0);
         if (lastPlace == null || (!lastPlace.getDataId().equals(dataId) && !trialEntry.getServiceLocation().equals(lastPlace.getServiceLocation()))) {
             logger.debug("doing first in list for {}", trialEntry);
-            keyList.add(currentList.pickOneOf(trialEntry.getExpense()));
+            keyList.add(currentList.pickOneOf(trialEntry.getExpense(), this.loadSelector));
         } else {
             // Trying a particular "dataType::serviceType" pair again
             for (int i = 0; i < currentList.size(); i++) {
@@ -1027,7 +1059,7 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
 
                 // Entry is more expense and different service
                 logger.debug("nextKey - doing next in list");
-                keyList.add(currentList.pickOneOf(trialEntry.getExpense()));
+                keyList.add(currentList.pickOneOf(trialEntry.getExpense(), this.loadSelector));
                 break;
             }
 
@@ -1043,6 +1075,8 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
      * @param entries the entry map to use
      * @return DirectoryEntryList or null if none
      */
+    // Only routes from this place's own map are cached, so the map is compared by identity
+    @SuppressWarnings("ReferenceEquality")
     protected DirectoryEntryList getWildcardedEntryList(final String dataId, final DirectoryEntryMap entries) {
         // Ids of the form FOO-BAR(ASCII)-BAZ will be wildcarded as:
         // FOO-BAR(ASCII)-BAZ
@@ -1050,7 +1084,58 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
         // FOO-BAR(*)-*
         // FOO-*
         // See WildcardEntry for a more thorough example
-        return WildcardEntry.getWildcardedEntry(dataId, entries);
+        if (this.routeCache != null && entries == this.entryMap) {
+            return this.routeCache.get(dataId, entries::getWildcardedEntryList);
+        }
+        return entries.getWildcardedEntryList(dataId);
+    }
+
+    /**
+     * Get the entries that do not deny the current form of the payload. The list passed in is not modified.
+     *
+     * @param candidates the possible entries
+     * @param payload the payload being routed
+     * @return the candidates list itself if nothing is denied, otherwise a filtered copy
+     */
+    protected DirectoryEntryList removeDenied(final DirectoryEntryList candidates, final IBaseDataObject payload) {
+        final String form = payload.currentForm();
+        for (final DirectoryEntry de : candidates) {
+            if (de.getLocalPlace() != null && de.getLocalPlace().isDenied(form)) {
+                final DirectoryEntryList allowed = new DirectoryEntryList(candidates);
+                allowed.removeIf(e -> e.getLocalPlace() != null && e.getLocalPlace().isDenied(form));
+                return allowed;
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Mark all compiled routes stale after a change to the entryMap
+     */
+    protected void invalidateRoutes() {
+        if (this.routeCache != null) {
+            this.routeCache.invalidate();
+        }
+    }
+
+    /**
+     * Get the compiled route cache for monitoring
+     *
+     * @return the route cache or null if disabled
+     */
+    @Nullable
+    public RouteCache getRouteCache() {
+        return this.routeCache;
+    }
+
+    /**
+     * Get the selector used among places tied for expense
+     *
+     * @return the selector or null if the first tied place is always used
+     */
+    @Nullable
+    public LoadAwareSelector getLoadSelector() {
+        return this.loadSelector;
     }
 
     /**
@@ -1213,6 +1298,7 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
             final List<DirectoryEntry> m = this.entryMap.removeAllMatching(key);
             matches.addAll(m);
         }
+        invalidateRoutes();
 
         final int count = matches.size();
         if (logger.isDebugEnabled()) {
@@ -1308,6 +1394,7 @@ public class DirectoryPlace extends ServiceProviderPlace implements IRemoteDirec
 
         // Nuke em
         this.entryMap.clear();
+        invalidateRoutes();
 
         // Remove peers and Notify all observers that we are leaving the group
         this.peerDirectories.clear();
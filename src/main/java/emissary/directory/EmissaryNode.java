@@ -250,14 +250,14 @@ public class EmissaryNode {
         AgentPool pool = new AgentPool(new MobileAgentFactory());
         logger.debug("Setup AgentPool with {} agents...", pool.getNumIdle());
 
-        // The MoveSpool
-        MoveSpool spool = new MoveSpool();
-        logger.debug("Started MoveSpool...{}", spool);
-
         // The metrics manager
         MetricsManager metricsManager = new MetricsManager();
         logger.debug("Started metrics manager...{}", metricsManager);
 
+        // The MoveSpool
+        MoveSpool spool = new MoveSpool();
+        logger.debug("Started MoveSpool...{}", spool);
+
         // The resource watcher
         ResourceWatcher watcher = new ResourceWatcher(metricsManager);
         logger.debug("Started resource watcher...{}", watcher);
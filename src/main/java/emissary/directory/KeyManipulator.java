@@ -191,14 +191,14 @@ public class KeyManipulator implements Serializable {
      */
     public static int numTuplesInKey(final String key) {
         int count = 0;
-        final byte[] keyBytes = key.getBytes();
 
-        for (int i = 0; i < keyBytes.length; i++) {
-            if (keyBytes[i] == KeyManipulator.SEPARATOR) {
+        for (int i = 0; i < key.length(); i++) {
+            final char c = key.charAt(i);
+            if (c == KeyManipulator.SEPARATOR) {
                 count++;
             }
             // Dont count separators in the hostname portion
-            if ((i > 0) && (keyBytes[i] == CLASSSEPARATOR) && (keyBytes[i - 1] == CLASSSEPARATOR)) {
+            if ((i > 0) && (c == CLASSSEPARATOR) && (key.charAt(i - 1) == CLASSSEPARATOR)) {
                 break;
             }
         }
@@ -0,0 +1,192 @@
+package emissary.directory;
+
+import emissary.core.NamespaceException;
+import emissary.core.PlaceLoad;
+import emissary.core.ResourceWatcher;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+
+/**
+ * Choose among directory entries that are tied for expense using the live load of each place. Without this the first of
+ * the tied entries is always chosen, so one copy of a duplicated place builds a backlog while its twin sits idle.
+ *
+ * <p>
+ * The load of a place comes from the {@link ResourceWatcher}, which tracks the agents in each place and how long recent
+ * visits took. It tracks places by name, so only entries on this node are scored by it. Places on other nodes, and
+ * places the watcher knows nothing about, get the mean score of the known places they are tied with, so they neither
+ * always win nor always lose, and a known place wins an equal score. When no tied place has a known load the first
+ * entry is chosen, as without a selector.
+ */
+public class LoadAwareSelector {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadAwareSelector.class);
+
+    /** Score of a place whose load is not known here */
+    static final long UNKNOWN = -1L;
+
+    /**
+     * How to choose among the tied entries
+     */
+    public enum Policy {
+        /** Always the first tied entry, the behavior without a selector */
+        FIRST,
+        /** The less loaded of two tied entries picked at random */
+        POWER_OF_TWO,
+        /** The least loaded of all the tied entries */
+        LEAST_LOADED;
+
+        /**
+         * Look up a policy by name, ignoring case
+         *
+         * @param name the policy name
+         * @param dflt returned when the name is null or not a policy
+         */
+        public static Policy fromName(@Nullable final String name, final Policy dflt) {
+            if (name == null) {
+                return dflt;
+            }
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                logger.warn("Unknown load aware selection policy {}, using {}", name, dflt);
+                return dflt;
+            }
+        }
+    }
+
+    private final Policy policy;
+
+    /** The protocol://host:port/ of places on this node */
+    private final String localHostUrl;
+
+    /** Look up the load of a place on this node by place name */
+    private final Function<String, PlaceLoad> loads;
+
+    /**
+     * Create a selector using the load tracked by the registered {@link ResourceWatcher}
+     *
+     * @param policy how to choose
+     * @param localKey key of a place on this node, such as the directory
+     */
+    public LoadAwareSelector(final Policy policy, final String localKey) {
+        this(policy, localKey, LoadAwareSelector::watchedLoad);
+    }
+
+    /**
+     * Create a selector
+     *
+     * @param policy how to choose
+     * @param localKey key of a place on this node, such as the directory
+     * @param loads look up the load of a place on this node by place name, may return null for unknown places
+     */
+    public LoadAwareSelector(final Policy policy, final String localKey, final Function<String, PlaceLoad> loads) {
+        this.policy = policy;
+        this.localHostUrl = KeyManipulator.getServiceHostUrl(localKey);
+        this.loads = loads;
+    }
+
+    public Policy getPolicy() {
+        return this.policy;
+    }
+
+    /**
+     * Choose one of the entries from min to max inclusive
+     *
+     * @param list the expense sorted entries
+     * @param min position of the first tied entry
+     * @param max position of the last tied entry
+     * @return the chosen entry
+     */
+    public DirectoryEntry select(final DirectoryEntryList list, final int min, final int max) {
+        if (min >= max || this.policy == Policy.FIRST) {
+            return list.getEntry(min);
+        }
+
+        final long[] scores = new long[max - min + 1];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = score(list.getEntry(min + i));
+        }
+        final long neutral = neutral(scores);
+
+        if (this.policy == Policy.POWER_OF_TWO) {
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            final int a = random.nextInt(scores.length);
+            int b = random.nextInt(scores.length - 1);
+            if (b >= a) {
+                b++;
+            }
+            // keep list order between the pair so ties favor the earlier entry
+            final int first = Math.min(a, b);
+            final int second = Math.max(a, b);
+            return list.getEntry(min + (beats(scores, neutral, second, first) ? second : first));
+        }
+
+        int best = 0;
+        for (int i = 1; i < scores.length; i++) {
+            if (beats(scores, neutral, i, best)) {
+                best = i;
+            }
+        }
+        return list.getEntry(min + best);
+    }
+
+    /**
+     * The score given to entries whose load is not known, the mean of the known scores
+     *
+     * @param scores the scores of the tied entries
+     * @return the mean known score, or zero when none is known
+     */
+    static long neutral(final long[] scores) {
+        long total = 0;
+        int known = 0;
+        for (final long s : scores) {
+            if (s != UNKNOWN) {
+                total += s;
+                known++;
+            }
+        }
+        return known == 0 ? 0L : total / known;
+    }
+
+    /**
+     * Whether entry i should be chosen over entry j. On equal scores a known load wins over an unknown one.
+     */
+    private static boolean beats(final long[] scores, final long neutral, final int i, final int j) {
+        final long si = scores[i] == UNKNOWN ? neutral : scores[i];
+        final long sj = scores[j] == UNKNOWN ? neutral : scores[j];
+        return si < sj || (si == sj && scores[i] != UNKNOWN && scores[j] == UNKNOWN);
+    }
+
+    /**
+     * Load score of the place behind an entry, lower is better, or {@link #UNKNOWN}. The load of a place on another node is
+     * unknown, even if a place of the same name here is busy.
+     */
+    long score(final DirectoryEntry entry) {
+        final ParsedKey key = ParsedKey.of(entry.getKey());
+        if (!key.getServiceHostUrl().equals(this.localHostUrl)) {
+            return UNKNOWN;
+        }
+        final PlaceLoad load = this.loads.apply(key.getServiceClassname());
+        return load == null ? UNKNOWN : load.getLoadScore();
+    }
+
+    @Nullable
+    private static PlaceLoad watchedLoad(final String placeName) {
+        try {
+            return ResourceWatcher.lookup().getPlaceLoad(placeName);
+        } catch (NamespaceException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LoadAwareSelector " + this.policy;
+    }
+}
@@ -0,0 +1,298 @@
+package emissary.directory;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+
+import static emissary.directory.KeyManipulator.CLASSSEPARATOR;
+import static emissary.directory.KeyManipulator.DATAIDSEPARATOR;
+import static emissary.directory.KeyManipulator.SEPARATOR;
+
+/**
+ * An immutable, parsed directory key. The positions of the tuple separators are found once when the key is parsed and
+ * the parts of the key are cut out the first time they are asked for and kept, so repeated access does not rescan the
+ * key string the way the {@link KeyManipulator} methods do. The parts returned are the same as the corresponding
+ * KeyManipulator methods return for the same key string.
+ *
+ * <p>
+ * Use {@link #of(String)} to get a shared instance from a bounded intern pool so identical place keys share one
+ * instance and one copy of each of their parts.
+ */
+public final class ParsedKey implements Serializable {
+
+    // Serializable
+    static final long serialVersionUID = -2190447208151387742L;
+
+    /** Maximum number of keys held in the intern pool before it is flushed */
+    public static final int MAX_POOL_SIZE = 20000;
+
+    private static final char DOLLAR = '$';
+    private static final String DOUBLE_SLASH = "//";
+
+    private static final Map<String, ParsedKey> pool = new ConcurrentHashMap<>();
+
+    /** The key as supplied, including any expense */
+    private final String key;
+
+    /** Positions of the first three separators and the end of the service location */
+    private final int sep1;
+    private final int sep2;
+    private final int sep3;
+    private final int locEnd;
+
+    /** Cached hash of the key */
+    private final int hash;
+
+    /** Parsed expense, only meaningful when hasExpense is set */
+    private final int expense;
+    private final boolean hasExpense;
+
+    // Parts are computed on first use, racing threads compute equal values
+    @Nullable
+    private transient String dataType;
+    @Nullable
+    private transient String serviceName;
+    @Nullable
+    private transient String serviceType;
+    @Nullable
+    private transient String serviceLocation;
+    @Nullable
+    private transient String serviceHostUrl;
+    @Nullable
+    private transient String dataId;
+    @Nullable
+    private transient ParsedKey withoutExpense;
+
+    /**
+     * Parse a key, use {@link #of(String)} to share instances
+     *
+     * @param key the directory key, with or without expense
+     */
+    public ParsedKey(final String key) {
+        this.key = key;
+        this.hash = key.hashCode();
+        this.sep1 = key.indexOf(SEPARATOR);
+        this.sep2 = key.indexOf(SEPARATOR, this.sep1 + 1);
+        this.sep3 = key.indexOf(SEPARATOR, this.sep2 + 1);
+        this.locEnd = this.sep3 >= 0 ? key.indexOf(DOLLAR, this.sep3 + 1) : -1;
+
+        int exp = 0;
+        boolean parsed = false;
+        try {
+            exp = Integer.parseInt(key.substring(key.lastIndexOf(DOLLAR) + 1));
+            parsed = true;
+        } catch (NumberFormatException e) {
+            // It's optional...
+        }
+        this.expense = exp;
+        this.hasExpense = parsed;
+    }
+
+    /**
+     * Get the shared parsed instance of the key from the intern pool
+     *
+     * @param key the directory key
+     * @return the shared parsed key
+     */
+    public static ParsedKey of(final String key) {
+        ParsedKey parsed = pool.get(key);
+        if (parsed == null) {
+            if (pool.size() >= MAX_POOL_SIZE) {
+                pool.clear();
+            }
+            parsed = new ParsedKey(key);
+            final ParsedKey existing = pool.putIfAbsent(key, parsed);
+            if (existing != null) {
+                parsed = existing;
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Get the shared copy of a key string
+     *
+     * @param key the directory key
+     * @return an equal string, shared by all users of the pool
+     */
+    public static String intern(final String key) {
+        return of(key).getKey();
+    }
+
+    /**
+     * Number of keys in the intern pool
+     */
+    public static int poolSize() {
+        return pool.size();
+    }
+
+    /**
+     * The key as supplied
+     */
+    public String getKey() {
+        return this.key;
+    }
+
+    /**
+     * The data type, see {@link KeyManipulator#getDataType(String)}
+     */
+    public String getDataType() {
+        String s = this.dataType;
+        if (s == null) {
+            s = this.sep1 >= 0 ? this.key.substring(0, this.sep1) : "";
+            this.dataType = s;
+        }
+        return s;
+    }
+
+    /**
+     * The service name, see {@link KeyManipulator#getServiceName(String)}
+     */
+    public String getServiceName() {
+        String s = this.serviceName;
+        if (s == null) {
+            s = (this.sep1 >= 0 && this.sep2 >= 0) ? this.key.substring(this.sep1 + 1, this.sep2) : "";
+            this.serviceName = s;
+        }
+        return s;
+    }
+
+    /**
+     * The service type, see {@link KeyManipulator#getServiceType(String)}
+     */
+    public String getServiceType() {
+        String s = this.serviceType;
+        if (s == null) {
+            s = (this.sep2 >= 0 && this.sep3 >= 0) ? this.key.substring(this.sep2 + 1, this.sep3) : "";
+            this.serviceType = s;
+        }
+        return s;
+    }
+
+    /**
+     * The service location, see {@link KeyManipulator#getServiceLocation(String)}
+     */
+    public String getServiceLocation() {
+        String s = this.serviceLocation;
+        if (s == null) {
+            if (this.sep3 >= 0) {
+                s = this.locEnd > 0 ? this.key.substring(this.sep3 + 1, this.locEnd) : this.key.substring(this.sep3 + 1);
+            } else {
+                s = "";
+            }
+            this.serviceLocation = s;
+        }
+        return s;
+    }
+
+    /**
+     * The service host url, see {@link KeyManipulator#getServiceHostUrl(String)}
+     */
+    public String getServiceHostUrl() {
+        String s = this.serviceHostUrl;
+        if (s == null) {
+            final String location = getServiceLocation();
+            final int pos = location.lastIndexOf(CLASSSEPARATOR);
+            s = pos > -1 ? location.substring(0, pos + 1) : "";
+            this.serviceHostUrl = s;
+        }
+        return s;
+    }
+
+    /**
+     * The service host and port, see {@link KeyManipulator#getServiceHost(String)}
+     */
+    public String getServiceHost() {
+        final String location = getServiceLocation();
+        final int ds = location.indexOf(DOUBLE_SLASH);
+        if (ds > -1) {
+            final int cs = location.indexOf(CLASSSEPARATOR, ds + 2);
+            if (cs > -1) {
+                return location.substring(ds + 2, cs);
+            }
+        }
+        return "";
+    }
+
+    /**
+     * The service class name, see {@link KeyManipulator#getServiceClassname(String)}
+     */
+    public String getServiceClassname() {
+        final String location = getServiceLocation();
+        final int pos = location.lastIndexOf(CLASSSEPARATOR);
+        return pos >= 0 ? location.substring(pos + 1) : "";
+    }
+
+    /**
+     * The dataId, dataType::serviceType, see {@link KeyManipulator#getDataId(String)}
+     */
+    public String getDataId() {
+        String s = this.dataId;
+        if (s == null) {
+            s = getDataType() + DATAIDSEPARATOR + getServiceType();
+            this.dataId = s;
+        }
+        return s;
+    }
+
+    /**
+     * The expense or -1 if none, see {@link KeyManipulator#getExpense(String)}
+     */
+    public int getExpense() {
+        return getExpense(-1);
+    }
+
+    /**
+     * The expense, see {@link KeyManipulator#getExpense(String, int)}
+     *
+     * @param dflt value to return when the key has no expense
+     */
+    public int getExpense(final int dflt) {
+        return this.hasExpense ? this.expense : dflt;
+    }
+
+    /**
+     * The key with any expense removed, see {@link KeyManipulator#removeExpense(String)}
+     *
+     * @return the shared parsed key without expense, this instance if there is none
+     */
+    public ParsedKey withoutExpense() {
+        ParsedKey p = this.withoutExpense;
+        if (p == null) {
+            final int pos = this.key.indexOf(DOLLAR);
+            p = pos == -1 ? this : of(this.key.substring(0, pos));
+            this.withoutExpense = p;
+        }
+        return p;
+    }
+
+    /**
+     * Whether this is a complete four-tuple key with a host, see {@link KeyManipulator#isKeyComplete(String)}
+     */
+    public boolean isComplete() {
+        return KeyManipulator.numTuplesInKey(this.key) >= KeyManipulator.NUMTUPLES && !getServiceHost().isEmpty();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ParsedKey)) {
+            return false;
+        }
+        final ParsedKey that = (ParsedKey) o;
+        return this.hash == that.hash && this.key.equals(that.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+    @Override
+    public String toString() {
+        return this.key;
+    }
+}
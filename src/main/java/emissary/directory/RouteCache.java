@@ -0,0 +1,180 @@
+package emissary.directory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+
+/**
+ * Compiled routing table for the directory. For each dataId that has been asked about, the resolved and cost sorted
+ * list of wildcard matching entries is kept so that repeated routing requests for the same dataId do not have to
+ * rebuild the wildcard variants and merge the entry lists again.
+ *
+ * <p>
+ * Every change to the directory contents must call {@link #invalidate()}, which bumps the epoch. Routes compiled under
+ * an older epoch are never handed out again, they are recompiled on the next request. The cached lists are shared
+ * between callers and must be treated as read-only.
+ */
+public class RouteCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RouteCache.class);
+
+    /** Default maximum number of compiled routes held */
+    public static final int DEFAULT_MAX_ROUTES = 10000;
+
+    /** Metric name prefix used in {@link #registerMetrics(MetricRegistry)} */
+    public static final String METRICS_PREFIX = "directory.routecache";
+
+    /** The compiled routes by dataId */
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+
+    /** Bumped on every change to the directory contents */
+    private final AtomicLong epoch = new AtomicLong();
+
+    /** Upper bound on the number of compiled routes */
+    private final int maxRoutes;
+
+    private final Counter hits = new Counter();
+    private final Counter misses = new Counter();
+    private final Counter invalidations = new Counter();
+
+    /**
+     * Create a route cache with the default size
+     */
+    public RouteCache() {
+        this(DEFAULT_MAX_ROUTES);
+    }
+
+    /**
+     * Create a route cache
+     *
+     * @param maxRoutes maximum number of compiled routes to hold before the table is flushed
+     */
+    public RouteCache(final int maxRoutes) {
+        this.maxRoutes = maxRoutes;
+    }
+
+    /**
+     * Get the compiled route for the dataId, compiling it with the resolver if there is no current one
+     *
+     * @param dataId the dataId being routed, dataType::serviceType
+     * @param resolver function that builds the cost sorted entry list for a dataId
+     * @return the compiled, read-only entry list, possibly empty but never null
+     */
+    public DirectoryEntryList get(final String dataId, final Function<String, DirectoryEntryList> resolver) {
+        final long current = this.epoch.get();
+        final Route route = this.routes.get(dataId);
+        if (route != null && route.epoch == current) {
+            this.hits.inc();
+            return route.entries;
+        }
+
+        this.misses.inc();
+        DirectoryEntryList entries = resolver.apply(dataId);
+        if (entries == null) {
+            entries = new DirectoryEntryList();
+        }
+
+        if (this.routes.size() >= this.maxRoutes) {
+            logger.debug("Route cache is full at {} routes, flushing", this.routes.size());
+            this.routes.clear();
+        }
+
+        // Stamped with the epoch read before resolving, so a change that
+        // raced with the resolver leaves this route already stale
+        this.routes.put(dataId, new Route(current, entries));
+        return entries;
+    }
+
+    /**
+     * Mark all compiled routes as stale. Call whenever directory entries are added, removed or have their cost changed.
+     *
+     * @return the new epoch
+     */
+    public long invalidate() {
+        this.invalidations.inc();
+        final long next = this.epoch.incrementAndGet();
+        this.routes.clear();
+        logger.debug("Route cache invalidated, epoch is now {}", next);
+        return next;
+    }
+
+    /**
+     * Get the current epoch
+     */
+    public long getEpoch() {
+        return this.epoch.get();
+    }
+
+    /**
+     * Number of routes currently compiled
+     */
+    public int size() {
+        return this.routes.size();
+    }
+
+    /**
+     * Number of requests answered from a compiled route
+     */
+    public long getHitCount() {
+        return this.hits.getCount();
+    }
+
+    /**
+     * Number of requests that had to compile a route
+     */
+    public long getMissCount() {
+        return this.misses.getCount();
+    }
+
+    /**
+     * Number of times the routes were invalidated
+     */
+    public long getInvalidationCount() {
+        return this.invalidations.getCount();
+    }
+
+    /**
+     * Expose the hit, miss and invalidation counters in the registry, replacing any left by a previous cache
+     *
+     * @param registry the registry to use, usually from the MetricsManager
+     */
+    public void registerMetrics(@Nullable final MetricRegistry registry) {
+        if (registry == null) {
+            return;
+        }
+        register(registry, "hits", this.hits);
+        register(registry, "misses", this.misses);
+        register(registry, "invalidations", this.invalidations);
+    }
+
+    private static void register(final MetricRegistry registry, final String name, final Counter counter) {
+        final String fullName = MetricRegistry.name(METRICS_PREFIX, name);
+        registry.remove(fullName);
+        registry.register(fullName, counter);
+    }
+
+    @Override
+    public String toString() {
+        return "RouteCache epoch=" + getEpoch() + " routes=" + size() + " hits=" + getHitCount() + " misses=" + getMissCount();
+    }
+
+    /**
+     * A compiled route and the epoch it was compiled under
+     */
+    private static final class Route {
+        final long epoch;
+        final DirectoryEntryList entries;
+
+        Route(final long epoch, final DirectoryEntryList entries) {
+            this.epoch = epoch;
+            this.entries = entries;
+        }
+    }
+}
@@ -4,8 +4,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import javax.annotation.Nullable;
@@ -83,11 +83,11 @@ public class WildcardEntry {
     }
 
     /**
-     * Get the results of parsing as a set
+     * Get the results of parsing as a set, in the same order as the iterator
      */
     public Set<String> asSet() {
         load();
-        return new HashSet<>(this.wc);
+        return new LinkedHashSet<>(this.wc);
     }
 
     /**
@@ -108,7 +108,7 @@ public class WildcardEntry {
             String dt = this.dataType;
             int lastOpen = this.dataType.length();
             boolean done = false;
-            while (!done) {
+            while (!done && lastOpen > 0) {
                 for (int i = lastOpen - 1; i >= 0; i--) {
                     if (dt.charAt(i) == OPEN) {
                         final int clos = dt.indexOf(CLOS, i);
@@ -0,0 +1,340 @@
+package emissary.directory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * A character trie over the dataIds registered in a {@link DirectoryEntryMap} that finds every registration matching
+ * the wildcard forms of a dataId in a single walk over the dataId characters. The forms matched, and the order they are
+ * reported in, are the same as those produced by {@link WildcardEntry}:
+ * <ol>
+ * <li>the exact dataId</li>
+ * <li>parenthetical expressions replaced by <code>(*)</code> from the right</li>
+ * <li>dash delimited expressions of the fully paren wildcarded form replaced by <code>-*</code> from the right</li>
+ * <li>the pure wildcard <code>*</code></li>
+ * </ol>
+ * No intermediate strings are built, the wildcard characters are matched directly against the trie.
+ *
+ * <p>
+ * Keys are only ever added, a key removed from the map is left in the trie and simply finds nothing in the map. Readers
+ * do not lock, writers are serialized.
+ */
+public class WildcardIndex {
+
+    private static final char DASH = '-';
+    private static final char OPEN = '(';
+    private static final char CLOS = ')';
+    private static final char STAR = '*';
+    private static final String KSEP = KeyManipulator.DATAIDSEPARATOR;
+
+    private final Node root = new Node();
+
+    /**
+     * Create an empty index
+     */
+    public WildcardIndex() {}
+
+    /**
+     * Create an index holding the specified dataIds
+     *
+     * @param keys the dataIds to add
+     */
+    public WildcardIndex(final Collection<String> keys) {
+        for (final String key : keys) {
+            add(key);
+        }
+    }
+
+    /**
+     * Add a registered dataId to the index
+     *
+     * @param key the dataId, dataType::serviceType, possibly containing wildcard forms
+     */
+    public synchronized void add(final String key) {
+        Node node = this.root;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.childOrCreate(key.charAt(i));
+        }
+        node.key = key;
+    }
+
+    /**
+     * Find the registered dataIds matching the wildcard forms of the dataId
+     *
+     * @param dataId the dataId to wildcard, dataType::serviceType
+     * @return the matching registered dataIds, most specific first and without duplicates, or null if the dataId has nested
+     *         or unbalanced parenthetical expressions that this index does not handle
+     */
+    @Nullable
+    public List<String> match(final String dataId) {
+        final int sep = dataId.indexOf(KSEP);
+        final int dtEnd = sep > 0 ? sep : dataId.length();
+
+        // Locate the parenthetical expressions the same way WildcardEntry does
+        final int[] groups = findGroups(dataId, dtEnd);
+        if (groups == null) {
+            return null;
+        }
+        final int groupCount = groups.length / 2;
+        final int dashCount = countDashes(dataId, dtEnd, groups);
+
+        // One slot per wildcard form in WildcardEntry order
+        final Node[] found = new Node[groupCount + dashCount + 2];
+
+        // Exact match, also records each of the partially paren wildcarded forms as they branch off
+        Node node = this.root;
+        int g = 0;
+        for (int i = 0; i < dtEnd && node != null; i++) {
+            if (g < groupCount && i == groups[2 * g]) {
+                if (g > 0) {
+                    walkWildcarded(node, dataId, dtEnd, groups, g, dashCount, found);
+                }
+                g++;
+            }
+            node = node.child(dataId.charAt(i));
+        }
+        found[0] = matchSuffix(node, dataId, dtEnd);
+
+        // Fully paren wildcarded form and its dashed forms
+        walkWildcarded(this.root, dataId, dtEnd, groups, 0, dashCount, found);
+
+        // Pure wildcard
+        found[found.length - 1] = matchSuffix(this.root.child(STAR), dataId, dtEnd);
+
+        return collect(found);
+    }
+
+    /**
+     * Get the entries matching all the wildcard forms of the dataId
+     *
+     * @param dataId the dataId to wildcard
+     * @param map the map holding the entries for the registered dataIds
+     * @return the matching entries, or null if the dataId is one this index does not handle
+     */
+    @Nullable
+    public DirectoryEntryList getWildcardedEntry(final String dataId, final DirectoryEntryMap map) {
+        final List<String> keys = match(dataId);
+        if (keys == null) {
+            return null;
+        }
+        final DirectoryEntryList matches = new DirectoryEntryList();
+        for (final String key : keys) {
+            final DirectoryEntryList found = map.get(key);
+            if (found != null) {
+                matches.addAll(found);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Walk the form with the groups from startGroup onward replaced by the paren wildcard. When every group is wildcarded
+     * the dashed forms are also recorded.
+     */
+    private static void walkWildcarded(@Nullable final Node start, final String dataId, final int dtEnd, final int[] groups, final int startGroup,
+            final int dashCount, final Node[] found) {
+        final int groupCount = groups.length / 2;
+        final boolean dashes = startGroup == 0;
+        int dash = 0;
+        int g = startGroup;
+        int i = startGroup == 0 ? 0 : groups[2 * startGroup];
+        Node node = start;
+        while (i < dtEnd && node != null) {
+            if (g < groupCount && i == groups[2 * g]) {
+                node = parenWildcard(node);
+                i = groups[2 * g + 1] + 1;
+                g++;
+                continue;
+            }
+            final char c = dataId.charAt(i);
+            if (dashes && c == DASH) {
+                // dashed forms are ordered from the right
+                found[groupCount + dashCount - dash] = matchSuffix(node.child(DASH), STAR, dataId, dtEnd);
+                dash++;
+            }
+            node = node.child(c);
+            i++;
+        }
+        found[groupCount - startGroup] = matchSuffix(node, dataId, dtEnd);
+    }
+
+    /**
+     * Follow the paren wildcard from the node
+     */
+    @Nullable
+    private static Node parenWildcard(final Node node) {
+        final Node open = node.child(OPEN);
+        final Node star = open == null ? null : open.child(STAR);
+        return star == null ? null : star.child(CLOS);
+    }
+
+    /**
+     * Follow the single character and then the service type suffix from the node
+     */
+    @Nullable
+    private static Node matchSuffix(@Nullable final Node node, final char c, final String dataId, final int dtEnd) {
+        return node == null ? null : matchSuffix(node.child(c), dataId, dtEnd);
+    }
+
+    /**
+     * Follow the service type suffix of the dataId from the node
+     *
+     * @return the node if it is a registered key
+     */
+    @Nullable
+    private static Node matchSuffix(@Nullable final Node start, final String dataId, final int dtEnd) {
+        Node node = start;
+        for (int i = dtEnd; i < dataId.length() && node != null; i++) {
+            node = node.child(dataId.charAt(i));
+        }
+        return (node == null || node.key == null) ? null : node;
+    }
+
+    /**
+     * Gather the keys of the found nodes in order, dropping duplicate forms
+     */
+    private static List<String> collect(final Node[] found) {
+        final List<String> keys = new ArrayList<>(found.length);
+        for (int i = 0; i < found.length; i++) {
+            final Node n = found[i];
+            if (n != null && !contains(found, i, n)) {
+                keys.add(n.key);
+            }
+        }
+        return keys;
+    }
+
+    private static boolean contains(final Node[] found, final int before, final Node n) {
+        for (int j = 0; j < before; j++) {
+            if (found[j] == n) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Locate the parenthetical expressions of the dataType working from the right as {@link WildcardEntry} does.
+     *
+     * @return open and close positions of each group from the left, or null when the groups are nested or an unclosed paren
+     *         is followed by a group, which WildcardEntry handles by rewriting an already wildcarded string
+     */
+    @Nullable
+    private static int[] findGroups(final String dataId, final int dtEnd) {
+        int[] groups = new int[0];
+        int limit = dtEnd;
+        for (int i = dtEnd - 1; i >= 0; i--) {
+            if (dataId.charAt(i) != OPEN) {
+                continue;
+            }
+            int clos = dataId.indexOf(CLOS, i);
+            if (clos >= dtEnd) {
+                clos = -1;
+            }
+            if (clos < 0 || clos > limit) {
+                if (limit == dtEnd) {
+                    // unclosed paren with nothing wildcarded to the right, done
+                    break;
+                }
+                return null;
+            }
+            final int[] grown = new int[groups.length + 2];
+            grown[0] = i;
+            grown[1] = clos;
+            System.arraycopy(groups, 0, grown, 2, groups.length);
+            groups = grown;
+            limit = i;
+        }
+        return groups;
+    }
+
+    /**
+     * Count the dashes that remain in the fully paren wildcarded dataType
+     */
+    private static int countDashes(final String dataId, final int dtEnd, final int[] groups) {
+        int count = 0;
+        int g = 0;
+        for (int i = 0; i < dtEnd; i++) {
+            if (g < groups.length / 2 && i == groups[2 * g]) {
+                i = groups[2 * g + 1];
+                g++;
+            } else if (dataId.charAt(i) == DASH) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get all the keys held in the index
+     *
+     * @param list the list to add the keys to
+     * @return the list
+     */
+    public List<String> keys(final List<String> list) {
+        this.root.keys(list);
+        return list;
+    }
+
+    /**
+     * A trie node with children in parallel sorted arrays. The arrays are replaced, never modified, so readers always see a
+     * consistent pair.
+     */
+    private static final class Node {
+        private static final char[] NO_CHARS = new char[0];
+        private static final Node[] NO_NODES = new Node[0];
+
+        @Nullable
+        volatile String key;
+        private volatile Children children = new Children(NO_CHARS, NO_NODES);
+
+        @Nullable
+        Node child(final char c) {
+            final Children ch = this.children;
+            final int pos = Arrays.binarySearch(ch.chars, c);
+            return pos >= 0 ? ch.nodes[pos] : null;
+        }
+
+        Node childOrCreate(final char c) {
+            final Children ch = this.children;
+            final int pos = Arrays.binarySearch(ch.chars, c);
+            if (pos >= 0) {
+                return ch.nodes[pos];
+            }
+            final int ins = -pos - 1;
+            final char[] chars = new char[ch.chars.length + 1];
+            final Node[] nodes = new Node[ch.nodes.length + 1];
+            System.arraycopy(ch.chars, 0, chars, 0, ins);
+            System.arraycopy(ch.nodes, 0, nodes, 0, ins);
+            System.arraycopy(ch.chars, ins, chars, ins + 1, ch.chars.length - ins);
+            System.arraycopy(ch.nodes, ins, nodes, ins + 1, ch.nodes.length - ins);
+            final Node n = new Node();
+            chars[ins] = c;
+            nodes[ins] = n;
+            this.children = new Children(chars, nodes);
+            return n;
+        }
+
+        void keys(final List<String> list) {
+            if (this.key != null) {
+                list.add(this.key);
+            }
+            for (final Node n : this.children.nodes) {
+                n.keys(list);
+            }
+        }
+    }
+
+    private static final class Children {
+        final char[] chars;
+        final Node[] nodes;
+
+        Children(final char[] chars, final Node[] nodes) {
+            this.chars = chars;
+            this.nodes = nodes;
+        }
+    }
+}
@@ -5,8 +5,8 @@ import emissary.core.channels.SeekableByteChannelFactory;
 import org.apache.commons.collections4.CollectionUtils;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.channels.Channels;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
@@ -32,6 +32,16 @@ public class ChecksumCalculator {
     /** Used for hash calculations */
     private final List<MessageDigest> digest = new ArrayList<>();
 
+    /** Most bytes read from a channel at a time */
+    static final int BUFFER_SIZE = 256 * 1024;
+
+    /** Reused by every channel digest, grown to the largest data read up to BUFFER_SIZE */
+    @Nullable
+    private byte[] buffer = null;
+
+    /** Length of the data hashed by the last digest, -1 if it could not be read */
+    private long lastLength = -1L;
+
     /**
      * Constructor initializes SHA-1 generator and turns on the CRC32 processing as well
      * 
@@ -145,6 +155,7 @@ public class ChecksumCalculator {
     public ChecksumResults digest(byte[] buffer) {
         // return object to hold results
         ChecksumResults res = new ChecksumResults();
+        lastLength = buffer.length;
 
         // Reset and compute
         for (MessageDigest d : digest) {
@@ -169,49 +180,76 @@ public class ChecksumCalculator {
     }
 
     /**
-     * Calculates a CRC32 and a digest on a {@link java.nio.channels.SeekableByteChannel} of data.
+     * Calculates a CRC32 and a digest on a {@link java.nio.channels.SeekableByteChannel} of data. The data is read once and
+     * every requested sum is fed from the same buffer.
      *
      * @param sbcf Provider of data to compute results for
-     * @return results of computing the requested hashes on the data
+     * @return results of computing the requested hashes on the data, empty if the data could not be read
      */
     public ChecksumResults digest(final SeekableByteChannelFactory sbcf) {
         final ChecksumResults res = new ChecksumResults();
-        final byte[] b = new byte[1024];
+        lastLength = -1L;
+        final Ssdeep fuzzy = ssdeep;
 
-        for (final MessageDigest d : digest) {
-            try (InputStream is = Channels.newInputStream(sbcf.create())) {
+        Ssdeep.FuzzyHasher fuzzyHasher = null;
+        try (SeekableByteChannel sbc = sbcf.create()) {
+            for (final MessageDigest d : digest) {
                 d.reset();
-
-                int bytesRead;
-                while ((bytesRead = is.read(b)) != -1) {
-                    d.update(b, 0, bytesRead);
-                }
-
-                res.setHash(d.getAlgorithm(), d.digest());
-            } catch (final IOException ioe) {
-                // Ignore
             }
-        }
-
-        if (crc != null) {
-            try (InputStream is = Channels.newInputStream(sbcf.create())) {
+            if (crc != null) {
                 crc.reset();
+            }
+            final long size = sbc.size();
+            if (fuzzy != null) {
+                fuzzyHasher = fuzzy.newHasher(size);
+            }
 
-                int bytesRead;
-                while ((bytesRead = is.read(b)) != -1) {
+            final int wanted = (int) Math.max(1L, Math.min(BUFFER_SIZE, size));
+            if (buffer == null || buffer.length < wanted) {
+                buffer = new byte[wanted];
+            }
+            final byte[] b = buffer;
+            final ByteBuffer bb = ByteBuffer.wrap(b);
+            long length = 0;
+            int bytesRead;
+            while ((bytesRead = sbc.read(bb)) != -1) {
+                length += bytesRead;
+                for (final MessageDigest d : digest) {
+                    d.update(b, 0, bytesRead);
+                }
+                if (crc != null) {
                     crc.update(b, 0, bytesRead);
                 }
-
-                res.setCrc(crc.getValue());
-            } catch (final IOException ioe) {
-                // Ignore
+                if (fuzzyHasher != null) {
+                    fuzzyHasher.update(b, 0, bytesRead);
+                }
+                bb.clear();
             }
+            lastLength = length;
+        } catch (final IOException ioe) {
+            // Ignore
+            return res;
         }
 
-        if (ssdeep != null) {
-            res.setSsdeep(ssdeep.fuzzyHash(sbcf));
+        for (final MessageDigest d : digest) {
+            res.setHash(d.getAlgorithm(), d.digest());
+        }
+        if (crc != null) {
+            res.setCrc(crc.getValue());
+        }
+        if (fuzzyHasher != null) {
+            res.setSsdeep(fuzzyHasher.finish());
         }
 
         return res;
     }
+
+    /**
+     * Get the length of the data hashed by the last digest on this calculator
+     *
+     * @return the number of bytes, or -1 if the data could not be read
+     */
+    long getLastLength() {
+        return lastLength;
+    }
 }
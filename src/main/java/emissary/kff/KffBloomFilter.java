@@ -0,0 +1,307 @@
+package emissary.kff;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.lang3.Validate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+/**
+ * A Bloom filter over the hashes held by a {@link KffFilter}, built offline from the same hash list and memory mapped
+ * when loaded, so the bits live off the heap and are shared by every thread. A miss in the Bloom filter means the hash
+ * is certainly not in the list, a hit means it probably is.
+ *
+ * <p>
+ * The file holds a magic number, the name of the hash algorithm the filter was built from, the number of probes, the
+ * number of bits, the number of hashes inserted and then the bits.
+ */
+public final class KffBloomFilter {
+
+    private static final int MAGIC = 0x4b464642;
+    private static final HashFunction MURMUR = Hashing.murmur3_128();
+    private static final long MAX_WORDS = (Integer.MAX_VALUE - 1024) / Long.BYTES;
+
+    private final String algorithm;
+    private final int probes;
+    private final long bits;
+    private final long insertions;
+    private final ByteBuffer words;
+
+    private KffBloomFilter(final String algorithm, final int probes, final long bits, final long insertions, final ByteBuffer words) {
+        this.algorithm = algorithm;
+        this.probes = probes;
+        this.bits = bits;
+        this.insertions = insertions;
+        this.words = words;
+    }
+
+    /**
+     * Map a filter written by {@link Builder#write(Path)}
+     *
+     * @param path of the filter file
+     * @return the filter
+     * @throws IOException if the file cannot be read or is not a filter
+     */
+    public static KffBloomFilter load(final Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < Integer.BYTES + 1 || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a KFF Bloom filter: " + path);
+            }
+            final byte[] name = new byte[buffer.get(Integer.BYTES) & 0xff];
+            buffer.position(Integer.BYTES + 1);
+            buffer.get(name);
+            final int probes = buffer.getInt();
+            final long bits = buffer.getLong();
+            final long insertions = buffer.getLong();
+            final ByteBuffer words = buffer.slice();
+            if (probes <= 0 || bits <= 0 || words.limit() != wordCount(bits) * Long.BYTES) {
+                throw new IOException("Not a KFF Bloom filter: " + path);
+            }
+            return new KffBloomFilter(new String(name, StandardCharsets.US_ASCII), probes, bits, insertions, words);
+        }
+    }
+
+    /**
+     * Start a filter sized for a number of hashes and a false positive rate
+     *
+     * @param algorithm name of the hash algorithm, as used in {@link ChecksumResults}
+     * @param expectedInsertions number of hashes that will be added
+     * @param falsePositiveRate wanted rate of hits for hashes not added
+     * @return the builder
+     */
+    public static Builder builder(final String algorithm, final long expectedInsertions, final double falsePositiveRate) {
+        return new Builder(algorithm, expectedInsertions, falsePositiveRate);
+    }
+
+    /**
+     * Build a filter from the hashes in a sorted fixed length record file, as read by {@link KffFile}
+     *
+     * @param kffFile the record file
+     * @param recordLength bytes in each record
+     * @param hashLength leading bytes of each record that are the hash
+     * @param algorithm name of the hash algorithm
+     * @param falsePositiveRate wanted rate of hits for hashes not in the file
+     * @return the builder holding every hash in the file
+     * @throws IOException if the file cannot be read
+     */
+    public static Builder fromKffFile(final Path kffFile, final int recordLength, final int hashLength, final String algorithm,
+            final double falsePositiveRate) throws IOException {
+        Validate.isTrue(hashLength > 0 && hashLength <= recordLength, "Required: 0 < hashLength <= recordLength");
+        try (FileChannel channel = FileChannel.open(kffFile, StandardOpenOption.READ)) {
+            final long records = channel.size() / recordLength;
+            final Builder builder = builder(algorithm, Math.max(1, records), falsePositiveRate);
+            final ByteBuffer buffer = ByteBuffer.allocate(recordLength * 4096);
+            final byte[] hash = new byte[hashLength];
+            long position = 0;
+            for (long read = 0; read < records;) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), (records - read) * recordLength));
+                while (buffer.hasRemaining()) {
+                    final int n = channel.read(buffer, position);
+                    if (n < 0) {
+                        throw new IOException("Unexpected end of " + kffFile);
+                    }
+                    position += n;
+                }
+                buffer.flip();
+                while (buffer.remaining() >= recordLength) {
+                    buffer.get(hash);
+                    buffer.position(buffer.position() + recordLength - hashLength);
+                    builder.put(hash);
+                    read++;
+                }
+            }
+            return builder;
+        }
+    }
+
+    /**
+     * Build a filter from a text file with one hex encoded hash on each line
+     *
+     * @param hexList the text file
+     * @param algorithm name of the hash algorithm
+     * @param falsePositiveRate wanted rate of hits for hashes not in the file
+     * @return the builder holding every hash in the file
+     * @throws IOException if the file cannot be read or holds a line that is not hex
+     */
+    public static Builder fromHexList(final Path hexList, final String algorithm, final double falsePositiveRate) throws IOException {
+        final long lines;
+        try (Stream<String> s = Files.lines(hexList, StandardCharsets.US_ASCII)) {
+            lines = s.filter(line -> !line.isBlank()).count();
+        }
+        final Builder builder = builder(algorithm, Math.max(1, lines), falsePositiveRate);
+        try (Stream<String> s = Files.lines(hexList, StandardCharsets.US_ASCII)) {
+            s.map(String::trim).filter(line -> !line.isEmpty()).forEach(line -> {
+                try {
+                    builder.put(Hex.decodeHex(line));
+                } catch (DecoderException e) {
+                    throw new UncheckedIOException(new IOException("Not a hex hash: " + line, e));
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return builder;
+    }
+
+    /**
+     * Get the name of the hash algorithm the filter was built from
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Get the number of hashes added when the filter was built
+     */
+    public long getInsertions() {
+        return insertions;
+    }
+
+    /**
+     * Get the false positive rate expected from the size of the filter and the hashes added
+     */
+    public double getExpectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) probes * insertions / bits), probes);
+    }
+
+    /**
+     * Check for a hash
+     *
+     * @param hash bytes of the hash
+     * @return false if the hash was certainly not added, true if it probably was
+     */
+    public boolean mightContain(final byte[] hash) {
+        final HashCode code = MURMUR.hashBytes(hash);
+        final long h1 = code.asLong();
+        final long h2 = ByteBuffer.wrap(code.asBytes()).getLong(Long.BYTES);
+        long combined = h1;
+        for (int i = 0; i < probes; i++) {
+            final long bit = (combined & Long.MAX_VALUE) % bits;
+            if ((words.getLong((int) (bit >>> 6) * Long.BYTES) & (1L << bit)) == 0) {
+                return false;
+            }
+            combined += h2;
+        }
+        return true;
+    }
+
+    private static long wordCount(final long bits) {
+        return (bits + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    /**
+     * Collects hashes on the heap and writes the filter file
+     */
+    public static final class Builder {
+        private final String algorithm;
+        private final int probes;
+        private final long bits;
+        private final long[] words;
+        private long insertions;
+
+        Builder(final String algorithm, final long expectedInsertions, final double falsePositiveRate) {
+            Validate.notNull(algorithm, "Required: algorithm not null");
+            Validate.isTrue(algorithm.length() < 256, "Required: algorithm name under 256 characters");
+            Validate.isTrue(expectedInsertions > 0, "Required: expectedInsertions > 0");
+            Validate.isTrue(falsePositiveRate > 0 && falsePositiveRate < 1, "Required: 0 < falsePositiveRate < 1");
+
+            final long optimal = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            // whole words, and few enough that the header and words fit one mapped buffer
+            this.bits = Math.min(Math.max(Long.SIZE, wordCount(optimal) * Long.SIZE), MAX_WORDS * Long.SIZE);
+            this.probes = Math.max(1, (int) Math.round((double) bits / expectedInsertions * Math.log(2)));
+            this.algorithm = algorithm;
+            this.words = new long[(int) wordCount(bits)];
+        }
+
+        /**
+         * Add a hash
+         *
+         * @param hash bytes of the hash
+         * @return this builder
+         */
+        public Builder put(final byte[] hash) {
+            final HashCode code = MURMUR.hashBytes(hash);
+            final long h1 = code.asLong();
+            final long h2 = ByteBuffer.wrap(code.asBytes()).getLong(Long.BYTES);
+            long combined = h1;
+            for (int i = 0; i < probes; i++) {
+                final long bit = (combined & Long.MAX_VALUE) % bits;
+                words[(int) (bit >>> 6)] |= 1L << bit;
+                combined += h2;
+            }
+            insertions++;
+            return this;
+        }
+
+        /**
+         * Write the filter file
+         *
+         * @param path of the file, replaced if it exists
+         * @throws IOException if the file cannot be written
+         */
+        public void write(final Path path) throws IOException {
+            final byte[] name = algorithm.getBytes(StandardCharsets.US_ASCII);
+            final ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + 1 + name.length + Integer.BYTES + Long.BYTES + Long.BYTES);
+            header.putInt(MAGIC).put((byte) name.length).put(name).putInt(probes).putLong(bits).putLong(insertions).flip();
+
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE)) {
+                writeFully(channel, header);
+                final ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES * 8192);
+                for (int i = 0; i < words.length;) {
+                    buffer.clear();
+                    while (buffer.hasRemaining() && i < words.length) {
+                        buffer.putLong(words[i++]);
+                    }
+                    buffer.flip();
+                    writeFully(channel, buffer);
+                }
+            }
+        }
+
+        private static void writeFully(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Build a filter file from a KFF record file or a list of hex hashes
+     */
+    @SuppressWarnings("SystemOut")
+    public static void main(String[] args) throws Exception {
+        final Path output;
+        if (args.length == 6) {
+            output = Paths.get(args[5]);
+            fromKffFile(Paths.get(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]), args[3], Double.parseDouble(args[4]))
+                    .write(output);
+        } else if (args.length == 4) {
+            output = Paths.get(args[3]);
+            fromHexList(Paths.get(args[0]), args[1], Double.parseDouble(args[2])).write(output);
+        } else {
+            System.err.println("Usage: KffBloomFilter <kff file> <record length> <hash length> <algorithm> <false positive rate> <output file>");
+            System.err.println("       KffBloomFilter <hex hash list> <algorithm> <false positive rate> <output file>");
+            System.exit(1);
+            return;
+        }
+        final KffBloomFilter filter = load(output);
+        System.out.println(output + ": " + filter.getInsertions() + " " + filter.getAlgorithm() + " hashes, expected false positive rate "
+                + filter.getExpectedFalsePositiveRate());
+    }
+}
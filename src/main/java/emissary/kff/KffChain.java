@@ -11,6 +11,8 @@ import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import javax.annotation.Nullable;
 
 /**
@@ -29,6 +31,12 @@ public class KffChain {
     // The algorithms to compute
     protected List<String> algorithms = new ArrayList<>();
 
+    // Most idle calculators kept for reuse
+    static final int MAX_IDLE_CALCULATORS = Runtime.getRuntime().availableProcessors();
+
+    // Idle calculators shared by all threads, dropped when the algorithms change
+    private final BlockingQueue<Calculator> calculators = new ArrayBlockingQueue<>(MAX_IDLE_CALCULATORS);
+
     /**
      * Construct an empty KFF Chain
      */
@@ -121,43 +129,47 @@ public class KffChain {
      * @return result of check
      */
     public KffResult check(final String itemName, final byte[] content) throws NoSuchAlgorithmException {
-        final ChecksumResults sums = computeSums(content);
-        KffResult answer = null;
-        if (content.length < kffMinDataSize || list.isEmpty()) {
-            answer = new KffResult(sums);
-            answer.setItemName(itemName);
-        } else {
-            // Surround checkAgainst with a try/catch to handle the
-            // case where one of the KffFilter throws an Exception.
-            // Without the try/catch, the original checksums are lost
-            // and nulled out in the output
-            try {
-                answer = checkAgainst(list, itemName, sums);
-            } catch (final Exception e) {
-                logger.debug("Problem running KffFilter list.  Using only Checksums", e);
-                answer = new KffResult(sums);
-                answer.setItemName(itemName);
-            }
-        }
-        return answer;
+        return check(itemName, computeSums(content), content.length);
     }
 
     /**
      * Check content on our chain in the order loaded Data smaller than minDataSize will get hashes computed but can never
-     * be reported as KNOWN data.
+     * be reported as KNOWN data. The data is read once, for the hashes and the size together.
      *
      * @return result of check
      * @throws NoSuchAlgorithmException if the checksum can't be calculated
      * @throws IOException if an error occurred reading the data
      */
     public KffResult check(final String itemName, final SeekableByteChannelFactory sbcf) throws NoSuchAlgorithmException, IOException {
-        final ChecksumResults sums = computeSums(sbcf);
-        KffResult answer = null;
-        long sbcSize = 0;
-        try (SeekableByteChannel sbc = sbcf.create()) {
-            sbcSize = sbc.size();
+        final Calculator calc = borrowCalculator();
+        final ChecksumResults sums;
+        long sbcSize;
+        try {
+            sums = calc.calculator.digest(sbcf);
+            sbcSize = calc.calculator.getLastLength();
+        } finally {
+            releaseCalculator(calc);
+        }
+        if (sbcSize < 0) {
+            // the data could not be read for hashing, so let opening it again report why
+            try (SeekableByteChannel sbc = sbcf.create()) {
+                sbcSize = sbc.size();
+            }
         }
-        if (sbcSize < kffMinDataSize || list.isEmpty()) {
+        return check(itemName, sums, sbcSize);
+    }
+
+    /**
+     * Check precomputed sums on our chain
+     *
+     * @param itemName name of the current item, filled into the result
+     * @param sums the hash sums for the content
+     * @param size of the content
+     * @return result of check
+     */
+    private KffResult check(final String itemName, final ChecksumResults sums, final long size) {
+        KffResult answer = null;
+        if (size < kffMinDataSize || list.isEmpty()) {
             answer = new KffResult(sums);
             answer.setItemName(itemName);
         } else {
@@ -206,8 +218,12 @@ public class KffChain {
      * @return results of all requested computations
      */
     public ChecksumResults computeSums(byte[] fileContents) throws NoSuchAlgorithmException {
-        final ChecksumCalculator calc = new ChecksumCalculator(algorithms);
-        return calc.digest(fileContents);
+        final Calculator calc = borrowCalculator();
+        try {
+            return calc.calculator.digest(fileContents);
+        } finally {
+            releaseCalculator(calc);
+        }
     }
 
     /**
@@ -217,7 +233,56 @@ public class KffChain {
      * @return results of all requested computations
      */
     public ChecksumResults computeSums(final SeekableByteChannelFactory sbcf) throws NoSuchAlgorithmException {
-        final ChecksumCalculator calc = new ChecksumCalculator(algorithms);
-        return calc.digest(sbcf);
+        final Calculator calc = borrowCalculator();
+        try {
+            return calc.calculator.digest(sbcf);
+        } finally {
+            releaseCalculator(calc);
+        }
+    }
+
+    /**
+     * Take an idle calculator for the current algorithms, or make one if there is none, so that the digest engines are
+     * looked up once and reset between payloads rather than created for each one. Calculators are not tied to a thread, so
+     * many short lived threads share the few that are idle. Hand it back with {@link #releaseCalculator(Calculator)}.
+     *
+     * @return a calculator only the caller is using
+     * @throws NoSuchAlgorithmException if an algorithm isn't available
+     */
+    Calculator borrowCalculator() throws NoSuchAlgorithmException {
+        Calculator c;
+        while ((c = calculators.poll()) != null) {
+            if (c.algorithms.equals(algorithms)) {
+                return c;
+            }
+        }
+        final List<String> algs = new ArrayList<>(algorithms);
+        return new Calculator(algs, new ChecksumCalculator(algs));
+    }
+
+    /**
+     * Keep a calculator for reuse, unless enough are already idle or the algorithms changed while it was out
+     *
+     * @param c a calculator from {@link #borrowCalculator()}
+     */
+    void releaseCalculator(final Calculator c) {
+        if (c.algorithms.equals(algorithms)) {
+            calculators.offer(c);
+        }
+    }
+
+    /**
+     * A calculator and the algorithms it was made for
+     */
+    static final class Calculator {
+        // Held as the unmodifiable copy from List.copyOf
+        @SuppressWarnings("ImmutableMemberCollection")
+        private final List<String> algorithms;
+        final ChecksumCalculator calculator;
+
+        Calculator(final List<String> algorithms, final ChecksumCalculator calculator) {
+            this.algorithms = List.copyOf(algorithms);
+            this.calculator = calculator;
+        }
     }
 }
@@ -3,6 +3,8 @@ package emissary.kff;
 import emissary.config.ConfigUtil;
 import emissary.config.Configurator;
 import emissary.core.Factory;
+import emissary.core.MetricsManager;
+import emissary.core.NamespaceException;
 import emissary.kff.KffFilter.FilterType;
 
 import org.apache.commons.io.IOUtils;
@@ -35,6 +37,9 @@ public class KffChainLoader {
     @SuppressWarnings("NonFinalStaticField")
     private static Map<String, String> classes;
 
+    @SuppressWarnings("NonFinalStaticField")
+    private static Map<String, String> prefilters;
+
     /**
      * Take away the public constructor
      */
@@ -49,6 +54,7 @@ public class KffChainLoader {
             try {
                 Configurator configG = ConfigUtil.getConfigInfo(KffChain.class);
                 classes = configG.findStringMatchMap("KFF_IMPL_");
+                prefilters = configG.findStringMatchMap("KFF_PREFILTER_");
                 loadFrom(chain, configG.findStringMatchMap("KFF_FILE_KNOWN_"), FilterType.IGNORE);
                 loadFrom(chain, configG.findStringMatchMap("KFF_FILE_DUPE_"), FilterType.DUPLICATE);
 
@@ -96,7 +102,7 @@ public class KffChainLoader {
                     k = new KffFile(name, key, filterType);
                 }
 
-                chain.addFilter(k);
+                chain.addFilter(prefilter(key, k));
                 countLoaded++;
             } catch (IOException e) {
                 logger.error("Exception creating KFF chain element", e);
@@ -105,6 +111,36 @@ public class KffChainLoader {
         return countLoaded;
     }
 
+    /**
+     * Put the configured Bloom filter, if any, in front of a chain element
+     *
+     * @param key config key of the element
+     * @param k the element
+     * @return the prefiltered element, or the element if there is no usable Bloom filter or it writes to its store
+     */
+    private static KffFilter prefilter(String key, KffFilter k) {
+        String path = prefilters.get(key);
+        if (path == null || path.length() == 0) {
+            return k;
+        }
+        if (k.checkWritesStore()) {
+            logger.warn("Ignoring KFF_PREFILTER_{}, {} stores the hashes it misses so every hash must reach it", key, k.getName());
+            return k;
+        }
+        try {
+            KffPrefilter p = new KffPrefilter(k, KffBloomFilter.load(Paths.get(path)));
+            try {
+                p.registerMetrics(MetricsManager.lookup().getMetricRegistry());
+            } catch (NamespaceException e) {
+                logger.debug("No metrics manager available for the {} prefilter metrics", key);
+            }
+            return p;
+        } catch (IOException e) {
+            logger.warn("Cannot load KFF prefilter {} for {}, checking without it", path, key, e);
+            return k;
+        }
+    }
+
     /**
      * Load the configured chain and run some data
      */
@@ -9,6 +9,7 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.util.concurrent.locks.ReentrantLock;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * <p>
@@ -20,9 +21,8 @@ import javax.annotation.Nonnull;
  * <p>
  * Implementation notes: The binary input file is too big to read into memory, so we implement a binary search on the
  * file itself. This is why the records must be sorted, and it will improve performance if only unique records are
- * generated as well. This class assumes JDK1.4+ and memory maps the file. For earlier versions of the JDK, we can seek
- * through the RandomAccessFile instead but performance isn't as good. The file cannot be larger than 2^31 (2 GB)
- * because that is the maximum length of the mapped ByteBuffer.
+ * generated as well. The file is memory mapped and searched through a {@link KffFileIndex}, which takes no lock. If the
+ * file cannot be mapped we seek through the RandomAccessFile instead, one search at a time.
  * </p>
  */
 public class KffFile implements KffFilter {
@@ -49,6 +49,10 @@ public class KffFile implements KffFilter {
 
     protected ReentrantLock reentrantLock = new ReentrantLock();
 
+    /** Lock free lookup on the mapped file, or null to seek through the file */
+    @Nullable
+    private final KffFileIndex index;
+
     /**
      * Creates a new instance of KffFile
      *
@@ -84,6 +88,14 @@ public class KffFile implements KffFilter {
         // Initial high value for binary search is largest index
         bSearchInitHigh = (knownFile.length() / (long) recordLength) - 1;
 
+        KffFileIndex i = null;
+        try {
+            i = KffFileIndex.create(knownFile.getChannel(), recordLength);
+        } catch (IOException e) {
+            logger.warn("Cannot map KFF File {}, searching it one lookup at a time", filename, e);
+        }
+        index = i;
+
         logger.debug("KFF File {} has {} records", filename, (bSearchInitHigh + 1));
     }
 
@@ -130,13 +142,24 @@ public class KffFile implements KffFilter {
     }
 
     /**
-     * Performs a binary search on the file to see if a given HASH/CRC is in the list.
+     * Get the lock free lookup on the mapped file
+     *
+     * @return the index, or null if the file could not be mapped
+     */
+    @Nullable
+    KffFileIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Performs a binary search on the file to see if a given HASH/CRC is in the list, seeking through the file while
+     * holding the lock.
      *
      * @param hash Result of HASH calculation
      * @param crc Result of CRC calculation
      * @return true if the record is in the list, false if it isn't
      */
-    private boolean binaryFileSearch(@Nonnull byte[] hash, long crc) {
+    boolean binaryFileSearch(@Nonnull byte[] hash, long crc) {
 
         // Initialize indexes for binary search
         long low = 0;
@@ -225,6 +248,6 @@ public class KffFile implements KffFilter {
             logger.warn("Filter cannot be used, {} not computed on {}", myPreferredAlgorithm, fname);
             return false;
         }
-        return binaryFileSearch(hash, csum.getCrc());
+        return index != null ? index.contains(hash, csum.getCrc()) : binaryFileSearch(hash, csum.getCrc());
     }
 }
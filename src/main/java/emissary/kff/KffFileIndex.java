@@ -0,0 +1,177 @@
+package emissary.kff;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import javax.annotation.Nonnull;
+
+/**
+ * Lookup of a sorted file of fixed length records, as read by {@link KffFile}, that any number of threads can use at
+ * once. The file is memory mapped, in windows of whole records so files over 2GB work, and searched with absolute reads
+ * that share no state. A table on the leading bits of the records, one entry per value, gives the range of records
+ * starting with those bits, so a search starts from a small range.
+ */
+public final class KffFileIndex {
+
+    /** Most leading bits used by the fan-out table, 2^16 entries */
+    static final int MAX_FANOUT_BITS = 16;
+
+    private final int recordLength;
+    private final long records;
+    private final long recordsPerWindow;
+    private final MappedByteBuffer[] windows;
+
+    private final int fanoutBits;
+    /** Index of the first record with each value of the leading bits, plus the record count */
+    private final long[] fanout;
+
+    private KffFileIndex(final FileChannel channel, final int recordLength) throws IOException {
+        this.recordLength = recordLength;
+        this.records = channel.size() / recordLength;
+        this.recordsPerWindow = Integer.MAX_VALUE / recordLength;
+
+        this.windows = new MappedByteBuffer[(int) ((records + recordsPerWindow - 1) / recordsPerWindow)];
+        for (int w = 0; w < windows.length; w++) {
+            final long first = w * recordsPerWindow;
+            final long count = Math.min(recordsPerWindow, records - first);
+            windows[w] = channel.map(FileChannel.MapMode.READ_ONLY, first * recordLength, count * recordLength);
+        }
+
+        this.fanoutBits = Math.min(Math.min(MAX_FANOUT_BITS, 8 * recordLength), 63 - Long.numberOfLeadingZeros(Math.max(1L, records)));
+        this.fanout = new long[(1 << fanoutBits) + 1];
+        long low = 0;
+        for (int p = 0; p < fanout.length - 1; p++) {
+            low = firstWithPrefix(p, low);
+            fanout[p] = low;
+        }
+        fanout[fanout.length - 1] = records;
+    }
+
+    /**
+     * Map a file of sorted records
+     *
+     * @param channel open on the file, which may be closed once this returns
+     * @param recordLength bytes in each record
+     * @return the index
+     * @throws IOException if the file cannot be mapped
+     */
+    public static KffFileIndex create(final FileChannel channel, final int recordLength) throws IOException {
+        if (recordLength <= 0) {
+            throw new IllegalArgumentException("Record length must be positive: " + recordLength);
+        }
+        return new KffFileIndex(channel, recordLength);
+    }
+
+    /**
+     * Get the number of records
+     */
+    public long size() {
+        return records;
+    }
+
+    /**
+     * Search for a record
+     *
+     * @param hash leading bytes of the record
+     * @param crc compared to the bytes after the hash, big endian, unless -1
+     * @return true if the record is in the file
+     */
+    public boolean contains(@Nonnull final byte[] hash, final long crc) {
+        long low = 0;
+        long high = records;
+        if (hash.length * 8 >= fanoutBits) {
+            final int p = prefix(hash);
+            low = fanout[p];
+            high = fanout[p + 1];
+        }
+
+        while (low < high) {
+            final long mid = (low + high) >>> 1;
+            final int c = compare(mid, hash, crc);
+            if (c < 0) {
+                high = mid;
+            } else if (c > 0) {
+                low = mid + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int prefix(final byte[] hash) {
+        if (fanoutBits == 0) {
+            return 0;
+        }
+        int leading = (hash[0] & 0xff) << 8;
+        if (hash.length > 1) {
+            leading |= hash[1] & 0xff;
+        }
+        return leading >>> (MAX_FANOUT_BITS - fanoutBits);
+    }
+
+    private int prefix(final long record) {
+        if (fanoutBits == 0) {
+            return 0;
+        }
+        int leading = (get(record, 0) & 0xff) << 8;
+        if (recordLength > 1) {
+            leading |= get(record, 1) & 0xff;
+        }
+        return leading >>> (MAX_FANOUT_BITS - fanoutBits);
+    }
+
+    /**
+     * Find the first record, at or after {@code from}, whose leading bits are at least {@code p}
+     */
+    private long firstWithPrefix(final int p, final long from) {
+        long low = from;
+        long high = records;
+        while (low < high) {
+            final long mid = (low + high) >>> 1;
+            if (prefix(mid) < p) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private byte get(final long record, final int offset) {
+        final MappedByteBuffer window = windows[(int) (record / recordsPerWindow)];
+        return window.get((int) (record % recordsPerWindow) * recordLength + offset);
+    }
+
+    /**
+     * Compares the given hash/crc to a record, in the same way as {@link KffFile}
+     *
+     * @return &lt;0 if given value is less than record, &gt;0 if given value is greater than record, 0 if they match
+     */
+    private int compare(final long record, final byte[] hash, final long crc) {
+        final int hashLength = Math.min(hash.length, recordLength);
+        int i;
+        for (i = 0; i < hashLength; i++) {
+            final int ihash = hash[i] & 0xff;
+            final int irec = get(record, i) & 0xff;
+            if (ihash < irec) {
+                return -1;
+            } else if (ihash > irec) {
+                return 1;
+            }
+        }
+
+        if (crc != -1L) {
+            for (int j = 24; i < recordLength; i++, j -= 8) {
+                final int icrc = ((int) crc >> j) & 0xff;
+                final int irec = get(record, i) & 0xff;
+                if (icrc < irec) {
+                    return -1;
+                } else if (icrc > irec) {
+                    return 1;
+                }
+            }
+        }
+        return 0;
+    }
+}
@@ -18,4 +18,14 @@ public interface KffFilter {
 
     boolean check(String fname, ChecksumResults sums) throws Exception;
 
+    /**
+     * Whether {@link #check(String, ChecksumResults)} adds what it misses to the filter's store, so every hash has to reach
+     * it and it cannot be prefiltered
+     *
+     * @return true if checking writes to the store
+     */
+    default boolean checkWritesStore() {
+        return false;
+    }
+
 }
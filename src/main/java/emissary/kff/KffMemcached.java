@@ -4,6 +4,8 @@ import emissary.config.ConfigUtil;
 import emissary.config.Configurator;
 import emissary.util.Hexl;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import net.spy.memcached.ConnectionFactoryBuilder;
 import net.spy.memcached.ConnectionFactoryBuilder.Protocol;
 import net.spy.memcached.FailureMode;
@@ -13,11 +15,14 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import javax.annotation.Nullable;
 
 /**
@@ -39,7 +44,10 @@ import javax.annotation.Nullable;
  * memcached before expiring MEMCACHED_OP_TIMEOUT_MILLIS: how long to wait before timing out a memcached operation
  * MEMCACHED_IGNORE_VALUE_PATTERN: do not store values that contain this pattern (non-regexO MEMCACHED_FAILURE_MODE:
  * what to do in case of server failure MEMCACHED_STORE_ID_DUPE: boolean to store the id if it's hash is already
- * contained in memcached PREF_ALG: Which Emissary hash to use as the key stored in memcached
+ * contained in memcached PREF_ALG: Which Emissary hash to use as the key stored in memcached MEMCACHED_NEAR_CACHE_SIZE:
+ * how many recent results to hold locally, 0 for none MEMCACHED_NEAR_CACHE_TTL_MILLIS: how long to hold a local result
+ * MEMCACHED_BATCH_LINGER_MILLIS: how long a lookup waits for others to share a getBulk request, -1 to send each lookup
+ * on its own MEMCACHED_BATCH_MAX_KEYS: most lookups in one getBulk request
  */
 public class KffMemcached implements KffFilter {
 
@@ -101,6 +109,23 @@ public class KffMemcached implements KffFilter {
      */
     protected MemcachedClient client;
 
+    /**
+     * Recent results, key to stored value, so that repeat content is answered without a network round trip
+     */
+    @Nullable
+    protected Cache<String, Object> nearCache = null;
+
+    /**
+     * Gathers lookups into getBulk requests, or null to send each lookup on its own
+     */
+    @Nullable
+    private KffMemcachedBatcher batcher = null;
+
+    /**
+     * Longest a lookup waits for others to share its getBulk request, -1 when not batching
+     */
+    protected long batchLingerMillis = -1L;
+
     /**
      *
      * @param filename Unused
@@ -198,6 +223,50 @@ public class KffMemcached implements KffFilter {
         }
 
         // logger.debug(client.toString());
+
+        setNearCache(configG.findLongEntry("MEMCACHED_NEAR_CACHE_SIZE", 0L), configG.findLongEntry("MEMCACHED_NEAR_CACHE_TTL_MILLIS", 60000L));
+        setBatching(configG.findLongEntry("MEMCACHED_BATCH_LINGER_MILLIS", -1L), configG.findIntEntry("MEMCACHED_BATCH_MAX_KEYS", 256));
+    }
+
+    /**
+     * Hold recent results locally. Results are never held longer than the age-off.
+     *
+     * @param maxEntries most results held, 0 for none
+     * @param ttlMillis how long a result is held
+     */
+    public void setNearCache(long maxEntries, long ttlMillis) {
+        if (maxEntries <= 0 || ttlMillis <= 0) {
+            nearCache = null;
+        } else {
+            nearCache = CacheBuilder.newBuilder().maximumSize(maxEntries)
+                    .expireAfterWrite(Duration.ofMillis(Math.min(ttlMillis, TimeUnit.SECONDS.toMillis(ageoff)))).build();
+        }
+    }
+
+    /**
+     * Gather the lookups of all callers into getBulk requests
+     *
+     * @param lingerMillis longest a lookup waits for others to share its request, -1 to send each lookup on its own
+     * @param maxKeys most lookups in one request
+     */
+    public void setBatching(long lingerMillis, int maxKeys) {
+        if (batcher != null) {
+            batcher.close();
+            batcher = null;
+        }
+        batchLingerMillis = -1L;
+        if (lingerMillis >= 0 && maxKeys > 0) {
+            batcher = new KffMemcachedBatcher(client, lingerMillis, maxKeys, opTimeoutMillis);
+            batchLingerMillis = lingerMillis;
+        }
+    }
+
+    /**
+     * Hashes not found are stored, so every hash has to be checked
+     */
+    @Override
+    public boolean checkWritesStore() {
+        return true;
     }
 
     /**
@@ -234,14 +303,15 @@ public class KffMemcached implements KffFilter {
 
         String key = Hexl.toUnformattedHexString(hash);
 
-        // Send the query
-        Future<Object> future = client.asyncGet(key);
-
-
-        // Let the TimeoutException propagate up
-        Object result = future.get(opTimeoutMillis, TimeUnit.MILLISECONDS);
+        Object result = nearCache == null ? null : nearCache.getIfPresent(key);
+        if (result == null) {
+            result = lookup(key, id);
+        }
 
         if (result != null) {
+            if (nearCache != null) {
+                nearCache.put(key, result);
+            }
             if (storeIdDupe) {
                 if (!((String) result).equals(id)) {
                     // As long as the id is not the same as what was already stored, then
@@ -257,11 +327,29 @@ public class KffMemcached implements KffFilter {
         // logger.debug("Did not find key: {}", key);
         // Did not find the key...store it and move on
         var unused = client.set(key, ageoff, id);
+        if (nearCache != null) {
+            nearCache.put(key, id);
+        }
         return false;
 
 
     }
 
+    /**
+     * Send a query for the key, on its own or in the next batch
+     *
+     * @param key to look up
+     * @param id that will be stored if the key is not found
+     * @return the value stored under the key, or null if not found
+     */
+    @Nullable
+    private Object lookup(String key, String id) throws InterruptedException, ExecutionException, TimeoutException {
+        Future<Object> future = batcher == null ? client.asyncGet(key) : batcher.get(key, id);
+
+        // Let the TimeoutException propagate up
+        return future.get(opTimeoutMillis + Math.max(0L, batchLingerMillis), TimeUnit.MILLISECONDS);
+    }
+
     public String getPreferredAlgorithm() {
         return preferredAlgorithm;
     }
@@ -0,0 +1,183 @@
+package emissary.kff;
+
+import net.spy.memcached.MemcachedClient;
+import net.spy.memcached.internal.BulkFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gathers the lookups of every thread checking against a {@link KffMemcached} into {@code getBulk} requests. The first
+ * lookup waiting starts a batch, which is sent once the linger time has passed or the batch is full. Batches are sent
+ * without waiting for the answer to the one before, and each lookup is completed from the client's listener when its
+ * batch is answered.
+ *
+ * <p>
+ * Lookups of the same key in one batch are answered as if they had been made one after the other: when the key is not
+ * in memcached the first lookup misses, and so will store its id, and the rest hit with that id.
+ */
+final class KffMemcachedBatcher implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(KffMemcachedBatcher.class);
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    // Queued by close to stop the thread
+    private static final Lookup CLOSE = new Lookup("", "");
+
+    private final MemcachedClient client;
+    private final long lingerNanos;
+    private final int maxKeys;
+    private final long opTimeoutMillis;
+
+    private final BlockingQueue<Lookup> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private volatile boolean closed = false;
+
+    /**
+     * Start the thread sending the batches
+     *
+     * @param client to send the batches with
+     * @param lingerMillis longest a lookup waits for others to join its batch
+     * @param maxKeys most lookups in a batch
+     * @param opTimeoutMillis how long to read the answer to a batch once it is complete
+     */
+    KffMemcachedBatcher(final MemcachedClient client, final long lingerMillis, final int maxKeys, final long opTimeoutMillis) {
+        this.client = client;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.maxKeys = maxKeys;
+        this.opTimeoutMillis = opTimeoutMillis;
+        this.thread = new Thread(this::run, "KffMemcachedBatcher-" + threadCount.getAndIncrement());
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queue a lookup
+     *
+     * @param key to look up
+     * @param id that the caller stores under the key if it is not found
+     * @return the value stored under the key, or null if it is not there
+     */
+    CompletableFuture<Object> get(final String key, final String id) {
+        final Lookup lookup = new Lookup(key, id);
+        if (!closed) {
+            queue.add(lookup);
+            if (!closed) {
+                return lookup.future;
+            }
+            // closed while adding, so the close may have drained the queue before the lookup was in it
+            queue.remove(lookup);
+        }
+        lookup.future.completeExceptionally(new IllegalStateException("Batcher is closed"));
+        return lookup.future;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        final List<Lookup> left = new ArrayList<>();
+        queue.drainTo(left);
+        queue.add(CLOSE);
+        left.forEach(l -> l.future.completeExceptionally(new IllegalStateException("Batcher is closed")));
+    }
+
+    private void run() {
+        final List<Lookup> batch = new ArrayList<>(maxKeys);
+        while (!closed) {
+            try {
+                final Lookup first = queue.take();
+                if (first == CLOSE) {
+                    break;
+                }
+                batch.add(first);
+                final long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < maxKeys) {
+                    final Lookup next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    if (next == CLOSE) {
+                        // the finally fails the lookups gathered so far
+                        return;
+                    }
+                    batch.add(next);
+                }
+                send(new ArrayList<>(batch));
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.forEach(l -> l.future.completeExceptionally(new IllegalStateException("Batcher is closed")));
+                batch.clear();
+            }
+        }
+    }
+
+    private void send(final List<Lookup> batch) {
+        final Map<String, List<Lookup>> byKey = new LinkedHashMap<>();
+        for (final Lookup lookup : batch) {
+            byKey.computeIfAbsent(lookup.key, k -> new ArrayList<>()).add(lookup);
+        }
+
+        final BulkFuture<Map<String, Object>> bulk;
+        try {
+            bulk = client.asyncGetBulk(byKey.keySet());
+        } catch (RuntimeException e) {
+            fail(byKey, e);
+            return;
+        }
+        var unused = bulk.addListener(f -> answer(bulk, byKey));
+    }
+
+    private void answer(final BulkFuture<Map<String, Object>> bulk, final Map<String, List<Lookup>> byKey) {
+        final Map<String, Object> found;
+        try {
+            found = bulk.get(opTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(byKey, e);
+            return;
+        } catch (Exception e) {
+            fail(byKey, e);
+            return;
+        }
+
+        for (final Map.Entry<String, List<Lookup>> entry : byKey.entrySet()) {
+            Object value = found.get(entry.getKey());
+            for (final Lookup lookup : entry.getValue()) {
+                lookup.future.complete(value);
+                if (value == null) {
+                    value = lookup.id;
+                }
+            }
+        }
+    }
+
+    private static void fail(final Map<String, List<Lookup>> byKey, final Exception e) {
+        logger.debug("Bulk get of {} keys failed", byKey.size(), e);
+        byKey.values().forEach(lookups -> lookups.forEach(l -> l.future.completeExceptionally(e)));
+    }
+
+    private static final class Lookup {
+        private final String key;
+        private final String id;
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+
+        Lookup(final String key, final String id) {
+            this.key = key;
+            this.id = id;
+        }
+    }
+}
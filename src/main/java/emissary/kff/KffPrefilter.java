@@ -0,0 +1,126 @@
+package emissary.kff;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.apache.commons.lang3.Validate;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs a {@link KffBloomFilter} ahead of another filter, so that hashes certainly not in the filter's list skip the
+ * expensive check. Hashes the Bloom filter passes, and results without a hash of the Bloom filter's algorithm, go on to
+ * the wrapped filter. Filters that store the hashes they miss, such as {@link KffMemcached}, cannot be prefiltered,
+ * since the hashes skipped would never be stored.
+ */
+public class KffPrefilter implements KffFilter {
+
+    /** Prefix for the names of the registered metrics */
+    public static final String METRICS_PREFIX = "KffPrefilter";
+
+    private final KffFilter filter;
+    private final KffBloomFilter bloom;
+
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    /**
+     * Create the prefilter
+     *
+     * @param filter the filter doing the full check
+     * @param bloom built from the hashes in the filter's list
+     * @throws IllegalArgumentException if the filter writes to its store when checking
+     */
+    public KffPrefilter(final KffFilter filter, final KffBloomFilter bloom) {
+        Validate.notNull(filter, "Required: filter not null");
+        Validate.notNull(bloom, "Required: bloom not null");
+        Validate.isTrue(!filter.checkWritesStore(), "Required: filter does not write to its store when checking");
+        this.filter = filter;
+        this.bloom = bloom;
+    }
+
+    @Override
+    public String getName() {
+        return filter.getName();
+    }
+
+    @Override
+    public FilterType getFilterType() {
+        return filter.getFilterType();
+    }
+
+    @Override
+    public boolean check(final String fname, final ChecksumResults sums) throws Exception {
+        final byte[] hash = sums.getHash(bloom.getAlgorithm());
+        if (hash == null) {
+            return filter.check(fname, sums);
+        }
+
+        checks.increment();
+        if (!bloom.mightContain(hash)) {
+            skipped.increment();
+            return false;
+        }
+        final boolean hit = filter.check(fname, sums);
+        if (!hit) {
+            falsePositives.increment();
+        }
+        return hit;
+    }
+
+    /**
+     * Get the wrapped filter
+     */
+    public KffFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Get the number of hashes checked against the Bloom filter
+     */
+    public long getCheckCount() {
+        return checks.sum();
+    }
+
+    /**
+     * Get the number of checks the Bloom filter answered without the wrapped filter
+     */
+    public long getSkippedCount() {
+        return skipped.sum();
+    }
+
+    /**
+     * Get the number of hashes the Bloom filter passed that the wrapped filter did not find
+     */
+    public long getFalsePositiveCount() {
+        return falsePositives.sum();
+    }
+
+    /**
+     * Get the observed false positive rate, the share of hashes not in the list that the Bloom filter passed
+     */
+    public double getFalsePositiveRate() {
+        final long fp = getFalsePositiveCount();
+        final long negatives = fp + getSkippedCount();
+        return negatives == 0 ? 0.0 : (double) fp / negatives;
+    }
+
+    /**
+     * Register gauges for the prefilter counts
+     *
+     * @param registry to register with
+     */
+    public void registerMetrics(final MetricRegistry registry) {
+        register(registry, "checks", (Gauge<Long>) this::getCheckCount);
+        register(registry, "skipped", (Gauge<Long>) this::getSkippedCount);
+        register(registry, "falsePositives", (Gauge<Long>) this::getFalsePositiveCount);
+        register(registry, "falsePositiveRate", (Gauge<Double>) this::getFalsePositiveRate);
+        register(registry, "expectedFalsePositiveRate", (Gauge<Double>) bloom::getExpectedFalsePositiveRate);
+    }
+
+    private void register(final MetricRegistry registry, final String name, final Gauge<?> gauge) {
+        final String fullName = MetricRegistry.name(METRICS_PREFIX, getName(), name);
+        registry.remove(fullName);
+        registry.register(fullName, gauge);
+    }
+}
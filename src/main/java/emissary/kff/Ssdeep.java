@@ -10,7 +10,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
-import java.nio.channels.Channels;
+import java.nio.ByteBuffer;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -80,7 +80,7 @@ public final class Ssdeep {
 
         private long sumHash1; // Initially zero.
         private long sumHash2; // Initially zero.
-        private long blockSize; // Initialized by constructor.
+        private final long blockSize; // Initialized by constructor.
 
         /**
          * Estimate the block size to use.
@@ -98,43 +98,20 @@ public final class Ssdeep {
         }
 
         /**
-         * Construct a spam sum context to process a file.
+         * Construct a spam sum context hashing at one block size.
          *
-         * @param f The file that will be processed, if known. If non-{@code null}, the length of the file is used to guess the
-         *        hash block size to use.
+         * @param blockSize The block size of the main signature.
          */
-        public SsContext(@Nullable final File f) {
-            final long expectedInputLength = (f != null) ? f.length() : 0;
-            this.blockSize = estimateBlockSize(expectedInputLength);
-        }
-
-        /**
-         * Construct a spam sum context to process a byte array.
-         *
-         * @param data The bytes that will be processed, if known. If non-{@code null}, the length of the array is used to guess
-         *        the hash block size to use.
-         */
-        public SsContext(@Nullable final byte[] data) {
-            final long expectedInputLength = (data != null) ? data.length : 0;
-            this.blockSize = estimateBlockSize(expectedInputLength);
+        public SsContext(final long blockSize) {
+            this.blockSize = blockSize;
+            beginHashing();
         }
 
         /**
-         * Construct a spam sum context to process a {@link SeekableByteChannel}
-         *
-         * @param sbcf The channel that will be processed, if known. If non-{@code null}, the length of the channel is used to
-         *        guess the hash block size to use.
+         * True if the block size was too large for the data and a hash with half of it should be used instead.
          */
-        public SsContext(final SeekableByteChannelFactory sbcf) {
-            long expectedInputLength = 0;
-
-            try (SeekableByteChannel sbc = sbcf.create()) {
-                expectedInputLength = sbc.size();
-            } catch (final IOException ioe) {
-                // Ignore
-            }
-
-            this.blockSize = estimateBlockSize(expectedInputLength);
+        private boolean needsSmallerBlockSize() {
+            return (this.blockSize > MIN_BLOCKSIZE) && (this.fuzzLen1 < (SPAMSUM_LENGTH / 2));
         }
 
         /**
@@ -149,72 +126,71 @@ public final class Ssdeep {
         }
 
         /**
-         * Apply some bytes to a SpamSum context.
+         * Apply a byte to the non-rolling hashes of a SpamSum context.
          *
-         * @param rollState The rolling hash state to use.
-         * @param buffer A buffer containing the input bytes.
-         * @param start The starting offset in {@code buffer}, inclusive.
-         * @param end The ending offset in {@code buffer}, exclusive.
+         * @param nextByte The input byte, normalized to 0..255.
          */
-        private void applyBytes(final RollingState rollState, final byte[] buffer, final int start, final int end) {
-            // At each byte we update the rolling hash and the normal
-            // hash. When the rolling hash hits the reset value, we
-            // emit the normal hash as an element of the signature and
-            // reset both hashes.
-            for (int i = start; i < end; i++) {
-                // Get the next input byte and normalize to 0..255.
-                final int nextByte = ((int) buffer[i]) & 0xff;
-
-                // Apply the next byte to the hashes.
-                this.sumHash1 = updateSumHash(nextByte, this.sumHash1);
-                this.sumHash2 = updateSumHash(nextByte, this.sumHash2);
-                final long rollingHash = rollState.roll(nextByte);
-
-                if ((rollingHash % this.blockSize) == (this.blockSize - 1)) {
-                    // We have hit a reset point. We now emit a hash
-                    // which is based on all bytes in the input
-                    // between the last reset point and this one.
-                    if (this.fuzzLen1 < (SPAMSUM_LENGTH - 1)) {
-                        // We can have a problem with the tail
-                        // overflowing. The easiest way to cope with
-                        // this is to only reset the second hash if we
-                        // have room for more characters in our
-                        // signature. This has the effect of combining
-                        // the last few pieces of the message into a
-                        // single piece
-                        this.fuzzHash1[this.fuzzLen1++] = b64EncodeLowBits(this.sumHash1);
-                        this.sumHash1 = HASH_INIT;
-                    }
+        private void applyByte(final int nextByte) {
+            this.sumHash1 = updateSumHash(nextByte, this.sumHash1);
+            this.sumHash2 = updateSumHash(nextByte, this.sumHash2);
+        }
 
-                    // This produces a second signature with a block size
-                    // of blockSize*2. By producing dual signatures in
-                    // this way the effect of small changes in the message
-                    // size near a block size boundary is greatly reduced.
-                    //
-                    // NOTE: we only have to check this when the main
-                    // signature has hit a reset point, because
-                    // mathematically:
-                    //
-                    // [ h === -1 (mod 2*bs) ] --implies--> [ h === -1 (mod bs) ]
-                    //
-                    // In other words, if this condition is true then the
-                    // main signature condition must always also be true.
-                    // Therefore this secondary signature condition can
-                    // only potentially be true if the main signature
-                    // condition (which we've already checked) is true.
-                    if ((rollingHash % (this.blockSize * 2)) == ((this.blockSize * 2) - 1)) {
-                        if (this.fuzzLen2 < (SPAMSUM_LENGTH / 2 - 1)) {
-                            this.fuzzHash2[this.fuzzLen2++] = b64EncodeLowBits(this.sumHash2);
-                            this.sumHash2 = HASH_INIT;
-                        }
-                    }
+        /**
+         * Check the rolling hash for a reset point of this context and, when it is one, emit the non-rolling hashes.
+         *
+         * @param rollingHash The rolling hash after the last byte was applied to it.
+         * @return true if this was a reset point of the main signature.
+         */
+        private boolean resetPoint(final long rollingHash) {
+            // When the rolling hash hits the reset value, we emit the
+            // normal hash as an element of the signature and reset it.
+            if ((rollingHash % this.blockSize) != (this.blockSize - 1)) {
+                return false;
+            }
+
+            // We have hit a reset point. We now emit a hash
+            // which is based on all bytes in the input
+            // between the last reset point and this one.
+            if (this.fuzzLen1 < (SPAMSUM_LENGTH - 1)) {
+                // We can have a problem with the tail
+                // overflowing. The easiest way to cope with
+                // this is to only reset the second hash if we
+                // have room for more characters in our
+                // signature. This has the effect of combining
+                // the last few pieces of the message into a
+                // single piece
+                this.fuzzHash1[this.fuzzLen1++] = b64EncodeLowBits(this.sumHash1);
+                this.sumHash1 = HASH_INIT;
+            }
+
+            // This produces a second signature with a block size
+            // of blockSize*2. By producing dual signatures in
+            // this way the effect of small changes in the message
+            // size near a block size boundary is greatly reduced.
+            //
+            // NOTE: we only have to check this when the main
+            // signature has hit a reset point, because
+            // mathematically:
+            //
+            // [ h === -1 (mod 2*bs) ] --implies--> [ h === -1 (mod bs) ]
+            //
+            // In other words, if this condition is true then the
+            // main signature condition must always also be true.
+            // Therefore this secondary signature condition can
+            // only potentially be true if the main signature
+            // condition (which we've already checked) is true.
+            if ((rollingHash % (this.blockSize * 2)) == ((this.blockSize * 2) - 1)) {
+                if (this.fuzzLen2 < (SPAMSUM_LENGTH / 2 - 1)) {
+                    this.fuzzHash2[this.fuzzLen2++] = b64EncodeLowBits(this.sumHash2);
+                    this.sumHash2 = HASH_INIT;
                 }
             }
+            return true;
         }
 
         /**
          * Discard any existing hash state and prepare to compute a new hash. This should be followed by calls to
-         * {@link #applyBytes(RollingState, byte[], int, int)} to provide the data, and then
+         * {@link #applyByte(int)} and {@link #resetPoint(long)} to provide the data, and then
          * {@link #finishHashing(RollingState)} to complete the computations.
          */
         private void beginHashing() {
@@ -242,7 +218,7 @@ public final class Ssdeep {
 
         /**
          * Finish hashing and generate the final signature. This should be done after all bytes have been applied with
-         * {@link #applyBytes(RollingState, byte[], int, int)}.
+         * {@link #applyByte(int)} and {@link #resetPoint(long)}.
          *
          * @param rollState The rolling hash state used during hashing.
          * @return The final signature.
@@ -257,74 +233,6 @@ public final class Ssdeep {
             final byte[] finalHash2 = truncateArray(this.fuzzHash2, this.fuzzLen2);
             return new SpamSumSignature(this.blockSize, finalHash1, finalHash2);
         }
-
-        /**
-         * Generate the hash for some input.
-         *
-         * <p>
-         * The computations will use the current block size from the context, but any other existing hash state will be
-         * discarded.
-         *
-         * @param data The bytes to hash.
-         * @return The signature for the given data.
-         */
-        public SpamSumSignature generateHash(@Nullable final byte[] data) {
-            beginHashing();
-            final RollingState rollState = new RollingState();
-
-            if (data != null) {
-                applyBytes(rollState, data, 0, data.length);
-            }
-
-            return finishHashing(rollState);
-        }
-
-        public SpamSumSignature generateHash(final SeekableByteChannelFactory sbcf) {
-            beginHashing();
-            final RollingState rollState = new RollingState();
-
-            try (InputStream is = Channels.newInputStream(sbcf.create())) {
-                final byte[] b = new byte[1024];
-
-                int bytesRead;
-                while ((bytesRead = is.read(b)) != -1) {
-                    applyBytes(rollState, b, 0, bytesRead);
-                }
-            } catch (final IOException e) {
-                // Ignore
-            }
-
-            return finishHashing(rollState);
-        }
-
-        /**
-         * Generate the hash for some input.
-         *
-         * <p>
-         * The computations will use the current block size from the context, but any other existing hash state will be
-         * discarded.
-         *
-         * @param stream A file containing the bytes to hash. Assumed non-{@code null}. The processing will start reading at the
-         *        current file position and hash all of the data from there to the end of the file. The file position when this
-         *        returns is unspecified. The file is not closed by this operation.
-         * @return The signature for the given stream content.
-         * @throws IOException If there is some I/O problem while reading the stream.
-         */
-        public SpamSumSignature generateHash(final RandomAccessFile stream) throws IOException {
-            beginHashing();
-            final RollingState rollState = new RollingState();
-
-            final byte[] buffer = new byte[BUFFER_SIZE];
-            while (true) {
-                final int bytesRead = stream.read(buffer, 0, buffer.length);
-                if (bytesRead <= 0) {
-                    break; // No more input.
-                }
-                applyBytes(rollState, buffer, 0, bytesRead);
-            }
-
-            return finishHashing(rollState);
-        }
     }
 
     /**
@@ -401,32 +309,122 @@ public final class Ssdeep {
      * @return The SpamSum signature for the bytes.
      */
     public String fuzzyHash(final byte[] data) {
-        final SsContext ctx = new SsContext(data);
-        while (true) {
-            final SpamSumSignature signature = ctx.generateHash(data);
+        final FuzzyHasher hasher = new FuzzyHasher(data.length);
+        hasher.update(data, 0, data.length);
+        return hasher.finish();
+    }
 
-            // Our blocksize guess may have been way off, repeat with
-            // a smaller block size if necessary.
-            if ((ctx.blockSize > MIN_BLOCKSIZE) && (ctx.fuzzLen1 < (SPAMSUM_LENGTH / 2))) {
-                ctx.blockSize = ctx.blockSize / 2;
-            } else {
-                return signature.toString();
+    /**
+     * Calculate the SpamSum hash for a channel, reading it once.
+     *
+     * @param sbcf The data to be hashed.
+     * @return The SpamSum signature for the data, as far as it could be read.
+     */
+    public String fuzzyHash(final SeekableByteChannelFactory sbcf) {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        final ByteBuffer bb = ByteBuffer.wrap(buffer);
+        FuzzyHasher hasher = null;
+        try (SeekableByteChannel sbc = sbcf.create()) {
+            hasher = new FuzzyHasher(sbc.size());
+            int bytesRead;
+            while ((bytesRead = sbc.read(bb)) != -1) {
+                hasher.update(buffer, 0, bytesRead);
+                bb.clear();
             }
+        } catch (final IOException ioe) {
+            // Ignore
         }
+        return (hasher == null ? new FuzzyHasher(0) : hasher).finish();
     }
 
-    public String fuzzyHash(final SeekableByteChannelFactory sbcf) {
-        final SsContext ctx = new SsContext(sbcf);
-        while (true) {
-            final SpamSumSignature signature = ctx.generateHash(sbcf);
+    /**
+     * Start hashing data that is fed in pieces, so that it can be read once for this and any other sums.
+     *
+     * @param expectedLength The length of the data to be hashed.
+     * @return The hasher.
+     */
+    FuzzyHasher newHasher(final long expectedLength) {
+        return new FuzzyHasher(expectedLength);
+    }
 
-            // Our blocksize guess may have been way off, repeat with
-            // a smaller block size if necessary.
-            if ((ctx.blockSize > MIN_BLOCKSIZE) && (ctx.fuzzLen1 < (SPAMSUM_LENGTH / 2))) {
-                ctx.blockSize = ctx.blockSize / 2;
-            } else {
-                return signature.toString();
+    /**
+     * Hashes data fed in pieces at every block size from the one estimated from its length down to the smallest, sharing
+     * the rolling hash between them, so the data never has to be hashed again when the estimate turns out to be too large.
+     * Reset points nest, since every reset point of a block size is also one of each smaller block size, so a block size
+     * stops being hashed as soon as a larger one has enough of a signature to be chosen over it.
+     */
+    static final class FuzzyHasher {
+        /** One context per block size, smallest first. */
+        private final SsContext[] contexts;
+        private final RollingState rollState = new RollingState();
+
+        /** Index of the smallest block size that may still be chosen. */
+        private int lowest = 0;
+
+        FuzzyHasher(final long expectedLength) {
+            final long maxBlockSize = SsContext.estimateBlockSize(expectedLength);
+            int levels = 1;
+            for (long blockSize = MIN_BLOCKSIZE; blockSize < maxBlockSize; blockSize *= 2) {
+                levels++;
+            }
+            this.contexts = new SsContext[levels];
+            long blockSize = MIN_BLOCKSIZE;
+            for (int i = 0; i < levels; i++) {
+                this.contexts[i] = new SsContext(blockSize);
+                blockSize *= 2;
+            }
+        }
+
+        /**
+         * Apply the next piece of the data.
+         *
+         * @param buffer Holding the data.
+         * @param offset Of the data in the buffer.
+         * @param length Of the data.
+         */
+        void update(final byte[] buffer, final int offset, final int length) {
+            final SsContext[] ctxs = this.contexts;
+            final int end = offset + length;
+            for (int i = offset; i < end; i++) {
+                final int b = buffer[i] & 0xff;
+                final long rollingHash = this.rollState.roll(b);
+                for (int level = this.lowest; level < ctxs.length; level++) {
+                    ctxs[level].applyByte(b);
+                }
+
+                int level = this.lowest;
+                while (level < ctxs.length && ctxs[level].resetPoint(rollingHash)) {
+                    level++;
+                }
+                if (level > this.lowest + 1) {
+                    prune();
+                }
+            }
+        }
+
+        /**
+         * Stop hashing the smallest block sizes once the next larger one has enough of a signature to be chosen instead.
+         */
+        private void prune() {
+            while (this.lowest < this.contexts.length - 1 && !this.contexts[this.lowest + 1].needsSmallerBlockSize()) {
+                this.lowest++;
+            }
+        }
+
+        /**
+         * Finish hashing.
+         *
+         * @return The signature at the largest block size that does not need a smaller one.
+         */
+        String finish() {
+            for (int level = this.contexts.length - 1; level >= this.lowest; level--) {
+                final SsContext ctx = this.contexts[level];
+                final SpamSumSignature signature = ctx.finishHashing(this.rollState);
+                if (level == this.lowest || !ctx.needsSmallerBlockSize()) {
+                    return signature.toString();
+                }
             }
+            throw new IllegalStateException("No block size left");
         }
     }
 
@@ -439,19 +437,13 @@ public final class Ssdeep {
      */
     public String fuzzyHashFile(final File file) throws IOException {
         try (RandomAccessFile stream = new RandomAccessFile(file, "r")) {
-            final SsContext ctx = new SsContext(file);
-            while (true) {
-                stream.seek(0);
-                final SpamSumSignature signature = ctx.generateHash(stream);
-
-                // Our blocksize guess may have been way off, repeat with
-                // a smaller block size if necessary.
-                if ((ctx.blockSize > MIN_BLOCKSIZE) && (ctx.fuzzLen1 < (SPAMSUM_LENGTH / 2))) {
-                    ctx.blockSize = ctx.blockSize / 2;
-                } else {
-                    return signature.toString();
-                }
+            final FuzzyHasher hasher = new FuzzyHasher(file.length());
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int bytesRead;
+            while ((bytesRead = stream.read(buffer)) != -1) {
+                hasher.update(buffer, 0, bytesRead);
             }
+            return hasher.finish();
         }
     }
 
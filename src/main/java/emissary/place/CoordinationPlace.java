@@ -4,8 +4,10 @@ import emissary.admin.PlaceStarter;
 import emissary.core.EmissaryException;
 import emissary.core.Form;
 import emissary.core.IBaseDataObject;
+import emissary.core.IMobileAgent;
 import emissary.core.Namespace;
 import emissary.core.NamespaceException;
+import emissary.core.ParallelChildren;
 import emissary.core.ResourceException;
 import emissary.core.ResourceWatcher;
 import emissary.core.TimedResource;
@@ -343,7 +345,9 @@ public class CoordinationPlace extends ServiceProviderPlace {
     protected TimedResource resourceWatcherStart(final IServiceProviderPlace place) {
         TimedResource tr = TimedResource.EMPTY;
         try {
-            tr = ResourceWatcher.lookup().starting(getAgent(), place);
+            // a child walked in parallel runs on its own thread under the parent's name, time that thread rather than the parent
+            final IMobileAgent child = ParallelChildren.currentChildAgent();
+            tr = ResourceWatcher.lookup().starting(child != null ? child : getAgent(), place);
         } catch (EmissaryException ex) {
             logger.debug("No resource monitoring enabled");
         }
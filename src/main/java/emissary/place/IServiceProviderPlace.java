@@ -3,11 +3,14 @@ package emissary.place;
 import emissary.core.IBaseDataObject;
 import emissary.core.MobileAgent;
 import emissary.core.NamespaceException;
+import emissary.core.PlaceBulkhead;
 import emissary.core.ResourceException;
 import emissary.directory.DirectoryEntry;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import javax.annotation.Nullable;
 
 /**
  * IServiceProviderPlace. IServiceProviderPlaces can be created by the emissary.admin.PlaceStarter and registered with
@@ -92,6 +95,24 @@ public interface IServiceProviderPlace {
      */
     List<IBaseDataObject> agentProcessHeavyDuty(List<IBaseDataObject> payloadList) throws Exception;
 
+    /**
+     * Method called by a {@link PlaceBatcher} for the payloads of several agents at once. The sprouts of each payload are
+     * kept apart so that they go back to the agent that brought it. By default each payload goes through
+     * {@link #agentProcessHeavyDuty(List)} on its own, acting as its agent so that {@link #getAgent()} finds the right one.
+     * A place with a high fixed cost per call overrides this to handle them together, and must not rely on
+     * {@link #getAgent()} while doing so. Only places that override this are batched.
+     *
+     * @param payloadList payloads of one or more agents
+     * @return the sprouts of each payload, in the order of the payloads
+     */
+    default List<List<IBaseDataObject>> agentProcessHeavyDutyBatch(final List<IBaseDataObject> payloadList) throws Exception {
+        final List<List<IBaseDataObject>> sprouts = new ArrayList<>(payloadList.size());
+        for (final IBaseDataObject payload : payloadList) {
+            sprouts.add(PlaceBatcher.callAs(payload, () -> agentProcessHeavyDuty(List.of(payload))));
+        }
+        return sprouts;
+    }
+
     /**
      * Override point for HD Agent calls
      * 
@@ -149,6 +170,26 @@ public interface IServiceProviderPlace {
      */
     long getResourceLimitMillis();
 
+    /**
+     * Get the limit on agents working in this place at once
+     *
+     * @return the bulkhead or null if the place is not limited
+     */
+    @Nullable
+    default PlaceBulkhead getBulkhead() {
+        return null;
+    }
+
+    /**
+     * Get the stage that combines payloads from concurrent agents into one {@link #agentProcessHeavyDutyBatch(List)} call
+     *
+     * @return the batcher or null if each agent calls the place on its own
+     */
+    @Nullable
+    default PlaceBatcher getBatcher() {
+        return null;
+    }
+
 
     /**
      * Get the agent that is currently responsible for this thread
@@ -0,0 +1,358 @@
+package emissary.place;
+
+import emissary.config.Configurator;
+import emissary.core.IBaseDataObject;
+import emissary.core.MetricsManager;
+import emissary.core.MobileAgent;
+import emissary.core.NamespaceException;
+import emissary.core.ResourceWatcher;
+import emissary.core.TimedResource;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.Nullable;
+
+/**
+ * Collects the payloads that concurrent agents bring to one place into a single call of
+ * {@link IServiceProviderPlace#agentProcessHeavyDutyBatch(List)}, for places with a high fixed cost per call. The first
+ * agent to arrive leads the batch: it waits up to the linger time for others to join, or less if the batch fills, then
+ * makes the call on its own thread. Every agent gets back the sprouts of its own payloads, which the place returns
+ * payload by payload, and shares any exception the call throws.
+ *
+ * <p>
+ * The call is timed by the {@link ResourceWatcher} once for each agent in the batch, with a time limit for all the
+ * payloads in it, and interrupts the leader, which does the work. A batch never holds more than the batch size, an
+ * agent bringing more than that is split across batches.
+ */
+public class PlaceBatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlaceBatcher.class);
+
+    /** Metric name prefix for the batch size histograms */
+    public static final String METRICS_PREFIX = "PlaceBatcher";
+
+    private final IServiceProviderPlace place;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition filled = lock.newCondition();
+
+    // The batch taking new arrivals, guarded by lock
+    @Nullable
+    private Batch open = null;
+
+    // The agent that brought each payload of the call running on this thread
+    private static final ThreadLocal<IdentityHashMap<IBaseDataObject, Share>> owners = new ThreadLocal<>();
+
+    private final AtomicLong batchCount = new AtomicLong();
+    private final Histogram batchSizes = new Histogram(new ExponentiallyDecayingReservoir());
+
+    /**
+     * Create a batcher for a place
+     *
+     * @param place the place to call
+     * @param maxBatchSize payloads that close a batch early
+     * @param lingerMillis longest time the first agent waits for others
+     */
+    public PlaceBatcher(final IServiceProviderPlace place, final int maxBatchSize, final long lingerMillis) {
+        if (maxBatchSize < 1 || lingerMillis < 0) {
+            throw new IllegalArgumentException("Batching needs a size of at least one and no negative linger, not " + maxBatchSize + " and "
+                    + lingerMillis);
+        }
+        this.place = place;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+    }
+
+    /**
+     * Create a batcher from place configuration
+     * <ul>
+     * <li>PLACE_BATCH_SIZE, payloads that close a batch early, no batching when not above one</li>
+     * <li>PLACE_BATCH_LINGER_MILLIS, longest time the first agent waits for others, default 10</li>
+     * </ul>
+     * Only places that override {@link IServiceProviderPlace#agentProcessHeavyDutyBatch(List)} are batched. The default
+     * works through the payloads one at a time, which would put the work of every agent on the leader's thread.
+     *
+     * @param place the place to call
+     * @param conf the place configuration
+     * @return the batcher or null if the place does not batch
+     */
+    @Nullable
+    public static PlaceBatcher fromConfig(final IServiceProviderPlace place, @Nullable final Configurator conf) {
+        if (conf == null) {
+            return null;
+        }
+        final int size = conf.findIntEntry("PLACE_BATCH_SIZE", 0);
+        if (size <= 1) {
+            return null;
+        }
+        if (!overridesBatch(place.getClass())) {
+            logger.warn("Not batching {}, PLACE_BATCH_SIZE needs a place that overrides agentProcessHeavyDutyBatch", place.getPlaceName());
+            return null;
+        }
+        final PlaceBatcher batcher = new PlaceBatcher(place, size, conf.findLongEntry("PLACE_BATCH_LINGER_MILLIS", 10L));
+        try {
+            final MetricRegistry registry = MetricsManager.lookup().getMetricRegistry();
+            final String name = MetricRegistry.name(METRICS_PREFIX, place.getPlaceName(), "batchSize");
+            registry.remove(name);
+            registry.register(name, batcher.batchSizes);
+        } catch (NamespaceException e) {
+            logger.debug("No metrics manager available for the {} batch metrics", place.getPlaceName());
+        }
+        return batcher;
+    }
+
+    /**
+     * True if the place handles a batch itself rather than one payload at a time
+     */
+    static boolean overridesBatch(final Class<? extends IServiceProviderPlace> placeClass) {
+        try {
+            return placeClass.getMethod("agentProcessHeavyDutyBatch", List.class).getDeclaringClass() != IServiceProviderPlace.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Process an agent's payloads, possibly together with those of other agents
+     *
+     * @param payloads the payloads of one agent
+     * @return the sprouts of those payloads
+     * @throws Exception whatever the place threw for the batch
+     */
+    public List<IBaseDataObject> process(final List<IBaseDataObject> payloads) throws Exception {
+        if (payloads.size() > maxBatchSize) {
+            final List<IBaseDataObject> sprouts = new ArrayList<>();
+            for (int i = 0; i < payloads.size(); i += maxBatchSize) {
+                sprouts.addAll(process(payloads.subList(i, Math.min(payloads.size(), i + maxBatchSize))));
+            }
+            return sprouts;
+        }
+
+        final Batch batch;
+        final Share share = new Share(payloads);
+        boolean leader = false;
+        lock.lock();
+        try {
+            if (open != null && open.size + payloads.size() > maxBatchSize) {
+                // no room for these, send the open batch and start another
+                open = null;
+                filled.signalAll();
+            }
+            if (open == null) {
+                open = new Batch();
+                leader = true;
+            }
+            batch = open;
+            batch.shares.add(share);
+            batch.size += payloads.size();
+            if (batch.size >= maxBatchSize) {
+                // no room for more, stop others joining and wake the leader
+                open = null;
+                filled.signalAll();
+            } else if (leader) {
+                long remaining = lingerNanos;
+                try {
+                    while (open == batch && remaining > 0) {
+                        remaining = filled.awaitNanos(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (open == batch) {
+                    open = null;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (leader) {
+            run(batch);
+        } else {
+            awaitUninterruptibly(batch.done);
+        }
+
+        if (batch.error != null) {
+            throw batch.error;
+        }
+        return share.sprouts;
+    }
+
+    /**
+     * Make the batched call and share out the results, on the leader's thread
+     */
+    private void run(final Batch batch) {
+        batchCount.incrementAndGet();
+        batchSizes.update(batch.size);
+        final IdentityHashMap<IBaseDataObject, Share> byPayload = new IdentityHashMap<>();
+        final List<IBaseDataObject> all = new ArrayList<>(batch.size);
+        for (final Share s : batch.shares) {
+            for (final IBaseDataObject p : s.payloads) {
+                byPayload.put(p, s);
+                all.add(p);
+            }
+        }
+        owners.set(byPayload);
+        final List<TimedResource> timers = startTimers(batch);
+        try {
+            logger.debug("Calling {} with {} payloads from {} agents", place, batch.size, batch.shares.size());
+            distribute(batch.shares, place.agentProcessHeavyDutyBatch(all));
+        } catch (Exception e) {
+            batch.error = e;
+        } finally {
+            timers.forEach(TimedResource::close);
+            owners.remove();
+            batch.done.countDown();
+        }
+    }
+
+    /**
+     * Time the call once for each agent in the batch, each allowed the time for the whole batch and interrupting the leader
+     * on the current thread, which is the one doing the work
+     */
+    private List<TimedResource> startTimers(final Batch batch) {
+        final List<TimedResource> timers = new ArrayList<>(batch.shares.size());
+        try {
+            final MobileAgent leader = place.getAgent();
+            if (leader != null) {
+                final ResourceWatcher watcher = ResourceWatcher.lookup();
+                for (int i = 0; i < batch.shares.size(); i++) {
+                    timers.add(watcher.starting(leader, batch.size, place));
+                }
+            }
+        } catch (NamespaceException e) {
+            logger.debug("No resource monitoring of the {} batch", place.getPlaceName());
+        }
+        return timers;
+    }
+
+    /**
+     * Give each agent the sprouts of its own payloads
+     *
+     * @param shares the agents' parts of the batch, in the order their payloads were passed to the place
+     * @param sprouts the sprouts of each payload in the same order
+     * @throws IllegalStateException if the place did not return sprouts for exactly the payloads it was given
+     */
+    static void distribute(final List<Share> shares, final List<List<IBaseDataObject>> sprouts) {
+        int payloadCount = 0;
+        for (final Share s : shares) {
+            payloadCount += s.payloads.size();
+        }
+        if (sprouts.size() != payloadCount) {
+            throw new IllegalStateException("Place returned sprouts for " + sprouts.size() + " of " + payloadCount + " payloads");
+        }
+        int i = 0;
+        for (final Share s : shares) {
+            s.sprouts = new ArrayList<>();
+            for (int n = 0; n < s.payloads.size(); n++) {
+                s.sprouts.addAll(sprouts.get(i++));
+            }
+        }
+    }
+
+    /**
+     * Do part of a batched call as the agent that brought the payload, by taking the name of its thread for the time, so
+     * that {@link IServiceProviderPlace#getAgent()} finds that agent. Outside a batched call the work just runs.
+     *
+     * @param payload the payload the work is for
+     * @param work the work
+     * @return what the work returned
+     * @throws Exception whatever the work threw
+     */
+    public static <T> T callAs(final IBaseDataObject payload, final Callable<T> work) throws Exception {
+        final IdentityHashMap<IBaseDataObject, Share> byPayload = owners.get();
+        final Share owner = byPayload == null ? null : byPayload.get(payload);
+        final Thread thread = Thread.currentThread();
+        final String name = thread.getName();
+        if (owner == null || owner.agentName.equals(name)) {
+            return work.call();
+        }
+        thread.setName(owner.agentName);
+        try {
+            return work.call();
+        } finally {
+            thread.setName(name);
+        }
+    }
+
+    private static void awaitUninterruptibly(final CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                // the leader is working on our payloads, so wait it out
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Get the number of batched calls made
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * Get the number of payloads in each batched call
+     */
+    public Histogram getBatchSizes() {
+        return batchSizes;
+    }
+
+    @Override
+    public String toString() {
+        return "PlaceBatcher " + place.getPlaceName() + " size " + maxBatchSize + " linger " + TimeUnit.NANOSECONDS.toMillis(lingerNanos) + "ms";
+    }
+
+    /**
+     * One agent's part of a batch
+     */
+    static final class Share {
+        final List<IBaseDataObject> payloads;
+        /** Name of the agent's thread, which the namespace knows the agent by */
+        final String agentName;
+        List<IBaseDataObject> sprouts = Collections.emptyList();
+
+        Share(final List<IBaseDataObject> payloads) {
+            this.payloads = payloads;
+            this.agentName = Thread.currentThread().getName();
+        }
+    }
+
+    /**
+     * Payloads collected for one call
+     */
+    private static final class Batch {
+        final List<Share> shares = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        int size = 0;
+        @Nullable
+        volatile Exception error = null;
+    }
+}
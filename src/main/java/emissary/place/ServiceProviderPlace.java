@@ -11,6 +11,7 @@ import emissary.core.IBaseDataObject;
 import emissary.core.MobileAgent;
 import emissary.core.Namespace;
 import emissary.core.NamespaceException;
+import emissary.core.PlaceBulkhead;
 import emissary.core.ResourceException;
 import emissary.core.ResourceWatcher;
 import emissary.directory.DirectoryEntry;
@@ -104,6 +105,18 @@ public abstract class ServiceProviderPlace implements IServiceProviderPlace,
     @Nullable
     protected String placeName = null;
 
+    /**
+     * Limit on agents working here at once, from the PLACE_BULKHEAD_* config entries
+     */
+    @Nullable
+    protected PlaceBulkhead bulkhead = null;
+
+    /**
+     * Combines payloads from concurrent agents, from the PLACE_BATCH_* config entries
+     */
+    @Nullable
+    protected PlaceBatcher batcher = null;
+
     /**
      * Text description of what the place does, usually from config file
      */
@@ -299,6 +312,9 @@ public abstract class ServiceProviderPlace implements IServiceProviderPlace,
             logger.debug("Not localizing directory since we are a directory");
         }
 
+        bulkhead = PlaceBulkhead.fromConfig(getPlaceName(), configG);
+        batcher = PlaceBatcher.fromConfig(this, configG);
+
         // Set up kff if we need it
         if (this instanceof RehashingPlace || this instanceof MultiFileServerPlace) {
             initKff();
@@ -1025,6 +1041,28 @@ public abstract class ServiceProviderPlace implements IServiceProviderPlace,
         return configG.findLongEntry(PLACE_RESOURCE_LIMIT_MILLIS, -2L);
     }
 
+    /**
+     * Get the limit on agents working in this place at once
+     *
+     * @return the bulkhead or null if PLACE_BULKHEAD_LIMIT is not configured
+     */
+    @Override
+    @Nullable
+    public PlaceBulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    /**
+     * Get the stage that combines payloads from concurrent agents
+     *
+     * @return the batcher or null if PLACE_BATCH_SIZE is not configured
+     */
+    @Override
+    @Nullable
+    public PlaceBatcher getBatcher() {
+        return batcher;
+    }
+
     /**
      * Get the agent that is currently responsible for this thread
      *
@@ -60,7 +60,7 @@ public class ToUpperPlace extends ServiceProviderPlace {
         }
 
 
-        if (d.transformHistory().size() < 10) {
+        if (d.transformHistorySize() < 10) {
             d.setCurrentForm(newForm);
         } else {
             d.setCurrentForm(endForm);
@@ -0,0 +1,195 @@
+package emissary.pool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
+
+/**
+ * Runs the itineraries of agents that do not own a thread as tasks. Each task gets a virtual thread when the JVM has
+ * them, otherwise a pooled daemon platform thread. The number of itineraries running at once is bounded by a semaphore,
+ * so a caller handing over work blocks while the engine is full, just as it would waiting on an exhausted
+ * {@link AgentPool}.
+ */
+public class AgentExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(AgentExecutor.class);
+
+    /** Default maximum number of itineraries running at once */
+    public static final int DEFAULT_MAX_CONCURRENT = 1000;
+
+    // The shared engine, null until first used or configured
+    private static final AtomicReference<AgentExecutor> defaultExecutor = new AtomicReference<>();
+
+    private final ExecutorService executor;
+    private final boolean virtual;
+    private final Semaphore permits;
+    private final int maxConcurrent;
+
+    /**
+     * Create an engine, using virtual threads if the JVM supports them
+     *
+     * @param maxConcurrent maximum number of tasks running at once
+     */
+    public AgentExecutor(final int maxConcurrent) {
+        this(maxConcurrent, true);
+    }
+
+    /**
+     * Create an engine
+     *
+     * @param maxConcurrent maximum number of tasks running at once
+     * @param preferVirtual true to use virtual threads when the JVM supports them
+     */
+    public AgentExecutor(final int maxConcurrent, final boolean preferVirtual) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("Must allow at least one concurrent agent, not " + maxConcurrent);
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.permits = new Semaphore(maxConcurrent, true);
+        final ExecutorService ves = preferVirtual ? virtualThreadExecutor() : null;
+        this.virtual = ves != null;
+        this.executor = ves != null ? ves : Executors.newCachedThreadPool(new AgentTaskThreadFactory());
+        logger.debug("Agent executor running up to {} agents on {} threads", maxConcurrent, this.virtual ? "virtual" : "platform");
+    }
+
+    /**
+     * Get the shared engine, creating it with the default size if needed
+     */
+    public static AgentExecutor getDefault() {
+        AgentExecutor e = defaultExecutor.get();
+        if (e == null) {
+            synchronized (AgentExecutor.class) {
+                e = defaultExecutor.get();
+                if (e == null) {
+                    e = new AgentExecutor(DEFAULT_MAX_CONCURRENT);
+                    defaultExecutor.set(e);
+                }
+            }
+        }
+        return e;
+    }
+
+    /**
+     * Replace the shared engine. Work already running on the previous one is allowed to finish.
+     *
+     * @param maxConcurrent maximum number of tasks running at once
+     */
+    public static synchronized void configureDefault(final int maxConcurrent) {
+        final AgentExecutor old = defaultExecutor.get();
+        if (old != null && old.getMaxConcurrent() == maxConcurrent) {
+            return;
+        }
+        defaultExecutor.set(new AgentExecutor(maxConcurrent));
+        if (old != null) {
+            old.shutdown();
+        }
+    }
+
+    /**
+     * Run the task, blocking until there is room
+     *
+     * @param task the work, usually an agent itinerary
+     * @throws RejectedExecutionException if interrupted while waiting or the engine is shut down
+     */
+    public void execute(final Runnable task) {
+        try {
+            this.permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted waiting for room to run an agent", e);
+        }
+        try {
+            this.executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    this.permits.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            this.permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * True if tasks run on virtual threads
+     */
+    public boolean isVirtual() {
+        return this.virtual;
+    }
+
+    /**
+     * Maximum number of tasks running at once
+     */
+    public int getMaxConcurrent() {
+        return this.maxConcurrent;
+    }
+
+    /**
+     * Number of tasks running now
+     */
+    public int getActiveCount() {
+        return this.maxConcurrent - this.permits.availablePermits();
+    }
+
+    /**
+     * Stop taking work, running tasks are allowed to finish
+     */
+    public void shutdown() {
+        this.executor.shutdown();
+    }
+
+    /**
+     * Wait for running tasks after a shutdown
+     *
+     * @param timeout how long to wait
+     * @param unit units of the timeout
+     * @return true if all tasks finished
+     */
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return this.executor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Look up the virtual thread per task executor, which is only present on newer JVMs than we compile for
+     */
+    @Nullable
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.debug("Virtual threads are not available, using platform threads: {}", e.toString());
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AgentExecutor " + getActiveCount() + "/" + this.maxConcurrent + (this.virtual ? " virtual" : " platform");
+    }
+
+    /**
+     * Daemon threads in the agent thread group for JVMs without virtual threads
+     */
+    private static final class AgentTaskThreadFactory implements ThreadFactory {
+        private static final AgentThreadGroup group = new AgentThreadGroup("Agent Tasks");
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            final Thread t = new Thread(group, r, "AgentTask-" + this.count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
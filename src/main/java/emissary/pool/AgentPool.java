@@ -9,6 +9,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.NoSuchElementException;
 import javax.annotation.Nullable;
 
 /**
@@ -41,6 +44,14 @@ public class AgentPool extends GenericObjectPool<IMobileAgent> {
 
     private final int initialPoolSize;
 
+    // Agents held back for each priority lane, and the agents each lane has out, guarded by laneLock
+    private final Object laneLock = new Object();
+    private int[] laneReserved = new int[0];
+    private int[] laneActive = new int[0];
+    private final IdentityHashMap<IMobileAgent, Integer> laneOf = new IdentityHashMap<>();
+    // Bumped whenever an agent leaves a lane or the reservations change, guarded by laneLock
+    private long laneChanges = 0L;
+
     /**
      * Compute the default size for the pool
      * 
@@ -195,6 +206,131 @@ public class AgentPool extends GenericObjectPool<IMobileAgent> {
         }
     }
 
+    /**
+     * Get an agent for work in a priority lane, waiting while the agents left are reserved for other lanes
+     *
+     * @param lane the lane index as given to {@link #setLaneReservations(int...)}
+     */
+    public IMobileAgent borrowAgent(final int lane) throws Exception {
+        synchronized (laneLock) {
+            if (lane < 0 || lane >= laneReserved.length) {
+                return borrowAgent();
+            }
+            final long deadline = System.currentTimeMillis() + getMaxWaitDuration().toMillis();
+            while (!admits(lane)) {
+                final long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new NoSuchElementException("Timeout waiting for an agent in lane " + lane + ", stats=" + this);
+                }
+                laneLock.wait(remaining);
+            }
+            laneActive[lane]++;
+        }
+        IMobileAgent a = null;
+        try {
+            a = borrowAgent();
+            synchronized (laneLock) {
+                laneOf.put(a, lane);
+            }
+            return a;
+        } finally {
+            if (a == null) {
+                releaseLane(lane);
+            }
+        }
+    }
+
+    /**
+     * Hold agents back for priority lanes. A lane can always borrow up to its own reservation, beyond that it may only take
+     * an agent if enough remain for the unmet reservations of the other lanes. Reservations that add up to the whole pool
+     * are cut back so that at least one agent is shared.
+     *
+     * @param reserved agents reserved for each lane, by lane index
+     */
+    public void setLaneReservations(final int... reserved) {
+        final int[] r = Arrays.copyOf(reserved, reserved.length);
+        int total = 0;
+        for (int i = 0; i < r.length; i++) {
+            r[i] = Math.max(0, Math.min(r[i], getMaxTotal() - 1 - total));
+            total += r[i];
+        }
+        if (!Arrays.equals(r, reserved)) {
+            logger.warn("Agent pool of {} cannot reserve {} for priority lanes, using {}", getMaxTotal(), Arrays.toString(reserved),
+                    Arrays.toString(r));
+        }
+        synchronized (laneLock) {
+            laneReserved = r;
+            laneActive = Arrays.copyOf(laneActive, r.length);
+            laneChanges++;
+            laneLock.notifyAll();
+        }
+    }
+
+    /**
+     * True if an agent could be borrowed for the lane now without dipping into another lane's reservation
+     *
+     * @param lane the lane index as given to {@link #setLaneReservations(int...)}
+     */
+    public boolean isLaneAvailable(final int lane) {
+        synchronized (laneLock) {
+            return lane < 0 || lane >= laneReserved.length || admits(lane);
+        }
+    }
+
+    /**
+     * Wait a little for an agent to come back to the pool from a lane or for the reservations to change
+     *
+     * @param millis longest time to wait
+     */
+    public void awaitLaneChange(final long millis) throws InterruptedException {
+        synchronized (laneLock) {
+            final long seen = laneChanges;
+            final long deadline = System.currentTimeMillis() + millis;
+            long remaining = millis;
+            while (laneChanges == seen && remaining > 0) {
+                laneLock.wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+        }
+    }
+
+    /**
+     * Get the number of agents borrowed for a lane
+     *
+     * @param lane the lane index as given to {@link #setLaneReservations(int...)}
+     */
+    public int getLaneActive(final int lane) {
+        synchronized (laneLock) {
+            return lane >= 0 && lane < laneActive.length ? laneActive[lane] : 0;
+        }
+    }
+
+    // Caller holds laneLock
+    private boolean admits(final int lane) {
+        if (laneActive[lane] < laneReserved[lane]) {
+            return true;
+        }
+        int inUse = Math.max(0, getNumActive() - laneOf.size());
+        int heldForOthers = 0;
+        for (int i = 0; i < laneActive.length; i++) {
+            inUse += laneActive[i];
+            if (i != lane) {
+                heldForOthers += Math.max(0, laneReserved[i] - laneActive[i]);
+            }
+        }
+        return getMaxTotal() - inUse > heldForOthers;
+    }
+
+    private void releaseLane(final int lane) {
+        synchronized (laneLock) {
+            if (lane < laneActive.length && laneActive[lane] > 0) {
+                laneActive[lane]--;
+            }
+            laneChanges++;
+            laneLock.notifyAll();
+        }
+    }
+
     /*
      * Get the total current agents in the pool
      */
@@ -279,7 +415,17 @@ public class AgentPool extends GenericObjectPool<IMobileAgent> {
      */
     public void returnAgent(IMobileAgent agent) {
         logger.trace("Returning {}", agent.getName());
-        returnObject(agent);
+        final Integer lane;
+        synchronized (laneLock) {
+            lane = laneOf.remove(agent);
+        }
+        try {
+            returnObject(agent);
+        } finally {
+            if (lane != null) {
+                releaseLane(lane);
+            }
+        }
         logger.trace("POOL return active={}", getNumActive());
     }
 
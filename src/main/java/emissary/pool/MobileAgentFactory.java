@@ -6,6 +6,7 @@ import emissary.core.Factory;
 import emissary.core.IMobileAgent;
 import emissary.core.MobileAgent;
 import emissary.core.Namespace;
+import emissary.core.ParallelChildren;
 
 import org.apache.commons.pool2.PooledObject;
 import org.apache.commons.pool2.PooledObjectFactory;
@@ -22,6 +23,15 @@ public class MobileAgentFactory implements PooledObjectFactory<IMobileAgent> {
     // can be overridden from the AgentPool.cfg file
     static final String DEFAULT_CLASS_STRING = "emissary.core.MobileAgent";
 
+    // The class used when agents run as tasks rather than each on its own thread
+    static final String VIRTUAL_CLASS_STRING = "emissary.core.VirtualMobileAgent";
+
+    /** Value of agent.engine for the default engine, one thread owned by each agent */
+    public static final String ENGINE_THREAD = "THREAD";
+
+    /** Value of agent.engine to run each itinerary as a task on the {@link AgentExecutor} */
+    public static final String ENGINE_VIRTUAL = "VIRTUAL";
+
     public static final String AGENT_NAME = "MobileAgent";
 
     // This is the class we are going to be pooling
@@ -48,9 +58,15 @@ public class MobileAgentFactory implements PooledObjectFactory<IMobileAgent> {
         try {
             Configurator conf = ConfigUtil.getConfigInfo(AgentPool.class);
             classString = conf.findStringEntry("agent.class", DEFAULT_CLASS_STRING);
+            if (ENGINE_VIRTUAL.equalsIgnoreCase(conf.findStringEntry("agent.engine", ENGINE_THREAD))) {
+                classString = conf.findStringEntry("agent.virtual.class", VIRTUAL_CLASS_STRING);
+                AgentExecutor.configureDefault(conf.findIntEntry("agent.engine.max.concurrent", AgentExecutor.DEFAULT_MAX_CONCURRENT));
+            }
 
             maxAgentMoveErrors = conf.findIntEntry("agent.move.errors", MobileAgent.DEFAULT_MAX_MOVE_ERRORS);
             maxAgentItinerary = conf.findIntEntry("agent.max.itinerary", MobileAgent.DEFAULT_MAX_ITINERARY_STEPS);
+            ParallelChildren.configureDefault(conf.findIntEntry("agent.parallel.children.min", 0),
+                    conf.findIntEntry("agent.parallel.children.threads", Runtime.getRuntime().availableProcessors()));
         } catch (IOException e) {
             logger.debug("Cannot read AgentPool.cfg, taking default values");
         }
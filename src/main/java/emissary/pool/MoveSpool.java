@@ -1,63 +1,127 @@
 package emissary.pool;
 
+import emissary.config.ConfigUtil;
+import emissary.config.Configurator;
+import emissary.core.IBaseDataObject;
 import emissary.core.IMobileAgent;
+import emissary.core.MetricsManager;
 import emissary.core.Namespace;
 import emissary.core.NamespaceException;
 import emissary.directory.DirectoryEntry;
 import emissary.directory.IDirectoryPlace;
 import emissary.directory.KeyManipulator;
+import emissary.pickup.Priority;
 import emissary.place.IServiceProviderPlace;
 import emissary.util.PayloadUtil;
 
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Nullable;
 
 /**
  * Provide a storage area for incoming "moveTo(here)" payloads so that the http transfer can become more asnychronous.
- * This class provides a FIFO for payloads that are arriving and a thread that will put them into agents from the pool
- * as agents become available
+ * This class provides a FIFO for payloads that are arriving and a set of dispatcher threads that will put them into
+ * agents from the pool as agents become available.
+ *
+ * <p>
+ * The FIFO is a lock-free queue, unbounded unless a capacity is configured, with any bound enforced by a semaphore.
+ * When a bounded spool is full a producer is handled according to the {@link Overflow} policy, by default rejected. The
+ * time items wait on the spool and the time taken to hand them to an agent are kept in histograms, in microseconds,
+ * exported through the {@link MetricsManager} when one is running.
+ *
+ * <p>
+ * The spool is split into {@link SpoolLane}s by payload priority, each lane a FIFO of its own. Dispatchers take from
+ * the lanes holding work by smooth weighted round robin, so urgent payloads overtake bulk ones without shutting them
+ * out, and lanes with agents reserved in the {@link AgentPool} are only served from agents they may use. Each lane
+ * exports its depth and queue wait.
  */
-
 public class MoveSpool implements Runnable {
 
     // Our logger
     private static final Logger logger = LoggerFactory.getLogger(MoveSpool.class);
 
-    // The payload FIFO
-    protected final Deque<SpoolItem> spool = new ArrayDeque<>();
+    /** Default maximum number of items held on the spool, unbounded as the spool has always been */
+    public static final int DEFAULT_CAPACITY = Integer.MAX_VALUE;
+
+    /** Default policy when a bounded spool is full */
+    public static final Overflow DEFAULT_OVERFLOW = Overflow.REJECT;
+
+    /** Default number of dispatcher threads */
+    public static final int DEFAULT_DISPATCHERS = 2;
+
+    /** Metric name prefix for the spool histograms */
+    public static final String METRICS_PREFIX = "MoveSpool";
+
+    // The payload FIFOs, most urgent first
+    protected final List<SpoolLane> lanes;
+
+    // Guards the weighted turns between lanes when there is more than one
+    private final Object laneTurns = new Object();
+
+    // True when some lane has agents reserved in the pool
+    protected final boolean reserving;
+
+    // Free places on the spool, producers take one per item
+    protected final Semaphore slots;
+
+    // Items on the spool, dispatchers take one per item
+    protected final Semaphore items = new Semaphore(0);
+
+    // Maximum items on the spool
+    protected final int capacity;
+
+    // What to do with a producer when the spool is full
+    protected final Overflow overflow;
 
     // Reference to the agent pool
     protected AgentPool pool;
 
-    // The thread that stuffs payloads into pool agents
-    Thread watcher;
+    // The threads that stuff payloads into pool agents
+    final List<Thread> dispatchers = new ArrayList<>();
 
     // thread quit control
-    boolean timeToQuit = false;
+    volatile boolean timeToQuit = false;
 
     // How we want to be registerd in the namespace
     public static final String NAMESPACE_NAME = "ArrivalSpool";
 
     // Stats on how many moves and for what types arrived here
-    public final Map<String, Integer> moveCountMap = new HashMap<>();
+    public final Map<String, Integer> moveCountMap = new ConcurrentHashMap<>();
 
     // Stats collection
-    private int highWaterMark = 0;
-    @SuppressWarnings("NonFinalStaticField")
-    private static long lookupCount = 0;
-    private long enqueCount = 0;
-    private long dequeCount = 0;
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger highWaterMark = new AtomicInteger();
+    private static final AtomicLong lookupCount = new AtomicLong();
+    private final AtomicLong enqueCount = new AtomicLong();
+    private final AtomicLong dequeCount = new AtomicLong();
+    private final AtomicLong rejectCount = new AtomicLong();
+    private final AtomicLong spillCount = new AtomicLong();
+    private final Histogram queueWait = new Histogram(new ExponentiallyDecayingReservoir());
+    private final Histogram dispatchLatency = new Histogram(new ExponentiallyDecayingReservoir());
 
     // Cached ref to my local directory
     @Nullable
-    IDirectoryPlace localDirectory = null;
+    volatile IDirectoryPlace localDirectory = null;
 
     // Methods for using the spool to dispatch
     public enum Method {
@@ -65,10 +129,63 @@ public class MoveSpool implements Runnable {
     }
 
     /**
-     * Make one and bind it in the namespace
+     * What a producer gets when the spool is full
+     */
+    public enum Overflow {
+        /** Wait for room on the spool */
+        BLOCK,
+        /** Fail with a {@link RejectedExecutionException} */
+        REJECT,
+        /** Skip the spool and hand the payload to an agent on the producer's thread */
+        SPILL
+    }
+
+    /**
+     * Make one using the MoveSpool.cfg settings and bind it in the namespace
      */
     public MoveSpool() {
-        configure();
+        this(Settings.load());
+    }
+
+    /**
+     * Make one and bind it in the namespace
+     *
+     * @param capacity maximum number of items held on the spool, unbounded if zero or less
+     * @param dispatcherCount number of threads handing items to agents
+     * @param overflow what to do with a producer when the spool is full
+     */
+    public MoveSpool(final int capacity, final int dispatcherCount, final Overflow overflow) {
+        this(capacity, dispatcherCount, overflow, Collections.singletonList(defaultLane()));
+    }
+
+    /**
+     * Make one with priority lanes and bind it in the namespace
+     *
+     * @param capacity maximum number of items held on the spool, across all lanes, unbounded if zero or less
+     * @param dispatcherCount number of threads handing items to agents
+     * @param overflow what to do with a producer when the spool is full
+     * @param lanes the lanes, payloads go to the first that accepts their priority and otherwise to the last
+     */
+    public MoveSpool(final int capacity, final int dispatcherCount, final Overflow overflow, final List<SpoolLane> lanes) {
+        this(new Settings(capacity, dispatcherCount, overflow, lanes));
+    }
+
+    private MoveSpool(final Settings settings) {
+        this.capacity = settings.capacity;
+        this.overflow = settings.overflow;
+        this.slots = new Semaphore(settings.capacity);
+        this.lanes = Collections.unmodifiableList(new ArrayList<>(settings.lanes));
+        boolean reserve = false;
+        for (int i = 0; i < this.lanes.size(); i++) {
+            final SpoolLane lane = this.lanes.get(i);
+            if (lane.index != -1) {
+                throw new IllegalArgumentException("Lane " + lane.getName() + " is already in use on a spool");
+            }
+            lane.index = i;
+            reserve |= lane.getReservedAgents() > 0;
+        }
+        this.reserving = reserve;
+        configure(settings.dispatchers);
 
         // register this pool in the namespace
         Namespace.bind(NAMESPACE_NAME, this);
@@ -78,15 +195,29 @@ public class MoveSpool implements Runnable {
      * Configure stuff
      */
     @SuppressWarnings("ThreadPriorityCheck")
-    private void configure() {
+    private void configure(final int dispatcherCount) {
         // Get the agent pool
         resetPool();
 
-        // start the watcher thread
-        watcher = new Thread(this, "MoveSpool");
-        watcher.setPriority(Thread.MAX_PRIORITY - 2);
-        watcher.setDaemon(true);
-        watcher.start();
+        try {
+            registerMetrics(MetricsManager.lookup().getMetricRegistry());
+        } catch (NamespaceException ex) {
+            logger.debug("No metrics manager available for move spool metrics");
+        }
+
+        // start the dispatcher threads
+        for (int i = 0; i < dispatcherCount; i++) {
+            final Thread t = new Thread(this, "MoveSpool-" + i);
+            t.setPriority(Thread.MAX_PRIORITY - 2);
+            t.setDaemon(true);
+            dispatchers.add(t);
+        }
+        dispatchers.forEach(Thread::start);
+        logger.debug("Started {} move spool dispatchers, capacity {}, overflow {}, lanes {}", dispatcherCount, capacity, overflow, lanes);
+    }
+
+    private static SpoolLane defaultLane() {
+        return new SpoolLane("default", Integer.MAX_VALUE, 1, 0);
     }
 
     public void resetPool() {
@@ -94,23 +225,52 @@ public class MoveSpool implements Runnable {
         try {
             pool = AgentPool.lookup();
             logger.debug("Found the AgentPool on MoveSpool#resetPool");
+            if (reserving) {
+                pool.setLaneReservations(lanes.stream().mapToInt(SpoolLane::getReservedAgents).toArray());
+            }
         } catch (NamespaceException nex) {
             logger.error("Unable to find agent pool, " + "please create the agent pool before creating the MoveSpool");
         }
     }
 
     /**
-     * Shut down the spooling thread and clear out any remaining payloads.
+     * Expose the queue wait and dispatch latency histograms in the registry, replacing any left by a previous spool
+     *
+     * @param registry the registry to use, usually from the MetricsManager
+     */
+    public void registerMetrics(@Nullable final MetricRegistry registry) {
+        if (registry == null) {
+            return;
+        }
+        register(registry, MetricRegistry.name(METRICS_PREFIX, "queueWait"), queueWait);
+        register(registry, MetricRegistry.name(METRICS_PREFIX, "dispatchLatency"), dispatchLatency);
+        for (final SpoolLane lane : lanes) {
+            register(registry, MetricRegistry.name(METRICS_PREFIX, "lane", lane.getName(), "depth"), (Gauge<Integer>) lane::getDepth);
+            register(registry, MetricRegistry.name(METRICS_PREFIX, "lane", lane.getName(), "queueWait"), lane.getQueueWait());
+        }
+    }
+
+    private static void register(final MetricRegistry registry, final String fullName, final Metric metric) {
+        registry.remove(fullName);
+        registry.register(fullName, metric);
+    }
+
+    /**
+     * Shut down the spooling threads and clear out any remaining payloads.
      */
     public void quit() {
         logger.warn("Purging the spool...");
-        synchronized (spool) {
-            if (!spool.isEmpty()) {
-                spool.clear();
+        timeToQuit = true;
+        for (final SpoolLane lane : lanes) {
+            SpoolItem s;
+            while ((s = lane.poll()) != null) {
+                size.decrementAndGet();
+                slots.release();
+                logger.debug("Purged {}", PayloadUtil.getName(s.getPayload()));
             }
-            spool.notifyAll();
         }
-        timeToQuit = true;
+        // wake the dispatchers so they see it is time to quit
+        items.release(dispatchers.size());
         Namespace.unbind(NAMESPACE_NAME);
         logger.info("Done stopping the move spool");
     }
@@ -138,124 +298,156 @@ public class MoveSpool implements Runnable {
     }
 
     /**
-     * Run the thread to watch the spool
+     * Run a dispatcher thread to watch the spool
      */
     @Override
-    @SuppressWarnings("ThreadPriorityCheck")
     public void run() {
-        int consecutiveSendCounter = 0;
-
         // Run until we are told to quit
         while (!timeToQuit) {
-            // Check the spool for work to be done
-            int sz = 0;
-            synchronized (spool) {
-                sz = spool.size();
+            // Wait for work to be done
+            try {
+                if (!items.tryAcquire(60, TimeUnit.SECONDS)) {
+                    logger.debug("Nothing in spool, time to wait...");
+                    continue;
+                }
+            } catch (InterruptedException ignore) {
+                Thread.currentThread().interrupt();
+                continue;
+            }
+
+            if (timeToQuit) {
+                break;
             }
 
-            if (sz == 0) {
-                // No payloads to look at. Sleep a while
-                consecutiveSendCounter = 0;
+            // Get the next payload, oldest first within the lane whose turn it is
+            final SpoolItem item = removeFirstPayload();
+            if (item == null) {
+                // everything waiting is in lanes with no agent to spare
+                items.release();
                 try {
-                    logger.debug("Nothing in spool, time to wait...");
-                    Thread.yield();
-                    synchronized (spool) {
-                        if (spool.isEmpty()) {
-                            spool.wait(60000);
-                        }
-                    }
+                    pool.awaitLaneChange(100);
                 } catch (InterruptedException ignore) {
                     Thread.currentThread().interrupt();
                 }
                 continue;
             }
 
-            // Get an agent and a sool item
+            // Get an agent
             IMobileAgent agent = null;
-            SpoolItem item = null;
-            String itemName = null;
-
             try {
                 // This may block for the max time the
                 // pool is configured to use if no
                 // agents available
-                agent = pool.borrowAgent();
-                if (agent == null) {
-                    logger.debug("Got a null agent from pool!");
-                    continue;
-                }
-
-                // Get the oldest payload from the spool
-                item = removeFirstPayload();
-                if (item == null) {
-                    logger.debug("Got a null item from move spool!");
-                    pool.returnAgent(agent);
-                    continue;
-                }
-
-                // We have both an agent and a spool item
-                // so hook em up and send it on the way
-                itemName = PayloadUtil.getName(item.getPayload());
-
-                logger.debug("Handing over " + itemName + " to an agent, method=" + item.getMethod());
+                agent = borrowAgent(item.getLane());
+            } catch (Exception e) {
+                logger.debug("Cannot get agent from pool, trying again", e);
+            }
+            if (agent == null) {
+                logger.debug("Got a null agent from pool!");
+                // leave the item for the next try
+                item.getLane().addFirst(item);
+                items.release();
+                continue;
+            }
 
-                if (item.getMethod() == Method.GO) {
-                    IServiceProviderPlace place = item.getPlace();
-                    if (place == null) {
-                        place = getLocalDirectory();
-                    }
+            size.decrementAndGet();
+            slots.release();
+            dequeCount.incrementAndGet();
+            final long waited = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - item.getEnqueued());
+            queueWait.update(waited);
+            item.getLane().getQueueWait().update(waited);
+            dispatch(agent, item);
+        }
+    }
 
-                    Object payload = item.getPayload();
-                    agent.go(payload, place);
-                    consecutiveSendCounter++;
-                } else if (item.getMethod() == Method.ARRIVE) {
-                    agent.arrive(item.getPayload(), item.getPlace(), item.getErrorCount(), item.getItineraryItems());
-                    consecutiveSendCounter++;
-                } else {
-                    logger.error("Illegal spooler method specified " + item.getMethod() + ", payload=" + item.getPayload()
-                            + " will be irretreivably lost");
-                }
+    /**
+     * Borrow an agent for an item in the lane, keeping to the lane reservations
+     */
+    private IMobileAgent borrowAgent(final SpoolLane lane) throws Exception {
+        return reserving ? pool.borrowAgent(lane.getIndex()) : pool.borrowAgent();
+    }
 
-                if (consecutiveSendCounter % 10 == 0) {
-                    logger.debug("Sent 10 consecutive entries, " + "time to yield the MoveSpool");
-                    Thread.yield();
-                }
-            } catch (Throwable t) {
-                if (agent != null) {
-                    logger.error("Unable to start agent, payload " + itemName + " is irretrievably lost", t);
-                    try {
-                        pool.returnAgent(agent);
-                    } catch (RuntimeException ex) {
-                        logger.error("Unable to return agent to the pool", ex);
-                    }
-                } else {
-                    logger.debug("Cannot get agent from pool, trying again", t);
+    /**
+     * Hand a spool item to an agent
+     *
+     * @param agent the borrowed agent, returned to the pool if it cannot be started
+     * @param item the work for the agent
+     */
+    protected void dispatch(final IMobileAgent agent, final SpoolItem item) {
+        final long start = System.nanoTime();
+        final String itemName = PayloadUtil.getName(item.getPayload());
+        try {
+            // We have both an agent and a spool item
+            // so hook em up and send it on the way
+            logger.debug("Handing over {} to an agent, method={}", itemName, item.getMethod());
+
+            if (item.getMethod() == Method.GO) {
+                IServiceProviderPlace place = item.getPlace();
+                if (place == null) {
+                    place = getLocalDirectory();
                 }
-            } finally {
-                // hold no references to this stuff
-                agent = null;
-                item = null;
+                agent.go(item.getPayload(), place);
+            } else if (item.getMethod() == Method.ARRIVE) {
+                agent.arrive(item.getPayload(), item.getPlace(), item.getErrorCount(), item.getItineraryItems());
+            } else {
+                logger.error("Illegal spooler method specified {}, payload={} will be irretreivably lost", item.getMethod(), item.getPayload());
             }
+        } catch (Throwable t) {
+            logger.error("Unable to start agent, payload {} is irretrievably lost", itemName, t);
+            try {
+                pool.returnAgent(agent);
+            } catch (RuntimeException ex) {
+                logger.error("Unable to return agent to the pool", ex);
+            }
+        } finally {
+            dispatchLatency.update(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
         }
     }
 
     /**
-     * Remove the oldest payload item on the spool
+     * Remove the oldest payload item in the next lane to be served. Lanes holding work take turns in proportion to their
+     * weights, skipping those that cannot have an agent without taking one reserved for another lane. The item still counts
+     * against the spool capacity until it is handed to an agent.
      *
-     * @return SpoolItem from the spool
+     * @return SpoolItem from the spool or null if no lane can be served
      */
+    @Nullable
     protected SpoolItem removeFirstPayload() {
-        SpoolItem s = null;
-        synchronized (spool) {
-            // Do some stats
-            if (spool.size() > highWaterMark) {
-                highWaterMark = spool.size();
+        if (lanes.size() == 1) {
+            // a single lane needs no turns, so dispatchers take from it without a lock
+            final SpoolLane lane = lanes.get(0);
+            return !reserving || pool.isLaneAvailable(lane.getIndex()) ? lane.poll() : null;
+        }
+        synchronized (laneTurns) {
+            int total = 0;
+            SpoolLane best = null;
+            for (final SpoolLane lane : lanes) {
+                if (lane.getDepth() > 0 && (!reserving || pool.isLaneAvailable(lane.getIndex()))) {
+                    lane.currentWeight += lane.getWeight();
+                    total += lane.getWeight();
+                    if (best == null || lane.currentWeight > best.currentWeight) {
+                        best = lane;
+                    }
+                }
             }
+            if (best == null) {
+                return null;
+            }
+            best.currentWeight -= total;
+            return best.poll();
+        }
+    }
 
-            s = spool.removeFirst();
-            dequeCount++;
+    /**
+     * Find the lane for a priority, the first that accepts it or else the last
+     */
+    protected SpoolLane laneFor(final int priority) {
+        for (final SpoolLane lane : lanes) {
+            if (lane.accepts(priority)) {
+                return lane;
+            }
         }
-        return s;
+        return lanes.get(lanes.size() - 1);
     }
 
     /**
@@ -296,7 +488,8 @@ public class MoveSpool implements Runnable {
 
     /**
      * Add an item to the spool. When an agent becomes available it is assigned to this payload in turn. We call
-     * MobileAgent.go or MobileAgent.arrive depending on the Method requested
+     * MobileAgent.go or MobileAgent.arrive depending on the Method requested. When the spool is full the {@link Overflow}
+     * policy decides what happens to the caller.
      *
      * @param method ARRIVE or GO
      * @param payload the data object or Collection to save
@@ -304,43 +497,69 @@ public class MoveSpool implements Runnable {
      * @param errorCount state from the transferred MobileAgent or null for GO
      * @param itineraryItems state from the transferred MobileAgent or empty for GO
      * @return number of items on the queue
+     * @throws RejectedExecutionException if the spool is full and the policy is REJECT, or the caller is interrupted while
+     *         waiting for room
      */
     protected int enqueue(Method method, Object payload, @Nullable IServiceProviderPlace place, int errorCount,
             @Nullable List<DirectoryEntry> itineraryItems) {
 
         String itemName = PayloadUtil.getName(payload);
-        logger.debug("Enqueue item " + itemName + " for place " + place + ", method=" + method);
+        logger.debug("Enqueue item {} for place {}, method={}", itemName, place, method);
         SpoolItem s = new SpoolItem(method, payload, place, errorCount, itineraryItems);
-        int size = 0;
-
-        synchronized (spool) {
-            spool.addLast(s);
-            enqueCount++;
-            size = spool.size();
-            spool.notifyAll();
-        }
+        s.lane = laneFor(s.getPriority());
 
         // Collect the stats
-        synchronized (moveCountMap) {
-            String serviceName = s.getServiceName();
-            if (moveCountMap.containsKey(serviceName)) {
-                Integer count = moveCountMap.get(serviceName);
-                moveCountMap.put(serviceName, Integer.valueOf(count.intValue() + 1));
-            } else {
-                moveCountMap.put(serviceName, Integer.valueOf(1));
+        moveCountMap.merge(s.getServiceName(), 1, Integer::sum);
+
+        if (!slots.tryAcquire()) {
+            switch (overflow) {
+                case REJECT:
+                    rejectCount.incrementAndGet();
+                    logger.warn("Move spool is full at {} items, rejecting {}", capacity, itemName);
+                    throw new RejectedExecutionException("Move spool is full at " + capacity + " items, rejecting " + itemName);
+                case SPILL:
+                    spillCount.incrementAndGet();
+                    logger.debug("Move spool is full, handing {} to an agent directly", itemName);
+                    spill(s);
+                    return size.get();
+                case BLOCK:
+                    try {
+                        slots.acquire();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted waiting for room on the move spool for " + itemName, e);
+                    }
             }
         }
 
-        logger.debug("Done enqueue of " + itemName + ", size=" + size);
-        return size;
+        s.getLane().add(s);
+        enqueCount.incrementAndGet();
+        final int sz = size.incrementAndGet();
+        highWaterMark.accumulateAndGet(sz, Math::max);
+        items.release();
+
+        logger.debug("Done enqueue of {}, size={}", itemName, sz);
+        return sz;
     }
 
+    /**
+     * Hand an item straight to an agent on the caller's thread, waiting on the pool like a dispatcher would
+     */
+    private void spill(final SpoolItem item) {
+        final IMobileAgent agent;
+        try {
+            agent = borrowAgent(item.getLane());
+        } catch (Exception e) {
+            throw new RejectedExecutionException("Move spool is full and no agent is available for " + PayloadUtil.getName(item.getPayload()), e);
+        }
+        dispatch(agent, item);
+    }
 
     /**
      * Look up the instance in the namespace
      */
     public static MoveSpool lookup() throws NamespaceException {
-        lookupCount++;
+        lookupCount.incrementAndGet();
         return (MoveSpool) Namespace.lookup(NAMESPACE_NAME);
     }
 
@@ -349,9 +568,7 @@ public class MoveSpool implements Runnable {
      * on this node
      */
     public Map<String, Integer> getMoveCountMap() {
-        synchronized (moveCountMap) {
-            return new HashMap<>(moveCountMap);
-        }
+        return new HashMap<>(moveCountMap);
     }
 
     /**
@@ -362,13 +579,11 @@ public class MoveSpool implements Runnable {
     public String getStatPairs() {
         StringBuilder sb = new StringBuilder();
         sb.append("{");
-        synchronized (moveCountMap) {
-            for (String key : moveCountMap.keySet()) {
-                if (sb.length() > 1) {
-                    sb.append(",");
-                }
-                sb.append(key).append("=").append(moveCountMap.get(key));
+        for (Map.Entry<String, Integer> e : moveCountMap.entrySet()) {
+            if (sb.length() > 1) {
+                sb.append(",");
             }
+            sb.append(e.getKey()).append("=").append(e.getValue());
         }
         sb.append("}");
         return sb.toString();
@@ -380,9 +595,8 @@ public class MoveSpool implements Runnable {
      */
     @Override
     public String toString() {
-        // Spool size is deliberately not synchronized
-        return "MoveSpool current/high " + spool.size() + "/" + highWaterMark + ", en/dequeue " + enqueCount + "/" + dequeCount + ", serviceNames="
-                + getStatPairs();
+        return "MoveSpool current/high " + getCurrentSpoolSize() + "/" + getHighWaterMark() + ", en/dequeue " + getEnqueCount() + "/"
+                + getDequeCount() + ", rejected/spilled " + getRejectCount() + "/" + getSpillCount() + ", serviceNames=" + getStatPairs();
     }
 
     /**
@@ -395,6 +609,9 @@ public class MoveSpool implements Runnable {
         final IServiceProviderPlace place;
         final int errorCount;
         final List<DirectoryEntry> itineraryItems;
+        final long enqueued = System.nanoTime();
+        final int priority;
+        SpoolLane lane;
 
         public SpoolItem(Method method, Object payload, IServiceProviderPlace place, int errorCount, List<DirectoryEntry> itineraryItems) {
             this.method = method;
@@ -402,6 +619,42 @@ public class MoveSpool implements Runnable {
             this.place = place;
             this.errorCount = errorCount;
             this.itineraryItems = itineraryItems;
+            this.priority = priorityOf(payload);
+        }
+
+        /**
+         * Get the priority of a payload, the most urgent of a family
+         */
+        static int priorityOf(final Object payload) {
+            if (payload instanceof IBaseDataObject) {
+                return ((IBaseDataObject) payload).getPriority();
+            }
+            if (payload instanceof Collection) {
+                int p = Integer.MAX_VALUE;
+                for (final Object o : (Collection<?>) payload) {
+                    if (o instanceof IBaseDataObject) {
+                        p = Math.min(p, ((IBaseDataObject) o).getPriority());
+                    }
+                }
+                if (p != Integer.MAX_VALUE) {
+                    return p;
+                }
+            }
+            return Priority.DEFAULT;
+        }
+
+        /**
+         * Get the payload priority, lower numbers are more urgent
+         */
+        public int getPriority() {
+            return priority;
+        }
+
+        /**
+         * Get the lane holding the item
+         */
+        public SpoolLane getLane() {
+            return lane;
         }
 
         /**
@@ -452,6 +705,64 @@ public class MoveSpool implements Runnable {
         public Method getMethod() {
             return method;
         }
+
+        /**
+         * Get the time the item was spooled, from {@link System#nanoTime()}
+         */
+        public long getEnqueued() {
+            return enqueued;
+        }
+    }
+
+    /**
+     * Spool settings from MoveSpool.cfg
+     */
+    private static final class Settings {
+        final int capacity;
+        final int dispatchers;
+        final Overflow overflow;
+        final List<SpoolLane> lanes;
+
+        Settings(final int capacity, final int dispatchers, final Overflow overflow, final List<SpoolLane> lanes) {
+            if (dispatchers < 1) {
+                throw new IllegalArgumentException("Move spool needs at least one dispatcher, not " + dispatchers);
+            }
+            if (lanes.isEmpty()) {
+                throw new IllegalArgumentException("Move spool needs at least one lane");
+            }
+            this.capacity = capacity < 1 ? DEFAULT_CAPACITY : capacity;
+            this.dispatchers = dispatchers;
+            this.overflow = overflow;
+            this.lanes = lanes;
+        }
+
+        static Settings load() {
+            int capacity = DEFAULT_CAPACITY;
+            int dispatchers = DEFAULT_DISPATCHERS;
+            Overflow overflow = DEFAULT_OVERFLOW;
+            final List<SpoolLane> lanes = new ArrayList<>();
+            try {
+                final Configurator conf = ConfigUtil.getConfigInfo(MoveSpool.class);
+                capacity = conf.findIntEntry("SPOOL_CAPACITY", DEFAULT_CAPACITY);
+                dispatchers = conf.findIntEntry("DISPATCHER_THREADS", DEFAULT_DISPATCHERS);
+                final String policy = conf.findStringEntry("OVERFLOW_POLICY", DEFAULT_OVERFLOW.name());
+                try {
+                    overflow = Overflow.valueOf(policy.toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    logger.warn("Unknown move spool OVERFLOW_POLICY {}, using {}", policy, overflow);
+                }
+                for (final String name : conf.findEntries("LANE")) {
+                    lanes.add(new SpoolLane(name, conf.findIntEntry("LANE_MAX_PRIORITY_" + name, Integer.MAX_VALUE),
+                            conf.findIntEntry("LANE_WEIGHT_" + name, 1), conf.findIntEntry("LANE_RESERVED_AGENTS_" + name, 0)));
+                }
+            } catch (IOException e) {
+                logger.debug("Cannot read MoveSpool.cfg, taking default values");
+            }
+            if (lanes.isEmpty()) {
+                lanes.add(defaultLane());
+            }
+            return new Settings(capacity, dispatchers, overflow, lanes);
+        }
     }
 
     /**
@@ -460,7 +771,7 @@ public class MoveSpool implements Runnable {
      * @return the lookupCount
      */
     public static long getLookupCount() {
-        return lookupCount;
+        return lookupCount.get();
     }
 
     /**
@@ -469,7 +780,7 @@ public class MoveSpool implements Runnable {
      * @return the dequeCount
      */
     public long getDequeCount() {
-        return dequeCount;
+        return dequeCount.get();
     }
 
     /**
@@ -478,7 +789,21 @@ public class MoveSpool implements Runnable {
      * @return the enqueCount
      */
     public long getEnqueCount() {
-        return enqueCount;
+        return enqueCount.get();
+    }
+
+    /**
+     * Get the number of items rejected because the spool was full
+     */
+    public long getRejectCount() {
+        return rejectCount.get();
+    }
+
+    /**
+     * Get the number of items handed to agents on the producer's thread because the spool was full
+     */
+    public long getSpillCount() {
+        return spillCount.get();
     }
 
     /**
@@ -487,10 +812,38 @@ public class MoveSpool implements Runnable {
      * @return the highWaterMark
      */
     public int getHighWaterMark() {
-        return highWaterMark;
+        return highWaterMark.get();
     }
 
     public int getCurrentSpoolSize() {
-        return spool.size();
+        return size.get();
+    }
+
+    /**
+     * Get the maximum number of items held on the spool
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the time items waited on the spool, in microseconds
+     */
+    public Histogram getQueueWait() {
+        return queueWait;
+    }
+
+    /**
+     * Get the priority lanes, most urgent first
+     */
+    public List<SpoolLane> getLanes() {
+        return lanes;
+    }
+
+    /**
+     * Get the time taken to hand items to agents, in microseconds
+     */
+    public Histogram getDispatchLatency() {
+        return dispatchLatency;
     }
 }
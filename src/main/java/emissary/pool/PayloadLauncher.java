@@ -13,6 +13,7 @@ import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Launch an incoming payload the best way possible.
@@ -38,7 +39,12 @@ public class PayloadLauncher {
             }
 
             if (spool != null) {
-                int sz = spool.arrive(payload, place, errorCount, itineraryItems);
+                final int sz;
+                try {
+                    sz = spool.arrive(payload, place, errorCount, itineraryItems);
+                } catch (RejectedExecutionException e) {
+                    throw new EmissaryException("Move spool cannot take " + payloadName, e);
+                }
                 logger.debug("Payload " + payloadName + " spooled out, " + sz + " on the spool");
 
                 return true;
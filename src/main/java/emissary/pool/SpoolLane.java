@@ -0,0 +1,120 @@
+package emissary.pool;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+
+/**
+ * One priority lane on the {@link MoveSpool}. A lane takes the payloads whose priority is no greater than its maximum
+ * and not taken by an earlier lane. Dispatchers share out their attention among the lanes holding work in proportion to
+ * the lane weights, so a busy low priority lane slows down but is never starved. A lane may also reserve agents in the
+ * {@link AgentPool} that the other lanes cannot use.
+ */
+public class SpoolLane {
+
+    private final String name;
+    private final int maxPriority;
+    private final int weight;
+    private final int reservedAgents;
+
+    // Position of the lane on the spool, in priority order
+    int index = -1;
+
+    // Smooth weighted round robin state, guarded by the spool
+    int currentWeight = 0;
+
+    private final Deque<MoveSpool.SpoolItem> queue = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final Histogram queueWait = new Histogram(new ExponentiallyDecayingReservoir());
+
+    /**
+     * Define a lane
+     *
+     * @param name name used in logs and metric names
+     * @param maxPriority highest priority number taken by the lane, lower numbers are more urgent
+     * @param weight share of dispatcher attention, relative to the other lanes
+     * @param reservedAgents agents held back in the pool for this lane
+     */
+    public SpoolLane(final String name, final int maxPriority, final int weight, final int reservedAgents) {
+        if (weight < 1 || reservedAgents < 0) {
+            throw new IllegalArgumentException("Lane " + name + " needs a positive weight and no negative reservation, not " + weight + " and "
+                    + reservedAgents);
+        }
+        this.name = name;
+        this.maxPriority = maxPriority;
+        this.weight = weight;
+        this.reservedAgents = reservedAgents;
+    }
+
+    /**
+     * True if the lane takes payloads of this priority
+     */
+    public boolean accepts(final int priority) {
+        return priority <= maxPriority;
+    }
+
+    void add(final MoveSpool.SpoolItem item) {
+        queue.add(item);
+        depth.incrementAndGet();
+    }
+
+    void addFirst(final MoveSpool.SpoolItem item) {
+        queue.addFirst(item);
+        depth.incrementAndGet();
+    }
+
+    @Nullable
+    MoveSpool.SpoolItem poll() {
+        final MoveSpool.SpoolItem item = queue.poll();
+        if (item != null) {
+            depth.decrementAndGet();
+        }
+        return item;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxPriority() {
+        return maxPriority;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public int getReservedAgents() {
+        return reservedAgents;
+    }
+
+    /**
+     * Get the position of the lane on its spool, the most urgent lane is zero
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Get the number of items waiting in the lane
+     */
+    public int getDepth() {
+        return depth.get();
+    }
+
+    /**
+     * Get the time items waited in the lane, in microseconds
+     */
+    public Histogram getQueueWait() {
+        return queueWait;
+    }
+
+    @Override
+    public String toString() {
+        return name + "(<=" + maxPriority + ", weight " + weight + ", reserved " + reservedAgents + ", depth " + getDepth() + ")";
+    }
+}
@@ -48,6 +48,7 @@ import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -1094,6 +1095,63 @@ class BaseDataObjectTest extends UnitTest {
         }
     }
 
+    @Test
+    @SuppressWarnings("deprecation")
+    void testCloneSharesUntilChanged() throws CloneNotSupportedException {
+        final byte[] bytes = "shared bytes".getBytes();
+        final BaseDataObject original = new BaseDataObject(bytes, "shared", "FORM_A");
+        original.pushCurrentForm("FORM_B");
+        original.appendTransformHistory("UNKNOWN.FOO.ID.http://localhost:8001/FooPlace$1234");
+        original.putParameter("KEY", "value");
+        original.addAlternateView("VIEW", "view".getBytes());
+
+        final BaseDataObject clone = (BaseDataObject) original.clone();
+        assertSame(bytes, clone.theData, "Data is shared until handed out");
+        assertSame(original.parameters, clone.parameters, "Parameters are shared until changed");
+        assertSame(original.currentForm, clone.currentForm, "Current forms are shared until changed");
+        assertEquals("value", clone.getStringParameter("KEY"));
+        assertSame(original.parameters, clone.parameters, "Reading does not copy");
+
+        clone.putParameter("KEY", "changed");
+        clone.popCurrentForm();
+        clone.appendTransformHistory("UNKNOWN.BAR.ID.http://localhost:8001/BarPlace$1234");
+        clone.addAlternateView("OTHER", "other".getBytes());
+
+        assertEquals("value", original.getStringParameter("KEY"), "Original keeps its parameters");
+        assertEquals("changed", clone.getStringParameter("KEY"));
+        assertEquals(List.of("FORM_B", "FORM_A"), original.getAllCurrentForms(), "Original keeps its forms");
+        assertEquals(List.of("FORM_A"), clone.getAllCurrentForms());
+        assertEquals(1, original.transformHistory().size(), "Original keeps its history");
+        assertEquals(2, clone.transformHistory().size());
+        assertEquals(Set.of("VIEW"), original.getAlternateViewNames(), "Original keeps its views");
+        assertEquals(Set.of("OTHER", "VIEW"), clone.getAlternateViewNames());
+
+        original.putParameter("ORIGINAL", "only");
+        assertFalse(clone.hasParameter("ORIGINAL"), "Original copies on its first change too");
+        assertSame(bytes, original.theData);
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    void testCloneDataChangedInPlace() throws CloneNotSupportedException {
+        final BaseDataObject original = new BaseDataObject("lower case".getBytes(), "shared", "FORM_A");
+        final BaseDataObject clone = (BaseDataObject) original.clone();
+        final BaseDataObject sibling = (BaseDataObject) original.clone();
+
+        final byte[] cloneData = clone.data();
+        for (int i = 0; i < cloneData.length; i++) {
+            cloneData[i] = (byte) Character.toUpperCase(cloneData[i]);
+        }
+
+        assertEquals("LOWER CASE", new String(clone.data()), "Clone keeps its change");
+        assertEquals("lower case", new String(original.data()), "Original is unchanged");
+        assertEquals("lower case", new String(sibling.data()), "Sibling clone is unchanged");
+        assertSame(clone.data(), clone.data(), "Copied only once");
+
+        original.data()[0] = 'L';
+        assertEquals("lower case", new String(sibling.data()), "Sibling is unchanged by the original");
+    }
+
     @Test
     void testHeaderEncoding() {
         this.b.setHeaderEncoding("foo");
@@ -0,0 +1,87 @@
+package emissary.core;
+
+import emissary.test.core.junit5.UnitTest;
+
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the heap held by the default and compact parameter stores when loaded with metadata shaped like that of
+ * typical extracted children: a few dozen keys, mostly single valued, with key strings made fresh for each payload as a
+ * parser would.
+ */
+class CompactParametersMemoryIT extends UnitTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompactParametersMemoryIT.class);
+
+    private static final int PAYLOADS = 20_000;
+
+    private static final String[] SINGLE_KEYS = {"FILE_TYPE", "FILENAME", "FILE_DATE", "PARENT_FILETYPE", "ORIGINAL_FILENAME", "MIME_TYPE",
+            "CHARSET", "LANGUAGE", "CONTENT_LENGTH", "CREATED", "MODIFIED", "AUTHOR", "TITLE", "SUBJECT", "MD5", "SHA1", "SHA256", "SSDEEP",
+            "BODY_LENGTH", "TRANSACTION_ID", "INPUT_FILENAME", "PROCESSING_TIME", "EXTRACTED_BY", "BIRTH_ORDER"};
+
+    private static final String[] MULTI_KEYS = {"EMAIL_ADDRESS", "URL", "HOSTNAME", "KEYWORD"};
+
+    // one shared value so only the store itself is measured
+    private static final Object VALUE = "value";
+
+    @Test
+    void testCompactStoreUsesLessHeap() {
+        final long linked = measure(() -> LinkedListMultimap.create(100));
+        final long compact = measure(CompactParameters::new);
+        logger.info("Parameter store heap per payload: LinkedListMultimap {} bytes, CompactParameters {} bytes ({}%)", linked, compact,
+                compact * 100 / linked);
+        assertTrue(compact < linked, "Compact store should be smaller, " + compact + " vs " + linked + " bytes per payload");
+    }
+
+    private static long measure(final Supplier<ListMultimap<String, Object>> store) {
+        // warm up so class loading and interned keys are not counted
+        fill(store, 100);
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        final long before = usedAfterGc(memory);
+        final List<ListMultimap<String, Object>> held = fill(store, PAYLOADS);
+        final long after = usedAfterGc(memory);
+        assertEquals(PAYLOADS, held.size());
+        return (after - before) / PAYLOADS;
+    }
+
+    private static List<ListMultimap<String, Object>> fill(final Supplier<ListMultimap<String, Object>> store, final int count) {
+        final List<ListMultimap<String, Object>> held = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final ListMultimap<String, Object> p = store.get();
+            for (final String key : SINGLE_KEYS) {
+                p.put(fresh(key), VALUE);
+            }
+            for (int k = 0; k < MULTI_KEYS.length; k++) {
+                for (int v = 0; v <= k; v++) {
+                    p.put(fresh(MULTI_KEYS[k]), VALUE);
+                }
+            }
+            held.add(p);
+        }
+        return held;
+    }
+
+    private static String fresh(final String key) {
+        return new String(key.toCharArray());
+    }
+
+    private static long usedAfterGc(final MemoryMXBean memory) {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,158 @@
+package emissary.core;
+
+import emissary.test.core.junit5.UnitTest;
+
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompactParametersTest extends UnitTest {
+
+    @AfterEach
+    void restoreDefaultStore() {
+        BaseDataObject.setCompactParameters(false);
+    }
+
+    @Test
+    void testSameResultsAsDefaultStore() {
+        final IBaseDataObject linked = exercise(new BaseDataObject());
+        BaseDataObject.setCompactParameters(true);
+        final BaseDataObject compactPayload = new BaseDataObject();
+        assertInstanceOf(CompactParameters.class, compactPayload.parameters);
+        final IBaseDataObject compact = exercise(compactPayload);
+
+        assertEquals(new ArrayList<>(linked.getParameterKeys()), new ArrayList<>(compact.getParameterKeys()), "Keys keep insertion order");
+        for (final Map.Entry<String, ?> e : linked.getParameters().entrySet()) {
+            assertEquals(e.getValue(), compact.getParameter(e.getKey()), "Values of " + e.getKey());
+        }
+        assertEquals(linked.getCookedParameters(), compact.getCookedParameters());
+        assertNull(compact.getParameter("GONE"));
+    }
+
+    private static IBaseDataObject exercise(final IBaseDataObject d) {
+        d.putParameter("NAME", "first");
+        d.appendParameter("NAME", "second");
+        d.putParameter("LIST", List.of("a", "b", "c"));
+        d.appendUniqueParameter("LIST", "b");
+        d.appendUniqueParameter("LIST", "d");
+        d.setParameter("GONE", "x");
+        d.putParameter("AFTER", 42);
+        d.deleteParameter("GONE");
+        d.putParameters(Map.of("MERGED", "m"));
+        d.mergeParameters(Map.of("NAME", "ignored"));
+        d.setParameter("NAME", "replaced");
+        return d;
+    }
+
+    @Test
+    void testEntriesInInsertionOrderAcrossKeys() throws Exception {
+        final LinkedListMultimap<String, Object> linked = LinkedListMultimap.create();
+        final CompactParameters compact = new CompactParameters();
+        for (final ListMultimapStep step : List.<ListMultimapStep>of(
+                m -> m.put("A", "1"),
+                m -> m.put("B", "2"),
+                m -> m.put("A", "3"),
+                m -> m.put("C", "4"),
+                m -> m.put("B", "5"),
+                m -> m.removeAll("C"),
+                m -> m.put("C", "6"),
+                m -> m.get("A").remove(0),
+                m -> m.put("A", "7"))) {
+            step.apply(linked);
+            step.apply(compact);
+            assertEquals(new ArrayList<>(linked.entries()), new ArrayList<>(compact.entries()));
+        }
+
+        final Iterator<Map.Entry<String, Object>> it = compact.entries().iterator();
+        it.next();
+        it.remove();
+        linked.entries().remove(linked.entries().get(0));
+        assertEquals(new ArrayList<>(linked.entries()), new ArrayList<>(compact.entries()), "Removed through the entries");
+        assertEquals(linked.asMap(), compact.asMap());
+
+        assertEquals(new ArrayList<>(linked.entries()), new ArrayList<>(new CompactParameters(linked).entries()), "Copy keeps the order");
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(compact);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertEquals(new ArrayList<>(linked.entries()), new ArrayList<>(((CompactParameters) in.readObject()).entries()),
+                    "Serializing keeps the order");
+        }
+    }
+
+    private interface ListMultimapStep {
+        void apply(ListMultimap<String, Object> m);
+    }
+
+    @Test
+    void testKeysAreShared() {
+        final CompactParameters one = new CompactParameters();
+        final CompactParameters two = new CompactParameters();
+        one.put(new String("FILE_TYPE".toCharArray()), "a");
+        two.put(new String("FILE_TYPE".toCharArray()), "b");
+        assertSame(one.keySet().iterator().next(), two.keySet().iterator().next());
+    }
+
+    @Test
+    void testEmptyStore() {
+        final CompactParameters p = new CompactParameters();
+        assertFalse(p.containsKey("A"));
+        assertTrue(p.removeAll("A").isEmpty());
+        assertEquals(0, p.size());
+        p.clear();
+        assertTrue(p.isEmpty());
+        assertEquals(List.of(), p.get("A"));
+        p.get("A").add("view");
+        assertEquals(List.of("view"), p.get("A"), "Values of a missing key are a live view");
+    }
+
+    @Test
+    void testCopyAndSerialize() throws Exception {
+        final LinkedListMultimap<String, Object> source = LinkedListMultimap.create();
+        source.put("B", "1");
+        source.put("A", "2");
+        source.put("B", "3");
+        final CompactParameters copy = new CompactParameters(source);
+        assertEquals(source.asMap(), copy.asMap());
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(copy);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            final CompactParameters read = (CompactParameters) in.readObject();
+            assertEquals(copy, read);
+            assertEquals(List.of("B", "A"), new ArrayList<>(read.keySet()));
+        }
+    }
+
+    @Test
+    void testCloneKeepsStoreKind() throws Exception {
+        BaseDataObject.setCompactParameters(true);
+        final BaseDataObject d = new BaseDataObject();
+        d.putParameter("KEY", "value");
+        @SuppressWarnings("deprecation")
+        final BaseDataObject c = (BaseDataObject) d.clone();
+        assertInstanceOf(CompactParameters.class, c.parameters);
+        c.putParameter("KEY", "changed");
+        assertEquals("value", d.getStringParameter("KEY"), "Clone holds its own copy");
+    }
+}
@@ -1,15 +1,25 @@
 package emissary.core;
 
+import emissary.core.channels.RefCountedChannelFactory;
+import emissary.core.channels.SeekableByteChannelHelper;
 import emissary.test.core.junit5.UnitTest;
+import emissary.util.DisposeHelper;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class DataObjectFactoryTest extends UnitTest {
     private String defaultPayloadClass;
@@ -44,6 +54,67 @@ class DataObjectFactoryTest extends UnitTest {
         assertInstanceOf(ExtractedRecord.class, e, "Proper class hierarchy");
     }
 
+    @Test
+    void testSegmentInstance() {
+        final byte[] container = "headerFIRSTsecondtrailer".getBytes(StandardCharsets.US_ASCII);
+        final IBaseDataObject parent = DataObjectFactory.getInstance(container, "container", "ARCHIVE");
+        final IBaseDataObject first = DataObjectFactory.getSegmentInstance(parent, 6, 5, "container-att-1", "UNKNOWN");
+        final IBaseDataObject second = DataObjectFactory.getSegmentInstance(parent, 11, 6, "container-att-2", "TEXT", "PLAIN");
+
+        assertArrayEquals("FIRST".getBytes(StandardCharsets.US_ASCII), first.data());
+        assertEquals("UNKNOWN", first.currentForm());
+        assertEquals("container-att-1", first.getFilename());
+        assertArrayEquals("second".getBytes(StandardCharsets.US_ASCII), second.data());
+        assertEquals("TEXT", second.currentForm());
+        assertEquals("PLAIN", second.getFileType());
+        assertSame(container, parent.data(), "Parent data is not copied");
+
+        assertThrows(IllegalArgumentException.class, () -> DataObjectFactory.getSegmentInstance(parent, 20, 10, "past-the-end", "UNKNOWN"));
+        assertThrows(NullPointerException.class, () -> DataObjectFactory.getSegmentInstance(DataObjectFactory.getInstance(), 0, 0, "none",
+                "UNKNOWN"));
+    }
+
+    @Test
+    void testSegmentInstanceKeepsParentStoreUntilDisposed() {
+        final AtomicBoolean released = new AtomicBoolean(false);
+        final RefCountedChannelFactory store = SeekableByteChannelHelper.refCounted(
+                SeekableByteChannelHelper.memory("parentchildgrandchild".getBytes(StandardCharsets.US_ASCII)), () -> released.set(true));
+        final IBaseDataObject parent = DataObjectFactory.getInstance();
+        parent.setChannelFactory(store);
+
+        final IBaseDataObject child = DataObjectFactory.getSegmentInstance(parent, 6, 15, "parent-att-1", "UNKNOWN");
+        final IBaseDataObject grandchild = DataObjectFactory.getSegmentInstance(child, 5, 10, "parent-att-1-att-1", "UNKNOWN");
+        assertEquals(2, store.getReferenceCount(), "Parent and child hold the store");
+
+        store.release();
+        DisposeHelper.execute(child);
+        assertFalse(released.get(), "Grandchild still reads the store through the child");
+        assertArrayEquals("grandchild".getBytes(StandardCharsets.US_ASCII), grandchild.data());
+
+        DisposeHelper.execute(grandchild);
+        assertTrue(released.get(), "Store released with the last descendant");
+    }
+
+    @Test
+    void testClonedSegmentHoldsItsOwnReference() throws CloneNotSupportedException {
+        final AtomicBoolean released = new AtomicBoolean(false);
+        final RefCountedChannelFactory store = SeekableByteChannelHelper.refCounted(
+                SeekableByteChannelHelper.memory("parentchild".getBytes(StandardCharsets.US_ASCII)), () -> released.set(true));
+        final IBaseDataObject parent = DataObjectFactory.getInstance();
+        parent.setChannelFactory(store);
+
+        final IBaseDataObject child = DataObjectFactory.getSegmentInstance(parent, 6, 5, "parent-att-1", "UNKNOWN");
+        final IBaseDataObject clone = child.clone();
+        store.release();
+
+        DisposeHelper.execute(child);
+        assertFalse(released.get(), "Clone still reads the store");
+        assertArrayEquals("child".getBytes(StandardCharsets.US_ASCII), clone.data());
+
+        DisposeHelper.execute(clone);
+        assertTrue(released.get(), "Store released with the clone");
+    }
+
     @Test
     void testSetImpl() {
         DataObjectFactory.setImplementingClass(MyDataObject.class.getName());
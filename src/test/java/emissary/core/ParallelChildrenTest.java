@@ -0,0 +1,122 @@
+package emissary.core;
+
+import emissary.directory.DirectoryEntry;
+import emissary.place.IServiceProviderPlace;
+import emissary.test.core.junit5.UnitTest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelChildrenTest extends UnitTest {
+
+    @AfterEach
+    void resetDefault() {
+        ParallelChildren.configureDefault(0, 1);
+    }
+
+    @Test
+    void testDisabledByDefault() {
+        assertFalse(ParallelChildren.getDefault().accepts(Integer.MAX_VALUE));
+        assertTrue(ParallelChildren.getDefault().walk(new HDMobileAgent(), Mockito.mock(IServiceProviderPlace.class), List.of()).isEmpty());
+    }
+
+    @Test
+    void testConfigureDefault() {
+        ParallelChildren.configureDefault(3, 2);
+        final ParallelChildren configured = ParallelChildren.getDefault();
+        assertFalse(configured.accepts(2));
+        assertTrue(configured.accepts(3));
+
+        ParallelChildren.configureDefault(3, 2);
+        assertSame(configured, ParallelChildren.getDefault(), "Same settings keep the running pool");
+
+        ParallelChildren.configureDefault(0, 2);
+        assertFalse(ParallelChildren.getDefault().accepts(3));
+        assertThrows(IllegalArgumentException.class, () -> new ParallelChildren(0, 2));
+    }
+
+    @Test
+    void testChildStopsBeforeDropOffAndRemoteHops() {
+        final ParallelChildren.ChildAgent child = new ParallelChildren.ChildAgent(new HDMobileAgent());
+        assertTrue(child.holdBefore(entry("IO", true)), "Drop off is left to the parent");
+        assertTrue(child.holdBefore(entry("ANALYZE", false)), "Moves to other nodes are left to the parent");
+        assertFalse(child.holdBefore(entry("ANALYZE", true)));
+    }
+
+    @Test
+    void testWalkChildrenWithNowhereToGo() {
+        final ParallelChildren walker = new ParallelChildren(1, 2);
+        try {
+            final IServiceProviderPlace place = Mockito.mock(IServiceProviderPlace.class);
+            final DirectoryEntry here = entry("TRANSFORM", true);
+            Mockito.when(place.getDirectoryEntry()).thenReturn(here);
+            final IBaseDataObject first = DataObjectFactory.getInstance(new byte[0], "parent-att-1", "UNKNOWN");
+            final IBaseDataObject second = DataObjectFactory.getInstance(new byte[0], "parent-att-2", "UNKNOWN");
+            first.popCurrentForm();
+            second.popCurrentForm();
+
+            final List<IBaseDataObject> descendants = walker.walk(new HDMobileAgent(), place, List.of(first, second));
+            assertTrue(descendants.isEmpty(), "Children with nowhere to go sprout nothing");
+            assertNull(first.getProcessingError(), "Walk should not fail");
+        } finally {
+            walker.shutdown();
+        }
+    }
+
+    @Test
+    void testChildAgentOfWalkingThread() {
+        final ParallelChildren walker = new ParallelChildren(1, 1);
+        try {
+            final HDMobileAgent parent = new HDMobileAgent();
+            final List<IMobileAgent> seen = new CopyOnWriteArrayList<>();
+            final List<Thread> workers = new CopyOnWriteArrayList<>();
+            final IServiceProviderPlace place = Mockito.mock(IServiceProviderPlace.class);
+            final DirectoryEntry here = entry("TRANSFORM", true);
+            Mockito.when(place.getDirectoryEntry()).thenAnswer(invocation -> {
+                final IMobileAgent agent = ParallelChildren.currentChildAgent();
+                seen.add(agent);
+                workers.add(((ParallelChildren.ChildAgent) agent).getWorkerThread());
+                assertSame(Thread.currentThread(), workers.get(0), "Child agent works on the walking thread");
+                assertEquals(parent.getName(), Thread.currentThread().getName(), "Walking thread carries the parent name");
+                return here;
+            });
+            final IBaseDataObject child = DataObjectFactory.getInstance(new byte[0], "parent-att-1", "UNKNOWN");
+            child.popCurrentForm();
+
+            walker.walk(parent, place, List.of(child));
+            assertFalse(seen.isEmpty(), "Place should be asked where the child is");
+            assertNotSame(parent, seen.get(0), "Timing on the walking thread should use the child agent");
+            assertNotSame(parent.getWorkerThread(), workers.get(0), "Interrupting the child agent hits the walking thread, not the parent");
+            assertNull(ParallelChildren.currentChildAgent(), "No child agent outside a walk");
+        } finally {
+            walker.shutdown();
+        }
+    }
+
+    private static DirectoryEntry entry(final String serviceType, final boolean local) {
+        final DirectoryEntry e = Mockito.mock(DirectoryEntry.class);
+        Mockito.when(e.getServiceType()).thenReturn(serviceType);
+        Mockito.when(e.isLocal()).thenReturn(local);
+        Mockito.when(e.getFullKey()).thenReturn("UNKNOWN." + serviceType + ".http://localhost:8001/Place");
+        return e;
+    }
+
+    @Test
+    void testChildKeepsParentName() {
+        final HDMobileAgent parent = new HDMobileAgent();
+        final ParallelChildren.ChildAgent child = new ParallelChildren.ChildAgent(parent);
+        assertEquals(parent.getName(), child.getName());
+    }
+}
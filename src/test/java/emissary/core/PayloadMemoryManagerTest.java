@@ -0,0 +1,169 @@
+package emissary.core;
+
+import emissary.core.channels.SeekableByteChannelHelper;
+import emissary.place.sample.ToUpperPlace;
+import emissary.test.core.junit5.UnitTest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PayloadMemoryManagerTest extends UnitTest {
+
+    @TempDir
+    Path spillDir;
+
+    private final PayloadMemoryManager memory = PayloadMemoryManager.getInstance();
+
+    @AfterEach
+    void disable() {
+        memory.configure(0, 0, 0, Paths.get(System.getProperty("java.io.tmpdir")));
+        memory.setSpillCodec(null);
+    }
+
+    @Test
+    void testDisabledCountsNothing() {
+        assertFalse(memory.isEnabled());
+        final BaseDataObject d = new BaseDataObject(new byte[1000], "nothing");
+        assertEquals(0, memory.getBytes());
+        assertNull(d.memoryTicket);
+    }
+
+    @Test
+    void testCountsSetDataAndReleases() {
+        memory.configure(1_000_000, 500_000, 100, spillDir);
+        final BaseDataObject d = new BaseDataObject(new byte[1000], "counted");
+        assertEquals(1000, memory.getBytes());
+        d.setData(new byte[200], 0, 100);
+        assertEquals(100, memory.getBytes(), "Replaced data replaces the count");
+        d.setChannelFactory(SeekableByteChannelHelper.memory(new byte[10]));
+        assertEquals(0, memory.getBytes(), "Channel backed data is not counted");
+        assertEquals(0, memory.getTrackedCount());
+    }
+
+    @Test
+    void testSpillsLargestPayloads() throws Exception {
+        memory.configure(3000, 1500, 100, spillDir);
+        final long spills = memory.getSpillCount();
+        final long spilled = memory.getSpilledBytes();
+        final BaseDataObject small = new BaseDataObject(filled(500, 's'), "small");
+        final BaseDataObject large = new BaseDataObject(filled(1500, 'l'), "large");
+        final BaseDataObject medium = new BaseDataObject(filled(1000, 'm'), "medium");
+        assertEquals(spills, memory.getSpillCount(), "Still under the high water mark");
+
+        final BaseDataObject tipping = new BaseDataObject(filled(800, 't'), "tipping");
+        assertEquals(spills + 2, memory.getSpillCount(), "Largest payloads go first until under the low water mark");
+        assertEquals(spilled + 2500, memory.getSpilledBytes());
+        assertEquals(1300, memory.getBytes());
+
+        assertNotNull(large.getChannelFactory());
+        assertNull(large.theData, "Spilled payload no longer holds the array");
+        assertTrue(Arrays.equals(filled(500, 's'), small.theData), "Small payloads stay in memory");
+        assertTrue(Arrays.equals(filled(800, 't'), tipping.theData));
+        assertArrayEquals(filled(1500, 'l'), large.data(), "Spilled payload reads back the same");
+        assertArrayEquals(filled(1000, 'm'), medium.data());
+        assertEquals(1000, medium.dataLength());
+        assertTrue(memory.getBytes() <= 3000, "Reading back spills the others to make room");
+    }
+
+    @Test
+    void testSpillsCompressed() throws Exception {
+        memory.configure(1000, 500, 100, spillDir);
+        memory.setSpillCodec("deflate");
+        final BaseDataObject d = new BaseDataObject(filled(5000, 'c'), "compressed");
+        assertNull(d.theData);
+        assertArrayEquals(filled(5000, 'c'), d.data());
+        try (Stream<Path> files = Files.list(spillDir)) {
+            assertTrue(Files.size(files.findFirst().orElseThrow()) < 1000, "Spill file is compressed");
+        }
+    }
+
+    @Test
+    void testMinimumSpillSize() {
+        memory.configure(1000, 500, 2000, spillDir);
+        final long spills = memory.getSpillCount();
+        final BaseDataObject d = new BaseDataObject(filled(1500, 'x'), "big");
+        assertEquals(spills, memory.getSpillCount(), "Payloads under the minimum are never spilled");
+        assertNotNull(d.theData);
+    }
+
+    @Test
+    void testSpilledPayloadKeepsChangesInPlace() throws Exception {
+        final ToUpperPlace place = new ToUpperPlace("emissary/place/sample/ToUpperPlace.cfg");
+        memory.configure(1000, 500, 100, spillDir);
+        final BaseDataObject d = new BaseDataObject(filled(5000, 'u'), "spilled");
+        assertNull(d.theData, "Spilled on arrival");
+
+        place.process(d);
+        assertArrayEquals(filled(5000, 'U'), d.data(), "Change made in place by the place is kept");
+        assertNotNull(d.theData, "Back in memory once handed out");
+    }
+
+    @Test
+    void testHandedOutDataIsNotSpilled() {
+        memory.configure(3000, 1500, 100, spillDir);
+        final long spills = memory.getSpillCount();
+        final BaseDataObject d = new BaseDataObject(filled(2000, 'l'), "held");
+        final byte[] held = d.data();
+
+        new BaseDataObject(filled(2000, 't'), "tipping");
+        assertEquals(spills + 1, memory.getSpillCount(), "Only the payload nobody holds is spilled");
+        assertSame(held, d.theData, "Handed out array stays in place");
+        Arrays.fill(held, (byte) 'x');
+        assertArrayEquals(filled(2000, 'x'), d.data());
+    }
+
+    @Test
+    void testReleasedDataIsSpilled() {
+        memory.configure(3000, 1500, 100, spillDir);
+        final BaseDataObject d = new BaseDataObject(filled(2000, 'l'), "held");
+        final byte[] held = d.data();
+        Arrays.fill(held, (byte) 'x');
+        memory.released(List.of(d));
+
+        new BaseDataObject(filled(1200, 't'), "tipping");
+        assertNull(d.theData, "Spilled once the place is done with it");
+        assertArrayEquals(filled(2000, 'x'), d.data(), "Change made in place before the release is kept");
+    }
+
+    @Test
+    void testDataReadThroughStaysUnderHighWater() {
+        final long highWater = 10_000;
+        memory.configure(highWater, 5_000, 100, spillDir);
+        final List<BaseDataObject> payloads = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            payloads.add(new BaseDataObject(filled(2000, (char) ('a' + i)), "payload-" + i));
+        }
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < payloads.size(); i++) {
+                final BaseDataObject d = payloads.get(i);
+                assertArrayEquals(filled(2000, (char) ('a' + i)), d.data(), "Read back the same");
+                assertTrue(memory.getBytes() <= highWater, "Reading back stays under the high water mark, at " + memory.getBytes());
+                memory.released(List.of(d));
+            }
+        }
+        assertTrue(memory.getSpillCount() > payloads.size(), "Payloads read through data() are spilled again");
+    }
+
+    private static byte[] filled(final int size, final char c) {
+        final byte[] bytes = new byte[size];
+        Arrays.fill(bytes, (byte) c);
+        return bytes;
+    }
+}
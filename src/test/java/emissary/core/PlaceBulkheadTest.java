@@ -0,0 +1,107 @@
+package emissary.core;
+
+import emissary.config.ServiceConfigGuide;
+import emissary.test.core.junit5.UnitTest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlaceBulkheadTest extends UnitTest {
+
+    @Test
+    void testStaticLimitHoldsAgentsBack() throws Exception {
+        final PlaceBulkhead b = new PlaceBulkhead("SlowPlace", PlaceBulkhead.Mode.STATIC, PlaceBulkhead.Saturation.QUEUE, 2, 1, 2, 10000, 2.0);
+        b.acquire();
+        b.acquire();
+        assertTrue(b.isSaturated());
+
+        final CountDownLatch entered = new CountDownLatch(1);
+        final Thread third = new Thread(() -> {
+            b.acquire();
+            entered.countDown();
+        });
+        third.start();
+        assertFalse(entered.await(200, TimeUnit.MILLISECONDS), "Third agent must wait for a permit");
+        assertEquals(1, b.getWaiting());
+
+        b.release();
+        assertTrue(entered.await(10, TimeUnit.SECONDS), "Third agent should get the released permit");
+        third.join(10000);
+        assertEquals(2, b.getInUse());
+        assertEquals(0, b.getOverLimitCount());
+        assertEquals(3, b.getWaitTime().getCount());
+
+        b.sample(TimeUnit.SECONDS.toNanos(100));
+        assertEquals(2, b.getLimit(), "A static limit ignores latency");
+    }
+
+    @Test
+    void testGoesInOverLimitAfterMaxWait() {
+        final PlaceBulkhead b = new PlaceBulkhead("SlowPlace", PlaceBulkhead.Mode.STATIC, PlaceBulkhead.Saturation.QUEUE, 1, 1, 1, 10, 2.0);
+        b.acquire();
+        b.acquire();
+        assertEquals(2, b.getInUse());
+        assertEquals(1, b.getOverLimitCount());
+        b.release();
+        b.release();
+        assertEquals(0, b.getInUse());
+    }
+
+    @Test
+    void testAimdBacksOffOnSlowVisitsAndRecovers() {
+        final PlaceBulkhead b = new PlaceBulkhead("SlowPlace", PlaceBulkhead.Mode.AIMD, PlaceBulkhead.Saturation.QUEUE, 10, 2, 20, 10, 2.0);
+        b.sample(1000);
+        for (int i = 0; i < 10; i++) {
+            b.sample(100000);
+        }
+        assertTrue(b.getLimit() < 10, "Slow visits should cut the limit, now " + b.getLimit());
+        assertTrue(b.getLimit() >= 2, "Limit stays above the minimum");
+
+        final int cut = b.getLimit();
+        for (int i = 0; i < 20; i++) {
+            b.acquire();
+        }
+        for (int i = 0; i < 200; i++) {
+            b.sample(1000);
+        }
+        assertTrue(b.getLimit() > cut, "Busy fast visits should grow the limit, now " + b.getLimit());
+        assertTrue(b.getLimit() <= 20, "Limit stays below the maximum");
+    }
+
+    @Test
+    void testGradientFollowsLatency() {
+        final PlaceBulkhead b = new PlaceBulkhead("SlowPlace", PlaceBulkhead.Mode.GRADIENT, PlaceBulkhead.Saturation.QUEUE, 16, 1, 64, 10, 2.0);
+        for (int i = 0; i < 50; i++) {
+            b.sample(1000);
+        }
+        final int steady = b.getLimit();
+        assertTrue(steady > 16, "Steady latency leaves room to grow, now " + steady);
+        for (int i = 0; i < 20; i++) {
+            b.sample(20000);
+        }
+        assertTrue(b.getLimit() < steady, "Rising latency should shrink the limit, now " + b.getLimit());
+    }
+
+    @Test
+    void testFromConfig() {
+        final ServiceConfigGuide conf = new ServiceConfigGuide();
+        assertNull(PlaceBulkhead.fromConfig("SlowPlace", conf), "No limit configured means no bulkhead");
+
+        conf.addEntry("PLACE_BULKHEAD_LIMIT", "4");
+        conf.addEntry("PLACE_BULKHEAD_MODE", "aimd");
+        conf.addEntry("PLACE_BULKHEAD_SATURATION", "REROUTE");
+        final PlaceBulkhead b = PlaceBulkhead.fromConfig("SlowPlace", conf);
+        assertNotNull(b);
+        assertEquals(4, b.getLimit());
+        assertEquals(PlaceBulkhead.Mode.AIMD, b.getMode());
+        assertEquals(PlaceBulkhead.Saturation.REROUTE, b.getSaturation());
+    }
+}
@@ -7,11 +7,13 @@ import emissary.test.core.junit5.extensions.TestAttempts;
 
 import com.codahale.metrics.Timer;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -72,6 +74,18 @@ class TimedResourceTest extends UnitTest {
 
     }
 
+    @Test
+    void testTracksPlaceLoad() {
+        TestMobileAgent tma = new TestMobileAgent();
+        PlaceLoad load = new PlaceLoad();
+        try (TimedResource tr = new TimedResource(tma, tp, -2, new Timer(), load)) {
+            assertEquals(1, load.getInFlight());
+        }
+        assertEquals(0, load.getInFlight());
+        assertTrue(load.getLatencyNanos() > 0);
+        tma.latch.countDown();
+    }
+
     static class TestMobileAgent extends HDMobileAgent {
         private static final long serialVersionUID = 1L;
 
@@ -4,6 +4,10 @@ import emissary.test.core.junit5.UnitTest;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.Deque;
 import java.util.List;
 
@@ -236,4 +240,120 @@ class TransformHistoryTest extends UnitTest {
 
         assertEquals("UNKNOWN.FILE_PICK_UP.INPUT", th.getHistory().get(0).getKey(true));
     }
+
+    @Test
+    void testCopiesAreIndependent() {
+        String key1 = "UNKNOWN.FILE_PICK_UP.INPUT.http://localhost:8001/FilePickUpPlace$5050";
+        String key2 = "KNOWN.COOL_STUFF.COORDINATE.http://localhost:8001/CoolStuffPlace$5050";
+        String key3 = "KNOWN.ONE_THING.ANALYZE.http://localhost:8001/DoOneThingPlace$5050";
+
+        TransformHistory th = new TransformHistory();
+        th.append(key1);
+        th.append(key2);
+        TransformHistory copy = new TransformHistory(th);
+        copy.append(key3, true);
+        copy.append(key1);
+
+        assertEquals(List.of(key1, key2), th.get(true));
+        assertEquals(List.of(key1, key2, key3, key1), copy.get(true));
+        assertEquals(key1, copy.lastKey());
+        assertEquals(key2, copy.penultimateKey());
+        assertEquals(4, copy.size(true));
+    }
+
+    @Test
+    void testHasVisitedExactKey() {
+        String key1 = "UNKNOWN.FILE_PICK_UP.INPUT.http://localhost:8001/FilePickUpPlace$5050";
+        String key2 = "KNOWN.ONE_THING.ANALYZE.http://localhost:8001/DoOneThingPlace$5050";
+
+        TransformHistory th = new TransformHistory();
+        th.append(key1);
+        th.append(key2, true);
+        assertTrue(th.hasVisited(key1));
+        assertFalse(th.hasVisited(key2)); // coordinated place is ignored
+        assertFalse(th.hasVisited("KNOWN.NOWHERE.ANALYZE.http://localhost:8001/NeverPlace$5050"));
+        assertTrue(th.hasVisited("UNKNOWN.FILE_PICK_UP.INPUT.*"));
+    }
+
+    @Test
+    void testSerialization() throws Exception {
+        String key1 = "UNKNOWN.FILE_PICK_UP.INPUT.http://localhost:8001/FilePickUpPlace$5050";
+        String key2 = "KNOWN.COOL_STUFF.COORDINATE.http://localhost:8001/CoolStuffPlace$5050";
+        String key3 = "KNOWN.ONE_THING.ANALYZE.http://localhost:8001/DoOneThingPlace$5050";
+
+        TransformHistory th = new TransformHistory();
+        th.append(key1);
+        th.append(key2);
+        th.append(key3, true);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(th);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            TransformHistory read = (TransformHistory) in.readObject();
+            assertEquals(th.get(true), read.get(true));
+            assertEquals(th.getHistory(), read.getHistory());
+        }
+    }
+
+    @Test
+    void testKeysPastFullDictionary() throws Exception {
+        String known = "UNKNOWN.FILE_PICK_UP.INPUT.http://localhost:8001/FilePickUpPlace$5050";
+        TransformHistory th = new TransformHistory();
+        th.append(known);
+        for (int i = 0; TransformHistory.KeyDictionary.size() < TransformHistory.KeyDictionary.MAX_KEYS; i++) {
+            TransformHistory.KeyDictionary.id("FILL.DICTIONARY.ID.http://localhost:8001/FillPlace" + i + "$5050");
+        }
+
+        String extra1 = "KNOWN.EXTRA_ONE.ANALYZE.http://localhost:8001/ExtraOnePlace$5050";
+        String extra2 = "KNOWN.EXTRA_TWO.ANALYZE.http://localhost:8001/ExtraTwoPlace$5050";
+        th.append(extra1);
+        th.append(extra2, true);
+        th.append(extra1);
+        assertEquals(TransformHistory.KeyDictionary.MAX_KEYS, TransformHistory.KeyDictionary.size(), "Dictionary is bounded");
+        assertEquals(List.of(known, extra1, extra2, extra1), th.get(true));
+        assertEquals(List.of(extra2), th.getHistory().get(1).getCoordinated());
+        assertEquals(extra1, th.lastKey());
+        assertTrue(th.hasVisited(extra1));
+        assertFalse(th.hasVisited(extra2)); // coordinated place is ignored
+        assertTrue(th.hasVisited("KNOWN.EXTRA_ONE.*.*"));
+        assertTrue(th.hasVisited(known));
+
+        TransformHistory copy = new TransformHistory(th);
+        th.clear();
+        th.append(extra2);
+        assertEquals(List.of(known, extra1, extra2, extra1), copy.get(true), "Copy keeps its own keys");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(copy);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            TransformHistory read = (TransformHistory) in.readObject();
+            assertEquals(copy.get(true), read.get(true));
+            assertEquals(copy.getHistory(), read.getHistory());
+        }
+    }
+
+    @Test
+    void testVisitCoordinatedPlaces() {
+        String key1 = "UNKNOWN.FILE_PICK_UP.INPUT.http://localhost:8001/FilePickUpPlace$5050";
+        String key2 = "KNOWN.COOL_STUFF.COORDINATE.http://localhost:8001/CoolStuffPlace$5050";
+        String key3 = "KNOWN.ONE_THING.ANALYZE.http://localhost:8001/DoOneThingPlace$5050";
+        String key4 = "KNOWN.LAST_PLACE.VERIFY.http://localhost:8001/LastThingPlace$5050";
+
+        TransformHistory th = new TransformHistory();
+        th.append(key1);
+        th.append(key3, true);
+        th.append(key2);
+        th.append(key3, true);
+        th.append(key4, true);
+        assertEquals(List.of(key3, key4), th.lastVisit().getCoordinated());
+        assertEquals(List.of(key3), th.penultimateVisit().getCoordinated());
+        th.append(key4);
+        assertTrue(th.lastVisit().getCoordinated().isEmpty());
+        assertEquals(List.of(key3, key4), th.penultimateVisit().getCoordinated());
+        assertEquals(List.of(key3), th.getHistory().get(0).getCoordinated());
+    }
 }
@@ -0,0 +1,108 @@
+package emissary.core;
+
+import emissary.place.ServiceProviderPlace;
+import emissary.pool.AgentExecutor;
+import emissary.test.core.junit5.UnitTest;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VirtualMobileAgentTest extends UnitTest {
+
+    @Test
+    void testPlaceFindsAgentByThreadName() throws Exception {
+        final VirtualMobileAgent agent = new VirtualMobileAgent("VirtualMobileAgentTest-01");
+        Namespace.bind(agent.getName(), agent);
+        final RecordingPlace place = new RecordingPlace();
+        try {
+            assertNull(agent.getWorkerThread(), "An idle agent holds no thread");
+            agent.arrive(DataObjectFactory.getInstance(new byte[] {}, "testFile", "SOMEFORM"), place, 0, Collections.emptyList());
+            assertTrue(place.visited.await(10, TimeUnit.SECONDS), "Agent should visit the place");
+            assertSame(agent, place.found.get(), "Place should find the agent in the namespace by thread name");
+            assertEquals(agent.getName(), place.threadName.get());
+            assertFalse(place.heldAgentLock.get(), "Place work must not run holding the agent's monitor");
+
+            final long deadline = System.currentTimeMillis() + 10000;
+            while (agent.isInUse() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertFalse(agent.isInUse(), "Agent should be idle when the itinerary is done");
+        } finally {
+            Namespace.unbind(agent.getName());
+            agent.killAgent();
+            place.shutDown();
+        }
+    }
+
+    @Test
+    void testExecutorBoundsConcurrency() throws InterruptedException {
+        final AgentExecutor executor = new AgentExecutor(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger finished = new AtomicInteger();
+        final Runnable blocked = () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finished.incrementAndGet();
+        };
+        try {
+            executor.execute(blocked);
+            executor.execute(blocked);
+            assertEquals(2, executor.getActiveCount());
+
+            final CountDownLatch third = new CountDownLatch(1);
+            final Thread caller = new Thread(() -> executor.execute(third::countDown));
+            caller.start();
+            assertFalse(third.await(200, TimeUnit.MILLISECONDS), "Third task must wait for a free slot");
+
+            release.countDown();
+            assertTrue(third.await(10, TimeUnit.SECONDS), "Third task should run once a slot frees");
+            caller.join(10000);
+            assertEquals(2, finished.get());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    static final class RecordingPlace extends ServiceProviderPlace {
+        final CountDownLatch visited = new CountDownLatch(1);
+        final AtomicReference<MobileAgent> found = new AtomicReference<>();
+        final AtomicReference<String> threadName = new AtomicReference<>();
+        final AtomicBoolean heldAgentLock = new AtomicBoolean(true);
+
+        RecordingPlace() throws IOException {
+            super("emissary.core.FakePlace.cfg", "RecordingPlace.www.example.com:8001");
+        }
+
+        @Override
+        public List<IBaseDataObject> agentProcessHeavyDuty(final List<IBaseDataObject> payloadListArg) {
+            threadName.set(Thread.currentThread().getName());
+            try {
+                final MobileAgent agent = getAgent();
+                found.set(agent);
+                heldAgentLock.set(Thread.holdsLock(agent));
+            } catch (NamespaceException e) {
+                // left unset and the test fails
+            }
+            visited.countDown();
+            return Collections.emptyList();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package emissary.core.channels;
+
+import emissary.test.core.junit5.UnitTest;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CachedChannelFactoryTest extends UnitTest {
+
+    private static byte[] randomBytes(final int size) {
+        final byte[] bytes = new byte[size];
+        new Random(0).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    void testCache() throws IOException {
+        final byte[] bytes = randomBytes(67);
+        final SeekableByteChannelFactory bytesSbcf = InMemoryChannelFactory.create(bytes);
+
+        assertThrows(NullPointerException.class, () -> CachedChannelFactory.create(null));
+        assertThrows(IllegalArgumentException.class, () -> BlockCache.create(100, 0));
+
+        for (int blockSize = 1; blockSize < bytes.length * 2; blockSize += 3) {
+            ChannelTestHelper.checkByteArrayAgainstSbc(bytes, CachedChannelFactory.create(bytesSbcf, BlockCache.create(1000, blockSize)));
+        }
+    }
+
+    @Test
+    void testLaterPassesComeFromMemory() throws IOException {
+        final byte[] bytes = randomBytes(100);
+        final AtomicInteger opened = new AtomicInteger();
+        final SeekableByteChannelFactory counting = () -> {
+            opened.incrementAndGet();
+            return InMemoryChannelFactory.create(bytes).create();
+        };
+        final BlockCache cache = BlockCache.create(1000, 10);
+        final SeekableByteChannelFactory sbcf = CachedChannelFactory.create(counting, cache);
+
+        assertArrayEquals(bytes, SeekableByteChannelHelper.getByteArrayFromChannel(sbcf, 1000));
+        assertEquals(10, cache.getMissCount());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(100, cache.getBytes());
+        final int openedByFirstPass = opened.get();
+
+        assertArrayEquals(bytes, SeekableByteChannelHelper.getByteArrayFromChannel(sbcf, 1000));
+        assertEquals(10, cache.getHitCount());
+        assertEquals(0.5, cache.getHitRatio());
+        assertEquals(openedByFirstPass, opened.get(), "Second pass never opened the underlying data");
+    }
+
+    @Test
+    void testEvictsToStayWithinBudget() throws IOException {
+        final byte[] bytes = randomBytes(100);
+        final BlockCache cache = BlockCache.create(30, 10);
+        final SeekableByteChannelFactory sbcf = CachedChannelFactory.create(InMemoryChannelFactory.create(bytes), cache);
+
+        assertArrayEquals(bytes, SeekableByteChannelHelper.getByteArrayFromChannel(sbcf, 1000));
+        assertTrue(cache.getBytes() <= 30);
+        assertTrue(cache.getEvictionCount() >= 7);
+    }
+
+    @Test
+    void testBlocksAreNotSharedBetweenFactories() throws IOException {
+        final BlockCache cache = BlockCache.create(1000, 10);
+        final byte[] first = randomBytes(20);
+        final byte[] second = new byte[20];
+        assertArrayEquals(first,
+                SeekableByteChannelHelper.getByteArrayFromChannel(CachedChannelFactory.create(InMemoryChannelFactory.create(first), cache), 100));
+        assertArrayEquals(second,
+                SeekableByteChannelHelper.getByteArrayFromChannel(CachedChannelFactory.create(InMemoryChannelFactory.create(second), cache), 100));
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    void testDisabledCachesNothing() throws IOException {
+        final byte[] bytes = randomBytes(50);
+        final BlockCache cache = BlockCache.create(0, 10);
+        final SeekableByteChannelFactory sbcf = CachedChannelFactory.create(InMemoryChannelFactory.create(bytes), cache);
+
+        assertFalse(cache.isEnabled());
+        assertArrayEquals(bytes, SeekableByteChannelHelper.getByteArrayFromChannel(sbcf, 100));
+        assertArrayEquals(bytes, SeekableByteChannelHelper.getByteArrayFromChannel(sbcf, 100));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    void testMetrics() throws IOException {
+        final BlockCache cache = BlockCache.create(1000, 10);
+        final MetricRegistry registry = new MetricRegistry();
+        cache.registerMetrics(registry);
+        final SeekableByteChannelFactory sbcf = CachedChannelFactory.create(InMemoryChannelFactory.create(randomBytes(25)), cache);
+        try {
+            SeekableByteChannelHelper.getByteArrayFromChannel(sbcf, 100);
+            assertEquals(3L, registry.getGauges().get("BlockCache.misses").getValue());
+            final Gauge<?> bytes = registry.getGauges().get("BlockCache.bytes");
+            assertEquals(25L, bytes.getValue());
+        } finally {
+            Reference.reachabilityFence(sbcf);
+        }
+    }
+
+    @Test
+    void testUnreachableFactoryBlocksAreDropped() throws IOException, InterruptedException {
+        final BlockCache cache = BlockCache.create(1000, 10);
+        final SeekableByteChannelFactory kept = CachedChannelFactory.create(InMemoryChannelFactory.create(randomBytes(30)), cache);
+        try {
+            SeekableByteChannelHelper.getByteArrayFromChannel(kept, 100);
+            SeekableByteChannelHelper.getByteArrayFromChannel(CachedChannelFactory.create(InMemoryChannelFactory.create(randomBytes(50)), cache),
+                    100);
+            assertEquals(80, cache.getBytes());
+
+            for (int i = 0; i < 100 && cache.getBytes() > 30; i++) {
+                System.gc();
+                Thread.sleep(50);
+            }
+            assertEquals(30, cache.getBytes(), "Only the reachable factory's blocks are held");
+            assertEquals(0, cache.getEvictionCount());
+        } finally {
+            Reference.reachabilityFence(kept);
+        }
+    }
+}
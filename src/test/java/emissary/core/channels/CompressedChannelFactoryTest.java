@@ -0,0 +1,87 @@
+package emissary.core.channels;
+
+import emissary.test.core.junit5.UnitTest;
+
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressedChannelFactoryTest extends UnitTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static byte[] compressible(final int size) {
+        final byte[] line = "The quick brown fox jumps over the lazy dog 0123456789\n".getBytes(StandardCharsets.US_ASCII);
+        final byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) (line[i % line.length] + i / 997);
+        }
+        return bytes;
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {CompressorStreamFactory.DEFLATE, CompressorStreamFactory.GZIP, CompressorStreamFactory.BZIP2,
+            CompressorStreamFactory.LZ4_FRAMED, CompressorStreamFactory.SNAPPY_FRAMED})
+    void testCodecs(final String codec) throws IOException {
+        final byte[] bytes = compressible(45);
+        final Path path = tempDir.resolve(codec);
+        for (int blockSize = 1; blockSize < 50; blockSize += 6) {
+            ChannelTestHelper.checkByteArrayAgainstSbc(bytes,
+                    CompressedChannelFactory.write(path, InMemoryChannelFactory.create(bytes), blockSize, codec));
+            ChannelTestHelper.checkByteArrayAgainstSbc(bytes, CompressedChannelFactory.create(path));
+        }
+    }
+
+    @Test
+    void testSmallerAtRest() throws IOException {
+        final byte[] bytes = compressible(1024 * 1024);
+        final Path path = tempDir.resolve("large");
+        final SeekableByteChannelFactory sbcf = SeekableByteChannelHelper.compressed(path, InMemoryChannelFactory.create(bytes));
+
+        assertTrue(Files.size(path) < bytes.length / 4, "Compressed to " + Files.size(path));
+        assertArrayEquals(bytes, SeekableByteChannelHelper.getByteArrayFromChannel(sbcf, bytes.length));
+
+        try (SeekableByteChannel sbc = CompressedChannelFactory.create(path).create()) {
+            assertEquals(bytes.length, sbc.size());
+            final ByteBuffer buff = ByteBuffer.allocate(10);
+            sbc.position(700_000).read(buff);
+            assertEquals(new String(bytes, 700_000, 10, StandardCharsets.US_ASCII), new String(buff.array(), StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    void testEmpty() throws IOException {
+        final Path path = tempDir.resolve("empty");
+        CompressedChannelFactory.write(path, InMemoryChannelFactory.create(new byte[0]));
+        try (SeekableByteChannel sbc = CompressedChannelFactory.create(path).create()) {
+            assertEquals(0, sbc.size());
+            assertEquals(-1, sbc.read(ByteBuffer.allocate(1)));
+        }
+    }
+
+    @Test
+    void testInvalid() throws IOException {
+        final Path path = Files.write(tempDir.resolve("plain"), compressible(100));
+        assertThrows(IOException.class, () -> CompressedChannelFactory.create(path));
+        assertThrows(IllegalArgumentException.class,
+                () -> CompressedChannelFactory.write(path, InMemoryChannelFactory.create(new byte[1]), 10, "nonsense"));
+        assertThrows(IllegalArgumentException.class,
+                () -> CompressedChannelFactory.write(path, InMemoryChannelFactory.create(new byte[1]), 0, CompressedChannelFactory.DEFAULT_CODEC));
+        assertThrows(IOException.class, () -> CompressedChannelFactory.write(path, new ExceptionChannelFactory()));
+    }
+}
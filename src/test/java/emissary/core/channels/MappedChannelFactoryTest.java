@@ -0,0 +1,110 @@
+package emissary.core.channels;
+
+import emissary.test.core.junit5.UnitTest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedChannelFactoryTest extends UnitTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path write(final byte[] bytes) throws IOException {
+        return Files.write(tempDir.resolve("mapped"), bytes);
+    }
+
+    private static byte[] pattern(final int size) {
+        final byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) (i * 31 + 7);
+        }
+        return bytes;
+    }
+
+    @Test
+    void testReadsAcrossWindows() throws IOException {
+        final byte[] bytes = pattern(23);
+        try (MappedChannelFactory sbcf = MappedChannelFactory.create(write(bytes), 5)) {
+            ChannelTestHelper.checkByteArrayAgainstSbc(bytes, sbcf);
+            assertEquals(5, sbcf.getMappedWindowCount());
+        }
+    }
+
+    @Test
+    void testMapsOnlyWindowsRead() throws IOException {
+        final byte[] bytes = pattern(100);
+        try (MappedChannelFactory sbcf = MappedChannelFactory.create(write(bytes), 10);
+                SeekableByteChannel sbc = sbcf.create()) {
+            final ByteBuffer buff = ByteBuffer.allocate(4);
+            sbc.position(52).read(buff);
+            assertArrayEquals(new byte[] {bytes[52], bytes[53], bytes[54], bytes[55]}, buff.array());
+            assertEquals(1, sbcf.getMappedWindowCount());
+            assertEquals(100, sbc.size());
+        }
+    }
+
+    @Test
+    void testEmptyFile() throws IOException {
+        try (MappedChannelFactory sbcf = MappedChannelFactory.create(write(new byte[0]));
+                SeekableByteChannel sbc = sbcf.create()) {
+            assertEquals(0, sbc.size());
+            assertEquals(-1, sbc.read(ByteBuffer.allocate(1)));
+        }
+    }
+
+    @Test
+    void testCloseFailsLaterReads() throws IOException {
+        final MappedChannelFactory sbcf = MappedChannelFactory.create(write(pattern(10)), 4);
+        final SeekableByteChannel sbc = sbcf.create();
+        assertEquals(4, sbc.read(ByteBuffer.allocate(4)));
+        sbcf.close();
+        assertTrue(sbcf.isClosed());
+        assertEquals(0, sbcf.getMappedWindowCount());
+        assertThrows(ClosedChannelException.class, () -> sbc.read(ByteBuffer.allocate(4)));
+        sbcf.close();
+    }
+
+    @Test
+    void testImmutability() throws IOException {
+        try (MappedChannelFactory sbcf = MappedChannelFactory.create(write(pattern(10)));
+                SeekableByteChannel sbc = sbcf.create()) {
+            final ByteBuffer buff = ByteBuffer.wrap(new byte[] {1});
+            assertThrows(NonWritableChannelException.class, () -> sbc.write(buff));
+            assertThrows(NonWritableChannelException.class, () -> sbc.truncate(1));
+        }
+    }
+
+    @Test
+    void testHelperUnmapsOnLastRelease() throws IOException {
+        final byte[] bytes = pattern(10);
+        final RefCountedChannelFactory sbcf = SeekableByteChannelHelper.mapped(write(bytes));
+        assertArrayEquals(bytes, SeekableByteChannelHelper.getByteArrayFromChannel(sbcf, 100));
+        sbcf.retain();
+        assertFalse(sbcf.release());
+        assertTrue(sbcf.release());
+        assertThrows(IllegalStateException.class, sbcf::create);
+    }
+
+    @Test
+    void testInvalidArguments() throws IOException {
+        final Path path = write(pattern(1));
+        assertThrows(NullPointerException.class, () -> MappedChannelFactory.create(null));
+        assertThrows(IllegalArgumentException.class, () -> MappedChannelFactory.create(path, 0));
+        assertThrows(IllegalArgumentException.class, () -> MappedChannelFactory.create(path, 1L << 31));
+    }
+}
@@ -0,0 +1,188 @@
+package emissary.core.channels;
+
+import emissary.test.core.junit5.UnitTest;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class ReadAheadChannelFactoryTest extends UnitTest {
+
+    private static final byte[] BYTES = new byte[1000];
+
+    // Reads of 10 bytes before the ring starts at the third, from 20
+    private static final int SEQUENTIAL_READS_TO_START = ReadAheadChannelFactory.SEQUENTIAL_THRESHOLD + 1;
+
+    static {
+        new Random(0).nextBytes(BYTES);
+    }
+
+    private static final class CountingExecutor implements Executor {
+        final AtomicInteger tasks = new AtomicInteger();
+
+        @Override
+        public void execute(final Runnable command) {
+            tasks.incrementAndGet();
+            ForkJoinPool.commonPool().execute(command);
+        }
+    }
+
+    /**
+     * Wraps a channel, holding every read from {@code gatedFrom} on until the gate opens
+     */
+    private static final class GatedChannel extends AbstractSeekableByteChannel {
+        final SeekableByteChannel wrapped;
+        final long gatedFrom;
+        final CountDownLatch stalled = new CountDownLatch(1);
+        final CountDownLatch gate = new CountDownLatch(1);
+
+        GatedChannel(final SeekableByteChannel wrapped, final long gatedFrom) {
+            this.wrapped = wrapped;
+            this.gatedFrom = gatedFrom;
+        }
+
+        @Override
+        protected void closeImpl() throws IOException {
+            wrapped.close();
+        }
+
+        @Override
+        protected int readImpl(final ByteBuffer byteBuffer) throws IOException {
+            if (position() >= gatedFrom) {
+                stalled.countDown();
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+            return wrapped.position(position()).read(byteBuffer);
+        }
+
+        @Override
+        protected long sizeImpl() throws IOException {
+            return wrapped.size();
+        }
+    }
+
+    private static byte[] readSequentially(final SeekableByteChannel sbc, final int chunkSize) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteBuffer buff = ByteBuffer.allocate(chunkSize);
+        while (sbc.read(buff) != -1) {
+            out.write(buff.array(), 0, buff.position());
+            buff.clear();
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    void testRandomAccess() throws IOException {
+        final byte[] bytes = Arrays.copyOf(BYTES, 40);
+        for (int blockSize = 1; blockSize < 50; blockSize += 4) {
+            ChannelTestHelper.checkByteArrayAgainstSbc(bytes,
+                    ReadAheadChannelFactory.create(InMemoryChannelFactory.create(bytes), blockSize, 3));
+        }
+    }
+
+    @Test
+    void testSequentialReadsAhead() throws IOException {
+        final CountingExecutor executor = new CountingExecutor();
+        final SeekableByteChannelFactory sbcf = ReadAheadChannelFactory.create(InMemoryChannelFactory.create(BYTES), 64, 4, executor);
+        for (final int chunkSize : new int[] {1, 7, 64, 100, 2000}) {
+            try (SeekableByteChannel sbc = sbcf.create()) {
+                assertArrayEquals(BYTES, readSequentially(sbc, chunkSize), "Chunk size " + chunkSize);
+            }
+        }
+        assertTrue(executor.tasks.get() > 0, "Blocks were read in the background");
+    }
+
+    @Test
+    void testSeekFallsBackToPlainReads() throws IOException {
+        final CountingExecutor executor = new CountingExecutor();
+        final SeekableByteChannelFactory sbcf = ReadAheadChannelFactory.create(InMemoryChannelFactory.create(BYTES), 50, 2, executor);
+        try (SeekableByteChannel sbc = sbcf.create()) {
+            final ByteBuffer buff = ByteBuffer.allocate(10);
+            for (int i = 0; i < 5; i++) {
+                buff.clear();
+                sbc.read(buff);
+            }
+            final int readAhead = executor.tasks.get();
+            assertTrue(readAhead > 0);
+
+            buff.clear();
+            sbc.position(900).read(buff);
+            assertArrayEquals(Arrays.copyOfRange(BYTES, 900, 910), buff.array());
+            buff.clear();
+            sbc.position(20).read(buff);
+            assertArrayEquals(Arrays.copyOfRange(BYTES, 20, 30), buff.array());
+            assertEquals(readAhead, executor.tasks.get(), "Seeks read directly");
+
+            assertArrayEquals(Arrays.copyOfRange(BYTES, 30, BYTES.length), readSequentially(sbc, 10));
+        }
+    }
+
+    @Test
+    void testBufferedBlocksAreReadWhileReadingAhead() throws IOException, InterruptedException, ExecutionException {
+        final GatedChannel gated = new GatedChannel(InMemoryChannelFactory.create(BYTES).create(), 200);
+        try (SeekableByteChannel sbc = ReadAheadChannelFactory.create(() -> gated, 100, 3, new CountingExecutor()).create()) {
+            final ByteBuffer buff = ByteBuffer.allocate(10);
+            for (int i = 0; i < SEQUENTIAL_READS_TO_START; i++) {
+                buff.clear();
+                sbc.read(buff);
+            }
+            // The blocks at 20 and 120 are buffered and the block at 220 is stuck in the wrapped channel
+            assertTrue(gated.stalled.await(10, TimeUnit.SECONDS));
+
+            final CompletableFuture<byte[]> buffered = CompletableFuture.supplyAsync(() -> {
+                final ByteBuffer rest = ByteBuffer.allocate(190);
+                try {
+                    while (rest.hasRemaining()) {
+                        sbc.read(rest);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return rest.array();
+            });
+            try {
+                assertArrayEquals(Arrays.copyOfRange(BYTES, 30, 220), buffered.get(10, TimeUnit.SECONDS));
+            } catch (TimeoutException e) {
+                fail("Reading buffered blocks waited on the read ahead");
+            } finally {
+                gated.gate.countDown();
+            }
+            assertArrayEquals(Arrays.copyOfRange(BYTES, 220, BYTES.length), readSequentially(sbc, 10));
+        }
+    }
+
+    @Test
+    void testExceptions() {
+        assertThrows(NullPointerException.class, () -> ReadAheadChannelFactory.create(null));
+        assertThrows(IllegalArgumentException.class, () -> ReadAheadChannelFactory.create(InMemoryChannelFactory.create(BYTES), 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> ReadAheadChannelFactory.create(InMemoryChannelFactory.create(BYTES), 1, 0));
+
+        final SeekableByteChannel sbc = ReadAheadChannelFactory.create(new ExceptionChannelFactory()).create();
+        assertThrows(IOException.class, () -> sbc.read(ByteBuffer.allocate(10)));
+    }
+}
@@ -0,0 +1,48 @@
+package emissary.core.channels;
+
+import emissary.test.core.junit5.UnitTest;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RefCountedChannelFactoryTest extends UnitTest {
+
+    @Test
+    void testReleasedOnLastReference() throws IOException {
+        final AtomicInteger released = new AtomicInteger();
+        final RefCountedChannelFactory sbcf = SeekableByteChannelHelper.refCounted(InMemoryChannelFactory.create(new byte[5]),
+                released::incrementAndGet);
+        assertEquals(1, sbcf.getReferenceCount(), "Creator holds the first reference");
+
+        assertEquals(sbcf, sbcf.retain());
+        assertFalse(sbcf.release());
+        try (SeekableByteChannel sbc = sbcf.create()) {
+            assertEquals(5, sbc.size(), "Still readable while a reference is held");
+        }
+        assertEquals(0, released.get());
+
+        assertTrue(sbcf.release());
+        assertEquals(1, released.get());
+        assertEquals(0, sbcf.getReferenceCount());
+
+        assertThrows(IllegalStateException.class, sbcf::create);
+        assertThrows(IllegalStateException.class, sbcf::retain);
+        assertThrows(IllegalStateException.class, sbcf::release);
+        assertEquals(1, released.get(), "Released only once");
+    }
+
+    @Test
+    void testRequiredArguments() {
+        assertThrows(NullPointerException.class, () -> RefCountedChannelFactory.create(null, () -> {
+        }));
+        assertThrows(NullPointerException.class, () -> RefCountedChannelFactory.create(InMemoryChannelFactory.create(new byte[0]), null));
+    }
+}
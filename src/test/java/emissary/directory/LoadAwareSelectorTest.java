@@ -0,0 +1,130 @@
+package emissary.directory;
+
+import emissary.core.PlaceLoad;
+import emissary.test.core.junit5.UnitTest;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class LoadAwareSelectorTest extends UnitTest {
+
+    private static final String LOCAL = "EMISSARY_DIRECTORY_SERVICES.DIRECTORY.STUDY.http://host.domain.com:8001/DirectoryPlace";
+
+    private final Map<String, PlaceLoad> loads = new HashMap<>();
+    private DirectoryEntryList list;
+
+    @Override
+    @BeforeEach
+    public void setUp() throws Exception {
+        list = new DirectoryEntryList();
+        list.add(new DirectoryEntry("UNKNOWN.SLOW.ANALYZE.http://host.domain.com:8001/SlowPlace$4050"));
+        list.add(new DirectoryEntry("UNKNOWN.SLOW.ANALYZE.http://host.domain.com:8001/SlowPlaceTwin$4050"));
+        list.add(new DirectoryEntry("UNKNOWN.OTHER.ANALYZE.http://host.domain.com:8001/OtherPlace$5050"));
+        loads.put("SlowPlace", busy(5, 1000));
+        loads.put("SlowPlaceTwin", busy(0, 1000));
+    }
+
+    private static PlaceLoad busy(final int inFlight, final long latencyNanos) {
+        final PlaceLoad load = new PlaceLoad();
+        load.started();
+        load.finished(latencyNanos);
+        for (int i = 0; i < inFlight; i++) {
+            load.started();
+        }
+        return load;
+    }
+
+    @Test
+    void testDefaultTakesFirst() {
+        assertEquals("SlowPlace", name(list.pickOneOf(4050)));
+        assertEquals("SlowPlace", name(list.pickOneOf(4050, new LoadAwareSelector(LoadAwareSelector.Policy.FIRST, LOCAL, loads::get))));
+    }
+
+    @Test
+    void testLeastLoaded() {
+        final LoadAwareSelector selector = new LoadAwareSelector(LoadAwareSelector.Policy.LEAST_LOADED, LOCAL, loads::get);
+        assertEquals("SlowPlaceTwin", name(list.pickOneOf(4050, selector)));
+        loads.put("SlowPlaceTwin", busy(9, 1000));
+        assertEquals("SlowPlace", name(list.pickOneOf(4050, selector)));
+    }
+
+    @Test
+    void testPowerOfTwoWithTwoTied() {
+        // with exactly two tied entries both are always compared
+        final LoadAwareSelector selector = new LoadAwareSelector(LoadAwareSelector.Policy.POWER_OF_TWO, LOCAL, loads::get);
+        for (int i = 0; i < 20; i++) {
+            assertEquals("SlowPlaceTwin", name(list.pickOneOf(4050, selector)));
+        }
+    }
+
+    @Test
+    void testSingleEntryIgnoresLoad() {
+        final LoadAwareSelector selector = new LoadAwareSelector(LoadAwareSelector.Policy.LEAST_LOADED, LOCAL, loads::get);
+        assertSame(list.getEntry(2), list.pickOneOf(5050, selector));
+    }
+
+    @Test
+    void testLatencyCountsWithInFlight() {
+        loads.put("SlowPlace", busy(1, 10));
+        loads.put("SlowPlaceTwin", busy(0, 1000));
+        final LoadAwareSelector selector = new LoadAwareSelector(LoadAwareSelector.Policy.LEAST_LOADED, LOCAL, loads::get);
+        assertEquals("SlowPlace", name(list.pickOneOf(4050, selector)), "A fast place with a short queue beats a slow idle one");
+    }
+
+    @Test
+    void testRemoteTwinIsNotScoredByLocalLoad() {
+        final DirectoryEntryList twins = new DirectoryEntryList();
+        twins.add(new DirectoryEntry("UNKNOWN.SLOW.ANALYZE.http://host.domain.com:8001/SlowPlace$4050"));
+        twins.add(new DirectoryEntry("UNKNOWN.SLOW.ANALYZE.http://other.domain.com:8001/SlowPlace$4050"));
+        twins.add(new DirectoryEntry("UNKNOWN.SLOW.ANALYZE.http://host.domain.com:8001/SlowPlaceTwin$4050"));
+        final LoadAwareSelector selector = new LoadAwareSelector(LoadAwareSelector.Policy.LEAST_LOADED, LOCAL, loads::get);
+        assertEquals(LoadAwareSelector.UNKNOWN, selector.score(twins.getEntry(1)), "Remote place load is unknown");
+        assertEquals(3500L, LoadAwareSelector.neutral(new long[] {6000L, LoadAwareSelector.UNKNOWN, 1000L}),
+                "Remote place gets the mean local score");
+        assertSame(twins.getEntry(2), twins.pickOneOf(4050, selector), "Idle local twin beats the busy local and the remote place");
+
+        final LoadAwareSelector remote =
+                new LoadAwareSelector(LoadAwareSelector.Policy.LEAST_LOADED,
+                        "EMISSARY_DIRECTORY_SERVICES.DIRECTORY.STUDY.http://other.domain.com:8001/DirectoryPlace",
+                        name -> busy(9, 1000));
+        assertEquals(LoadAwareSelector.UNKNOWN, remote.score(twins.getEntry(0)), "Seen from the other node the first place is remote");
+    }
+
+    @Test
+    void testIdleLocalPlaceBeatsRemoteTwin() {
+        final DirectoryEntryList twins = new DirectoryEntryList();
+        twins.add(new DirectoryEntry("UNKNOWN.SLOW.ANALYZE.http://other.domain.com:8001/SlowPlaceTwin$4050"));
+        twins.add(new DirectoryEntry("UNKNOWN.SLOW.ANALYZE.http://host.domain.com:8001/SlowPlaceTwin$4050"));
+        for (final LoadAwareSelector.Policy policy : new LoadAwareSelector.Policy[] {LoadAwareSelector.Policy.LEAST_LOADED,
+                LoadAwareSelector.Policy.POWER_OF_TWO}) {
+            final LoadAwareSelector selector = new LoadAwareSelector(policy, LOCAL, loads::get);
+            assertEquals(1000L, selector.score(twins.getEntry(1)), "Idle local place still has a latency");
+            for (int i = 0; i < 20; i++) {
+                assertSame(twins.getEntry(1), twins.pickOneOf(4050, selector), "Idle local place wins with " + policy);
+            }
+        }
+    }
+
+    @Test
+    void testNoKnownLoadTakesFirst() {
+        final LoadAwareSelector selector = new LoadAwareSelector(LoadAwareSelector.Policy.LEAST_LOADED, LOCAL, name -> null);
+        assertSame(list.getEntry(0), list.pickOneOf(4050, selector));
+    }
+
+    @Test
+    void testPolicyFromName() {
+        assertEquals(LoadAwareSelector.Policy.POWER_OF_TWO, LoadAwareSelector.Policy.fromName("power_of_two", LoadAwareSelector.Policy.FIRST));
+        assertEquals(LoadAwareSelector.Policy.FIRST, LoadAwareSelector.Policy.fromName("nope", LoadAwareSelector.Policy.FIRST));
+        assertEquals(LoadAwareSelector.Policy.FIRST, LoadAwareSelector.Policy.fromName(null, LoadAwareSelector.Policy.FIRST));
+    }
+
+    private static String name(final DirectoryEntry entry) {
+        return ParsedKey.of(entry.getKey()).getServiceClassname();
+    }
+}
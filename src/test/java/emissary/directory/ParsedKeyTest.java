@@ -0,0 +1,67 @@
+package emissary.directory;
+
+import emissary.test.core.junit5.UnitTest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ParsedKeyTest extends UnitTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"UNKNOWN.FOOPLACE.ID.http://host.domain.com:8001/FooPlace$5050",
+            "UNKNOWN.FOOPLACE.ID.http://host.domain.com:8001/FooPlace",
+            "FOO-BAR(BAZ).FOOPLACE.TRANSFORM.http://host.domain.com:8001/thePlace$1234$5678", "*.*.*.http://host.domain.com:8001/*",
+            "UNKNOWN.FOOPLACE.ID.http://host.domain.com:8001/FooPlace$abc", "UNKNOWN.FOOPLACE.ID.host.domain.com:8001/FooPlace", "a.b", "a.b.c",
+            "a.b.c.d", "UNKNOWN", "", ".", "...", "$", "a$b.c.d.e", "a.b.c.http://host:8001", "a.b.c.http://host:8001/Place$-10"})
+    void testMatchesKeyManipulator(final String key) {
+        final ParsedKey parsed = new ParsedKey(key);
+        assertEquals(key, parsed.getKey());
+        assertEquals(KeyManipulator.getDataType(key), parsed.getDataType());
+        assertEquals(KeyManipulator.getServiceName(key), parsed.getServiceName());
+        assertEquals(KeyManipulator.getServiceType(key), parsed.getServiceType());
+        assertEquals(KeyManipulator.getServiceLocation(key), parsed.getServiceLocation());
+        assertEquals(KeyManipulator.getServiceHostUrl(key), parsed.getServiceHostUrl());
+        assertEquals(KeyManipulator.getServiceHost(key), parsed.getServiceHost());
+        assertEquals(KeyManipulator.getServiceClassname(key), parsed.getServiceClassname());
+        assertEquals(KeyManipulator.getDataId(key), parsed.getDataId());
+        assertEquals(KeyManipulator.getExpense(key), parsed.getExpense());
+        assertEquals(KeyManipulator.getExpense(key, 42), parsed.getExpense(42));
+        assertEquals(KeyManipulator.removeExpense(key), parsed.withoutExpense().getKey());
+        assertEquals(KeyManipulator.isKeyComplete(key), parsed.isComplete());
+        assertEquals(key.hashCode(), parsed.hashCode());
+    }
+
+    @Test
+    void testInternPoolSharesInstances() {
+        final String key = "UNKNOWN.FOOPLACE.ID.http://host.domain.com:8001/FooPlace$5050";
+        final ParsedKey first = ParsedKey.of(key);
+        assertSame(first, ParsedKey.of(new String(key.toCharArray())));
+        assertSame(first.getKey(), ParsedKey.intern(new String(key.toCharArray())));
+        assertSame(first.getServiceType(), ParsedKey.of(key).getServiceType());
+        assertSame(first.withoutExpense(), ParsedKey.of(KeyManipulator.removeExpense(key)));
+        assertEquals(first, new ParsedKey(key));
+        assertNotSame(first, new ParsedKey(key));
+    }
+
+    @Test
+    void testWithoutExpenseIsSelfWhenNoExpense() {
+        final ParsedKey parsed = ParsedKey.of("UNKNOWN.FOOPLACE.ID.http://host.domain.com:8001/FooPlace");
+        assertSame(parsed, parsed.withoutExpense());
+    }
+
+    @Test
+    void testDirectoryEntriesShareParts() {
+        final String key = "UNKNOWN.FOOPLACE.ID.http://host.domain.com:8001/FooPlace$5050";
+        final DirectoryEntry d1 = new DirectoryEntry(key);
+        final DirectoryEntry d2 = new DirectoryEntry(new String(key.toCharArray()));
+        assertSame(d1.getKey(), d2.getKey());
+        assertSame(d1.getDataId(), d2.getDataId());
+        assertSame(d1.getServiceLocation(), d2.getServiceLocation());
+        assertEquals(5050, d1.getExpense());
+    }
+}
@@ -0,0 +1,113 @@
+package emissary.directory;
+
+import emissary.test.core.junit5.UnitTest;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RouteCacheTest extends UnitTest {
+
+    private static final String KEY = "UNKNOWN.FOOPLACE.ID.http://host.domain.com:8001/FooPlace$5050";
+
+    private final AtomicInteger resolved = new AtomicInteger();
+
+    private DirectoryEntryList resolve(final String dataId) {
+        resolved.incrementAndGet();
+        final DirectoryEntryList list = new DirectoryEntryList();
+        list.add(new DirectoryEntry(KEY));
+        return list;
+    }
+
+    @Test
+    void testHitAfterMiss() {
+        final RouteCache cache = new RouteCache();
+        final DirectoryEntryList first = cache.get("UNKNOWN::ID", this::resolve);
+        final DirectoryEntryList second = cache.get("UNKNOWN::ID", this::resolve);
+        assertSame(first, second, "Compiled route should be reused");
+        assertEquals(1, resolved.get(), "Route should be compiled once");
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void testInvalidateRecompiles() {
+        final RouteCache cache = new RouteCache();
+        final DirectoryEntryList first = cache.get("UNKNOWN::ID", this::resolve);
+        final long epoch = cache.getEpoch();
+        assertEquals(epoch + 1, cache.invalidate());
+        final DirectoryEntryList second = cache.get("UNKNOWN::ID", this::resolve);
+        assertNotSame(first, second, "Stale route should not be reused");
+        assertEquals(2, resolved.get());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.getInvalidationCount());
+    }
+
+    @Test
+    void testRouteCompiledDuringChangeIsStale() {
+        final RouteCache cache = new RouteCache();
+        cache.get("UNKNOWN::ID", dataId -> {
+            cache.invalidate();
+            return resolve(dataId);
+        });
+        cache.get("UNKNOWN::ID", this::resolve);
+        assertEquals(2, resolved.get(), "Route compiled across an invalidation must not be used");
+    }
+
+    @Test
+    void testNullResolutionIsEmpty() {
+        final RouteCache cache = new RouteCache();
+        final DirectoryEntryList list = cache.get("NOPE::ID", dataId -> null);
+        assertNotNull(list);
+        assertTrue(list.isEmpty());
+    }
+
+    @Test
+    void testBounded() {
+        final RouteCache cache = new RouteCache(2);
+        cache.get("A::ID", this::resolve);
+        cache.get("B::ID", this::resolve);
+        cache.get("C::ID", this::resolve);
+        assertTrue(cache.size() <= 2, "Cache should stay bounded");
+    }
+
+    @Test
+    void testRegisterMetrics() {
+        final MetricRegistry registry = new MetricRegistry();
+        final RouteCache cache = new RouteCache();
+        cache.registerMetrics(registry);
+        // a second cache replaces the first registration
+        final RouteCache replacement = new RouteCache();
+        replacement.registerMetrics(registry);
+        replacement.get("UNKNOWN::ID", this::resolve);
+        assertEquals(1, registry.counter(MetricRegistry.name(RouteCache.METRICS_PREFIX, "misses")).getCount());
+    }
+
+    @Test
+    void testDirectoryPlaceUsesAndInvalidatesRoutes() throws Exception {
+        final DirectoryPlace dir = new DirectoryPlace("http://localhost:8001/DirectoryPlace", new EmissaryNode());
+        try {
+            final RouteCache cache = dir.getRouteCache();
+            assertNotNull(cache, "Route cache should be on by default");
+            final DirectoryEntryList first = dir.getWildcardedEntryList("UNKNOWN::ID", dir.entryMap);
+            assertSame(first, dir.getWildcardedEntryList("UNKNOWN::ID", dir.entryMap));
+
+            final long epoch = cache.getEpoch();
+            dir.addEntry(new DirectoryEntry(KEY));
+            assertTrue(cache.getEpoch() > epoch, "Adding entries should bump the epoch");
+            final DirectoryEntryList second = dir.getWildcardedEntryList("UNKNOWN::ID", dir.entryMap);
+            assertEquals(1, second.size());
+            assertEquals(KEY.substring(0, KEY.indexOf('$')), second.getEntry(0).getKey());
+        } finally {
+            dir.shutDown();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package emissary.directory;
+
+import emissary.test.core.junit5.UnitTest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WildcardIndexTest extends UnitTest {
+
+    private static final String[] SUFFIXES = {"::ID", "::TRANSFORM", "", "::"};
+
+    @ParameterizedTest
+    @ValueSource(strings = {"UNKNOWN::ID", "FOO-BAR-BAZ::ID", "FOO-BAR-BAZ", "FOO(BAR)::ID", "FOO(BAR)(BAZ)::ID", "FOO-BAR(SHAZAM)-BAZ::ID",
+            "FOO-BAR(SHAZAM-ASCII)-BAZ::ID", "FOO-BAR(ASCII-TRANSLIT)-BAZ(SHAZAM)-BAM_MESSAGE::TRANSFORM", "(A)-B::ID", "A(B-C::ID", "::ID", "-",
+            "*::ID", "A-*::ID"})
+    void testMatchesEveryWildcardForm(final String dataId) {
+        // Register every form WildcardEntry generates and expect them all back in the same order
+        final WildcardEntry we = new WildcardEntry(dataId);
+        final Set<String> forms = we.asSet();
+        final WildcardIndex index = new WildcardIndex(forms);
+        final List<String> keys = index.match(dataId);
+        assertNotNull(keys);
+        assertEquals(new ArrayList<>(forms), keys, "Forms for " + dataId);
+    }
+
+    @Test
+    void testNoMatches() {
+        final WildcardIndex index = new WildcardIndex(List.of("BAR::ID", "FOO::TRANSFORM", "FOO-*::ID"));
+        final List<String> keys = index.match("FOO::ID");
+        assertNotNull(keys);
+        assertEquals(0, keys.size());
+    }
+
+    @Test
+    void testNestedParensNotHandled() {
+        final WildcardIndex index = new WildcardIndex(List.of("A(*)::ID"));
+        assertNull(index.match("A(B(C))::ID"), "Nested parens are left to WildcardEntry");
+        assertNull(index.match("A(B(C)::ID"), "Unclosed paren before a group is left to WildcardEntry");
+    }
+
+    @Test
+    void testMapFallsBackForNestedParens() {
+        final DirectoryEntryMap map = new DirectoryEntryMap();
+        map.addEntry(new DirectoryEntry("A(*))-D.NESTED.ID.http://host.domain.com:8001/NestedPlace$5050"));
+        assertEquals(1, map.getWildcardedEntryList("A(B(C))-D::ID").size());
+        assertEquals(1, WildcardEntry.getWildcardedEntry("A(B(C))-D::ID", map).size());
+    }
+
+    @Test
+    void testIndexFollowsMapChanges() {
+        final DirectoryEntryMap map = new DirectoryEntryMap();
+        final String key = "FOO-BAR.FOOPLACE.ID.http://host.domain.com:8001/FooPlace$5050";
+        assertTrue(map.getWildcardedEntryList("FOO-BAR::ID").isEmpty());
+        map.addEntry(new DirectoryEntry(key));
+        assertEquals(1, map.getWildcardedEntryList("FOO-BAR::ID").size());
+        map.removeEntry(KeyManipulator.removeExpense(key));
+        assertTrue(map.getWildcardedEntryList("FOO-BAR::ID").isEmpty());
+        map.addEntry(new DirectoryEntry(key));
+        map.clear();
+        assertTrue(map.getWildcardedEntryList("FOO-BAR::ID").isEmpty());
+        map.addEntry(new DirectoryEntry(key));
+        assertEquals(1, new DirectoryEntryMap(map).getWildcardedEntryList("FOO-BAR::ID").size());
+    }
+
+    /**
+     * Differential test of the trie against the string expansion in WildcardEntry over random dataIds and registrations
+     */
+    @Test
+    void testDifferentialAgainstWildcardEntry() {
+        final Random random = new Random(20240817L);
+        int handled = 0;
+        for (int round = 0; round < 200; round++) {
+            final DirectoryEntryMap map = new DirectoryEntryMap();
+            final List<String> queries = new ArrayList<>();
+            for (int q = 0; q < 20; q++) {
+                final String query = randomDataType(random) + SUFFIXES[random.nextInt(SUFFIXES.length)];
+                queries.add(query);
+                // register some of the forms this query expands to, plus some noise
+                for (final String form : new WildcardEntry(query).asSet()) {
+                    if (random.nextInt(3) == 0) {
+                        register(map, form, random);
+                    }
+                }
+                register(map, randomDataType(random) + SUFFIXES[random.nextInt(SUFFIXES.length)], random);
+            }
+
+            for (final String query : queries) {
+                final List<String> expected = fullKeys(WildcardEntry.getWildcardedEntry(query, map));
+                final List<String> actual = fullKeys(map.getWildcardedEntryList(query));
+                assertEquals(expected, actual, "Wildcard matches for " + query);
+                if (new WildcardIndex(map.keySet()).match(query) != null) {
+                    handled++;
+                }
+            }
+        }
+        assertTrue(handled > 3000, "Most random dataIds should be handled by the index, was " + handled);
+    }
+
+    private static void register(final DirectoryEntryMap map, final String dataId, final Random random) {
+        final int count = 1 + random.nextInt(3);
+        for (int i = 0; i < count; i++) {
+            // Few names and costs so that ties in the sort order are exercised
+            final String key = "X.PLACE" + random.nextInt(2) + ".ID.http://host" + random.nextInt(3) + ".domain.com:8001/Place$" + (5050
+                    + 100 * random.nextInt(2));
+            map.addEntry(dataId, new DirectoryEntry(key));
+        }
+    }
+
+    private static String randomDataType(final Random random) {
+        final String alphabet = "AB-()*";
+        final int length = random.nextInt(9);
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+
+    private static List<String> fullKeys(final DirectoryEntryList list) {
+        final List<String> keys = new ArrayList<>();
+        for (final DirectoryEntry e : list) {
+            keys.add(e.getFullKey());
+        }
+        return keys;
+    }
+}
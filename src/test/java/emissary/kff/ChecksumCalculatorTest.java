@@ -1,6 +1,7 @@
 package emissary.kff;
 
 import emissary.core.channels.FillChannelFactory;
+import emissary.core.channels.InMemoryChannelFactory;
 import emissary.core.channels.SeekableByteChannelFactory;
 import emissary.test.core.junit5.UnitTest;
 
@@ -8,7 +9,10 @@ import org.junit.jupiter.api.Test;
 
 import java.security.NoSuchAlgorithmException;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -168,4 +172,26 @@ class ChecksumCalculatorTest extends UnitTest {
             assertArrayEquals(crByte.getHash("SHA-256"), crSbcf.getHash("SHA-256"), "SHA-256's do not match!");
         }
     }
+
+    @Test
+    void testSbcDigestsReadDataOnce() throws Exception {
+        final ChecksumCalculator cc = new ChecksumCalculator(List.of("CRC32", "MD5", "SHA-1", "SHA-256", "SSDEEP"));
+        final byte[] b = new byte[ChecksumCalculator.BUFFER_SIZE * 3 + 17];
+        new Random(0).nextBytes(b);
+        final AtomicInteger opened = new AtomicInteger();
+        final SeekableByteChannelFactory sbcf = () -> {
+            opened.incrementAndGet();
+            return InMemoryChannelFactory.create(b).create();
+        };
+
+        final ChecksumResults crByte = cc.digest(b);
+        final ChecksumResults crSbcf = cc.digest(sbcf);
+
+        assertEquals(1, opened.get(), "Every sum came from one pass");
+        assertEquals(crByte.getCrc(), crSbcf.getCrc());
+        assertEquals(crByte.getSsdeep(), crSbcf.getSsdeep());
+        for (final String alg : List.of("MD5", "SHA-1", "SHA-256")) {
+            assertArrayEquals(crByte.getHash(alg), crSbcf.getHash(alg), alg);
+        }
+    }
 }
@@ -0,0 +1,175 @@
+package emissary.kff;
+
+import emissary.test.core.junit5.UnitTest;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.apache.commons.codec.binary.Hex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class KffBloomFilterTest extends UnitTest {
+
+    private static final int HASHES = 20_000;
+    private static final double RATE = 0.01;
+
+    private final Random random = new Random(11);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testNoFalseNegativesAndRateNearTarget() throws IOException {
+        final List<byte[]> hashes = randomHashes(HASHES, 20);
+        final KffBloomFilter.Builder builder = KffBloomFilter.builder("SHA-1", HASHES, RATE);
+        hashes.forEach(builder::put);
+        final Path path = dir.resolve("test.bloom");
+        builder.write(path);
+
+        final KffBloomFilter filter = KffBloomFilter.load(path);
+        assertEquals("SHA-1", filter.getAlgorithm());
+        assertEquals(HASHES, filter.getInsertions());
+        assertEquals(RATE, filter.getExpectedFalsePositiveRate(), RATE / 2);
+        for (final byte[] hash : hashes) {
+            assertTrue(filter.mightContain(hash), "Added hash must pass");
+        }
+
+        int falsePositives = 0;
+        for (final byte[] hash : randomHashes(HASHES, 20)) {
+            if (filter.mightContain(hash)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < HASHES * RATE * 2, "Too many false positives: " + falsePositives);
+    }
+
+    @Test
+    void testFromKffFile() throws IOException {
+        final List<byte[]> records = randomHashes(1000, 24);
+        final Path kff = dir.resolve("test.bin");
+        try (OutputStream os = Files.newOutputStream(kff)) {
+            for (final byte[] record : records) {
+                os.write(record);
+            }
+        }
+        final Path path = dir.resolve("test.bloom");
+        KffBloomFilter.fromKffFile(kff, 24, 20, "SHA-1", RATE).write(path);
+
+        final KffBloomFilter filter = KffBloomFilter.load(path);
+        assertEquals(1000, filter.getInsertions());
+        for (final byte[] record : records) {
+            assertTrue(filter.mightContain(Arrays.copyOf(record, 20)));
+        }
+    }
+
+    @Test
+    void testFromHexList() throws IOException {
+        final List<byte[]> hashes = randomHashes(500, 32);
+        final List<String> lines = new ArrayList<>();
+        hashes.forEach(h -> lines.add(Hex.encodeHexString(h)));
+        lines.add("");
+        final Path list = dir.resolve("hashes.txt");
+        Files.write(list, lines, StandardCharsets.US_ASCII);
+        final Path path = dir.resolve("test.bloom");
+        KffBloomFilter.fromHexList(list, "SHA-256", RATE).write(path);
+
+        final KffBloomFilter filter = KffBloomFilter.load(path);
+        assertEquals("SHA-256", filter.getAlgorithm());
+        assertEquals(500, filter.getInsertions());
+        for (final byte[] hash : hashes) {
+            assertTrue(filter.mightContain(hash));
+        }
+
+        Files.write(list, List.of("not hex"), StandardCharsets.US_ASCII);
+        assertThrows(IOException.class, () -> KffBloomFilter.fromHexList(list, "SHA-256", RATE));
+    }
+
+    @Test
+    void testLoadRejectsOtherFiles() throws IOException {
+        final Path path = dir.resolve("other.bin");
+        Files.write(path, new byte[100]);
+        assertThrows(IOException.class, () -> KffBloomFilter.load(path));
+    }
+
+    @Test
+    void testPrefilterRefusesFiltersWritingTheirStore() throws IOException {
+        final Path path = dir.resolve("test.bloom");
+        KffBloomFilter.builder("SHA-1", 1, RATE).put(randomHashes(1, 20).get(0)).write(path);
+
+        final KffFilter filter = mock(KffFilter.class);
+        when(filter.checkWritesStore()).thenReturn(true);
+        final KffBloomFilter bloom = KffBloomFilter.load(path);
+        assertThrows(IllegalArgumentException.class, () -> new KffPrefilter(filter, bloom));
+    }
+
+    @Test
+    void testPrefilterSkipsDefiniteMisses() throws Exception {
+        final byte[] present = randomHashes(1, 20).get(0);
+        final Path path = dir.resolve("test.bloom");
+        KffBloomFilter.builder("SHA-1", 1, RATE).put(present).write(path);
+
+        final KffFilter filter = mock(KffFilter.class);
+        when(filter.getName()).thenReturn("TEST");
+        when(filter.check(any(), any())).thenReturn(true);
+        final KffPrefilter prefilter = new KffPrefilter(filter, KffBloomFilter.load(path));
+        assertEquals("TEST", prefilter.getName());
+
+        final ChecksumResults hit = new ChecksumResults();
+        hit.setHash("SHA-1", present);
+        assertTrue(prefilter.check("hit", hit));
+
+        final ChecksumResults miss = new ChecksumResults();
+        miss.setHash("SHA-1", randomHashes(1, 20).get(0));
+        assertFalse(prefilter.check("miss", miss));
+        verify(filter, never()).check("miss", miss);
+
+        // no hash of the filter's algorithm, so the wrapped filter decides
+        final ChecksumResults other = new ChecksumResults();
+        other.setHash("MD5", randomHashes(1, 16).get(0));
+        assertTrue(prefilter.check("other", other));
+
+        assertEquals(2, prefilter.getCheckCount());
+        assertEquals(1, prefilter.getSkippedCount());
+        assertEquals(0, prefilter.getFalsePositiveCount());
+        assertEquals(0.0, prefilter.getFalsePositiveRate());
+
+        when(filter.check(any(), any())).thenReturn(false);
+        assertFalse(prefilter.check("hit", hit));
+        assertEquals(1, prefilter.getFalsePositiveCount());
+        assertEquals(0.5, prefilter.getFalsePositiveRate());
+
+        final MetricRegistry registry = new MetricRegistry();
+        prefilter.registerMetrics(registry);
+        assertEquals(1L, ((Gauge<?>) registry.getGauges().get("KffPrefilter.TEST.falsePositives")).getValue());
+    }
+
+    private List<byte[]> randomHashes(final int count, final int length) {
+        final List<byte[]> hashes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final byte[] hash = new byte[length];
+            random.nextBytes(hash);
+            hashes.add(hash);
+        }
+        return hashes;
+    }
+}
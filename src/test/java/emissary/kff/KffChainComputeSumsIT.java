@@ -0,0 +1,71 @@
+package emissary.kff;
+
+import emissary.test.core.junit5.UnitTest;
+
+import com.sun.management.ThreadMXBean;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the time and heap allocated per payload when hashing small payloads with a new calculator for each and with
+ * the pooled calculators of a {@link KffChain}.
+ */
+class KffChainComputeSumsIT extends UnitTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(KffChainComputeSumsIT.class);
+
+    private static final List<String> ALGORITHMS = List.of("CRC32", "MD5", "SHA-1", "SHA-256");
+    private static final int PAYLOADS = 50_000;
+    private static final int PAYLOAD_SIZE = 512;
+
+    private interface Hasher {
+        ChecksumResults digest(byte[] data) throws Exception;
+    }
+
+    @Test
+    void testReusedCalculatorAllocatesLess() throws Exception {
+        final byte[] data = new byte[PAYLOAD_SIZE];
+        new Random(3).nextBytes(data);
+
+        final KffChain chain = new KffChain();
+        chain.setAlgorithms(ALGORITHMS);
+        final Hasher fresh = d -> new ChecksumCalculator(ALGORITHMS).digest(d);
+        final Hasher reused = chain::computeSums;
+        assertArrayEquals(fresh.digest(data).getHash("SHA-256"), reused.digest(data).getHash("SHA-256"));
+
+        // warm up both
+        measure(fresh, data);
+        measure(reused, data);
+
+        final long[] freshCost = measure(fresh, data);
+        final long[] reusedCost = measure(reused, data);
+        logger.info("Per payload of {} bytes: new calculator {} ns {} bytes, reused calculator {} ns {} bytes", PAYLOAD_SIZE, freshCost[0],
+                freshCost[1], reusedCost[0], reusedCost[1]);
+
+        assertTrue(reusedCost[1] < freshCost[1], "Reused calculator should allocate less, " + reusedCost[1] + " vs " + freshCost[1] + " bytes");
+    }
+
+    /**
+     * @return nanoseconds and bytes allocated per payload
+     */
+    private static long[] measure(final Hasher hasher, final byte[] data) throws Exception {
+        final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long thread = Thread.currentThread().getId();
+        final long bytesBefore = threads.getThreadAllocatedBytes(thread);
+        final long start = System.nanoTime();
+        for (int i = 0; i < PAYLOADS; i++) {
+            hasher.digest(data);
+        }
+        final long nanos = System.nanoTime() - start;
+        final long bytes = threads.getThreadAllocatedBytes(thread) - bytesBefore;
+        return new long[] {nanos / PAYLOADS, bytes / PAYLOADS};
+    }
+}
@@ -1,17 +1,30 @@
 package emissary.kff;
 
+import emissary.core.channels.SeekableByteChannelFactory;
+import emissary.core.channels.SeekableByteChannelHelper;
 import emissary.test.core.junit5.UnitTest;
 
 import org.junit.jupiter.api.Test;
 
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 class KffChainTest extends UnitTest {
@@ -102,4 +115,93 @@ class KffChainTest extends UnitTest {
         }
     }
 
+    @Test
+    void testCalculatorsPooled() throws InterruptedException, ExecutionException, NoSuchAlgorithmException {
+        KffChain chain = new KffChain();
+        chain.setAlgorithms(List.of("CRC32", "MD5", "SHA-1"));
+
+        KffChain.Calculator calc = chain.borrowCalculator();
+        chain.releaseCalculator(calc);
+        ChecksumResults first = chain.computeSums(DATA);
+        KffChain.Calculator again = chain.borrowCalculator();
+        assertSame(calc, again, "Idle calculator reused");
+        assertNotSame(calc, chain.borrowCalculator(), "Calculator in use is not handed out twice");
+        chain.releaseCalculator(again);
+        assertArrayEquals(first.getHash("SHA-1"), chain.computeSums(DATA).getHash("SHA-1"), "Reused calculator gives the same sums");
+        assertEquals(first.getCrc(), chain.computeSums(DATA).getCrc(), "Reused calculator gives the same crc");
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertSame(calc, executor.submit(chain::borrowCalculator).get(), "Calculators are shared across threads");
+        } finally {
+            executor.shutdown();
+        }
+
+        List<KffChain.Calculator> out = new ArrayList<>();
+        for (int i = 0; i < KffChain.MAX_IDLE_CALCULATORS + 2; i++) {
+            out.add(chain.borrowCalculator());
+        }
+        out.forEach(chain::releaseCalculator);
+        Set<KffChain.Calculator> idle = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < KffChain.MAX_IDLE_CALCULATORS + 2; i++) {
+            idle.add(chain.borrowCalculator());
+        }
+        assertEquals(KffChain.MAX_IDLE_CALCULATORS, out.stream().filter(idle::contains).count(), "Idle calculators are bounded");
+
+        chain.releaseCalculator(calc);
+        chain.addAlgorithm("SHA-256");
+        assertNotSame(calc, chain.borrowCalculator(), "Calculator rebuilt when the algorithms change");
+        assertEquals(4, chain.computeSums(DATA).getResultsPresent().size(), "New algorithm computed");
+    }
+
+    @Test
+    void testChannelBufferSizedToData() throws Exception {
+        ChecksumCalculator calc = new ChecksumCalculator(List.of("SHA-1"));
+        ChecksumResults sums = calc.digest(SeekableByteChannelHelper.memory(DATA));
+        assertArrayEquals(calc.digest(DATA).getHash("SHA-1"), sums.getHash("SHA-1"));
+        byte[] large = new byte[ChecksumCalculator.BUFFER_SIZE * 2 + 5];
+        large[large.length - 1] = 1;
+        assertArrayEquals(calc.digest(large).getHash("SHA-1"), calc.digest(SeekableByteChannelHelper.memory(large)).getHash("SHA-1"),
+                "Data larger than the buffer is read in pieces");
+        assertEquals(large.length, calc.getLastLength());
+    }
+
+    @Test
+    void testChannelCheckReadsDataOnce() throws Exception {
+        KffChain chain = new KffChain();
+        chain.setAlgorithms(List.of("CRC32", "SHA-1"));
+        chain.setMinDataSize(DATA.length + 1);
+        chain.addFilter(new KffFilter() {
+            @Override
+            public String getName() {
+                return "TEST";
+            }
+
+            @Override
+            public FilterType getFilterType() {
+                return FilterType.IGNORE;
+            }
+
+            @Override
+            public boolean check(String fname, ChecksumResults sums) {
+                return true;
+            }
+        });
+
+        AtomicInteger opened = new AtomicInteger();
+        SeekableByteChannelFactory data = SeekableByteChannelHelper.memory(DATA);
+        SeekableByteChannelFactory counting = () -> {
+            opened.incrementAndGet();
+            return data.create();
+        };
+
+        KffResult small = chain.check("SMALL", counting);
+        assertFalse(small.isHit(), "Data under the min size is never a hit");
+        assertEquals(1, opened.get(), "Data read once for hashes and size");
+        assertArrayEquals(chain.computeSums(DATA).getHash("SHA-1"), small.getResult("SHA-1"), "Channel and array sums match");
+
+        chain.setMinDataSize(DATA.length);
+        assertTrue(chain.check("BIG", counting).isHit(), "Data at the min size is checked");
+        assertEquals(2, opened.get(), "Data read once for hashes and size");
+    }
 }
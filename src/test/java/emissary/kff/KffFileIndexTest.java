@@ -0,0 +1,120 @@
+package emissary.kff;
+
+import emissary.test.core.junit5.UnitTest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KffFileIndexTest extends UnitTest {
+
+    private static final Random RANDOM = new Random(42);
+
+    @TempDir
+    Path dir;
+
+    @ParameterizedTest
+    @CsvSource({"24, 5000", "16, 3000", "24, 0", "24, 1", "24, 2", "5, 300", "7, 70000"})
+    void testFindsEveryRecord(final int recordLength, final int count) throws IOException {
+        final int hashLength = recordLength - 4;
+        final TreeSet<byte[]> records = sortedRecords(recordLength, count);
+        final Path path = write(records);
+
+        final KffFile kff = new KffFile(path.toString(), "test", KffFilter.FilterType.IGNORE, recordLength);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final KffFileIndex index = KffFileIndex.create(channel, recordLength);
+            assertEquals(count, index.size());
+
+            for (final byte[] record : records) {
+                final byte[] hash = Arrays.copyOf(record, hashLength);
+                final long crc = crc(record, hashLength);
+                assertTrue(index.contains(hash, crc), "Present record not found");
+                assertTrue(index.contains(hash, -1L), "Prefix of present record not found");
+                assertTrue(kff.binaryFileSearch(hash, crc));
+            }
+
+            for (int i = 0; i < 1000; i++) {
+                final byte[] record = randomRecord(recordLength);
+                final byte[] hash = Arrays.copyOf(record, hashLength);
+                final long crc = crc(record, hashLength);
+                assertEquals(records.contains(record), index.contains(hash, crc));
+                assertEquals(kff.binaryFileSearch(hash, crc), index.contains(hash, crc));
+            }
+        }
+    }
+
+    @Test
+    void testCrcMismatchNotFound() throws IOException {
+        final TreeSet<byte[]> records = sortedRecords(24, 100);
+        final Path path = write(records);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final KffFileIndex index = KffFileIndex.create(channel, 24);
+            for (final byte[] record : records) {
+                final byte[] wrong = record.clone();
+                wrong[23] ^= 1;
+                if (!records.contains(wrong)) {
+                    assertFalse(index.contains(Arrays.copyOf(record, 20), crc(wrong, 20)));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testBadRecordLength() throws IOException {
+        final Path path = write(new TreeSet<>(Arrays::compareUnsigned));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            assertThrows(IllegalArgumentException.class, () -> KffFileIndex.create(channel, 0));
+        }
+    }
+
+    private static TreeSet<byte[]> sortedRecords(final int recordLength, final int count) {
+        final TreeSet<byte[]> records = new TreeSet<>(Arrays::compareUnsigned);
+        while (records.size() < count) {
+            records.add(randomRecord(recordLength));
+        }
+        return records;
+    }
+
+    private static byte[] randomRecord(final int recordLength) {
+        final byte[] record = new byte[recordLength];
+        RANDOM.nextBytes(record);
+        return record;
+    }
+
+    /**
+     * Read the big endian crc stored after the hash
+     */
+    private static long crc(final byte[] record, final int hashLength) {
+        long crc = 0;
+        for (int i = hashLength; i < record.length; i++) {
+            crc = (crc << 8) | (record[i] & 0xff);
+        }
+        return crc;
+    }
+
+    private Path write(final TreeSet<byte[]> records) throws IOException {
+        final Path path = Files.createTempFile(dir, "kff", ".bin");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            for (final byte[] record : records) {
+                channel.write(ByteBuffer.wrap(record));
+            }
+        }
+        return path;
+    }
+}
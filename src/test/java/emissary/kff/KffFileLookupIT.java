@@ -0,0 +1,128 @@
+package emissary.kff;
+
+import emissary.test.core.junit5.UnitTest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares concurrent lookups on a large KFF file through the mapped index and through the locked search of the file.
+ */
+class KffFileLookupIT extends UnitTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(KffFileLookupIT.class);
+
+    private static final int RECORDS = 1_000_000;
+    private static final int HASH_LENGTH = KffFile.DEFAULT_RECORD_LENGTH - 4;
+    private static final int THREADS = 8;
+    private static final int LOOKUPS_PER_THREAD = 50_000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testMappedLookupIsFaster() throws Exception {
+        final Random random = new Random(7);
+        final byte[][] records = new byte[RECORDS][];
+        for (int i = 0; i < RECORDS; i++) {
+            records[i] = new byte[KffFile.DEFAULT_RECORD_LENGTH];
+            random.nextBytes(records[i]);
+        }
+        Arrays.sort(records, Arrays::compareUnsigned);
+
+        final Path path = dir.resolve("known.bin");
+        try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(path))) {
+            for (final byte[] record : records) {
+                os.write(record);
+            }
+        }
+
+        // half present, half random
+        final byte[][] hashes = new byte[LOOKUPS_PER_THREAD][];
+        final long[] crcs = new long[LOOKUPS_PER_THREAD];
+        for (int i = 0; i < LOOKUPS_PER_THREAD; i++) {
+            final byte[] record = i % 2 == 0 ? records[random.nextInt(RECORDS)] : randomRecord(random);
+            hashes[i] = Arrays.copyOf(record, HASH_LENGTH);
+            crcs[i] = ByteBuffer.wrap(record, HASH_LENGTH, 4).getInt() & 0xffffffffL;
+        }
+
+        final KffFile kff = new KffFile(path.toString(), "test", KffFilter.FilterType.IGNORE);
+        final KffFileIndex index = kff.getIndex();
+
+        final Lookup mapped = (hash, crc) -> index.contains(hash, crc);
+        final Lookup locked = kff::binaryFileSearch;
+
+        // warm up both
+        run(mapped, hashes, crcs);
+        run(locked, hashes, crcs);
+
+        final long mappedStart = System.nanoTime();
+        final int mappedHits = run(mapped, hashes, crcs);
+        final long mappedNanos = System.nanoTime() - mappedStart;
+
+        final long lockedStart = System.nanoTime();
+        final int lockedHits = run(locked, hashes, crcs);
+        final long lockedNanos = System.nanoTime() - lockedStart;
+
+        final long lookups = (long) THREADS * LOOKUPS_PER_THREAD;
+        logger.info("{} lookups on {} threads: mapped {} lookups/s, locked {} lookups/s", lookups, THREADS, lookups * 1_000_000_000L / mappedNanos,
+                lookups * 1_000_000_000L / lockedNanos);
+
+        assertEquals(lockedHits, mappedHits);
+        assertTrue(mappedHits >= THREADS * LOOKUPS_PER_THREAD / 2, "Every present record should be found");
+        assertTrue(mappedNanos < lockedNanos, "Mapped lookup should be faster, " + mappedNanos + " vs " + lockedNanos + " ns");
+    }
+
+    private static byte[] randomRecord(final Random random) {
+        final byte[] record = new byte[KffFile.DEFAULT_RECORD_LENGTH];
+        random.nextBytes(record);
+        return record;
+    }
+
+    private static int run(final Lookup lookup, final byte[][] hashes, final long[] crcs) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<Integer>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    int hits = 0;
+                    for (int i = 0; i < hashes.length; i++) {
+                        if (lookup.contains(hashes[i], crcs[i])) {
+                            hits++;
+                        }
+                    }
+                    return hits;
+                }));
+            }
+            int hits = 0;
+            for (final Future<Integer> future : futures) {
+                hits += future.get();
+            }
+            return hits;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private interface Lookup {
+        boolean contains(byte[] hash, long crc);
+    }
+}
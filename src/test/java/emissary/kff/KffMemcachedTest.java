@@ -2,8 +2,12 @@ package emissary.kff;
 
 import emissary.kff.KffFilter.FilterType;
 import emissary.test.core.junit5.UnitTest;
+import emissary.util.Hexl;
 
+import net.spy.memcached.ConnectionFactoryBuilder;
 import net.spy.memcached.MemcachedClient;
+import net.spy.memcached.internal.BulkFuture;
+import net.spy.memcached.internal.BulkGetCompletionListener;
 import net.spy.memcached.internal.GetFuture;
 import net.spy.memcached.internal.OperationFuture;
 import net.spy.memcached.ops.Operation;
@@ -19,9 +23,14 @@ import java.io.IOException;
 import java.lang.reflect.Field;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -32,6 +41,8 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.validateMockitoUsage;
 import static org.mockito.Mockito.when;
@@ -106,6 +117,129 @@ class KffMemcachedTest extends UnitTest {
         assertTrue(mcdFilter.check(TEST_ID_WITH_SPACES, createSums(mcdFilter)), "Filter should hit");
     }
 
+    @Test
+    void testNearCacheAnswersRepeats() throws Exception {
+        try (LocalMemcachedServer server = new LocalMemcachedServer()) {
+            MemcachedClient client = createLocalClient(server);
+            try {
+                KffMemcached mcdFilter = new KffMemcached(TEST_ID_WITH_SPACES, "KFF", FilterType.DUPLICATE, client);
+                mcdFilter.setNearCache(100, 60000);
+                ChecksumResults sums = createSums(mcdFilter);
+
+                assertFalse(mcdFilter.check("first-id", sums), "New content should not hit");
+                assertTrue(mcdFilter.check("second-id", sums), "Repeat content should hit");
+                assertTrue(mcdFilter.check("third-id", sums), "Repeat content should hit");
+                assertEquals(1, server.getGetRequests(), "Repeats should be answered locally");
+
+                // the stored value and the dupe ids still reach memcached
+                client.waitForQueues(5, TimeUnit.SECONDS);
+                assertEquals("first-id", server.get(TEST_UNFORMATTED_ID_HASH));
+                assertEquals(TEST_UNFORMATTED_ID_HASH, server.get("third-id"));
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void testBatchedLookups() throws Exception {
+        final int threads = 16;
+        try (LocalMemcachedServer server = new LocalMemcachedServer()) {
+            MemcachedClient client = createLocalClient(server);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                KffMemcached mcdFilter = new KffMemcached(TEST_ID_WITH_SPACES, "KFF", FilterType.DUPLICATE, client);
+                mcdFilter.setBatching(500, 256);
+
+                // even threads look up content already stored, odd threads all look up the same new content
+                List<ChecksumResults> known = new ArrayList<>();
+                for (int i = 0; i < threads; i += 2) {
+                    ChecksumResults sums = new ChecksumCalculator(List.of(mcdFilter.getPreferredAlgorithm())).digest(("known " + i).getBytes());
+                    server.put(Hexl.toUnformattedHexString(sums.getHash(mcdFilter.getPreferredAlgorithm())), "stored-" + i);
+                    known.add(sums);
+                }
+                ChecksumResults fresh = createSums(mcdFilter);
+
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<Boolean>> results = new ArrayList<>();
+                for (int i = 0; i < threads; i++) {
+                    final String id = "id-" + i;
+                    final ChecksumResults sums = i % 2 == 0 ? known.get(i / 2) : fresh;
+                    results.add(executor.submit(() -> {
+                        start.await();
+                        return mcdFilter.check(id, sums);
+                    }));
+                }
+                start.countDown();
+
+                int hits = 0;
+                for (int i = 0; i < threads; i++) {
+                    boolean hit = results.get(i).get(10, TimeUnit.SECONDS);
+                    if (i % 2 == 0) {
+                        assertTrue(hit, "Stored content should hit");
+                    }
+                    hits += hit ? 1 : 0;
+                }
+                assertEquals(threads - 1, hits, "Only one lookup of the new content should miss");
+                assertEquals(1, server.getGetRequests(), "Lookups should share one request");
+                assertEquals(threads / 2 + 1, server.getKeysRequested(), "Repeated keys should be asked for once");
+
+                mcdFilter.setBatching(-1, 0);
+                assertTrue(mcdFilter.check("id-again", fresh), "Stored new content should hit unbatched");
+            } finally {
+                executor.shutdownNow();
+                client.shutdown();
+            }
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testBatchesSentWithoutWaitingForAnswers() throws Exception {
+        MemcachedClient client = mock(MemcachedClient.class);
+        List<BulkGetCompletionListener> listeners = new CopyOnWriteArrayList<>();
+        CountDownLatch bothSent = new CountDownLatch(2);
+        when(client.asyncGetBulk(ArgumentMatchers.<Collection<String>>any())).thenAnswer(invocation -> {
+            Collection<String> keys = invocation.getArgument(0);
+            BulkFuture<Map<String, Object>> bulk = mock(BulkFuture.class);
+            when(bulk.get(anyLong(), any(TimeUnit.class))).thenReturn(Map.of(keys.iterator().next(), "stored"));
+            when(bulk.addListener(any())).thenAnswer(added -> {
+                listeners.add(added.getArgument(0));
+                bothSent.countDown();
+                return bulk;
+            });
+            return bulk;
+        });
+
+        try (KffMemcachedBatcher batcher = new KffMemcachedBatcher(client, 0, 1, 1000)) {
+            CompletableFuture<Object> first = batcher.get("a", "id-a");
+            CompletableFuture<Object> second = batcher.get("b", "id-b");
+            assertTrue(bothSent.await(5, TimeUnit.SECONDS), "Second batch should be sent before the first is answered");
+            assertFalse(first.isDone(), "Not answered until the bulk get completes");
+            assertFalse(second.isDone(), "Not answered until the bulk get completes");
+
+            for (BulkGetCompletionListener listener : listeners) {
+                listener.onComplete(null);
+            }
+            assertEquals("stored", first.get(1, TimeUnit.SECONDS));
+            assertEquals("stored", second.get(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testLookupAfterCloseFails() {
+        MemcachedClient client = mock(MemcachedClient.class);
+        KffMemcachedBatcher batcher = new KffMemcachedBatcher(client, 0, 1, 1000);
+        batcher.close();
+        CompletableFuture<Object> future = batcher.get("a", "id-a");
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(1, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IllegalStateException, "Closed batcher should fail the lookup");
+    }
+
+    private static MemcachedClient createLocalClient(LocalMemcachedServer server) throws IOException {
+        return new MemcachedClient(new ConnectionFactoryBuilder().setDaemon(true).build(), List.of(server.getAddress()));
+    }
+
     private static ChecksumResults createSums(KffMemcached mcd) throws NoSuchAlgorithmException {
         List<String> kffalgs = new ArrayList<>();
         kffalgs.add(mcd.getPreferredAlgorithm());
@@ -0,0 +1,184 @@
+package emissary.kff;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+
+/**
+ * A stand-in for a memcached server speaking enough of the text protocol for {@link KffMemcached}: get, gets, set,
+ * delete, version and quit. Values never expire. It counts the requests it answers so tests can see how many round
+ * trips a client made.
+ */
+final class LocalMemcachedServer implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalMemcachedServer.class);
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        final Thread t = new Thread(r, "LocalMemcachedServer");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Map<String, Entry> values = new ConcurrentHashMap<>();
+
+    private final AtomicInteger getRequests = new AtomicInteger();
+    private final AtomicInteger keysRequested = new AtomicInteger();
+    private final AtomicInteger setRequests = new AtomicInteger();
+
+    /**
+     * Listen on a free port of the loopback address
+     */
+    LocalMemcachedServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        executor.execute(this::accept);
+    }
+
+    InetSocketAddress getAddress() {
+        return new InetSocketAddress(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+    }
+
+    /** Number of get requests, however many keys each held */
+    int getGetRequests() {
+        return getRequests.get();
+    }
+
+    /** Number of keys asked for over all get requests */
+    int getKeysRequested() {
+        return keysRequested.get();
+    }
+
+    int getSetRequests() {
+        return setRequests.get();
+    }
+
+    /**
+     * Store a string value as the spymemcached transcoder does
+     */
+    void put(final String key, final String value) {
+        values.put(key, new Entry(0, value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Get a stored string value, or null
+     */
+    @Nullable
+    String get(final String key) {
+        final Entry entry = values.get(key);
+        return entry == null ? null : new String(entry.data, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                executor.execute(() -> serve(socket));
+            } catch (IOException e) {
+                logger.debug("Stopped accepting", e);
+            }
+        }
+    }
+
+    private void serve(final Socket socket) {
+        try (Socket s = socket;
+                InputStream in = new BufferedInputStream(s.getInputStream());
+                OutputStream out = new BufferedOutputStream(s.getOutputStream())) {
+            String line;
+            while ((line = readLine(in)) != null) {
+                final String[] words = line.trim().split(" +");
+                switch (words[0]) {
+                    case "get":
+                    case "gets":
+                        getRequests.incrementAndGet();
+                        for (int i = 1; i < words.length; i++) {
+                            keysRequested.incrementAndGet();
+                            final Entry entry = values.get(words[i]);
+                            if (entry != null) {
+                                write(out, "VALUE " + words[i] + " " + entry.flags + " " + entry.data.length
+                                        + ("gets".equals(words[0]) ? " 1" : "") + "\r\n");
+                                out.write(entry.data);
+                                write(out, "\r\n");
+                            }
+                        }
+                        write(out, "END\r\n");
+                        break;
+                    case "set":
+                        setRequests.incrementAndGet();
+                        final byte[] data = in.readNBytes(Integer.parseInt(words[4]) + 2);
+                        values.put(words[1], new Entry(Integer.parseInt(words[2]), Arrays.copyOf(data, data.length - 2)));
+                        if (words.length < 6 || !"noreply".equals(words[5])) {
+                            write(out, "STORED\r\n");
+                        }
+                        break;
+                    case "delete":
+                        write(out, values.remove(words[1]) == null ? "NOT_FOUND\r\n" : "DELETED\r\n");
+                        break;
+                    case "version":
+                        write(out, "VERSION 1.0.0\r\n");
+                        break;
+                    case "quit":
+                        return;
+                    default:
+                        write(out, "ERROR\r\n");
+                        break;
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            logger.debug("Connection closed", e);
+        }
+    }
+
+    private static void write(final OutputStream out, final String s) throws IOException {
+        out.write(s.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Nullable
+    private static String readLine(final InputStream in) throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                return line.toString(StandardCharsets.US_ASCII);
+            }
+            if (c != '\r') {
+                line.write(c);
+            }
+        }
+        return null;
+    }
+
+    private static final class Entry {
+        private final int flags;
+        private final byte[] data;
+
+        Entry(final int flags, final byte[] data) {
+            this.flags = flags;
+            this.data = data;
+        }
+    }
+}
@@ -1,13 +1,22 @@
 package emissary.kff;
 
+import emissary.core.channels.InMemoryChannelFactory;
+import emissary.core.channels.SeekableByteChannelFactory;
 import emissary.test.core.junit5.UnitTest;
 import emissary.util.Hexl;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvFileSource;
 
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.MessageDigest;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
@@ -180,4 +189,67 @@ final class SsdeepTest extends UnitTest {
         // Check that the scores match the expected scores.
         assertArrayEquals(RANDOM_COMPARE_EXPECTED_SCORES, scores, "Mismatched random scores");
     }
+
+    @ParameterizedTest
+    @CsvFileSource(resources = "/emissary/kff/SsdeepTest/corpus.csv")
+    void testCorpusHashesInOnePass(final String kind, final int length, final String expected, @TempDir final Path dir) throws Exception {
+        final byte[] input = corpusInput(kind, length);
+        assertEquals(expected, ss.fuzzyHash(input), "byte array");
+
+        final AtomicInteger opened = new AtomicInteger();
+        final SeekableByteChannelFactory sbcf = () -> {
+            opened.incrementAndGet();
+            return InMemoryChannelFactory.create(input).create();
+        };
+        assertEquals(expected, ss.fuzzyHash(sbcf), "channel");
+        assertEquals(1, opened.get(), "Channel read once");
+
+        final Path file = dir.resolve(kind + length);
+        Files.write(file, input);
+        assertEquals(expected, ss.fuzzyHashFile(file.toFile()), "file");
+    }
+
+    private static final String[] CORPUS_WORDS = {"the", "quick", "brown", "fox", "jumps", "over", "lazy", "dog", "emissary", "payload", "\n",
+            "place", "agent", "0123456789", "lorem", "ipsum"};
+
+    /**
+     * Generate an input of the test corpus
+     *
+     * @param kind of data: random, text, runs, zeros or sawtooth
+     * @param length of the data
+     * @return the data, the same every time for the same arguments
+     */
+    static byte[] corpusInput(final String kind, final int length) {
+        final byte[] input = new byte[length];
+        final Random rng = new Random(length);
+        switch (kind) {
+            case "random":
+                rng.nextBytes(input);
+                break;
+            case "text":
+                final StringBuilder sb = new StringBuilder(length + 16);
+                while (sb.length() < length) {
+                    sb.append(CORPUS_WORDS[rng.nextInt(CORPUS_WORDS.length)]).append(' ');
+                }
+                System.arraycopy(getStringAsUtf8(sb.toString()), 0, input, 0, length);
+                break;
+            case "runs":
+                for (int i = 0; i < length;) {
+                    final int run = Math.min(length - i, rng.nextInt(5000) + 1);
+                    Arrays.fill(input, i, i + run, (byte) rng.nextInt());
+                    i += run;
+                }
+                break;
+            case "zeros":
+                break;
+            case "sawtooth":
+                for (int i = 0; i < length; i++) {
+                    input[i] = (byte) (i % 251);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException(kind);
+        }
+        return input;
+    }
 }
@@ -0,0 +1,208 @@
+package emissary.place;
+
+import emissary.config.Configurator;
+import emissary.core.DataObjectFactory;
+import emissary.core.Family;
+import emissary.core.IBaseDataObject;
+import emissary.test.core.junit5.UnitTest;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+
+class PlaceBatcherTest extends UnitTest {
+
+    private final List<Integer> callSizes = new CopyOnWriteArrayList<>();
+
+    @SuppressWarnings("unchecked")
+    private IServiceProviderPlace sproutingPlace() throws Exception {
+        final IServiceProviderPlace place = Mockito.mock(IServiceProviderPlace.class);
+        Mockito.when(place.getPlaceName()).thenReturn("BatchPlace");
+        Mockito.when(place.agentProcessHeavyDutyBatch(anyList())).thenAnswer(inv -> {
+            final List<IBaseDataObject> payloads = inv.getArgument(0);
+            callSizes.add(payloads.size());
+            final List<List<IBaseDataObject>> sprouts = new ArrayList<>();
+            for (final IBaseDataObject p : payloads) {
+                sprouts.add(List.of(payload(p.shortName() + Family.initial())));
+            }
+            return sprouts;
+        });
+        return place;
+    }
+
+    @Test
+    void testConcurrentAgentsShareOneCall() throws Exception {
+        final PlaceBatcher batcher = new PlaceBatcher(sproutingPlace(), 3, TimeUnit.SECONDS.toMillis(30));
+        final ExecutorService agents = Executors.newFixedThreadPool(3);
+        try {
+            final Map<String, Future<List<IBaseDataObject>>> results = new HashMap<>();
+            for (final String name : List.of("one", "two", "three")) {
+                results.put(name, agents.submit(() -> batcher.process(List.of(payload(name)))));
+            }
+            for (final Map.Entry<String, Future<List<IBaseDataObject>>> e : results.entrySet()) {
+                final List<IBaseDataObject> sprouts = e.getValue().get(10, TimeUnit.SECONDS);
+                assertEquals(1, sprouts.size());
+                assertEquals(e.getKey() + Family.initial(), sprouts.get(0).shortName(), "Each agent gets its own sprouts");
+            }
+        } finally {
+            agents.shutdownNow();
+        }
+        assertEquals(List.of(3), callSizes, "A full batch is one call");
+        assertEquals(1, batcher.getBatchCount());
+        assertEquals(3, batcher.getBatchSizes().getSnapshot().getMax());
+    }
+
+    @Test
+    void testLoneAgentGoesAfterLinger() throws Exception {
+        final PlaceBatcher batcher = new PlaceBatcher(sproutingPlace(), 10, 20);
+        final List<IBaseDataObject> sprouts = batcher.process(List.of(payload("alone")));
+        assertEquals(1, sprouts.size());
+        assertEquals(List.of(1), callSizes);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFailureIsSharedByTheBatch() throws Exception {
+        final IServiceProviderPlace place = Mockito.mock(IServiceProviderPlace.class);
+        Mockito.when(place.agentProcessHeavyDutyBatch(anyList())).thenThrow(new IllegalStateException("tool died"));
+        final PlaceBatcher batcher = new PlaceBatcher(place, 2, TimeUnit.SECONDS.toMillis(30));
+        final ExecutorService agents = Executors.newFixedThreadPool(2);
+        try {
+            final Future<List<IBaseDataObject>> a = agents.submit(() -> batcher.process(List.of(payload("a"))));
+            final Future<List<IBaseDataObject>> b = agents.submit(() -> batcher.process(List.of(payload("b"))));
+            for (final Future<List<IBaseDataObject>> f : List.of(a, b)) {
+                final Exception e = assertThrows(Exception.class, () -> f.get(10, TimeUnit.SECONDS));
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        } finally {
+            agents.shutdownNow();
+        }
+    }
+
+    @Test
+    void testDistributeByPayloadNotName() {
+        final PlaceBatcher.Share first = new PlaceBatcher.Share(List.of(payload("same")));
+        final PlaceBatcher.Share second = new PlaceBatcher.Share(List.of(payload("other"), payload("same")));
+        PlaceBatcher.distribute(List.of(first, second),
+                List.of(List.of(payload("same-att-1")), List.of(), List.of(payload("same-att-1"), payload("same-att-2"))));
+        assertEquals(List.of("same-att-1"), names(first.sprouts), "Colliding short names keep their own sprouts");
+        assertEquals(List.of("same-att-1", "same-att-2"), names(second.sprouts));
+
+        assertThrows(IllegalStateException.class, () -> PlaceBatcher.distribute(List.of(first), List.of()),
+                "Sprouts that cannot be placed are an error, never given to another agent");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testEachPayloadRunsAsItsAgent() throws Exception {
+        final IServiceProviderPlace place = Mockito.mock(IServiceProviderPlace.class);
+        Mockito.when(place.agentProcessHeavyDutyBatch(anyList())).thenCallRealMethod();
+        Mockito.when(place.agentProcessHeavyDuty(anyList())).thenAnswer(inv -> {
+            final IBaseDataObject p = ((List<IBaseDataObject>) inv.getArgument(0)).get(0);
+            return List.of(payload(Thread.currentThread().getName() + "-" + p.shortName()));
+        });
+        final PlaceBatcher batcher = new PlaceBatcher(place, 2, TimeUnit.SECONDS.toMillis(30));
+        final ExecutorService agents = Executors.newFixedThreadPool(2);
+        try {
+            final Future<List<IBaseDataObject>> a = agents.submit(() -> runAs("agentA", () -> batcher.process(List.of(payload("same")))));
+            final Future<List<IBaseDataObject>> b = agents.submit(() -> runAs("agentB", () -> batcher.process(List.of(payload("same")))));
+            assertEquals(List.of("agentA-same"), names(a.get(10, TimeUnit.SECONDS)), "Place sees the payload's own agent");
+            assertEquals(List.of("agentB-same"), names(b.get(10, TimeUnit.SECONDS)));
+        } finally {
+            agents.shutdownNow();
+        }
+    }
+
+    @Test
+    void testOnlyBatchPlacesAreBatched() throws Exception {
+        assertFalse(PlaceBatcher.overridesBatch(OneAtATimePlace.class), "Default batch method is one payload at a time");
+        assertTrue(PlaceBatcher.overridesBatch(BatchingPlace.class));
+
+        final Configurator conf = Mockito.mock(Configurator.class);
+        Mockito.when(conf.findIntEntry("PLACE_BATCH_SIZE", 0)).thenReturn(4);
+        Mockito.when(conf.findLongEntry("PLACE_BATCH_LINGER_MILLIS", 10L)).thenReturn(10L);
+        final IServiceProviderPlace plain = Mockito.mock(OneAtATimePlace.class, Mockito.CALLS_REAL_METHODS);
+        assertNull(PlaceBatcher.fromConfig(plain, conf), "Place without a batch method is not batched");
+        final IServiceProviderPlace batching = Mockito.mock(BatchingPlace.class, Mockito.CALLS_REAL_METHODS);
+        final PlaceBatcher batcher = PlaceBatcher.fromConfig(batching, conf);
+        assertNotNull(batcher);
+        assertEquals(4, batcher.getMaxBatchSize());
+    }
+
+    @Test
+    void testBatchNeverExceedsMaxSize() throws Exception {
+        final PlaceBatcher batcher = new PlaceBatcher(sproutingPlace(), 3, 200);
+        final ExecutorService agents = Executors.newFixedThreadPool(2);
+        try {
+            final Future<List<IBaseDataObject>> a = agents.submit(() -> batcher.process(List.of(payload("a1"), payload("a2"))));
+            final Future<List<IBaseDataObject>> b = agents.submit(() -> batcher.process(List.of(payload("b1"), payload("b2"))));
+            assertEquals(2, a.get(10, TimeUnit.SECONDS).size());
+            assertEquals(2, b.get(10, TimeUnit.SECONDS).size());
+        } finally {
+            agents.shutdownNow();
+        }
+        assertEquals(List.of(2, 2), callSizes, "A share that does not fit starts another batch");
+
+        callSizes.clear();
+        final List<IBaseDataObject> many = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            many.add(payload("many" + i));
+        }
+        assertEquals(7, batcher.process(many).size());
+        assertEquals(List.of(3, 3, 1), callSizes, "An agent with more than a batch is split");
+    }
+
+    /**
+     * A place that keeps the default batch method
+     */
+    abstract static class OneAtATimePlace implements IServiceProviderPlace {
+    }
+
+    /**
+     * A place with its own batch method
+     */
+    abstract static class BatchingPlace implements IServiceProviderPlace {
+        @Override
+        public List<List<IBaseDataObject>> agentProcessHeavyDutyBatch(final List<IBaseDataObject> payloadList) {
+            return List.of();
+        }
+    }
+
+    private static <T> T runAs(final String name, final Callable<T> work) throws Exception {
+        final String old = Thread.currentThread().getName();
+        Thread.currentThread().setName(name);
+        try {
+            return work.call();
+        } finally {
+            Thread.currentThread().setName(old);
+        }
+    }
+
+    private static List<String> names(final List<IBaseDataObject> list) {
+        final List<String> names = new ArrayList<>();
+        list.forEach(d -> names.add(d.shortName()));
+        return names;
+    }
+
+    private static IBaseDataObject payload(final String name) {
+        return DataObjectFactory.getInstance(new byte[0], name, "UNKNOWN");
+    }
+}
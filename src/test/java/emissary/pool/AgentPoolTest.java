@@ -1,7 +1,9 @@
 package emissary.pool;
 
+import emissary.core.IMobileAgent;
 import emissary.test.core.junit5.UnitTest;
 
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -10,7 +12,9 @@ import java.util.stream.Stream;
 import javax.annotation.Nullable;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class AgentPoolTest extends UnitTest {
 
@@ -42,4 +46,44 @@ class AgentPoolTest extends UnitTest {
             assertEquals(expectedPoolSize, AgentPool.computePoolSize(maxMemoryInBytes, propertyOverride), "Pool Size Calculation Error");
         }
     }
+
+    @Test
+    void testLaneReservations() throws Exception {
+        final AgentPool pool = new AgentPool(new MobileAgentFactory("emissary.core.VirtualMobileAgent"), 3, "LaneTestPool");
+        try {
+            pool.setLaneReservations(1, 0);
+            final IMobileAgent a = pool.borrowAgent(1);
+            final IMobileAgent b = pool.borrowAgent(1);
+            assertEquals(2, pool.getLaneActive(1));
+            assertFalse(pool.isLaneAvailable(1), "The last agent is reserved for lane 0");
+            assertTrue(pool.isLaneAvailable(0));
+
+            final IMobileAgent c = pool.borrowAgent(0);
+            assertEquals(1, pool.getLaneActive(0));
+            pool.returnAgent(a);
+            assertEquals(1, pool.getLaneActive(1));
+            assertTrue(pool.isLaneAvailable(1), "Lane 0 has its reservation in use so the returned agent is shared");
+
+            pool.returnAgent(b);
+            pool.returnAgent(c);
+            assertEquals(0, pool.getLaneActive(0));
+            assertEquals(0, pool.getLaneActive(1));
+            assertEquals(0, pool.getNumActive());
+        } finally {
+            pool.kill();
+        }
+    }
+
+    @Test
+    void testLaneReservationsLeaveOneShared() throws Exception {
+        final AgentPool pool = new AgentPool(new MobileAgentFactory("emissary.core.VirtualMobileAgent"), 2, "LaneTestPool");
+        try {
+            pool.setLaneReservations(2, 2);
+            final IMobileAgent a = pool.borrowAgent(0);
+            assertTrue(pool.isLaneAvailable(1), "Reservations are cut back to leave an agent for lane 1");
+            pool.returnAgent(a);
+        } finally {
+            pool.kill();
+        }
+    }
 }
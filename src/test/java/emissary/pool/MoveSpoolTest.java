@@ -0,0 +1,212 @@
+package emissary.pool;
+
+import emissary.core.DataObjectFactory;
+import emissary.core.IBaseDataObject;
+import emissary.core.IMobileAgent;
+import emissary.core.Namespace;
+import emissary.test.core.junit5.UnitTest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.isNull;
+
+class MoveSpoolTest extends UnitTest {
+
+    private final List<Object> delivered = new CopyOnWriteArrayList<>();
+    private final List<String> deliveredOn = new CopyOnWriteArrayList<>();
+    private final CountDownLatch gate = new CountDownLatch(1);
+    private final CountDownLatch held = new CountDownLatch(1);
+    private final AtomicBoolean holdFirstBorrow = new AtomicBoolean(false);
+
+    @Nullable
+    private MoveSpool spool;
+
+    @Override
+    @BeforeEach
+    public void setUp() throws Exception {
+        final IMobileAgent agent = Mockito.mock(IMobileAgent.class);
+        Mockito.doAnswer(inv -> {
+            delivered.add(inv.getArgument(0));
+            deliveredOn.add(Thread.currentThread().getName());
+            return null;
+        }).when(agent).go(any(), isNull());
+
+        final AgentPool pool = Mockito.mock(AgentPool.class);
+        Mockito.when(pool.borrowAgent()).thenAnswer(inv -> {
+            if (holdFirstBorrow.getAndSet(false)) {
+                held.countDown();
+                gate.await(10, TimeUnit.SECONDS);
+            }
+            return agent;
+        });
+        Namespace.bind("AgentPool", pool);
+    }
+
+    @Override
+    @AfterEach
+    public void tearDown() throws Exception {
+        gate.countDown();
+        if (spool != null) {
+            spool.quit();
+        }
+        Namespace.unbind("AgentPool");
+        super.tearDown();
+    }
+
+    @Test
+    void testMultipleDispatchersDeliverEverything() throws InterruptedException {
+        spool = new MoveSpool(10, 4, MoveSpool.Overflow.BLOCK);
+        for (int i = 0; i < 200; i++) {
+            spool.send("payload-" + i);
+        }
+        waitFor(200);
+        assertEquals(200, delivered.size());
+        assertEquals(200, spool.getEnqueCount());
+        assertEquals(200, spool.getDequeCount());
+        assertEquals(0, spool.getCurrentSpoolSize());
+        assertTrue(spool.getHighWaterMark() <= 10, "Spool must stay within its capacity");
+        assertEquals(200, spool.getQueueWait().getCount());
+        assertEquals(200, spool.getDispatchLatency().getCount());
+    }
+
+    @Test
+    void testShippedConfigIsOneLane() throws InterruptedException {
+        spool = new MoveSpool();
+        assertEquals(1, spool.getLanes().size(), "Lanes are opt-in");
+        assertEquals(0, spool.getLanes().get(0).getReservedAgents());
+        spool.send("only");
+        waitFor(1);
+        assertEquals(List.of("only"), delivered);
+    }
+
+    @Test
+    void testDefaultIsUnbounded() throws InterruptedException {
+        holdFirstBorrow.set(true);
+        spool = new MoveSpool();
+        assertEquals(MoveSpool.DEFAULT_CAPACITY, spool.getCapacity(), "No capacity is configured by default");
+        for (int i = 0; i < 50; i++) {
+            spool.send("payload-" + i);
+        }
+        assertEquals(0, spool.getRejectCount(), "Producers are never held back by default");
+        gate.countDown();
+        waitFor(50);
+
+        final MoveSpool unbounded = new MoveSpool(0, 1, MoveSpool.Overflow.BLOCK);
+        try {
+            assertEquals(Integer.MAX_VALUE, unbounded.getCapacity(), "Zero capacity means unbounded");
+        } finally {
+            unbounded.quit();
+        }
+    }
+
+    @Test
+    void testRejectWhenFull() throws InterruptedException {
+        holdFirstBorrow.set(true);
+        spool = new MoveSpool(2, 1, MoveSpool.Overflow.REJECT);
+        spool.send("a");
+        spool.send("b");
+        assertThrows(RejectedExecutionException.class, () -> spool.send("c"));
+        assertEquals(1, spool.getRejectCount());
+        gate.countDown();
+        waitFor(2);
+        assertEquals(List.of("a", "b"), delivered);
+    }
+
+    @Test
+    void testSpillWhenFull() throws InterruptedException {
+        holdFirstBorrow.set(true);
+        spool = new MoveSpool(2, 1, MoveSpool.Overflow.SPILL);
+        spool.send("a");
+        assertTrue(held.await(10, TimeUnit.SECONDS), "Dispatcher should be waiting on the pool");
+        spool.send("b");
+        spool.send("c");
+        assertEquals(List.of("c"), delivered, "Overflow should be handed over on the producer thread");
+        assertEquals(Thread.currentThread().getName(), deliveredOn.get(0));
+        assertEquals(1, spool.getSpillCount());
+        gate.countDown();
+        waitFor(3);
+    }
+
+    @Test
+    void testBlockWhenFull() throws InterruptedException {
+        holdFirstBorrow.set(true);
+        spool = new MoveSpool(2, 1, MoveSpool.Overflow.BLOCK);
+        spool.send("a");
+        spool.send("b");
+        final CountDownLatch sent = new CountDownLatch(1);
+        final Thread producer = new Thread(() -> {
+            spool.send("c");
+            sent.countDown();
+        });
+        producer.start();
+        assertFalse(sent.await(200, TimeUnit.MILLISECONDS), "Producer should wait for room");
+        gate.countDown();
+        assertTrue(sent.await(10, TimeUnit.SECONDS));
+        waitFor(3);
+        assertEquals(List.of("a", "b", "c"), delivered);
+    }
+
+    @Test
+    void testWeightedPriorityLanes() throws InterruptedException {
+        holdFirstBorrow.set(true);
+        final SpoolLane urgent = new SpoolLane("urgent", 5, 3, 0);
+        final SpoolLane bulk = new SpoolLane("bulk", Integer.MAX_VALUE, 1, 0);
+        spool = new MoveSpool(20, 1, MoveSpool.Overflow.BLOCK, List.of(urgent, bulk));
+        spool.send(payload("warmup", 20));
+        assertTrue(held.await(10, TimeUnit.SECONDS), "Dispatcher should be waiting on the pool");
+        for (int i = 1; i <= 4; i++) {
+            spool.send(payload("B" + i, 20));
+        }
+        for (int i = 1; i <= 4; i++) {
+            spool.send(payload("U" + i, 1));
+        }
+        assertEquals(4, urgent.getDepth());
+        assertEquals(4, bulk.getDepth());
+
+        gate.countDown();
+        waitFor(9);
+        final List<String> order = delivered.stream().map(p -> ((IBaseDataObject) p).getFilename()).collect(Collectors.toList());
+        assertEquals(List.of("warmup", "U1", "U2", "B1", "U3", "U4", "B2", "B3", "B4"), order,
+                "Urgent items go first three to one but bulk still gets its turn");
+        assertEquals(4, urgent.getQueueWait().getCount());
+        assertEquals(5, bulk.getQueueWait().getCount());
+        assertEquals(0, urgent.getDepth());
+    }
+
+    @Test
+    void testFamilyTakesMostUrgentPriority() {
+        assertEquals(3, MoveSpool.SpoolItem.priorityOf(List.of(payload("a", 12), payload("b", 3))));
+        assertEquals(7, MoveSpool.SpoolItem.priorityOf(payload("c", 7)));
+        assertEquals(emissary.pickup.Priority.DEFAULT, MoveSpool.SpoolItem.priorityOf("not a data object"));
+    }
+
+    private static IBaseDataObject payload(final String name, final int priority) {
+        final IBaseDataObject d = DataObjectFactory.getInstance(new byte[0], name, "UNKNOWN");
+        d.setPriority(priority);
+        return d;
+    }
+
+    private void waitFor(final int count) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (delivered.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+}